@@ -0,0 +1,63 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.cohort;
+
+import javax.validation.Valid;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import io.igia.i2b2.cdi.cohort.dto.CohortCriterionDto;
+import io.igia.i2b2.cdi.cohort.dto.CohortDto;
+import io.igia.i2b2.cdi.cohort.service.CohortService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+
+@Api(tags = "Cohorts")
+@RestController
+@RequestMapping("/api")
+public class CohortResource {
+
+    private final CohortService cohortService;
+
+    public CohortResource(CohortService cohortService) {
+        this.cohortService = cohortService;
+    }
+
+    @ApiOperation(value = "Count cohort", notes = "Count the patients matching the criteria")
+    @PostMapping(value = "/cohorts:count", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE,
+        produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public CohortDto countCohort(@Valid @RequestBody CohortCriterionDto criterion) {
+        return cohortService.countPatients(criterion);
+    }
+
+    @ApiOperation(value = "Get cohort", notes = "Get the patient numbers matching the criteria")
+    @PostMapping(value = "/cohorts:patients", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE,
+        produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public CohortDto getCohort(@Valid @RequestBody CohortCriterionDto criterion) {
+        return cohortService.getPatients(criterion);
+    }
+
+    @ApiOperation(value = "Rebuild cohort index", notes = "Rebuild the concept patient index in the background")
+    @PostMapping(value = "/cohorts:reindex")
+    public ResponseEntity<Void> rebuildCohortIndex() {
+        cohortService.rebuildIndex();
+        return ResponseEntity.accepted().build();
+    }
+}
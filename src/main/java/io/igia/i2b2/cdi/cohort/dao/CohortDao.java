@@ -0,0 +1,59 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.cohort.dao;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+import io.igia.i2b2.cdi.cohort.dto.CohortCriterionDto;
+
+public interface CohortDao {
+
+    /**
+     * @return the patient nums with a fact matching the CONCEPT criterion, set
+     *         in a bitmap.
+     */
+    BitSet findPatientNums(CohortCriterionDto conceptCriterion);
+
+    BitSet findAllPatientNums();
+
+    /**
+     * Streams the distinct concept code and patient num pairs of the facts with a
+     * patient num in [fromPatientNum, toPatientNum).
+     */
+    void streamConceptPatientNums(int fromPatientNum, int toPatientNum, ObjIntConsumer<String> consumer);
+
+    /**
+     * Streams the distinct concept code and patient num pairs of the facts updated
+     * after the given time.
+     */
+    void streamConceptPatientNumsUpdatedAfter(LocalDateTime updateDate, ObjIntConsumer<String> consumer);
+
+    BitSet findPatientNumsByConceptCode(String conceptCode);
+
+    List<String> findConceptCodes(String conceptPath);
+
+    /**
+     * @return the highest patient num of the facts, or 0 without facts.
+     */
+    int findMaxPatientNum();
+
+    /**
+     * @return the latest update date of the facts, or null without facts.
+     */
+    LocalDateTime findLastFactUpdateDate();
+}
@@ -0,0 +1,201 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.cohort.dao;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import io.igia.i2b2.cdi.cohort.dto.CohortCriterionDto;
+import io.igia.i2b2.cdi.common.cache.DimensionCache;
+import io.igia.i2b2.cdi.common.dto.QueryParamDto;
+import io.igia.i2b2.cdi.observation.domain.ValueTypeCode;
+
+@Repository
+@Transactional(readOnly = true)
+public class CohortDaoImpl implements CohortDao {
+
+    protected static final String PATIENT_NUM = "patientNum";
+    protected static final String CONCEPT_CODE = "conceptCode";
+    protected static final String CONCEPT_PATH = "conceptPath";
+    protected static final String MODIFIER_CODE = "modifierCode";
+    protected static final String VALTYPE_CODE = "valtypeCode";
+    protected static final String UPDATE_DATE = "updateDate";
+    protected static final String WILDCARD_CHARACTER = "%";
+
+    // index builds read the whole fact table, rows are fetched in large chunks
+    private static final int STREAM_FETCH_SIZE = 10000;
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    public CohortDaoImpl(DataSource dataSource) {
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(new JdbcTemplate(dataSource));
+        JdbcTemplate streamingTemplate = new JdbcTemplate(dataSource);
+        streamingTemplate.setFetchSize(STREAM_FETCH_SIZE);
+        this.streamingJdbcTemplate = new NamedParameterJdbcTemplate(streamingTemplate);
+    }
+
+    @Override
+    public BitSet findPatientNums(CohortCriterionDto conceptCriterion) {
+        QueryParamDto queryParamDto = new QueryParamDto().withQuery(String.join(" ",
+                "select distinct observation.patient_num as " + PATIENT_NUM,
+                "from observation_fact observation INNER JOIN concept_dimension concept",
+                "ON observation.concept_cd = concept.concept_cd"));
+
+        queryParamDto.addQueryCriteria("concept.concept_path like :" + CONCEPT_PATH)
+                .addQueryParameter(CONCEPT_PATH, conceptCriterion.getConceptPath() + WILDCARD_CHARACTER);
+        queryParamDto.addQueryCriteria("observation.modifier_cd = :" + MODIFIER_CODE)
+                .addQueryParameter(MODIFIER_CODE, "@");
+        addValueCriteria(conceptCriterion, queryParamDto);
+        addStartDateRangeCriteria(conceptCriterion, queryParamDto);
+        return queryPatientNums(queryParamDto);
+    }
+
+    private void addValueCriteria(CohortCriterionDto conceptCriterion, QueryParamDto queryParamDto) {
+        if (conceptCriterion.getMinValue() != null || conceptCriterion.getMaxValue() != null) {
+            queryParamDto.addQueryCriteria("observation.valtype_cd = :" + VALTYPE_CODE)
+                    .addQueryParameter(VALTYPE_CODE, ValueTypeCode.NUMERIC.getCode());
+        } else if (!StringUtils.isEmpty(conceptCriterion.getTextValue())) {
+            queryParamDto.addQueryCriteria("observation.valtype_cd = :" + VALTYPE_CODE)
+                    .addQueryParameter(VALTYPE_CODE, ValueTypeCode.TEXT.getCode());
+        }
+        if (conceptCriterion.getMinValue() != null) {
+            final String minValueQueryParamName = "minValue";
+            queryParamDto.addQueryCriteria("observation.nval_num >= :" + minValueQueryParamName)
+                    .addQueryParameter(minValueQueryParamName, conceptCriterion.getMinValue());
+        }
+        if (conceptCriterion.getMaxValue() != null) {
+            final String maxValueQueryParamName = "maxValue";
+            queryParamDto.addQueryCriteria("observation.nval_num <= :" + maxValueQueryParamName)
+                    .addQueryParameter(maxValueQueryParamName, conceptCriterion.getMaxValue());
+        }
+        if (!StringUtils.isEmpty(conceptCriterion.getTextValue())) {
+            final String textValueQueryParamName = "textValue";
+            queryParamDto.addQueryCriteria("observation.tval_char = :" + textValueQueryParamName)
+                    .addQueryParameter(textValueQueryParamName, conceptCriterion.getTextValue());
+        }
+    }
+
+    private void addStartDateRangeCriteria(CohortCriterionDto conceptCriterion, QueryParamDto queryParamDto) {
+        if (conceptCriterion.getStartDateFrom() != null) {
+            final String startDateFromQueryParamName = "startDateFrom";
+            queryParamDto.addQueryCriteria("observation.start_date >= :" + startDateFromQueryParamName)
+                    .addQueryParameter(startDateFromQueryParamName, conceptCriterion.getStartDateFrom());
+        }
+        if (conceptCriterion.getStartDateTo() != null) {
+            final String startDateToQueryParamName = "startDateTo";
+            queryParamDto.addQueryCriteria("observation.start_date < :" + startDateToQueryParamName)
+                    .addQueryParameter(startDateToQueryParamName, conceptCriterion.getStartDateTo());
+        }
+    }
+
+    @Override
+    public BitSet findAllPatientNums() {
+        return queryPatientNums(new QueryParamDto().withQuery(
+                "select patient.patient_num as " + PATIENT_NUM + " from patient_dimension patient"));
+    }
+
+    @Override
+    public void streamConceptPatientNums(int fromPatientNum, int toPatientNum, ObjIntConsumer<String> consumer) {
+        QueryParamDto queryParamDto = createConceptPatientNumsQuery();
+        final String fromPatientNumQueryParamName = "fromPatientNum";
+        queryParamDto.addQueryCriteria("observation.patient_num >= :" + fromPatientNumQueryParamName)
+                .addQueryParameter(fromPatientNumQueryParamName, fromPatientNum);
+        final String toPatientNumQueryParamName = "toPatientNum";
+        queryParamDto.addQueryCriteria("observation.patient_num < :" + toPatientNumQueryParamName)
+                .addQueryParameter(toPatientNumQueryParamName, toPatientNum);
+        streamConceptPatientNums(queryParamDto, consumer);
+    }
+
+    @Override
+    public void streamConceptPatientNumsUpdatedAfter(LocalDateTime updateDate, ObjIntConsumer<String> consumer) {
+        QueryParamDto queryParamDto = createConceptPatientNumsQuery();
+        queryParamDto.addQueryCriteria("observation.update_date > :" + UPDATE_DATE)
+                .addQueryParameter(UPDATE_DATE, Timestamp.valueOf(updateDate));
+        streamConceptPatientNums(queryParamDto, consumer);
+    }
+
+    private QueryParamDto createConceptPatientNumsQuery() {
+        QueryParamDto queryParamDto = new QueryParamDto().withQuery(String.join(" ",
+                "select distinct observation.concept_cd as " + CONCEPT_CODE + ",",
+                "observation.patient_num as " + PATIENT_NUM,
+                "from observation_fact observation"));
+        queryParamDto.addQueryCriteria("observation.modifier_cd = :" + MODIFIER_CODE)
+                .addQueryParameter(MODIFIER_CODE, "@");
+        return queryParamDto;
+    }
+
+    private void streamConceptPatientNums(QueryParamDto queryParamDto, ObjIntConsumer<String> consumer) {
+        this.streamingJdbcTemplate.query(queryParamDto.getQuery(), queryParamDto.getParameterSource(),
+                (RowCallbackHandler) rs -> consumer.accept(rs.getString(CONCEPT_CODE), rs.getInt(PATIENT_NUM)));
+    }
+
+    @Override
+    public BitSet findPatientNumsByConceptCode(String conceptCode) {
+        QueryParamDto queryParamDto = new QueryParamDto().withQuery(
+                "select distinct observation.patient_num as " + PATIENT_NUM + " from observation_fact observation");
+        queryParamDto.addQueryCriteria("observation.concept_cd = :" + CONCEPT_CODE)
+                .addQueryParameter(CONCEPT_CODE, conceptCode);
+        queryParamDto.addQueryCriteria("observation.modifier_cd = :" + MODIFIER_CODE)
+                .addQueryParameter(MODIFIER_CODE, "@");
+        return queryPatientNums(queryParamDto);
+    }
+
+    @Override
+    @DimensionCache
+    public List<String> findConceptCodes(String conceptPath) {
+        QueryParamDto queryParamDto = new QueryParamDto().withQuery(
+                "select concept.concept_cd as " + CONCEPT_CODE + " from concept_dimension concept");
+        queryParamDto.addQueryCriteria("concept.concept_path like :" + CONCEPT_PATH)
+                .addQueryParameter(CONCEPT_PATH, conceptPath + WILDCARD_CHARACTER);
+        return this.namedParameterJdbcTemplate.queryForList(queryParamDto.getQuery(),
+                queryParamDto.getParameterSource(), String.class);
+    }
+
+    @Override
+    public int findMaxPatientNum() {
+        Integer maxPatientNum = this.namedParameterJdbcTemplate.getJdbcTemplate().queryForObject(
+                "select max(observation.patient_num) from observation_fact observation", Integer.class);
+        return maxPatientNum != null ? maxPatientNum : 0;
+    }
+
+    @Override
+    public LocalDateTime findLastFactUpdateDate() {
+        Timestamp updateDate = this.namedParameterJdbcTemplate.getJdbcTemplate()
+                .queryForObject("select max(observation.update_date) from observation_fact observation",
+                        Timestamp.class);
+        return updateDate != null ? updateDate.toLocalDateTime() : null;
+    }
+
+    // patient nums are set straight from the result set, without a list of the rows
+    private BitSet queryPatientNums(QueryParamDto queryParamDto) {
+        BitSet patientNums = new BitSet();
+        this.namedParameterJdbcTemplate.query(queryParamDto.getQuery(), queryParamDto.getParameterSource(),
+                (RowCallbackHandler) rs -> patientNums.set(rs.getInt(PATIENT_NUM)));
+        return patientNums;
+    }
+}
@@ -0,0 +1,142 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.cohort.dto;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+@ApiModel(value = "Cohort criterion")
+public class CohortCriterionDto {
+
+    @NotNull
+    @ApiModelProperty(value = "CONCEPT selects the patients with a fact in the concept subtree, AND, OR and NOT "
+        + "combine the criteria", required = true)
+    private CohortCriterionType type;
+
+    @ApiModelProperty(value = "Concept path of the subtree, for CONCEPT")
+    private String conceptPath;
+
+    @ApiModelProperty(value = "Minimum numeric value of the fact, inclusive")
+    private Double minValue;
+
+    @ApiModelProperty(value = "Maximum numeric value of the fact, inclusive")
+    private Double maxValue;
+
+    @ApiModelProperty(value = "Text value of the fact")
+    private String textValue;
+
+    @ApiModelProperty(value = "Start date of the fact from, inclusive")
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime startDateFrom;
+
+    @ApiModelProperty(value = "Start date of the fact to, exclusive")
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime startDateTo;
+
+    @Valid
+    @ApiModelProperty(value = "Criteria combined by AND and OR, the single criterion negated by NOT")
+    private List<CohortCriterionDto> criteria = new ArrayList<>();
+
+    public CohortCriterionType getType() {
+        return type;
+    }
+
+    public CohortCriterionDto setType(CohortCriterionType type) {
+        this.type = type;
+        return this;
+    }
+
+    public String getConceptPath() {
+        return conceptPath;
+    }
+
+    public CohortCriterionDto setConceptPath(String conceptPath) {
+        this.conceptPath = conceptPath;
+        return this;
+    }
+
+    public Double getMinValue() {
+        return minValue;
+    }
+
+    public CohortCriterionDto setMinValue(Double minValue) {
+        this.minValue = minValue;
+        return this;
+    }
+
+    public Double getMaxValue() {
+        return maxValue;
+    }
+
+    public CohortCriterionDto setMaxValue(Double maxValue) {
+        this.maxValue = maxValue;
+        return this;
+    }
+
+    public String getTextValue() {
+        return textValue;
+    }
+
+    public CohortCriterionDto setTextValue(String textValue) {
+        this.textValue = textValue;
+        return this;
+    }
+
+    public LocalDateTime getStartDateFrom() {
+        return startDateFrom;
+    }
+
+    public CohortCriterionDto setStartDateFrom(LocalDateTime startDateFrom) {
+        this.startDateFrom = startDateFrom;
+        return this;
+    }
+
+    public LocalDateTime getStartDateTo() {
+        return startDateTo;
+    }
+
+    public CohortCriterionDto setStartDateTo(LocalDateTime startDateTo) {
+        this.startDateTo = startDateTo;
+        return this;
+    }
+
+    public List<CohortCriterionDto> getCriteria() {
+        return criteria;
+    }
+
+    public CohortCriterionDto setCriteria(List<CohortCriterionDto> criteria) {
+        this.criteria = criteria;
+        return this;
+    }
+
+    /**
+     * @return the values which select the patients of a CONCEPT criterion.
+     */
+    @JsonIgnore
+    public List<Object> getConceptKey() {
+        return Arrays.asList(conceptPath, minValue, maxValue, textValue, startDateFrom, startDateTo);
+    }
+}
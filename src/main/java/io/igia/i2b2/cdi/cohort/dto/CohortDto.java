@@ -0,0 +1,57 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.cohort.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+@ApiModel(value = "Cohort")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CohortDto {
+
+    @ApiModelProperty(value = "Number of patients in the cohort")
+    private int count;
+
+    @ApiModelProperty(value = "Patient numbers of the cohort in ascending order")
+    private List<Integer> patientNums;
+
+    public CohortDto() {
+    }
+
+    public CohortDto(int count, List<Integer> patientNums) {
+        this.count = count;
+        this.patientNums = patientNums;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public List<Integer> getPatientNums() {
+        return patientNums;
+    }
+
+    public void setPatientNums(List<Integer> patientNums) {
+        this.patientNums = patientNums;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.cohort.service;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import io.igia.i2b2.cdi.cohort.dao.CohortDao;
+import io.igia.i2b2.cdi.cohort.dto.CohortCriterionDto;
+import io.igia.i2b2.cdi.cohort.dto.CohortCriterionType;
+import io.igia.i2b2.cdi.cohort.dto.CohortDto;
+import io.igia.i2b2.cdi.common.cache.PatientSetCacheManager;
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+
+/**
+ * Evaluates cohort criteria with patient-number bitmaps. Only the CONCEPT
+ * criteria go to the database and their bitmaps are cached, AND, OR and NOT
+ * are set algebra in memory. CONCEPT criteria without values or dates are
+ * answered by the {@link ConceptPatientIndex} once it is ready.
+ */
+@Service
+@Transactional(readOnly = true)
+public class CohortServiceImpl implements CohortService {
+    public static final String INVALID_CRITERION_ERROR = "Invalid cohort criterion: ";
+
+    private static final String ALL_PATIENTS_KEY = "all-patients";
+
+    private final CohortDao cohortDao;
+    private final PatientSetCacheManager patientSetCacheManager;
+    private final ConceptPatientIndex conceptPatientIndex;
+
+    public CohortServiceImpl(CohortDao cohortDao, PatientSetCacheManager patientSetCacheManager,
+            ConceptPatientIndex conceptPatientIndex) {
+        this.cohortDao = cohortDao;
+        this.patientSetCacheManager = patientSetCacheManager;
+        this.conceptPatientIndex = conceptPatientIndex;
+    }
+
+    @Override
+    public BitSet getPatientSet(CohortCriterionDto criterion) {
+        validate(criterion);
+        return evaluate(criterion);
+    }
+
+    @Override
+    public CohortDto countPatients(CohortCriterionDto criterion) {
+        return new CohortDto(getPatientSet(criterion).cardinality(), null);
+    }
+
+    @Override
+    public CohortDto getPatients(CohortCriterionDto criterion) {
+        BitSet patientSet = getPatientSet(criterion);
+        List<Integer> patientNums = patientSet.stream().boxed().collect(Collectors.toList());
+        return new CohortDto(patientNums.size(), patientNums);
+    }
+
+    @Override
+    public void rebuildIndex() {
+        conceptPatientIndex.rebuild();
+    }
+
+    private void validate(CohortCriterionDto criterion) {
+        if (criterion == null || criterion.getType() == null) {
+            throw new I2b2DataValidationException(INVALID_CRITERION_ERROR + "type is missing.");
+        }
+        List<CohortCriterionDto> criteria = criterion.getCriteria();
+        switch (criterion.getType()) {
+        case CONCEPT:
+            if (StringUtils.isEmpty(criterion.getConceptPath())) {
+                throw new I2b2DataValidationException(INVALID_CRITERION_ERROR + "concept path is missing.");
+            }
+            if (criteria != null && !criteria.isEmpty()) {
+                throw new I2b2DataValidationException(INVALID_CRITERION_ERROR + "CONCEPT has no criteria.");
+            }
+            break;
+        case NOT:
+            if (criteria == null || criteria.size() != 1) {
+                throw new I2b2DataValidationException(INVALID_CRITERION_ERROR + "NOT needs exactly one criterion.");
+            }
+            break;
+        default:
+            if (criteria == null || criteria.isEmpty()) {
+                throw new I2b2DataValidationException(
+                    INVALID_CRITERION_ERROR + criterion.getType() + " needs at least one criterion.");
+            }
+        }
+        if (criteria != null) {
+            criteria.forEach(this::validate);
+        }
+    }
+
+    /**
+     * @return a bitmap owned by the caller.
+     */
+    private BitSet evaluate(CohortCriterionDto criterion) {
+        switch (criterion.getType()) {
+        case CONCEPT:
+            return (BitSet) getSharedPatientSet(criterion).clone();
+        case OR:
+            BitSet union = new BitSet();
+            criterion.getCriteria().forEach(child -> union.or(getSharedPatientSet(child)));
+            return union;
+        case NOT:
+            BitSet complement = (BitSet) getAllPatients().clone();
+            complement.andNot(getSharedPatientSet(criterion.getCriteria().get(0)));
+            return complement;
+        default:
+            return evaluateAnd(criterion.getCriteria());
+        }
+    }
+
+    private BitSet evaluateAnd(List<CohortCriterionDto> criteria) {
+        // negated criteria are subtracted, so the set of all patients is only needed without any other
+        List<CohortCriterionDto> included = criteria.stream()
+            .filter(child -> child.getType() != CohortCriterionType.NOT).collect(Collectors.toList());
+        BitSet intersection = included.isEmpty() ? (BitSet) getAllPatients().clone() : evaluate(included.get(0));
+        for (int i = 1; i < included.size() && !intersection.isEmpty(); i++) {
+            intersection.and(getSharedPatientSet(included.get(i)));
+        }
+        criteria.stream().filter(child -> child.getType() == CohortCriterionType.NOT)
+            .forEach(child -> {
+                if (!intersection.isEmpty()) {
+                    intersection.andNot(getSharedPatientSet(child.getCriteria().get(0)));
+                }
+            });
+        return intersection;
+    }
+
+    /**
+     * @return the cached bitmap of a CONCEPT criterion, which must not be changed,
+     *         or a new bitmap of any other criterion.
+     */
+    private BitSet getSharedPatientSet(CohortCriterionDto criterion) {
+        if (criterion.getType() != CohortCriterionType.CONCEPT) {
+            return evaluate(criterion);
+        }
+        if (isConceptOnly(criterion)) {
+            // the index is kept up to date on fact writes, unlike the cache
+            Optional<BitSet> indexedPatientNums = conceptPatientIndex.getPatientNums(criterion.getConceptPath());
+            if (indexedPatientNums.isPresent()) {
+                return indexedPatientNums.get();
+            }
+        }
+        return patientSetCacheManager.get(criterion.getConceptKey()).orElseGet(() -> {
+            BitSet patientNums = cohortDao.findPatientNums(criterion);
+            patientSetCacheManager.put(criterion.getConceptKey(), patientNums);
+            return patientNums;
+        });
+    }
+
+    private static boolean isConceptOnly(CohortCriterionDto criterion) {
+        return criterion.getMinValue() == null && criterion.getMaxValue() == null
+            && StringUtils.isEmpty(criterion.getTextValue()) && criterion.getStartDateFrom() == null
+            && criterion.getStartDateTo() == null;
+    }
+
+    private BitSet getAllPatients() {
+        return patientSetCacheManager.get(ALL_PATIENTS_KEY).orElseGet(() -> {
+            BitSet patientNums = cohortDao.findAllPatientNums();
+            patientSetCacheManager.put(ALL_PATIENTS_KEY, patientNums);
+            return patientNums;
+        });
+    }
+}
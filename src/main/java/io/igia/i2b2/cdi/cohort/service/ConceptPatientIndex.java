@@ -0,0 +1,445 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.cohort.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.util.StringUtils;
+
+import io.igia.i2b2.cdi.cohort.dao.CohortDao;
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.observation.domain.FactsChangedEvent;
+
+/**
+ * Bitmaps of the patient nums with a fact of every concept code, so that CONCEPT
+ * criteria without value or date constraints are answered without reading the
+ * fact table. The index is built in parallel over patient num ranges, kept up to
+ * date by {@link FactsChangedEvent}s and saved to a memory-mapped file, from
+ * which a restart only reads the facts updated since. Facts deleted or loaded
+ * outside of this application show up after a rebuild.
+ */
+@Component
+public class ConceptPatientIndex implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(ConceptPatientIndex.class);
+    public static final String INDEX_DISABLED_ERROR = "Concept patient index is not enabled.";
+
+    private static final int SNAPSHOT_MAGIC = 0x43504958;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final long NO_UPDATE_DATE = Long.MIN_VALUE;
+
+    private final CohortDao cohortDao;
+    private final boolean enabled;
+    private final Path snapshotFile;
+    private final int buildThreads;
+    private final Executor builder;
+    private final Executor scanners;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // guarded by the lock, the bitmaps are changed in place by fact writes
+    private Map<String, BitSet> patientNums = new HashMap<>();
+    private LocalDateTime lastUpdateDate;
+    private volatile boolean ready;
+    private boolean building;
+    // fact changes while building, applied to the new bitmaps once they are complete
+    private final List<FactsChangedEvent> pendingEvents = new ArrayList<>();
+
+    @Autowired
+    public ConceptPatientIndex(CohortDao cohortDao, ApplicationProperties applicationProperties) {
+        this(cohortDao, applicationProperties.isConceptPatientIndexEnabled(),
+            StringUtils.isEmpty(applicationProperties.getConceptPatientIndexFile()) ? null
+                : Paths.get(applicationProperties.getConceptPatientIndexFile()),
+            applicationProperties.getConceptPatientIndexBuildThreads(),
+            applicationProperties.isConceptPatientIndexEnabled()
+                ? Executors.newSingleThreadExecutor(new CustomizableThreadFactory("concept-patient-index-"))
+                : null,
+            applicationProperties.isConceptPatientIndexEnabled()
+                ? Executors.newFixedThreadPool(applicationProperties.getConceptPatientIndexBuildThreads(),
+                    new CustomizableThreadFactory("concept-patient-index-scan-"))
+                : null);
+    }
+
+    ConceptPatientIndex(CohortDao cohortDao, boolean enabled, Path snapshotFile, int buildThreads,
+            Executor builder, Executor scanners) {
+        this.cohortDao = cohortDao;
+        this.enabled = enabled;
+        this.snapshotFile = snapshotFile;
+        this.buildThreads = Math.max(1, buildThreads);
+        this.builder = builder;
+        this.scanners = scanners;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            builder.execute(this::load);
+        }
+    }
+
+    /**
+     * Builds the index again from the fact table in the background, the current
+     * bitmaps are used until then.
+     */
+    public void rebuild() {
+        if (!enabled) {
+            throw new I2b2DataValidationException(INDEX_DISABLED_ERROR);
+        }
+        builder.execute(this::build);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return the patient nums with a fact of a concept under the path in a new
+     *         bitmap, or empty while the index is not ready.
+     */
+    public Optional<BitSet> getPatientNums(String conceptPath) {
+        if (!ready) {
+            return Optional.empty();
+        }
+        List<String> conceptCodes = cohortDao.findConceptCodes(conceptPath);
+        lock.readLock().lock();
+        try {
+            if (!ready) {
+                return Optional.empty();
+            }
+            BitSet union = new BitSet();
+            conceptCodes.forEach(conceptCode -> {
+                BitSet conceptPatientNums = patientNums.get(conceptCode);
+                if (conceptPatientNums != null) {
+                    union.or(conceptPatientNums);
+                }
+            });
+            return Optional.of(union);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFactsChanged(FactsChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            apply(event);
+        } catch (RuntimeException e) {
+            logger.error("Concept patient index could not be updated, it is rebuilt.", e);
+            ready = false;
+            builder.execute(this::build);
+        }
+    }
+
+    private void apply(FactsChangedEvent event) {
+        // replaced concepts are read again, whatever the order of the changes the result is the current state
+        Map<String, BitSet> reloadedPatientNums = new HashMap<>();
+        event.getReplacedConceptPaths().forEach(conceptPath -> cohortDao.findConceptCodes(conceptPath)
+            .forEach(conceptCode -> reloadedPatientNums.put(conceptCode,
+                cohortDao.findPatientNumsByConceptCode(conceptCode))));
+
+        lock.writeLock().lock();
+        try {
+            if (building) {
+                pendingEvents.add(event);
+            }
+            if (ready) {
+                event.getAddedPatientNums().forEach((conceptCode, addedPatientNums) -> patientNums
+                    .computeIfAbsent(conceptCode, code -> new BitSet()).or(addedPatientNums));
+                patientNums.putAll(reloadedPatientNums);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void load() {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            build();
+            return;
+        }
+        beginUpdate();
+        try {
+            Map<String, BitSet> loadedPatientNums = new HashMap<>();
+            LocalDateTime updateDate = readSnapshot(loadedPatientNums);
+            if (updateDate == null) {
+                // saved without any facts, everything is new
+                abortUpdate();
+                build();
+                return;
+            }
+            LocalDateTime lastFactUpdateDate = cohortDao.findLastFactUpdateDate();
+            cohortDao.streamConceptPatientNumsUpdatedAfter(updateDate,
+                (conceptCode, patientNum) -> setPatientNum(loadedPatientNums, conceptCode, patientNum));
+            completeUpdate(loadedPatientNums, lastFactUpdateDate != null ? lastFactUpdateDate : updateDate);
+            logger.info("Concept patient index of {} concepts loaded from {}.", loadedPatientNums.size(),
+                snapshotFile);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Concept patient index could not be loaded from {}, it is rebuilt.", snapshotFile, e);
+            abortUpdate();
+            build();
+        }
+    }
+
+    void build() {
+        beginUpdate();
+        try {
+            // facts updated during the scan are read again by the catch up after a restart
+            LocalDateTime updateDate = cohortDao.findLastFactUpdateDate();
+            Map<String, BitSet> builtPatientNums = scan();
+            completeUpdate(builtPatientNums, updateDate);
+            logger.info("Concept patient index of {} concepts built.", builtPatientNums.size());
+        } catch (RuntimeException e) {
+            logger.error("Concept patient index could not be built.", e);
+            abortUpdate();
+        }
+    }
+
+    private Map<String, BitSet> scan() {
+        long maxPatientNum = cohortDao.findMaxPatientNum();
+        long rangeSize = maxPatientNum / buildThreads + 1;
+        List<CompletableFuture<Map<String, BitSet>>> ranges = new ArrayList<>();
+        for (long from = 0; from <= maxPatientNum; from += rangeSize) {
+            int fromPatientNum = (int) from;
+            int toPatientNum = (int) Math.min(from + rangeSize, Integer.MAX_VALUE);
+            ranges.add(CompletableFuture.supplyAsync(() -> {
+                Map<String, BitSet> rangePatientNums = new HashMap<>();
+                cohortDao.streamConceptPatientNums(fromPatientNum, toPatientNum,
+                    (conceptCode, patientNum) -> setPatientNum(rangePatientNums, conceptCode, patientNum));
+                return rangePatientNums;
+            }, scanners));
+        }
+
+        Map<String, BitSet> mergedPatientNums = new HashMap<>();
+        ranges.forEach(range -> range.join().forEach((conceptCode, rangePatientNums) -> mergedPatientNums
+            .merge(conceptCode, rangePatientNums, (merged, added) -> {
+                merged.or(added);
+                return merged;
+            })));
+        return mergedPatientNums;
+    }
+
+    private static void setPatientNum(Map<String, BitSet> patientNums, String conceptCode, int patientNum) {
+        if (patientNum >= 0) {
+            patientNums.computeIfAbsent(conceptCode, code -> new BitSet()).set(patientNum);
+        }
+    }
+
+    private void beginUpdate() {
+        lock.writeLock().lock();
+        try {
+            building = true;
+            pendingEvents.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void completeUpdate(Map<String, BitSet> updatedPatientNums, LocalDateTime updateDate) {
+        List<FactsChangedEvent> events;
+        lock.writeLock().lock();
+        try {
+            patientNums = updatedPatientNums;
+            lastUpdateDate = updateDate;
+            ready = true;
+            building = false;
+            events = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        events.forEach(this::onFactsChanged);
+        persist();
+    }
+
+    private void abortUpdate() {
+        lock.writeLock().lock();
+        try {
+            building = false;
+            pendingEvents.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void persist() {
+        if (snapshotFile == null || !ready) {
+            return;
+        }
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try {
+            writeSnapshot(tempFile);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Concept patient index could not be saved to {}.", snapshotFile, e);
+            return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Concept patient index could not be saved to {}.", snapshotFile, e);
+        }
+    }
+
+    /**
+     * Snapshot layout: magic, version, last fact update date in epoch millis,
+     * concept count, then per concept the UTF-8 code and the words of its bitmap,
+     * each prefixed by its length.
+     */
+    private void writeSnapshot(Path file) throws IOException {
+        Map<String, byte[]> conceptCodes = new HashMap<>();
+        long size = 4 + 4 + 8 + 4;
+        for (Map.Entry<String, BitSet> entry : patientNums.entrySet()) {
+            byte[] conceptCode = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            conceptCodes.put(entry.getKey(), conceptCode);
+            size += 4 + conceptCode.length + 4 + 8L * getWordCount(entry.getValue());
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedRegions regions = new MappedRegions(channel, FileChannel.MapMode.READ_WRITE, size);
+            regions.next(4 + 4 + 8 + 4).putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION)
+                .putLong(lastUpdateDate != null ? lastUpdateDate.toInstant(ZoneOffset.UTC).toEpochMilli()
+                    : NO_UPDATE_DATE)
+                .putInt(patientNums.size());
+            for (Map.Entry<String, BitSet> entry : patientNums.entrySet()) {
+                byte[] conceptCode = conceptCodes.get(entry.getKey());
+                regions.next(4 + conceptCode.length).putInt(conceptCode.length).put(conceptCode);
+                long[] words = entry.getValue().toLongArray();
+                ByteBuffer region = regions.next(4 + 8 * words.length).putInt(words.length);
+                region.asLongBuffer().put(words);
+                region.position(region.position() + 8 * words.length);
+            }
+            regions.force();
+        }
+    }
+
+    private static int getWordCount(BitSet bitSet) {
+        return (bitSet.length() + 63) / 64;
+    }
+
+    /**
+     * @return the last fact update date of the snapshot, or null if it has none.
+     */
+    private LocalDateTime readSnapshot(Map<String, BitSet> snapshotPatientNums) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            MappedRegions regions = new MappedRegions(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+            ByteBuffer header = regions.next(4 + 4 + 8 + 4);
+            if (header.getInt() != SNAPSHOT_MAGIC || header.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unknown concept patient index snapshot format.");
+            }
+            long updateDate = header.getLong();
+            int count = header.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] conceptCode = new byte[regions.next(4).getInt()];
+                regions.next(conceptCode.length).get(conceptCode);
+                long[] words = new long[regions.next(4).getInt()];
+                ByteBuffer region = regions.next(8 * words.length);
+                region.asLongBuffer().get(words);
+                region.position(region.position() + 8 * words.length);
+                snapshotPatientNums.put(new String(conceptCode, StandardCharsets.UTF_8), BitSet.valueOf(words));
+            }
+            return updateDate == NO_UPDATE_DATE ? null
+                : LocalDateTime.ofInstant(Instant.ofEpochMilli(updateDate), ZoneOffset.UTC);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (builder instanceof ExecutorService) {
+            ((ExecutorService) builder).shutdownNow();
+        }
+        if (scanners instanceof ExecutorService) {
+            ((ExecutorService) scanners).shutdownNow();
+        }
+        persist();
+    }
+
+    /**
+     * Maps a file region by region, a single mapping is limited to 2 GB.
+     */
+    private static class MappedRegions {
+        private final FileChannel channel;
+        private final FileChannel.MapMode mapMode;
+        private final long size;
+        private long position;
+        private MappedByteBuffer region;
+
+        MappedRegions(FileChannel channel, FileChannel.MapMode mapMode, long size) {
+            this.channel = channel;
+            this.mapMode = mapMode;
+            this.size = size;
+        }
+
+        /**
+         * @return the region holding the next bytes, positioned at them.
+         */
+        ByteBuffer next(int bytes) throws IOException {
+            if (region == null || region.remaining() < bytes) {
+                if (region != null) {
+                    position += region.position();
+                    force();
+                }
+                if (position + bytes > size) {
+                    throw new IOException("Concept patient index snapshot is truncated.");
+                }
+                region = channel.map(mapMode, position, Math.min(size - position, Integer.MAX_VALUE));
+            }
+            return region;
+        }
+
+        void force() {
+            if (region != null && mapMode == FileChannel.MapMode.READ_WRITE) {
+                region.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.igia.i2b2.cdi.common.dto.PaginationResult;
+
+@Aspect
+@Component
+public final class DimensionCacheAspect {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DimensionCacheAspect.class);
+
+    private final DimensionCacheManager dimensionCacheManager;
+
+    public DimensionCacheAspect(DimensionCacheManager dimensionCacheManager) {
+        this.dimensionCacheManager = dimensionCacheManager;
+    }
+
+    @Around("@annotation(io.igia.i2b2.cdi.common.cache.DimensionCache)")
+    public Object processDimensionCache(ProceedingJoinPoint joinPoint) throws Throwable {
+        InvocationContext invocationContext = new InvocationContext(
+            joinPoint.getSignature().getDeclaringType(),
+            joinPoint.getSignature().getName(),
+            joinPoint.getArgs());
+        Optional<Object> cachedResult = dimensionCacheManager.get(invocationContext);
+        if (cachedResult.isPresent()) {
+            LOGGER.debug("Dimension cache hit for request {}", invocationContext);
+            return copy(cachedResult.get());
+        } else {
+            // the caller may change its arguments later, the cache keeps copies of them
+            Optional<InvocationContext> frozenContext = invocationContext.freeze();
+            long generation = dimensionCacheManager.getGeneration();
+            Object methodResult = joinPoint.proceed();
+            if (frozenContext.isPresent()) {
+                LOGGER.debug("Caching dimension result for request {}", invocationContext);
+                dimensionCacheManager.put(frozenContext.get(), methodResult, generation);
+            } else {
+                LOGGER.debug("Not caching dimension result for request {}, its arguments cannot be copied",
+                    invocationContext);
+            }
+            return copy(methodResult);
+        }
+    }
+
+    @After("@annotation(io.igia.i2b2.cdi.common.cache.DimensionCacheEvict)")
+    public void evictDimensionCache() {
+        dimensionCacheManager.clear();
+        // lookups running until the write is committed would otherwise cache the old state again
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    dimensionCacheManager.clear();
+                }
+            });
+        }
+        LOGGER.debug("Dimension cache cleared");
+    }
+
+    // callers are free to modify the returned collections and their dtos, the cached ones are never handed out
+    private Object copy(Object result) {
+        if (result instanceof List) {
+            return copyElements((List<?>) result);
+        }
+        if (result instanceof PaginationResult) {
+            PaginationResult<?> paginationResult = (PaginationResult<?>) result;
+            return copy(paginationResult);
+        }
+        return copyElement(result);
+    }
+
+    private <T> PaginationResult<T> copy(PaginationResult<T> paginationResult) {
+        PaginationResult<T> copy = new PaginationResult<>(copyElements(paginationResult.getRecords()),
+            paginationResult.getTotalCount());
+        copy.setNextCursor(paginationResult.getNextCursor());
+        copy.setHasMore(paginationResult.getHasMore());
+        return copy;
+    }
+
+    private static <T> List<T> copyElements(List<T> elements) {
+        return elements.stream()
+            .map(DimensionCacheAspect::copyElement)
+            .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    // the cached dtos only hold immutable values, a copy of their properties is independent of them
+    @SuppressWarnings("unchecked")
+    private static <T> T copyElement(T element) {
+        if (element == null || BeanUtils.isSimpleValueType(element.getClass())) {
+            return element;
+        }
+        T copy = (T) BeanUtils.instantiateClass(element.getClass());
+        BeanUtils.copyProperties(element, copy);
+        return copy;
+    }
+}
@@ -0,0 +1,152 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.cache;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+@Component
+public class DimensionCacheManager implements MeterBinder {
+
+    private static final String CACHE_NAME = "dimension";
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+    private final Map<InvocationContext, CacheEntry> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private long generation;
+
+    @Autowired
+    public DimensionCacheManager(ApplicationProperties applicationProperties) {
+        this(applicationProperties.getDimensionCacheMaxSize(), applicationProperties.getDimensionCacheTtl(),
+            System::nanoTime);
+    }
+
+    DimensionCacheManager(int maxSize, Duration ttl, LongSupplier ticker) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.ticker = ticker;
+        // access ordered, so the least recently used entry is evicted first
+        this.cache = new LinkedHashMap<InvocationContext, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<InvocationContext, CacheEntry> eldest) {
+                if (size() > DimensionCacheManager.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    synchronized Optional<Object> get(InvocationContext invocationContext) {
+        CacheEntry entry = cache.get(invocationContext);
+        if (entry != null && entry.expiresAt - ticker.getAsLong() <= 0) {
+            cache.remove(invocationContext);
+            evictions.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(entry.value);
+    }
+
+    /**
+     * @return a number that changes whenever dimension data is written.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    // a result loaded before the cache was cleared may be stale and is not cached
+    synchronized void put(InvocationContext invocationContext, Object result, long loadedInGeneration) {
+        if (result != null && maxSize > 0 && loadedInGeneration == generation) {
+            cache.put(invocationContext, new CacheEntry(result, ticker.getAsLong() + ttlNanos));
+        }
+    }
+
+    synchronized void clear() {
+        generation++;
+        cache.clear();
+    }
+
+    synchronized int size() {
+        return cache.size();
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Iterable<Tag> tags = Arrays.asList(Tag.of("cache", CACHE_NAME));
+        FunctionCounter.builder("cache.gets", hits, AtomicLong::get)
+            .tags(tags).tag("result", "hit")
+            .description("The number of times the cache returned a cached value")
+            .register(registry);
+        FunctionCounter.builder("cache.gets", misses, AtomicLong::get)
+            .tags(tags).tag("result", "miss")
+            .description("The number of times the cache had to load a value")
+            .register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, AtomicLong::get)
+            .tags(tags)
+            .description("The number of entries evicted because of size or expiry")
+            .register(registry);
+        Gauge.builder("cache.size", this, DimensionCacheManager::size)
+            .tags(tags)
+            .description("The number of entries in the cache")
+            .register(registry);
+    }
+
+    private static class CacheEntry {
+        private final Object value;
+        private final long expiresAt;
+
+        private CacheEntry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
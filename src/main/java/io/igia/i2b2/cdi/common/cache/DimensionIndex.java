@@ -0,0 +1,127 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.cache;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+/**
+ * In-memory snapshot of dimension data, loaded in the background at startup,
+ * after every dimension write and after the refresh interval for writes outside
+ * of this application. There is no snapshot while it is not loaded or a write
+ * is not reflected yet, callers go to the database then.
+ */
+public abstract class DimensionIndex<S> {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final DimensionCacheManager dimensionCacheManager;
+    private final boolean enabled;
+    private final long refreshIntervalNanos;
+    private final LongSupplier ticker;
+    private final Executor loader;
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile Snapshot<S> snapshot;
+
+    protected DimensionIndex(DimensionCacheManager dimensionCacheManager, boolean enabled,
+            Duration refreshInterval, LongSupplier ticker, Executor loader) {
+        this.dimensionCacheManager = dimensionCacheManager;
+        this.enabled = enabled;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+        this.ticker = ticker;
+        this.loader = loader;
+    }
+
+    /**
+     * Reads the dimension data into a new snapshot.
+     */
+    protected abstract S build();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            refresh();
+        }
+    }
+
+    /**
+     * @return the snapshot if it reflects every dimension write, starting a load
+     *         otherwise.
+     */
+    protected Optional<S> getCurrent() {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        long generation = dimensionCacheManager.getGeneration();
+        Snapshot<S> current = snapshot;
+        if (current == null || current.generation != generation) {
+            refresh();
+            current = snapshot;
+            return current != null && current.generation == generation ? Optional.of(current.value)
+                : Optional.empty();
+        }
+        // writes outside of this application are picked up late, the snapshot is used until then
+        if (ticker.getAsLong() - current.loadedAt >= refreshIntervalNanos) {
+            refresh();
+        }
+        return Optional.of(current.value);
+    }
+
+    private void refresh() {
+        if (loading.compareAndSet(false, true)) {
+            try {
+                loader.execute(() -> {
+                    try {
+                        load();
+                    } finally {
+                        loading.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                loading.set(false);
+            }
+        }
+    }
+
+    private void load() {
+        try {
+            long generation = dimensionCacheManager.getGeneration();
+            long loadedAt = ticker.getAsLong();
+            snapshot = new Snapshot<>(generation, loadedAt, build());
+        } catch (RuntimeException e) {
+            logger.error("Index could not be loaded.", e);
+        }
+    }
+
+    private static class Snapshot<S> {
+        private final long generation;
+        private final long loadedAt;
+        private final S value;
+
+        Snapshot(long generation, long loadedAt, S value) {
+            this.generation = generation;
+            this.loadedAt = loadedAt;
+            this.value = value;
+        }
+    }
+}
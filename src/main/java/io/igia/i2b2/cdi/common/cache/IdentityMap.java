@@ -0,0 +1,166 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Bounded bidirectional map of dimension identifiers (e.g. patient_ide) and
+ * their numbers. Identifiers are case insensitive. A mapping never changes once
+ * created, so entries are only evicted, the least recently used first. Both
+ * directions are bounded on their own, a number may be known without the
+ * identifier mapping to it in the configured project.
+ */
+public class IdentityMap {
+
+    private final int maxSize;
+    private final Map<String, Integer> nums;
+    private final Map<Integer, String> ids;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public IdentityMap(int maxSize) {
+        this.maxSize = maxSize;
+        this.nums = createLruMap();
+        this.ids = createLruMap();
+    }
+
+    // access ordered, so the least recently used entry is evicted first
+    private <K, V> Map<K, V> createLruMap() {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized Integer getNum(String id) {
+        return getNum(null, id);
+    }
+
+    /**
+     * @param scope what the identifier is unique within, e.g. the patient_ide
+     *              of an encounter_ide, or null.
+     */
+    public synchronized Integer getNum(String scope, String id) {
+        return count(nums.get(toKey(scope, id)));
+    }
+
+    public synchronized String getId(Integer num) {
+        return count(ids.get(num));
+    }
+
+    public synchronized void put(String id, Integer num) {
+        put(null, id, num);
+    }
+
+    public synchronized void put(String scope, String id, Integer num) {
+        if (maxSize > 0 && id != null && num != null) {
+            nums.put(toKey(scope, id), num);
+            ids.put(num, id);
+        }
+    }
+
+    /**
+     * Adds the number to identifier direction only, e.g. for mappings read
+     * without restricting the project.
+     */
+    public synchronized void putId(Integer num, String id) {
+        if (maxSize > 0 && id != null && num != null) {
+            ids.putIfAbsent(num, id);
+        }
+    }
+
+    /**
+     * Adds the mappings when the current transaction commits, a mapping rolled
+     * back with it must never be handed out.
+     */
+    public void putAfterCommit(Map<String, Integer> numsById) {
+        putAfterCommit(numsById.entrySet(), entry -> null, Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * Adds the mappings of identifiers unique within a scope when the current
+     * transaction commits.
+     */
+    public <T> void putAfterCommit(Collection<T> mappings, Function<T, String> scope, Function<T, String> id,
+        Function<T, Integer> num) {
+        if (maxSize <= 0 || mappings.isEmpty()) {
+            return;
+        }
+        List<T> committedMappings = new ArrayList<>(mappings);
+        Runnable put = () -> committedMappings
+            .forEach(mapping -> put(scope.apply(mapping), id.apply(mapping), num.apply(mapping)));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    put.run();
+                }
+            });
+        } else {
+            put.run();
+        }
+    }
+
+    /**
+     * @return the number of entries of both directions.
+     */
+    public synchronized int size() {
+        return nums.size() + ids.size();
+    }
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private <T> T count(T value) {
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    private String toKey(String scope, String id) {
+        String key = id == null ? null : id.toUpperCase(Locale.ENGLISH);
+        // no identifier contains the separator
+        return scope == null ? key : scope.toUpperCase(Locale.ENGLISH) + '\u0000' + key;
+    }
+}
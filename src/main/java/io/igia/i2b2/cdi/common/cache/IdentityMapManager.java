@@ -0,0 +1,82 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.cache;
+
+import java.util.Arrays;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Process wide identity maps of patient_mapping and encounter_mapping of the
+ * configured project.
+ */
+@Component
+public class IdentityMapManager implements MeterBinder {
+
+    private final IdentityMap patients;
+    private final IdentityMap encounters;
+
+    @Autowired
+    public IdentityMapManager(ApplicationProperties applicationProperties) {
+        this(applicationProperties.getIdentityMapMaxSize());
+    }
+
+    public IdentityMapManager(int maxSize) {
+        this.patients = new IdentityMap(maxSize);
+        this.encounters = new IdentityMap(maxSize);
+    }
+
+    public IdentityMap getPatients() {
+        return patients;
+    }
+
+    public IdentityMap getEncounters() {
+        return encounters;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bindTo(registry, "patient-identity", patients);
+        bindTo(registry, "encounter-identity", encounters);
+    }
+
+    private void bindTo(MeterRegistry registry, String cacheName, IdentityMap identityMap) {
+        Iterable<Tag> tags = Arrays.asList(Tag.of("cache", cacheName));
+        FunctionCounter.builder("cache.gets", identityMap, IdentityMap::getHitCount)
+            .tags(tags).tag("result", "hit")
+            .description("The number of times the cache returned a cached value")
+            .register(registry);
+        FunctionCounter.builder("cache.gets", identityMap, IdentityMap::getMissCount)
+            .tags(tags).tag("result", "miss")
+            .description("The number of times the cache had to load a value")
+            .register(registry);
+        FunctionCounter.builder("cache.evictions", identityMap, IdentityMap::getEvictionCount)
+            .tags(tags)
+            .description("The number of entries evicted because of size")
+            .register(registry);
+        Gauge.builder("cache.size", identityMap, IdentityMap::size)
+            .tags(tags)
+            .description("The number of entries in the cache")
+            .register(registry);
+    }
+}
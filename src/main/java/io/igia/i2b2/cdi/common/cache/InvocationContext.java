@@ -13,8 +13,20 @@
 
 package io.igia.i2b2.cdi.common.cache;
 
+import java.beans.PropertyDescriptor;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.BeansException;
 
 public class InvocationContext {
 
@@ -28,6 +40,53 @@ public class InvocationContext {
         this.args = args;
     }
 
+    /**
+     * @return a context with copies of the arguments, which the caller can no
+     *         longer change, or empty when an argument is not copied into an
+     *         equal value, e.g. one without value equality.
+     */
+    Optional<InvocationContext> freeze() {
+        Object[] copies = new Object[args.length];
+        for (int index = 0; index < args.length; index++) {
+            try {
+                copies[index] = copy(args[index]);
+            } catch (BeansException e) {
+                return Optional.empty();
+            }
+            if (!Objects.equals(copies[index], args[index])) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(new InvocationContext(targetClass, targetMethod, copies));
+    }
+
+    // search dtos are beans holding values, collections of values and other search dtos
+    private static Object copy(Object value) {
+        if (value == null || BeanUtils.isSimpleValueType(value.getClass())) {
+            return value;
+        }
+        if (value instanceof List) {
+            return Collections.unmodifiableList(((List<?>) value).stream()
+                .map(InvocationContext::copy)
+                .collect(Collectors.toList()));
+        }
+        if (value instanceof Set) {
+            Set<Object> copies = ((Set<?>) value).stream()
+                .map(InvocationContext::copy)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+            return Collections.unmodifiableSet(copies);
+        }
+        BeanWrapper source = new BeanWrapperImpl(value);
+        BeanWrapper target = new BeanWrapperImpl(BeanUtils.instantiateClass(value.getClass()));
+        for (PropertyDescriptor property : source.getPropertyDescriptors()) {
+            String name = property.getName();
+            if (source.isReadableProperty(name) && target.isWritableProperty(name)) {
+                target.setPropertyValue(name, copy(source.getPropertyValue(name)));
+            }
+        }
+        return target.getWrappedInstance();
+    }
+
     @Override
     public boolean equals(Object other) {
         if (this == other) return true;
@@ -0,0 +1,147 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.cache;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Patient-number bitmaps of cohort criteria. Facts are not watched, so a cached
+ * bitmap is up to the ttl old. The bitmaps are shared and must not be changed.
+ */
+@Component
+public class PatientSetCacheManager implements MeterBinder {
+
+    private static final String CACHE_NAME = "patient-set";
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+    private final Map<Object, CacheEntry> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public PatientSetCacheManager(ApplicationProperties applicationProperties) {
+        this(applicationProperties.getPatientSetCacheMaxSize(), applicationProperties.getPatientSetCacheTtl(),
+            System::nanoTime);
+    }
+
+    public PatientSetCacheManager(int maxSize, Duration ttl, LongSupplier ticker) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.ticker = ticker;
+        // access ordered, so the least recently used entry is evicted first
+        this.cache = new LinkedHashMap<Object, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CacheEntry> eldest) {
+                if (size() > PatientSetCacheManager.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized Optional<BitSet> get(Object key) {
+        CacheEntry entry = cache.get(key);
+        if (entry != null && entry.expiresAt - ticker.getAsLong() <= 0) {
+            cache.remove(key);
+            evictions.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(entry.patientNums);
+    }
+
+    public synchronized void put(Object key, BitSet patientNums) {
+        if (maxSize > 0) {
+            cache.put(key, new CacheEntry(patientNums, ticker.getAsLong() + ttlNanos));
+        }
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    synchronized int size() {
+        return cache.size();
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Iterable<Tag> tags = Arrays.asList(Tag.of("cache", CACHE_NAME));
+        FunctionCounter.builder("cache.gets", hits, AtomicLong::get)
+            .tags(tags).tag("result", "hit")
+            .description("The number of times the cache returned a cached value")
+            .register(registry);
+        FunctionCounter.builder("cache.gets", misses, AtomicLong::get)
+            .tags(tags).tag("result", "miss")
+            .description("The number of times the cache had to load a value")
+            .register(registry);
+        FunctionCounter.builder("cache.evictions", evictions, AtomicLong::get)
+            .tags(tags)
+            .description("The number of entries evicted because of size or expiry")
+            .register(registry);
+        Gauge.builder("cache.size", this, PatientSetCacheManager::size)
+            .tags(tags)
+            .description("The number of entries in the cache")
+            .register(registry);
+    }
+
+    private static class CacheEntry {
+        private final BitSet patientNums;
+        private final long expiresAt;
+
+        private CacheEntry(BitSet patientNums, long expiresAt) {
+            this.patientNums = patientNums;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import org.aspectj.lang.annotation.Aspect;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import java.util.Optional;
 
@@ -35,6 +36,10 @@ public final class RequestCacheAspect {
 
     @Around("@annotation(io.igia.i2b2.cdi.common.cache.RequestCache)")
     public Object processRequestCache(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (RequestContextHolder.getRequestAttributes() == null) {
+            // background jobs have no request to cache for
+            return joinPoint.proceed();
+        }
         InvocationContext invocationContext = new InvocationContext(
             joinPoint.getSignature().getDeclaringType(),
             joinPoint.getSignature().getName(),
@@ -0,0 +1,38 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.database;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+
+public abstract class AbstractBulkLoader implements BulkLoader {
+
+    private final int threshold;
+
+    protected AbstractBulkLoader(ObjectProvider<ApplicationProperties> applicationProperties) {
+        // the jdbc test slices run without the configuration properties and get the defaults
+        this(applicationProperties.getIfAvailable(ApplicationProperties::new).getBulkLoadThreshold());
+    }
+
+    protected AbstractBulkLoader(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public boolean isBulkLoad(int rowCount) {
+        return threshold > 0 && rowCount >= threshold;
+    }
+}
@@ -0,0 +1,40 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.database;
+
+import java.util.List;
+
+/**
+ * Appends rows to a table through the native bulk path of the database, which
+ * skips the per row statement work of a jdbc batch. Rows are only appended, a
+ * row with an existing key fails the whole load.
+ */
+public interface BulkLoader {
+
+    /**
+     * @return whether a load of that many rows is large enough for the bulk
+     *         path, smaller ones are faster as a jdbc batch.
+     */
+    boolean isBulkLoad(int rowCount);
+
+    /**
+     * Loads the rows within the current transaction.
+     *
+     * @param rows the values of each row in the order of the columns, as
+     *             strings, numbers, {@link java.time.LocalDateTime} or null.
+     * @return the number of rows loaded.
+     */
+    int load(String tableName, List<String> columns, List<Object[]> rows);
+}
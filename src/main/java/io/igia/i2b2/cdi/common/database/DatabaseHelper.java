@@ -13,13 +13,47 @@
 
 package io.igia.i2b2.cdi.common.database;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
+import io.igia.i2b2.cdi.common.dto.SeekDto;
 
 public interface DatabaseHelper {
     void createSequenceIfNotExists(String sequenceName, int startsWith, int incrementBy);
 
+    void alterSequenceIncrement(String sequenceName, int incrementBy);
+
     Integer getNextSequenceValue(String sequenceName);
     
     void addPaginationCriteria(QueryParamDto queryParamDto, PageableDto pageableDto);
+
+    void addSeekPaginationCriteria(QueryParamDto queryParamDto, SeekDto seekDto);
+
+    /**
+     * @return the number of rows the query returns as estimated by the database,
+     *         without running it.
+     */
+    int estimateCount(QueryParamDto queryParamDto);
+
+    /**
+     * Insert of a row given by named parameters, named like the columns, which
+     * keeps the existing row when one with the same key columns exists. The
+     * statement is atomic, it reports 1 updated row when the row was inserted
+     * and 0 otherwise.
+     */
+    String getInsertIfAbsentQuery(String tableName, List<String> columns, List<String> keyColumns);
+
+    /**
+     * @return the timestamp as a timestamp column of the database stores it,
+     *         rounded to the precision of the column.
+     */
+    LocalDateTime toStoredTimestamp(LocalDateTime timestamp);
+
+    /**
+     * @return the type of a column created for a date and time without time
+     *         zone.
+     */
+    String getTimestampColumnType();
 }
@@ -0,0 +1,107 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.database;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+
+/**
+ * Hands out the numbers of database sequences from blocks reserved with one
+ * round trip each. The sequences step by the block size, so every value drawn
+ * from them starts a block that no other thread or node owns. Numbers left in
+ * a block when the application stops are never used.
+ */
+@Component
+public class IdAllocator {
+
+    private final DatabaseHelper databaseHelper;
+    private final int blockSize;
+    private final ConcurrentMap<String, Sequence> sequences = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IdAllocator(DatabaseHelper databaseHelper, ObjectProvider<ApplicationProperties> applicationProperties) {
+        // the jdbc test slices run without the configuration properties and get the defaults
+        this(databaseHelper, applicationProperties.getIfAvailable(ApplicationProperties::new).getIdBlockSize());
+    }
+
+    IdAllocator(DatabaseHelper databaseHelper, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The id block size should be positive.");
+        }
+        this.databaseHelper = databaseHelper;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Creates the sequence, or makes an existing one step by the block size.
+     *
+     * @param descending whether the numbers count down from startsWith.
+     */
+    public void register(String sequenceName, int startsWith, boolean descending) {
+        int incrementBy = descending ? -blockSize : blockSize;
+        databaseHelper.createSequenceIfNotExists(sequenceName, startsWith, incrementBy);
+        databaseHelper.alterSequenceIncrement(sequenceName, incrementBy);
+        sequences.put(sequenceName, new Sequence(sequenceName, descending ? -1 : 1));
+    }
+
+    public Integer next(String sequenceName) {
+        Sequence sequence = sequences.get(sequenceName);
+        if (sequence == null) {
+            throw new IllegalStateException("Sequence is not registered: " + sequenceName);
+        }
+        while (true) {
+            Block block = sequence.block;
+            if (block != null) {
+                int offset = block.used.getAndIncrement();
+                if (offset < blockSize) {
+                    return block.first + offset * sequence.step;
+                }
+            }
+            // only the thread that finds the block used up goes to the database, the others wait for it
+            synchronized (sequence) {
+                if (sequence.block == block) {
+                    sequence.block = new Block(databaseHelper.getNextSequenceValue(sequence.name));
+                }
+            }
+        }
+    }
+
+    private static final class Sequence {
+        private final String name;
+        private final int step;
+        private volatile Block block;
+
+        private Sequence(String name, int step) {
+            this.name = name;
+            this.step = step;
+        }
+    }
+
+    private static final class Block {
+        private final int first;
+        private final AtomicInteger used = new AtomicInteger();
+
+        private Block(int first) {
+            this.first = first;
+        }
+    }
+}
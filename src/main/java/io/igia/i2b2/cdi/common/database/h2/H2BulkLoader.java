@@ -0,0 +1,61 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.database.h2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import io.igia.i2b2.cdi.common.database.AbstractBulkLoader;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+
+/**
+ * H2 has no bulk path of its own, rows are loaded with multi-row inserts.
+ */
+@Component
+@Conditional(H2DatabaseCondition.class)
+public class H2BulkLoader extends AbstractBulkLoader {
+
+    private static final int ROWS_PER_INSERT = 500;
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public H2BulkLoader(NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+            ObjectProvider<ApplicationProperties> applicationProperties) {
+        super(applicationProperties);
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+    }
+
+    @Override
+    public int load(String tableName, List<String> columns, List<Object[]> rows) {
+        String rowParameters = "(" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        int loaded = 0;
+        for (int from = 0; from < rows.size(); from += ROWS_PER_INSERT) {
+            List<Object[]> chunk = rows.subList(from, Math.min(from + ROWS_PER_INSERT, rows.size()));
+            List<Object> values = new ArrayList<>(chunk.size() * columns.size());
+            chunk.forEach(row -> Collections.addAll(values, row));
+            loaded += namedParameterJdbcTemplate.getJdbcTemplate().update(
+                "insert into " + tableName + " (" + String.join(", ", columns) + ") values "
+                    + String.join(", ", Collections.nCopies(chunk.size(), rowParameters)),
+                values.toArray());
+        }
+        return loaded;
+    }
+}
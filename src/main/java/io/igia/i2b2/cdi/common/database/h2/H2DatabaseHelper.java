@@ -13,10 +13,16 @@
 
 package io.igia.i2b2.cdi.common.database.h2;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
 import io.igia.i2b2.cdi.common.database.DatabaseHelper;
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.PaginationQueryParamName;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
+import io.igia.i2b2.cdi.common.dto.SeekDto;
 
 import org.springframework.context.annotation.Conditional;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -44,6 +50,12 @@ public class H2DatabaseHelper implements DatabaseHelper {
         namedParameterJdbcTemplate.getJdbcTemplate().execute(encounterNumSequence);
     }
 
+    @Override
+    public void alterSequenceIncrement(String sequenceName, int incrementBy) {
+        namedParameterJdbcTemplate.getJdbcTemplate().execute(
+            "ALTER SEQUENCE " + sequenceName + " INCREMENT BY " + incrementBy);
+    }
+
     @Override
     @Transactional(readOnly = false)
     public Integer getNextSequenceValue(String sequenceName) {
@@ -60,4 +72,49 @@ public class H2DatabaseHelper implements DatabaseHelper {
                 " LIMIT :" + PaginationQueryParamName.LIMIT + 
                 " OFFSET :" + PaginationQueryParamName.OFFSET);
     }
+
+    @Override
+    public void addSeekPaginationCriteria(QueryParamDto queryParamDto, SeekDto seekDto) {
+        if (!seekDto.getValues().isEmpty()) {
+            queryParamDto.addQueryCriteria(seekDto.getSeekPredicate());
+            for (int i = 0; i < seekDto.getValues().size(); i++) {
+                queryParamDto.addQueryParameter(seekDto.getParameterName(i), seekDto.getValues().get(i));
+            }
+        }
+        queryParamDto.appendQuery(" ORDER BY " + seekDto.getOrderBy() + " LIMIT :" + PaginationQueryParamName.LIMIT);
+        queryParamDto.addQueryParameter(PaginationQueryParamName.LIMIT, seekDto.getSize());
+    }
+
+    @Override
+    public int estimateCount(QueryParamDto queryParamDto) {
+        // H2 keeps no planner statistics worth reading, the count is exact
+        return namedParameterJdbcTemplate.queryForObject(
+            "select count(*) from (" + queryParamDto.getQuery() + ") estimated",
+            queryParamDto.getParameterSource(), Integer.class);
+    }
+
+    @Override
+    public String getInsertIfAbsentQuery(String tableName, List<String> columns, List<String> keyColumns) {
+        // H2 cannot type the untyped parameters of a merge source, a concurrent
+        // insert of the same key is left to the primary key
+        List<String> values = new ArrayList<>();
+        columns.forEach(column -> values.add(":" + column));
+        List<String> keyCriteria = new ArrayList<>();
+        keyColumns.forEach(column -> keyCriteria.add(column + " = :" + column));
+        return String.join(" ",
+            "insert into " + tableName + " (" + String.join(", ", columns) + ")",
+            "select " + String.join(", ", values),
+            "where not exists (select 1 from " + tableName + " where " + String.join(" and ", keyCriteria) + ")");
+    }
+
+    @Override
+    public LocalDateTime toStoredTimestamp(LocalDateTime timestamp) {
+        // timestamp columns keep microseconds, the nanoseconds are rounded
+        return timestamp.plusNanos(500).truncatedTo(ChronoUnit.MICROS);
+    }
+
+    @Override
+    public String getTimestampColumnType() {
+        return "timestamp";
+    }
 }
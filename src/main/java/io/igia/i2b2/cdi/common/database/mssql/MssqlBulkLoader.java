@@ -0,0 +1,181 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.database.mssql;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkRecord;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+
+import io.igia.i2b2.cdi.common.database.AbstractBulkLoader;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+
+/**
+ * Loads rows with {@link SQLServerBulkCopy}, typed by the columns of the table.
+ */
+@Component
+@Conditional(MssqlDatabaseCondition.class)
+public class MssqlBulkLoader extends AbstractBulkLoader {
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public MssqlBulkLoader(NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+            ObjectProvider<ApplicationProperties> applicationProperties) {
+        super(applicationProperties);
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+    }
+
+    @Override
+    public int load(String tableName, List<String> columns, List<Object[]> rows) {
+        Integer loaded = namedParameterJdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Integer>) connection -> {
+            // without an internal transaction the copy joins the transaction of the connection
+            try (SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(connection.unwrap(SQLServerConnection.class))) {
+                bulkCopy.setDestinationTableName(tableName);
+                for (int i = 0; i < columns.size(); i++) {
+                    bulkCopy.addColumnMapping(i + 1, columns.get(i));
+                }
+                bulkCopy.writeToServer(new RowBulkRecord(getColumnMetaData(connection, tableName, columns), rows));
+            }
+            return rows.size();
+        });
+        return loaded == null ? 0 : loaded;
+    }
+
+    private static ColumnMetaData[] getColumnMetaData(Connection connection, String tableName, List<String> columns)
+            throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(
+                    "select " + String.join(", ", columns) + " from " + tableName + " where 1 = 0")) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            ColumnMetaData[] columnMetaData = new ColumnMetaData[columns.size()];
+            for (int i = 0; i < columnMetaData.length; i++) {
+                columnMetaData[i] = new ColumnMetaData(columns.get(i), metaData.getColumnType(i + 1),
+                    metaData.getPrecision(i + 1), metaData.getScale(i + 1));
+            }
+            return columnMetaData;
+        }
+    }
+
+    private static class ColumnMetaData {
+        private final String name;
+        private final int type;
+        private final int precision;
+        private final int scale;
+
+        ColumnMetaData(String name, int type, int precision, int scale) {
+            this.name = name;
+            this.type = type;
+            this.precision = precision;
+            this.scale = scale;
+        }
+    }
+
+    /**
+     * Rows in memory as a bulk copy source, with the values converted to the
+     * java types the driver expects for the column types.
+     */
+    private static class RowBulkRecord implements ISQLServerBulkRecord {
+        private final ColumnMetaData[] columns;
+        private final Iterator<Object[]> rows;
+        private Object[] row;
+
+        RowBulkRecord(ColumnMetaData[] columns, List<Object[]> rows) {
+            this.columns = columns;
+            this.rows = rows.iterator();
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            Set<Integer> ordinals = new LinkedHashSet<>();
+            for (int i = 1; i <= columns.length; i++) {
+                ordinals.add(i);
+            }
+            return ordinals;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column - 1].name;
+        }
+
+        @Override
+        public int getColumnType(int column) {
+            return columns[column - 1].type;
+        }
+
+        @Override
+        public int getPrecision(int column) {
+            return columns[column - 1].precision;
+        }
+
+        @Override
+        public int getScale(int column) {
+            return columns[column - 1].scale;
+        }
+
+        @Override
+        public boolean isAutoIncrement(int column) {
+            return false;
+        }
+
+        @Override
+        public Object[] getRowData() {
+            Object[] data = new Object[row.length];
+            for (int i = 0; i < row.length; i++) {
+                data[i] = convert(row[i], columns[i]);
+            }
+            return data;
+        }
+
+        private static Object convert(Object value, ColumnMetaData column) {
+            if (value instanceof LocalDateTime) {
+                return Timestamp.valueOf((LocalDateTime) value);
+            }
+            if (value instanceof Number && (column.type == Types.DECIMAL || column.type == Types.NUMERIC)) {
+                return new BigDecimal(value.toString()).setScale(column.scale, RoundingMode.HALF_UP);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean next() {
+            if (!rows.hasNext()) {
+                return false;
+            }
+            row = rows.next();
+            return true;
+        }
+    }
+}
@@ -13,6 +13,13 @@
 
 package io.igia.i2b2.cdi.common.database.mssql;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Conditional;
@@ -26,12 +33,15 @@ import io.igia.i2b2.cdi.common.database.DatabaseHelper;
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.PaginationQueryParamName;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
+import io.igia.i2b2.cdi.common.dto.SeekDto;
 
 @Component
 @Conditional(MssqlDatabaseCondition.class)
 public class MssqlDatabaseHelper implements DatabaseHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MssqlDatabaseHelper.class);
+    private static final int DATETIME_TICKS_PER_SECOND = 300;
+    private static final Pattern ESTIMATED_ROWS = Pattern.compile("StatementEstRows=\"([0-9.Ee+-]+)\"");
 
     private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
@@ -60,6 +70,12 @@ public class MssqlDatabaseHelper implements DatabaseHelper {
         }
     }
 
+    @Override
+    public void alterSequenceIncrement(String sequenceName, int incrementBy) {
+        namedParameterJdbcTemplate.getJdbcTemplate().execute(
+            "ALTER SEQUENCE " + sequenceName + " INCREMENT BY " + incrementBy);
+    }
+
     @Override
     @Transactional(readOnly = false)
     public Integer getNextSequenceValue(String sequenceName) {
@@ -85,4 +101,67 @@ public class MssqlDatabaseHelper implements DatabaseHelper {
                 + " OFFSET :" + PaginationQueryParamName.OFFSET 
                 + " ROWS FETCH NEXT :" + PaginationQueryParamName.LIMIT + " ROWS ONLY");
     }
+
+    @Override
+    public void addSeekPaginationCriteria(QueryParamDto queryParamDto, SeekDto seekDto) {
+        if (!seekDto.getValues().isEmpty()) {
+            queryParamDto.addQueryCriteria(seekDto.getSeekPredicate());
+            for (int i = 0; i < seekDto.getValues().size(); i++) {
+                queryParamDto.addQueryParameter(seekDto.getParameterName(i), seekDto.getValues().get(i));
+            }
+        }
+        queryParamDto.appendQuery(" ORDER BY " + seekDto.getOrderBy() + 
+                " OFFSET 0 ROWS FETCH NEXT :" + PaginationQueryParamName.LIMIT + " ROWS ONLY");
+        queryParamDto.addQueryParameter(PaginationQueryParamName.LIMIT, seekDto.getSize());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public int estimateCount(QueryParamDto queryParamDto) {
+        // with the option set the query is compiled but not run, and its estimated plan is returned instead
+        JdbcTemplate jdbcTemplate = namedParameterJdbcTemplate.getJdbcTemplate();
+        jdbcTemplate.execute("SET SHOWPLAN_XML ON");
+        try {
+            String plan = namedParameterJdbcTemplate.query(queryParamDto.getQuery(),
+                queryParamDto.getParameterSource(), rs -> rs.next() ? rs.getString(1) : "");
+            Matcher matcher = ESTIMATED_ROWS.matcher(plan);
+            return matcher.find()
+                ? (int) Math.min(Math.round(Double.parseDouble(matcher.group(1))), Integer.MAX_VALUE) : 0;
+        } finally {
+            jdbcTemplate.execute("SET SHOWPLAN_XML OFF");
+        }
+    }
+
+    @Override
+    public String getInsertIfAbsentQuery(String tableName, List<String> columns, List<String> keyColumns) {
+        List<String> sourceColumns = new ArrayList<>();
+        List<String> insertValues = new ArrayList<>();
+        columns.forEach(column -> {
+            sourceColumns.add(":" + column + " as " + column);
+            insertValues.add("source." + column);
+        });
+        List<String> keyCriteria = new ArrayList<>();
+        keyColumns.forEach(column -> keyCriteria.add("target." + column + " = source." + column));
+        // holdlock keeps the key range locked from the match to the insert, without it concurrent merges race
+        return String.join(" ",
+            "merge into " + tableName + " with (holdlock) as target",
+            "using (select " + String.join(", ", sourceColumns) + ") as source",
+            "on (" + String.join(" and ", keyCriteria) + ")",
+            "when not matched then insert (" + String.join(", ", columns) + ")",
+            "values (" + String.join(", ", insertValues) + ");");
+    }
+
+    @Override
+    public LocalDateTime toStoredTimestamp(LocalDateTime timestamp) {
+        // datetime columns count 1/300 seconds and read back as .000, .003 or .007 milliseconds
+        long ticks = Math.round(timestamp.getNano() / 1_000_000_000.0 * DATETIME_TICKS_PER_SECOND);
+        return timestamp.truncatedTo(ChronoUnit.SECONDS)
+            .plus(Math.round(ticks * 1000.0 / DATETIME_TICKS_PER_SECOND), ChronoUnit.MILLIS);
+    }
+
+    @Override
+    public String getTimestampColumnType() {
+        // timestamp is a row version on SQL Server
+        return "datetime2";
+    }
 }
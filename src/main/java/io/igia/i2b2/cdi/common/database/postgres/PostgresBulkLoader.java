@@ -0,0 +1,98 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.database.postgres;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import io.igia.i2b2.cdi.common.database.AbstractBulkLoader;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+
+/**
+ * Loads rows with {@code COPY ... FROM STDIN} in CSV form, streamed to the
+ * server in buffers instead of being written out first.
+ */
+@Component
+@Conditional(PostgresDatabaseCondition.class)
+public class PostgresBulkLoader extends AbstractBulkLoader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public PostgresBulkLoader(NamedParameterJdbcTemplate namedParameterJdbcTemplate,
+            ObjectProvider<ApplicationProperties> applicationProperties) {
+        super(applicationProperties);
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+    }
+
+    @Override
+    public int load(String tableName, List<String> columns, List<Object[]> rows) {
+        String copy = "copy " + tableName + " (" + String.join(", ", columns) + ") from stdin with (format csv)";
+        Long loaded = namedParameterJdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copy);
+            try {
+                StringBuilder csv = new StringBuilder();
+                for (Object[] row : rows) {
+                    appendRow(csv, row);
+                    if (csv.length() >= BUFFER_SIZE) {
+                        write(copyIn, csv);
+                    }
+                }
+                write(copyIn, csv);
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        });
+        return loaded == null ? 0 : Math.toIntExact(loaded);
+    }
+
+    /**
+     * Appends a CSV line, where an unquoted empty value is null and strings are
+     * always quoted, so that an empty string stays one.
+     */
+    static void appendRow(StringBuilder csv, Object[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                csv.append(',');
+            }
+            Object value = row[i];
+            if (value instanceof Number) {
+                csv.append(value);
+            } else if (value != null) {
+                csv.append('"').append(value.toString().replace("\"", "\"\"")).append('"');
+            }
+        }
+        csv.append('\n');
+    }
+
+    private static void write(CopyIn copyIn, StringBuilder csv) throws SQLException {
+        byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        csv.setLength(0);
+    }
+}
@@ -13,6 +13,13 @@
 
 package io.igia.i2b2.cdi.common.database.postgres;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Conditional;
@@ -25,12 +32,15 @@ import io.igia.i2b2.cdi.common.database.DatabaseHelper;
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.PaginationQueryParamName;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
+import io.igia.i2b2.cdi.common.dto.SeekDto;
+import io.igia.i2b2.cdi.common.dto.SortOrder;
 
 @Component
 @Conditional(PostgresDatabaseCondition.class)
 public class PostgresDatabaseHelper implements DatabaseHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PostgresDatabaseHelper.class);
+    private static final Pattern PLAN_ROWS = Pattern.compile("rows=(\\d+)");
 
     private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
@@ -56,6 +66,12 @@ public class PostgresDatabaseHelper implements DatabaseHelper {
         }
     }
 
+    @Override
+    public void alterSequenceIncrement(String sequenceName, int incrementBy) {
+        namedParameterJdbcTemplate.getJdbcTemplate().execute(
+            "ALTER SEQUENCE " + sequenceName + " INCREMENT BY " + incrementBy);
+    }
+
     @Override
     @Transactional(readOnly = false)
     public Integer getNextSequenceValue(String sequenceName) {
@@ -72,4 +88,51 @@ public class PostgresDatabaseHelper implements DatabaseHelper {
                 " LIMIT :" + PaginationQueryParamName.LIMIT + 
                 " OFFSET :" + PaginationQueryParamName.OFFSET);
     }
+
+    @Override
+    public void addSeekPaginationCriteria(QueryParamDto queryParamDto, SeekDto seekDto) {
+        if (!seekDto.getValues().isEmpty()) {
+            // row value comparison, matched against a multicolumn index by the planner
+            List<String> parameters = new ArrayList<>();
+            for (int i = 0; i < seekDto.getValues().size(); i++) {
+                parameters.add(":" + seekDto.getParameterName(i));
+            }
+            queryParamDto.addQueryCriteria("(" + String.join(", ", seekDto.getColumns()) + ")"
+                + (seekDto.getSortOrder() == SortOrder.DESC ? " < " : " > ") + "(" + String.join(", ", parameters) + ")");
+            for (int i = 0; i < seekDto.getValues().size(); i++) {
+                queryParamDto.addQueryParameter(seekDto.getParameterName(i), seekDto.getValues().get(i));
+            }
+        }
+        queryParamDto.appendQuery(" ORDER BY " + seekDto.getOrderBy() + " LIMIT :" + PaginationQueryParamName.LIMIT);
+        queryParamDto.addQueryParameter(PaginationQueryParamName.LIMIT, seekDto.getSize());
+    }
+
+    @Override
+    public int estimateCount(QueryParamDto queryParamDto) {
+        // the first line of the plan is its top node, with the rows the planner expects from the query
+        String plan = namedParameterJdbcTemplate.query("explain " + queryParamDto.getQuery(),
+            queryParamDto.getParameterSource(), rs -> rs.next() ? rs.getString(1) : "");
+        Matcher matcher = PLAN_ROWS.matcher(plan);
+        return matcher.find() ? (int) Math.min(Long.parseLong(matcher.group(1)), Integer.MAX_VALUE) : 0;
+    }
+
+    @Override
+    public String getInsertIfAbsentQuery(String tableName, List<String> columns, List<String> keyColumns) {
+        List<String> parameters = new ArrayList<>();
+        columns.forEach(column -> parameters.add(":" + column));
+        return "insert into " + tableName + " (" + String.join(", ", columns) + ")"
+            + " values (" + String.join(", ", parameters) + ")"
+            + " on conflict (" + String.join(", ", keyColumns) + ") do nothing";
+    }
+
+    @Override
+    public LocalDateTime toStoredTimestamp(LocalDateTime timestamp) {
+        // timestamp columns keep microseconds, the nanoseconds are rounded
+        return timestamp.plusNanos(500).truncatedTo(ChronoUnit.MICROS);
+    }
+
+    @Override
+    public String getTimestampColumnType() {
+        return "timestamp";
+    }
 }
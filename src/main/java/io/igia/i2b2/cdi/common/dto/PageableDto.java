@@ -13,6 +13,8 @@
 
 package io.igia.i2b2.cdi.common.dto;
 
+import java.util.Objects;
+
 import org.springframework.util.StringUtils;
 
 public class PageableDto {
@@ -20,6 +22,8 @@ public class PageableDto {
     private int size = 20;
     private SortOrder sortOrder = SortOrder.ASC;
     private String sortBy = "id";
+    private String cursor;
+    private CountMode countMode = CountMode.EXACT;
 
     public PageableDto() {
     }
@@ -33,6 +37,10 @@ public class PageableDto {
         if (!StringUtils.isEmpty(pageableDto.getSortBy())) {
             this.sortBy = pageableDto.getSortBy();
         }
+        this.cursor = pageableDto.getCursor();
+        if (pageableDto.getCountMode() != null) {
+            this.countMode = pageableDto.getCountMode();
+        }
     }
 
     public PageableDto(Integer page, Integer size, SortOrder sortOrder, String sortBy) {        
@@ -75,8 +83,53 @@ public class PageableDto {
         this.sortBy = sortBy;
     }
 
+    /**
+     * @return the continuation token of cursor pagination, empty for its first
+     *         page and null for page number pagination.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    public void setCountMode(CountMode countMode) {
+        this.countMode = (countMode != null) ? countMode : CountMode.EXACT;
+    }
+
+    /**
+     * @return the number of rows to fetch, one more than the page size when the
+     *         count is skipped so that a following page can be detected.
+     */
+    public int getFetchSize() {
+        return countMode == CountMode.NONE ? size + 1 : size;
+    }
+
     @Override
     public String toString() {
-        return "PageableDto [page=" + page + ", size=" + size + ", sortOrder=" + sortOrder + ", sortBy=" + sortBy + "]";
+        return "PageableDto [page=" + page + ", size=" + size + ", sortOrder=" + sortOrder + ", sortBy=" + sortBy + ", cursor=" + cursor + ", countMode=" + countMode + "]";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        PageableDto that = (PageableDto) o;
+        return page == that.page && size == that.size && Objects.equals(sortOrder, that.sortOrder)
+                && Objects.equals(sortBy, that.sortBy) && Objects.equals(cursor, that.cursor)
+                && countMode == that.countMode;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(page, size, sortOrder, sortBy, cursor, countMode);
     }
 }
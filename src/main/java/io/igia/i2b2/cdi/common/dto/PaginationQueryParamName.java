@@ -21,5 +21,6 @@ public class PaginationQueryParamName {
 
     public static final String LIMIT = "limit";
     public static final String OFFSET = "offset";
+    public static final String SEEK = "seek";
 
 }
@@ -19,6 +19,8 @@ public class PaginationResult<T> {
 
     private List<T> records;
     private int totalCount;
+    private String nextCursor;
+    private Boolean hasMore;
 
     public PaginationResult() {
 
@@ -44,4 +46,28 @@ public class PaginationResult<T> {
     public void setTotalCount(int totalCount) {
         this.totalCount = totalCount;
     }
+
+    /**
+     * @return the continuation token of the next page when cursor pagination is
+     *         used and the page is full, otherwise null.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return whether another page follows when the count is skipped, otherwise
+     *         null.
+     */
+    public Boolean getHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(Boolean hasMore) {
+        this.hasMore = hasMore;
+    }
 }
@@ -0,0 +1,85 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keyset (seek) pagination of a query: the page of rows ordered after the given
+ * values of the order columns. The order columns together have to identify a
+ * row, otherwise rows sharing the last values are skipped.
+ */
+public class SeekDto {
+    private final List<String> columns;
+    private final List<Object> values;
+    private final SortOrder sortOrder;
+    private final int size;
+
+    public SeekDto(List<String> columns, List<Object> values, SortOrder sortOrder, int size) {
+        this.columns = Collections.unmodifiableList(new ArrayList<>(columns));
+        this.values = Collections.unmodifiableList(new ArrayList<>(values));
+        this.sortOrder = (sortOrder != null) ? sortOrder : SortOrder.ASC;
+        this.size = size;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the order values of the last row of the previous page, empty for
+     *         the first page.
+     */
+    public List<Object> getValues() {
+        return values;
+    }
+
+    public SortOrder getSortOrder() {
+        return sortOrder;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getParameterName(int index) {
+        return PaginationQueryParamName.SEEK + index;
+    }
+
+    public String getOrderBy() {
+        List<String> orderBy = new ArrayList<>();
+        columns.forEach(column -> orderBy.add(column + " " + sortOrder));
+        return String.join(", ", orderBy);
+    }
+
+    /**
+     * Seek predicate without row value comparison, e.g. for (a, b) ascending
+     * {@code a >= :seek0 and (a > :seek0 or (a = :seek0 and b > :seek1))}. The
+     * leading range on the first column keeps it usable by an index.
+     */
+    public String getSeekPredicate() {
+        String comparison = sortOrder == SortOrder.DESC ? " < :" : " > :";
+        String predicate = columns.get(columns.size() - 1) + comparison + getParameterName(columns.size() - 1);
+        for (int i = columns.size() - 2; i >= 0; i--) {
+            predicate = columns.get(i) + comparison + getParameterName(i) + " or (" + columns.get(i) + " = :"
+                    + getParameterName(i) + " and " + predicate + ")";
+            predicate = "(" + predicate + ")";
+        }
+        String range = sortOrder == SortOrder.DESC ? " <= :" : " >= :";
+        return columns.get(0) + range + getParameterName(0) + " and " + predicate;
+    }
+}
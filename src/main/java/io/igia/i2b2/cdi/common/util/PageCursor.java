@@ -0,0 +1,70 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+
+/**
+ * Opaque continuation token of keyset pagination, carrying the order values of
+ * the last row of a page.
+ */
+public class PageCursor {
+    public static final String INVALID_CURSOR = "Cursor is not valid.";
+
+    private PageCursor() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static String encode(List<String> values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(values.size());
+            for (String value : values) {
+                output.writeUTF(value);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    public static List<String> decode(String cursor, int size) {
+        try (DataInputStream input = new DataInputStream(
+                new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            if (input.readUnsignedByte() != size) {
+                throw new I2b2DataValidationException(INVALID_CURSOR);
+            }
+            List<String> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(input.readUTF());
+            }
+            if (input.read() != -1) {
+                throw new I2b2DataValidationException(INVALID_CURSOR);
+            }
+            return values;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new I2b2DataValidationException(INVALID_CURSOR);
+        }
+    }
+}
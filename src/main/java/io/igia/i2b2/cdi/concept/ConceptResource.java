@@ -27,6 +27,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import io.igia.i2b2.cdi.common.dto.CountMode;
 import io.igia.i2b2.cdi.common.dto.Operator;
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
@@ -59,7 +60,9 @@ public class ConceptResource {
 	    @RequestParam(name = "page", required = false) Integer page,
 	    @RequestParam(name = "size", required = false) Integer size,
 	    @ApiParam(value = "sort order", required = false) @RequestParam(name = "order", required = false) SortOrder order,
-	    @ApiParam(value = "sort field", required = false) @RequestParam(name = "sort", required = false) String sort) {
+	    @ApiParam(value = "sort field", required = false) @RequestParam(name = "sort", required = false) String sort,
+	    @ApiParam(value = "continuation token, pass an empty value to start cursor pagination", required = false) @RequestParam(name = "cursor", required = false) String cursor,
+	    @ApiParam(value = "total count: exact, estimated or none", required = false) @RequestParam(name = "count", required = false) CountMode count) {
 	ConceptSearchDto searchDto = new ConceptSearchDto();
 	searchDto.setSource(sourceSystemCode);
 
@@ -74,11 +77,22 @@ public class ConceptResource {
 	searchDto.setPathFilterDto(pathFilterDto);
 
 	PageableDto pageableDto = new PageableDto(page, size, order, sort);
+	pageableDto.setCursor(cursor);
+	pageableDto.setCountMode(count);
 
 	searchDto.setPageableDto(pageableDto);
 	PaginationResult<ConceptDto> concepts = conceptService.getConcepts(searchDto);
 	HttpHeaders responseHeaders = new HttpHeaders();
-	responseHeaders.add("X-Total-Count", String.valueOf(concepts.getTotalCount()));
+	if (pageableDto.getCountMode() == CountMode.NONE) {
+	    responseHeaders.add("X-Has-More", String.valueOf(concepts.getHasMore()));
+	} else if (pageableDto.getCountMode() == CountMode.ESTIMATED) {
+	    responseHeaders.add("X-Estimated-Total-Count", String.valueOf(concepts.getTotalCount()));
+	} else {
+	    responseHeaders.add("X-Total-Count", String.valueOf(concepts.getTotalCount()));
+	}
+	if (concepts.getNextCursor() != null) {
+	    responseHeaders.add("X-Next-Cursor", concepts.getNextCursor());
+	}
 	return new ResponseEntity<>(concepts.getRecords(), responseHeaders, HttpStatus.OK);
     }
 
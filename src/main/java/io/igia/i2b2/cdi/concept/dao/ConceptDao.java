@@ -13,6 +13,8 @@
 
 package io.igia.i2b2.cdi.concept.dao;
 
+import java.util.function.Consumer;
+
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
 import io.igia.i2b2.cdi.concept.dto.ConceptDto;
 import io.igia.i2b2.cdi.concept.dto.ConceptSearchDto;
@@ -27,4 +29,9 @@ public interface ConceptDao {
     int deleteConcept(ConceptDto concept);
     
     int getTotalCount(ConceptSearchDto conceptSearchDto);
+
+    /**
+     * Streams every concept, in no particular order.
+     */
+    void streamConcepts(Consumer<ConceptDto> consumer);
 }
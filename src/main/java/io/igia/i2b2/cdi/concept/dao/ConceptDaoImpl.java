@@ -14,25 +14,33 @@
 package io.igia.i2b2.cdi.concept.dao;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
-import io.igia.i2b2.cdi.common.cache.RequestCache;
+import io.igia.i2b2.cdi.common.cache.DimensionCache;
 import io.igia.i2b2.cdi.common.database.DatabaseHelper;
+import io.igia.i2b2.cdi.common.dto.CountMode;
 import io.igia.i2b2.cdi.common.dto.Operator;
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.PaginationQueryParamName;
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
+import io.igia.i2b2.cdi.common.dto.SeekDto;
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.common.util.PageCursor;
 import io.igia.i2b2.cdi.concept.dto.ConceptDto;
 import io.igia.i2b2.cdi.concept.dto.ConceptSearchDto;
 import io.igia.i2b2.cdi.concept.dto.PathFilterDto;
@@ -62,7 +70,7 @@ public class ConceptDaoImpl implements ConceptDao {
     }
     
     @Override
-    @RequestCache
+    @DimensionCache
     public PaginationResult<ConceptDto> findConcepts(final ConceptSearchDto conceptSearchDto) {
 
         QueryParamDto queryParamDto = new QueryParamDto()
@@ -77,16 +85,51 @@ public class ConceptDaoImpl implements ConceptDao {
             addConceptPathCriteria(conceptSearchDto, queryParamDto);
         }
         addConceptCodeCriteria(conceptSearchDto, queryParamDto);
-        addPaginationCriteria(queryParamDto, conceptSearchDto.getPageableDto());
+        addConceptCodesCriteria(conceptSearchDto, queryParamDto);
+        SeekDto seekDto = getSeekDto(conceptSearchDto.getPageableDto());
+        if (seekDto != null) {
+            databaseHelper.addSeekPaginationCriteria(queryParamDto, seekDto);
+        } else {
+            addPaginationCriteria(queryParamDto, conceptSearchDto.getPageableDto());
+        }
 
         List<ConceptDto> concepts = this.namedParameterJdbcTemplate.query(queryParamDto.getQuery(),
                 queryParamDto.getParameterSource(), conceptMapper);
-        return new PaginationResult<>(concepts, 0);
+        PaginationResult<ConceptDto> paginationResult = new PaginationResult<>(concepts, 0);
+        PageableDto pageableDto = conceptSearchDto.getPageableDto();
+        if (pageableDto != null && pageableDto.getCountMode() == CountMode.NONE) {
+            boolean hasMore = concepts.size() > pageableDto.getSize();
+            if (hasMore) {
+                concepts.remove(concepts.size() - 1);
+            }
+            paginationResult.setHasMore(hasMore);
+        }
+        if (seekDto != null && !concepts.isEmpty() && concepts.size() == pageableDto.getSize()
+                && !Boolean.FALSE.equals(paginationResult.getHasMore())) {
+            paginationResult.setNextCursor(PageCursor.encode(
+                Collections.singletonList(concepts.get(concepts.size() - 1).getConceptPath())));
+        }
+        return paginationResult;
+    }
+
+    private SeekDto getSeekDto(PageableDto pageableDto) {
+        if (pageableDto == null || pageableDto.getCursor() == null) {
+            return null;
+        }
+        // concept_path is the primary key of concept_dimension and the only unique sort field
+        if (!"concept_path".equals(pageableDto.getSortBy())) {
+            throw new I2b2DataValidationException(
+                "Cursor pagination is not supported for sort field " + pageableDto.getSortBy() + ".");
+        }
+        List<Object> values = pageableDto.getCursor().isEmpty() ? Collections.emptyList()
+                : Collections.singletonList(PageCursor.decode(pageableDto.getCursor(), 1).get(0));
+        return new SeekDto(Collections.singletonList("concept.concept_path"), values, pageableDto.getSortOrder(),
+                pageableDto.getFetchSize());
     }
 
     private void addPaginationCriteria(QueryParamDto queryParamDto, PageableDto pageableDto) {
         if (pageableDto != null) {
-            int limit = pageableDto.getSize();
+            int limit = pageableDto.getFetchSize();
             int offset = queryParamDto.calculateOffset(pageableDto.getPage(), pageableDto.getSize());
 
             databaseHelper.addPaginationCriteria(queryParamDto, pageableDto);
@@ -150,6 +193,15 @@ public class ConceptDaoImpl implements ConceptDao {
 	}
     }
 
+    private void addConceptCodesCriteria(ConceptSearchDto conceptSearchDto, QueryParamDto queryParamDto) {
+        if (!conceptSearchDto.getCodes().isEmpty()) {
+            final String conceptCodesQueryParamName = "conceptCodes";
+            queryParamDto.addQueryCriteria("UPPER(concept.concept_cd) in (:" + conceptCodesQueryParamName + ")")
+                    .addQueryParameter(conceptCodesQueryParamName, conceptSearchDto.getCodes().stream()
+                            .map(code -> code.toUpperCase(Locale.ENGLISH)).collect(Collectors.toList()));
+        }
+    }
+
     private void addSourceCriteria(ConceptSearchDto conceptSearchDto, QueryParamDto queryParamDto) {
 	if (!StringUtils.isEmpty(conceptSearchDto.getSource())) {
 	    final String sourceQueryParamName = "sourceSystem";
@@ -208,20 +260,37 @@ public class ConceptDaoImpl implements ConceptDao {
     }
 
     @Override
+    @DimensionCache
     public int getTotalCount(ConceptSearchDto conceptSearchDto) {
         int count = 0;
         QueryParamDto countQueryParamDto = new QueryParamDto();
-        countQueryParamDto.withQuery(String.join(" ", "select count(concept_path) from concept_dimension concept"));
+        boolean estimated = conceptSearchDto.getPageableDto() != null
+                && conceptSearchDto.getPageableDto().getCountMode() == CountMode.ESTIMATED;
+        countQueryParamDto.withQuery(estimated ? "select concept.concept_path from concept_dimension concept"
+                : "select count(concept_path) from concept_dimension concept");
         addSourceCriteria(conceptSearchDto, countQueryParamDto);
         addConceptCodeCriteria(conceptSearchDto, countQueryParamDto);
+        addConceptCodesCriteria(conceptSearchDto, countQueryParamDto);
         if (!conceptSearchDto.getConceptPaths().isEmpty()) {
             addConceptPathsCriteria(conceptSearchDto, countQueryParamDto);
         } else {
             addConceptPathCriteria(conceptSearchDto, countQueryParamDto);
         }
+        if (estimated) {
+            return databaseHelper.estimateCount(countQueryParamDto);
+        }
         count = this.namedParameterJdbcTemplate.queryForObject(countQueryParamDto.getQuery(),
                 countQueryParamDto.getParameterSource(), Integer.class);
 
         return count;
     }
+
+    @Override
+    public void streamConcepts(Consumer<ConceptDto> consumer) {
+        final String query = String.join(" ", "select concept.concept_cd as " + CONCEPT_CODE + ",",
+                "concept.concept_path as " + CONCEPT_PATH + ",", "concept.name_char as " + CONCEPT_NAME + ",",
+                "concept.sourcesystem_cd as " + CONCEPT_SOURCE, "from concept_dimension concept");
+        this.namedParameterJdbcTemplate.getJdbcTemplate().query(query,
+                (RowCallbackHandler) rs -> consumer.accept(conceptMapper.mapRow(rs, 0)));
+    }
 }
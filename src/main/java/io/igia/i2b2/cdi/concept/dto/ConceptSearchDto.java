@@ -14,6 +14,7 @@
 package io.igia.i2b2.cdi.concept.dto;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 
@@ -25,6 +26,7 @@ public class ConceptSearchDto {
     private PathFilterDto pathFilterDto;
     private PageableDto pageableDto;
     private List<String> conceptPaths = new ArrayList<>();
+    private List<String> codes = new ArrayList<>();
 
     public ConceptSearchDto() {
 
@@ -36,6 +38,7 @@ public class ConceptSearchDto {
         this.pathFilterDto = conceptSearchDto.getPathFilterDto();
         this.pageableDto = conceptSearchDto.getPageableDto();
         this.conceptPaths = conceptSearchDto.getConceptPaths();
+        this.codes = conceptSearchDto.getCodes();
     }
 
     public String getSource() {
@@ -79,12 +82,14 @@ public class ConceptSearchDto {
         if (o == null || getClass() != o.getClass())
             return false;
         ConceptSearchDto that = (ConceptSearchDto) o;
-        return Objects.equals(source, that.source) && Objects.equals(code, that.code);
+        return Objects.equals(source, that.source) && Objects.equals(code, that.code)
+                && Objects.equals(pathFilterDto, that.pathFilterDto) && Objects.equals(pageableDto, that.pageableDto)
+                && Objects.equals(conceptPaths, that.conceptPaths) && Objects.equals(codes, that.codes);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(source, code);
+        return Objects.hash(source, code, pathFilterDto, pageableDto, conceptPaths, codes);
     }
 
     public List<String> getConceptPaths() {
@@ -94,4 +99,13 @@ public class ConceptSearchDto {
     public void setConceptPaths(List<String> conceptPaths) {
         this.conceptPaths = conceptPaths;
     }
+
+    public List<String> getCodes() {
+        return codes;
+    }
+
+    public ConceptSearchDto setCodes(Collection<String> codes) {
+        this.codes = new ArrayList<>(codes);
+        return this;
+    }
 }
@@ -13,6 +13,8 @@
 
 package io.igia.i2b2.cdi.concept.dto;
 
+import java.util.Objects;
+
 import io.igia.i2b2.cdi.common.dto.Operator;
 
 public class PathFilterDto {
@@ -44,4 +46,19 @@ public class PathFilterDto {
     public void setOpertaor(Operator opertaor) {
         this.opertaor = opertaor;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        PathFilterDto that = (PathFilterDto) o;
+        return Objects.equals(path, that.path) && Objects.equals(opertaor, that.opertaor);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, opertaor);
+    }
 }
@@ -0,0 +1,322 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.concept.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.IntPredicate;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import io.igia.i2b2.cdi.common.cache.DimensionCacheManager;
+import io.igia.i2b2.cdi.common.cache.DimensionIndex;
+import io.igia.i2b2.cdi.common.dto.CountMode;
+import io.igia.i2b2.cdi.common.dto.Operator;
+import io.igia.i2b2.cdi.common.dto.PageableDto;
+import io.igia.i2b2.cdi.common.dto.PaginationResult;
+import io.igia.i2b2.cdi.common.dto.SortOrder;
+import io.igia.i2b2.cdi.common.util.PageCursor;
+import io.igia.i2b2.cdi.concept.dao.ConceptDao;
+import io.igia.i2b2.cdi.concept.dto.ConceptDto;
+import io.igia.i2b2.cdi.concept.dto.ConceptSearchDto;
+import io.igia.i2b2.cdi.concept.dto.PathFilterDto;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.ontology.service.OntologyConceptService;
+
+/**
+ * Concept dimension and ontology paths in sorted arrays, so that concept
+ * searches by path are answered with binary searches and scans in memory.
+ * Searches go to the database while the index is not current.
+ */
+@Component
+public class ConceptPathIndex extends DimensionIndex<ConceptPathIndex.Snapshot> {
+    private static final Logger logger = LoggerFactory.getLogger(ConceptPathIndex.class);
+    public static final String CONCEPT_PATH_SORT = "concept_path";
+    private static final String BACK_SLASH = "\\";
+
+    private final ConceptDao conceptDao;
+    private final OntologyConceptService ontologyConceptService;
+
+    @Autowired
+    public ConceptPathIndex(ConceptDao conceptDao, OntologyConceptService ontologyConceptService,
+            DimensionCacheManager dimensionCacheManager, ApplicationProperties applicationProperties) {
+        this(conceptDao, ontologyConceptService, dimensionCacheManager,
+            applicationProperties.isConceptPathIndexEnabled(),
+            applicationProperties.getConceptPathIndexRefreshInterval(), System::nanoTime,
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("concept-path-index-")));
+    }
+
+    ConceptPathIndex(ConceptDao conceptDao, OntologyConceptService ontologyConceptService,
+            DimensionCacheManager dimensionCacheManager, boolean enabled, Duration refreshInterval,
+            LongSupplier ticker, Executor loader) {
+        super(dimensionCacheManager, enabled, refreshInterval, ticker, loader);
+        this.conceptDao = conceptDao;
+        this.ontologyConceptService = ontologyConceptService;
+    }
+
+    /**
+     * @return the ontology levels of the children listed for a concept path, the
+     *         root lists the first two levels.
+     */
+    public static List<Integer> getChildLevels(String conceptPath) {
+        int count = StringUtils.countOccurrencesOf(conceptPath, BACK_SLASH);
+        if (count == 1) {
+            return Arrays.asList(0, 1);
+        }
+        if (count > 1) {
+            return Collections.singletonList(count);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Searches the concepts like {@link ConceptDao#findConcepts(ConceptSearchDto)}
+     * with the total count, with STARTSWITH listing the children of the path.
+     * 
+     * @return the concepts, or empty if the index is not current or cannot sort
+     *         by the requested field.
+     */
+    public Optional<PaginationResult<ConceptDto>> findConcepts(ConceptSearchDto conceptSearchDto) {
+        PageableDto pageableDto = conceptSearchDto.getPageableDto();
+        if (pageableDto != null && !CONCEPT_PATH_SORT.equals(pageableDto.getSortBy())) {
+            return Optional.empty();
+        }
+        Optional<Snapshot> snapshot = getCurrent();
+        if (!snapshot.isPresent()) {
+            return Optional.empty();
+        }
+        Snapshot current = snapshot.get();
+
+        List<Integer> matches = current.find(conceptSearchDto);
+        PaginationResult<ConceptDto> paginationResult = new PaginationResult<>(new ArrayList<>(), matches.size());
+        if (pageableDto != null && pageableDto.getSortOrder() == SortOrder.DESC) {
+            Collections.reverse(matches);
+        }
+        List<Integer> page = getPage(current, matches, pageableDto, paginationResult);
+        page.forEach(index -> paginationResult.getRecords().add(current.copy(index)));
+        return Optional.of(paginationResult);
+    }
+
+    private List<Integer> getPage(Snapshot current, List<Integer> matches, PageableDto pageableDto,
+            PaginationResult<ConceptDto> paginationResult) {
+        if (pageableDto == null) {
+            return matches;
+        }
+        int from = 0;
+        if (pageableDto.getCursor() != null) {
+            if (!pageableDto.getCursor().isEmpty()) {
+                String lastPath = PageCursor.decode(pageableDto.getCursor(), 1).get(0);
+                int comparison = pageableDto.getSortOrder() == SortOrder.DESC ? -1 : 1;
+                while (from < matches.size() && Integer.signum(
+                    current.paths[matches.get(from)].compareTo(lastPath)) != comparison) {
+                    from++;
+                }
+            }
+        } else {
+            from = Math.min((Math.max(pageableDto.getPage(), 1) - 1) * pageableDto.getSize(), matches.size());
+        }
+        List<Integer> page = new ArrayList<>(
+            matches.subList(from, Math.min(from + pageableDto.getFetchSize(), matches.size())));
+
+        if (pageableDto.getCountMode() == CountMode.NONE) {
+            boolean hasMore = page.size() > pageableDto.getSize();
+            if (hasMore) {
+                page.remove(page.size() - 1);
+            }
+            paginationResult.setHasMore(hasMore);
+        }
+        if (pageableDto.getCursor() != null && !page.isEmpty() && page.size() == pageableDto.getSize()
+            && !Boolean.FALSE.equals(paginationResult.getHasMore())) {
+            paginationResult.setNextCursor(PageCursor.encode(
+                Collections.singletonList(current.paths[page.get(page.size() - 1)])));
+        }
+        return page;
+    }
+
+    @Override
+    protected Snapshot build() {
+        List<ConceptDto> concepts = new ArrayList<>();
+        conceptDao.streamConcepts(concepts::add);
+        concepts.sort(Comparator.comparing(ConceptDto::getConceptPath));
+        List<OntologyNode> ontologyNodes = new ArrayList<>();
+        ontologyConceptService.streamOntologyConceptLevels(
+            (fullName, level) -> ontologyNodes.add(new OntologyNode(fullName, level)));
+        ontologyNodes.sort(Comparator.comparing((OntologyNode node) -> node.fullName)
+            .thenComparingInt(node -> node.level));
+        logger.info("Concept path index of {} concepts and {} ontology concepts loaded.", concepts.size(),
+            ontologyNodes.size());
+        return new Snapshot(concepts, ontologyNodes);
+    }
+
+    private static class OntologyNode {
+        private final String fullName;
+        private final int level;
+
+        OntologyNode(String fullName, int level) {
+            this.fullName = fullName;
+            this.level = level;
+        }
+    }
+
+    static class Snapshot {
+        private final String[] paths;
+        private final String[] upperCasePaths;
+        private final String[] codes;
+        private final String[] names;
+        private final String[] sources;
+        private final String[] ontologyPaths;
+        private final int[] ontologyLevels;
+
+        Snapshot(List<ConceptDto> concepts, List<OntologyNode> ontologyNodes) {
+            int size = concepts.size();
+            paths = new String[size];
+            upperCasePaths = new String[size];
+            codes = new String[size];
+            names = new String[size];
+            sources = new String[size];
+            for (int i = 0; i < size; i++) {
+                ConceptDto concept = concepts.get(i);
+                paths[i] = concept.getConceptPath();
+                upperCasePaths[i] = concept.getConceptPath().toUpperCase(Locale.ENGLISH);
+                codes[i] = concept.getCode();
+                names[i] = concept.getName();
+                sources[i] = concept.getSource();
+            }
+            ontologyPaths = new String[ontologyNodes.size()];
+            ontologyLevels = new int[ontologyNodes.size()];
+            for (int i = 0; i < ontologyPaths.length; i++) {
+                ontologyPaths[i] = ontologyNodes.get(i).fullName;
+                ontologyLevels[i] = ontologyNodes.get(i).level;
+            }
+        }
+
+        ConceptDto copy(int index) {
+            ConceptDto concept = new ConceptDto();
+            concept.setConceptPath(paths[index]);
+            concept.setCode(codes[index]);
+            concept.setName(names[index]);
+            concept.setSource(sources[index]);
+            return concept;
+        }
+
+        /**
+         * @return the indexes of the matching concepts in path order.
+         */
+        List<Integer> find(ConceptSearchDto conceptSearchDto) {
+            IntPredicate filter = getFilter(conceptSearchDto);
+            PathFilterDto pathFilterDto = conceptSearchDto.getPathFilterDto();
+            List<Integer> matches = new ArrayList<>();
+            if (pathFilterDto != null && pathFilterDto.getOpertaor() == Operator.STARTSWITH
+                && !StringUtils.isEmpty(pathFilterDto.getPath()) && findChildren(pathFilterDto.getPath(), filter, matches)) {
+                return matches;
+            }
+            IntPredicate pathFilter = getPathFilter(pathFilterDto);
+            for (int i = 0; i < paths.length; i++) {
+                if (pathFilter.test(i) && filter.test(i)) {
+                    matches.add(i);
+                }
+            }
+            return matches;
+        }
+
+        /**
+         * Adds the concepts of the ontology children of the path.
+         * 
+         * @return false if the path has no children in the ontology, then the
+         *         whole subtree of the concept dimension is listed instead.
+         */
+        private boolean findChildren(String path, IntPredicate filter, List<Integer> matches) {
+            List<Integer> levels = getChildLevels(path);
+            boolean found = false;
+            String previous = null;
+            for (int i = lowerBound(ontologyPaths, path); i < ontologyPaths.length
+                && ontologyPaths[i].startsWith(path); i++) {
+                if (levels.contains(ontologyLevels[i]) && !ontologyPaths[i].equals(previous)) {
+                    found = true;
+                    previous = ontologyPaths[i];
+                    int index = Arrays.binarySearch(paths, ontologyPaths[i]);
+                    if (index >= 0 && filter.test(index)) {
+                        matches.add(index);
+                    }
+                }
+            }
+            return found;
+        }
+
+        private static int lowerBound(String[] sortedValues, String value) {
+            int index = Arrays.binarySearch(sortedValues, value);
+            if (index < 0) {
+                return -index - 1;
+            }
+            while (index > 0 && sortedValues[index - 1].equals(value)) {
+                index--;
+            }
+            return index;
+        }
+
+        private IntPredicate getPathFilter(PathFilterDto pathFilterDto) {
+            if (pathFilterDto == null || StringUtils.isEmpty(pathFilterDto.getPath())
+                || pathFilterDto.getOpertaor() == null) {
+                return index -> true;
+            }
+            String path = pathFilterDto.getPath().toUpperCase(Locale.ENGLISH);
+            switch (pathFilterDto.getOpertaor()) {
+            case CONTAINS:
+                return index -> upperCasePaths[index].contains(path);
+            case EQUAL:
+                return index -> upperCasePaths[index].equals(path);
+            case STARTSWITH:
+                return index -> upperCasePaths[index].startsWith(path);
+            default:
+                return index -> upperCasePaths[index].endsWith(path);
+            }
+        }
+
+        private IntPredicate getFilter(ConceptSearchDto conceptSearchDto) {
+            IntPredicate filter = index -> true;
+            String source = conceptSearchDto.getSource();
+            if (!StringUtils.isEmpty(source)) {
+                filter = filter.and(index -> source.equalsIgnoreCase(sources[index]));
+            }
+            String code = conceptSearchDto.getCode();
+            if (!StringUtils.isEmpty(code)) {
+                filter = filter.and(index -> code.equalsIgnoreCase(codes[index]));
+            }
+            if (!conceptSearchDto.getCodes().isEmpty()) {
+                Set<String> upperCaseCodes = conceptSearchDto.getCodes().stream()
+                    .map(value -> value.toUpperCase(Locale.ENGLISH)).collect(Collectors.toSet());
+                filter = filter.and(index -> codes[index] != null
+                    && upperCaseCodes.contains(codes[index].toUpperCase(Locale.ENGLISH)));
+            }
+            return filter;
+        }
+    }
+}
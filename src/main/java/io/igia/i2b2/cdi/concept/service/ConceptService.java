@@ -13,6 +13,7 @@
 
 package io.igia.i2b2.cdi.concept.service;
 
+import java.util.Collection;
 import java.util.List;
 
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
@@ -25,6 +26,12 @@ public interface ConceptService {
 
     List<ConceptDto> getConceptsWithDataType(ConceptSearchDto conceptSearchDto);
 
+    /**
+     * @return the concepts with one of the codes, in one concept and one ontology
+     *         query without counting them.
+     */
+    List<ConceptDto> getConceptsWithDataTypeByCodes(Collection<String> conceptCodes);
+
     void validate(ConceptSearchDto conceptSearchDto);
 
     ConceptDto addConcept(ConceptDto conceptDto);
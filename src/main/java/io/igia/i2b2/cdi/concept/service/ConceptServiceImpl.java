@@ -15,7 +15,7 @@ package io.igia.i2b2.cdi.concept.service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +27,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import io.igia.i2b2.cdi.common.cache.DimensionCacheEvict;
+import io.igia.i2b2.cdi.common.dto.CountMode;
 import io.igia.i2b2.cdi.common.dto.Operator;
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
@@ -52,19 +54,20 @@ public class ConceptServiceImpl implements ConceptService {
     public static final String INVALID_CONCEPT_CODE = "Invalid concept code.";
     private static final String SOURCE = "DEMO";
     private static final String NULL_CONCEPT = "Concept is null.";
-    private static final String BACK_SLASH = "\\";
     protected static final String CONCEPT_PATH = "concept_path";
     protected static final String ID = "id";
     private static final Logger logger = LoggerFactory.getLogger(ConceptServiceImpl.class);
     private final ConceptDao conceptDao;
     private final OntologyConceptService ontologyConceptService;
     private final ConceptUtil conceptUtil;
+    private final ConceptPathIndex conceptPathIndex;
 
     public ConceptServiceImpl(ConceptDao conceptDao, OntologyConceptService ontologyConceptService,
-	    ConceptUtil conceptUtil) {
+	    ConceptUtil conceptUtil, ConceptPathIndex conceptPathIndex) {
 	this.conceptDao = conceptDao;
 	this.ontologyConceptService = ontologyConceptService;
 	this.conceptUtil = conceptUtil;
+	this.conceptPathIndex = conceptPathIndex;
     }
 
     @Override
@@ -80,23 +83,24 @@ public class ConceptServiceImpl implements ConceptService {
             inConceptSearchDto.setPageableDto(pageableDto);
         }
 
+        PaginationResult<ConceptDto> concepts = conceptPathIndex.findConcepts(inConceptSearchDto)
+                .orElseGet(() -> findConcepts(inConceptSearchDto));
+        concepts.setRecords(getConceptDataType(concepts.getRecords()));
+        return concepts;
+    }
+
+    private PaginationResult<ConceptDto> findConcepts(ConceptSearchDto inConceptSearchDto) {
+        PageableDto pageableDto = inConceptSearchDto.getPageableDto();
+
         // Filter concepts by 'STARTSWITH'
         List<String> conceptPaths = new ArrayList<>();
         PathFilterDto pathFilterDto = inConceptSearchDto.getPathFilterDto();
         if (pathFilterDto != null
                 && (pathFilterDto.getOpertaor() != null && pathFilterDto.getOpertaor().equals(Operator.STARTSWITH))) {
             String conceptPath = pathFilterDto.getPath();
-            int count = StringUtils.countOccurrencesOf(conceptPath, BACK_SLASH);
-            List<Integer> levels = new ArrayList<>();
-            if (count == 1) {
-                levels = Arrays.asList(0, 1);
-            }
-            if (count > 1) {
-                levels = Arrays.asList(count);
-            }
             OntologyConceptSearchDto ontologyConceptSearchDto = new OntologyConceptSearchDto();
             ontologyConceptSearchDto.setConceptPath(conceptPath);
-            ontologyConceptSearchDto.setConceptLevels(levels);
+            ontologyConceptSearchDto.setConceptLevels(ConceptPathIndex.getChildLevels(conceptPath));
             List<OntologyConceptDto> ontologyConcepts = ontologyConceptService
                     .getOntologyConceptsByLevel(ontologyConceptSearchDto);
 
@@ -108,8 +112,9 @@ public class ConceptServiceImpl implements ConceptService {
         ConceptSearchDto conceptSearchDto = new ConceptSearchDto(inConceptSearchDto);
         conceptSearchDto.setConceptPaths(conceptPaths);
         PaginationResult<ConceptDto> concepts = conceptDao.findConcepts(conceptSearchDto);
-        concepts.setTotalCount(conceptDao.getTotalCount(conceptSearchDto));
-        concepts.setRecords(getConceptDataType(concepts.getRecords()));
+        if (pageableDto == null || pageableDto.getCountMode() != CountMode.NONE) {
+            concepts.setTotalCount(conceptDao.getTotalCount(conceptSearchDto));
+        }
         return concepts;
     }
 
@@ -165,6 +170,14 @@ public class ConceptServiceImpl implements ConceptService {
 	}
     }
 
+    @Override
+    public List<ConceptDto> getConceptsWithDataTypeByCodes(Collection<String> conceptCodes) {
+        if (conceptCodes.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return getConceptDataType(conceptDao.findConcepts(new ConceptSearchDto().setCodes(conceptCodes)).getRecords());
+    }
+
     public List<ConceptDto> getConceptsWithDataType(ConceptSearchDto conceptSearchDto) {
 	List<ConceptDto> concepts = getConcepts(conceptSearchDto).getRecords();
 
@@ -199,6 +212,7 @@ public class ConceptServiceImpl implements ConceptService {
 
     @Override
     @Transactional(readOnly = false)
+    @DimensionCacheEvict
     public ConceptDto addConcept(ConceptDto conceptDto) {
 	if (conceptDto == null)
 	    throw new I2b2Exception(NULL_CONCEPT);
@@ -230,6 +244,7 @@ public class ConceptServiceImpl implements ConceptService {
 
     @Override
     @Transactional(readOnly = false)
+    @DimensionCacheEvict
     public ConceptDto updateConcept(ConceptDto conceptDto, String existingConceptPath) {
 	if (conceptDto == null)
 	    throw new I2b2Exception(NULL_CONCEPT);
@@ -261,6 +276,7 @@ public class ConceptServiceImpl implements ConceptService {
 
     @Override
     @Transactional(readOnly = false)
+    @DimensionCacheEvict
     public ConceptDto deleteConcept(ConceptDto conceptDto) {
 	if (conceptDto == null)
 	    throw new I2b2Exception(NULL_CONCEPT);
@@ -281,6 +297,7 @@ public class ConceptServiceImpl implements ConceptService {
 
     @Override
     @Transactional(readOnly = false)
+    @DimensionCacheEvict
     public void createConcept(ConceptDto conceptDto) {
 
 	/**
@@ -15,8 +15,14 @@
 
 package io.igia.i2b2.cdi.config;
 
+import java.time.Duration;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobPriority;
+import io.igia.i2b2.cdi.observation.dto.FactSpoolFsyncPolicy;
 
 @ConfigurationProperties(prefix = "application")
 @Component
@@ -28,6 +34,44 @@ public class ApplicationProperties {
     private String patientStatus;
     private String encounterSource;
     private String encounterStatus;
+    private int factBatchSize = 1000;
+    private int factImportQueueCapacity = 4;
+    private String factImportDirectory;
+    private int factImportMaxConcurrent = 2;
+    private int factImportMaxErrors = 1000;
+    private int dimensionCacheMaxSize = 10000;
+    private Duration dimensionCacheTtl = Duration.ofMinutes(10);
+    private int metadataDataTypeCacheSize = 10000;
+    private int derivedConceptJobPoolSize = 4;
+    private Duration derivedConceptJobPollInterval = Duration.ofSeconds(30);
+    private Duration derivedConceptJobLeaseTimeout = Duration.ofMinutes(5);
+    private DerivedConceptJobPriority derivedConceptJobPriority = DerivedConceptJobPriority.TOPOLOGICAL;
+    private Duration derivedConceptGraphTtl = Duration.ofMinutes(10);
+    private int idBlockSize = 100;
+    private Duration instanceNumberCacheTtl = Duration.ofMinutes(10);
+    private int identityMapMaxSize = 100000;
+    private int factExportFetchSize = 1000;
+    private int patientSetCacheMaxSize = 1000;
+    private Duration patientSetCacheTtl = Duration.ofMinutes(10);
+    private boolean conceptPatientIndexEnabled = false;
+    private String conceptPatientIndexFile;
+    private int conceptPatientIndexBuildThreads = 4;
+    private boolean conceptPathIndexEnabled = false;
+    private Duration conceptPathIndexRefreshInterval = Duration.ofMinutes(10);
+    private boolean modifierIndexEnabled = false;
+    private Duration modifierIndexRefreshInterval = Duration.ofMinutes(10);
+    private int bulkLoadThreshold = 1000;
+    private boolean factWriteCoalescingEnabled = false;
+    private int factWriteCoalescingMaxBatchSize = 100;
+    private Duration factWriteCoalescingMaxWait = Duration.ofMillis(5);
+    private Duration factWriteCoalescingTimeout = Duration.ofSeconds(60);
+    private boolean factSpoolEnabled = false;
+    private String factSpoolDirectory = "fact-spool";
+    private String factSpoolId = "default";
+    private DataSize factSpoolSegmentSize = DataSize.ofMegabytes(64);
+    private FactSpoolFsyncPolicy factSpoolFsyncPolicy = FactSpoolFsyncPolicy.INTERVAL;
+    private Duration factSpoolFsyncInterval = Duration.ofSeconds(1);
+    private Duration factSpoolRetryInterval = Duration.ofSeconds(5);
 
     public boolean isLenientValidation() {
         return lenientValidation;
@@ -84,4 +128,308 @@ public class ApplicationProperties {
     public void setEncounterStatus(String encounterStatus) {
         this.encounterStatus = encounterStatus;
     }
+
+    public int getFactBatchSize() {
+        return factBatchSize;
+    }
+
+    public void setFactBatchSize(int factBatchSize) {
+        this.factBatchSize = factBatchSize;
+    }
+
+    public int getFactImportQueueCapacity() {
+        return factImportQueueCapacity;
+    }
+
+    public void setFactImportQueueCapacity(int factImportQueueCapacity) {
+        this.factImportQueueCapacity = factImportQueueCapacity;
+    }
+
+    public String getFactImportDirectory() {
+        return factImportDirectory;
+    }
+
+    public void setFactImportDirectory(String factImportDirectory) {
+        this.factImportDirectory = factImportDirectory;
+    }
+
+    public int getFactImportMaxConcurrent() {
+        return factImportMaxConcurrent;
+    }
+
+    public void setFactImportMaxConcurrent(int factImportMaxConcurrent) {
+        this.factImportMaxConcurrent = factImportMaxConcurrent;
+    }
+
+    public int getFactImportMaxErrors() {
+        return factImportMaxErrors;
+    }
+
+    public void setFactImportMaxErrors(int factImportMaxErrors) {
+        this.factImportMaxErrors = factImportMaxErrors;
+    }
+
+    public int getDimensionCacheMaxSize() {
+        return dimensionCacheMaxSize;
+    }
+
+    public void setDimensionCacheMaxSize(int dimensionCacheMaxSize) {
+        this.dimensionCacheMaxSize = dimensionCacheMaxSize;
+    }
+
+    public Duration getDimensionCacheTtl() {
+        return dimensionCacheTtl;
+    }
+
+    public void setDimensionCacheTtl(Duration dimensionCacheTtl) {
+        this.dimensionCacheTtl = dimensionCacheTtl;
+    }
+
+    public int getMetadataDataTypeCacheSize() {
+        return metadataDataTypeCacheSize;
+    }
+
+    public void setMetadataDataTypeCacheSize(int metadataDataTypeCacheSize) {
+        this.metadataDataTypeCacheSize = metadataDataTypeCacheSize;
+    }
+
+    public int getDerivedConceptJobPoolSize() {
+        return derivedConceptJobPoolSize;
+    }
+
+    public void setDerivedConceptJobPoolSize(int derivedConceptJobPoolSize) {
+        this.derivedConceptJobPoolSize = derivedConceptJobPoolSize;
+    }
+
+    public Duration getDerivedConceptJobPollInterval() {
+        return derivedConceptJobPollInterval;
+    }
+
+    public void setDerivedConceptJobPollInterval(Duration derivedConceptJobPollInterval) {
+        this.derivedConceptJobPollInterval = derivedConceptJobPollInterval;
+    }
+
+    public Duration getDerivedConceptJobLeaseTimeout() {
+        return derivedConceptJobLeaseTimeout;
+    }
+
+    public void setDerivedConceptJobLeaseTimeout(Duration derivedConceptJobLeaseTimeout) {
+        this.derivedConceptJobLeaseTimeout = derivedConceptJobLeaseTimeout;
+    }
+
+    public DerivedConceptJobPriority getDerivedConceptJobPriority() {
+        return derivedConceptJobPriority;
+    }
+
+    public void setDerivedConceptJobPriority(DerivedConceptJobPriority derivedConceptJobPriority) {
+        this.derivedConceptJobPriority = derivedConceptJobPriority;
+    }
+
+    public Duration getDerivedConceptGraphTtl() {
+        return derivedConceptGraphTtl;
+    }
+
+    public void setDerivedConceptGraphTtl(Duration derivedConceptGraphTtl) {
+        this.derivedConceptGraphTtl = derivedConceptGraphTtl;
+    }
+
+    public int getIdBlockSize() {
+        return idBlockSize;
+    }
+
+    public void setIdBlockSize(int idBlockSize) {
+        this.idBlockSize = idBlockSize;
+    }
+
+    public Duration getInstanceNumberCacheTtl() {
+        return instanceNumberCacheTtl;
+    }
+
+    public void setInstanceNumberCacheTtl(Duration instanceNumberCacheTtl) {
+        this.instanceNumberCacheTtl = instanceNumberCacheTtl;
+    }
+
+    public int getIdentityMapMaxSize() {
+        return identityMapMaxSize;
+    }
+
+    public void setIdentityMapMaxSize(int identityMapMaxSize) {
+        this.identityMapMaxSize = identityMapMaxSize;
+    }
+
+    public int getFactExportFetchSize() {
+        return factExportFetchSize;
+    }
+
+    public void setFactExportFetchSize(int factExportFetchSize) {
+        this.factExportFetchSize = factExportFetchSize;
+    }
+
+    public int getPatientSetCacheMaxSize() {
+        return patientSetCacheMaxSize;
+    }
+
+    public void setPatientSetCacheMaxSize(int patientSetCacheMaxSize) {
+        this.patientSetCacheMaxSize = patientSetCacheMaxSize;
+    }
+
+    public Duration getPatientSetCacheTtl() {
+        return patientSetCacheTtl;
+    }
+
+    public void setPatientSetCacheTtl(Duration patientSetCacheTtl) {
+        this.patientSetCacheTtl = patientSetCacheTtl;
+    }
+
+    public boolean isConceptPatientIndexEnabled() {
+        return conceptPatientIndexEnabled;
+    }
+
+    public void setConceptPatientIndexEnabled(boolean conceptPatientIndexEnabled) {
+        this.conceptPatientIndexEnabled = conceptPatientIndexEnabled;
+    }
+
+    public String getConceptPatientIndexFile() {
+        return conceptPatientIndexFile;
+    }
+
+    public void setConceptPatientIndexFile(String conceptPatientIndexFile) {
+        this.conceptPatientIndexFile = conceptPatientIndexFile;
+    }
+
+    public int getConceptPatientIndexBuildThreads() {
+        return conceptPatientIndexBuildThreads;
+    }
+
+    public void setConceptPatientIndexBuildThreads(int conceptPatientIndexBuildThreads) {
+        this.conceptPatientIndexBuildThreads = conceptPatientIndexBuildThreads;
+    }
+
+    public boolean isConceptPathIndexEnabled() {
+        return conceptPathIndexEnabled;
+    }
+
+    public void setConceptPathIndexEnabled(boolean conceptPathIndexEnabled) {
+        this.conceptPathIndexEnabled = conceptPathIndexEnabled;
+    }
+
+    public Duration getConceptPathIndexRefreshInterval() {
+        return conceptPathIndexRefreshInterval;
+    }
+
+    public void setConceptPathIndexRefreshInterval(Duration conceptPathIndexRefreshInterval) {
+        this.conceptPathIndexRefreshInterval = conceptPathIndexRefreshInterval;
+    }
+
+    public boolean isModifierIndexEnabled() {
+        return modifierIndexEnabled;
+    }
+
+    public void setModifierIndexEnabled(boolean modifierIndexEnabled) {
+        this.modifierIndexEnabled = modifierIndexEnabled;
+    }
+
+    public Duration getModifierIndexRefreshInterval() {
+        return modifierIndexRefreshInterval;
+    }
+
+    public void setModifierIndexRefreshInterval(Duration modifierIndexRefreshInterval) {
+        this.modifierIndexRefreshInterval = modifierIndexRefreshInterval;
+    }
+
+    public int getBulkLoadThreshold() {
+        return bulkLoadThreshold;
+    }
+
+    public void setBulkLoadThreshold(int bulkLoadThreshold) {
+        this.bulkLoadThreshold = bulkLoadThreshold;
+    }
+
+    public boolean isFactWriteCoalescingEnabled() {
+        return factWriteCoalescingEnabled;
+    }
+
+    public void setFactWriteCoalescingEnabled(boolean factWriteCoalescingEnabled) {
+        this.factWriteCoalescingEnabled = factWriteCoalescingEnabled;
+    }
+
+    public int getFactWriteCoalescingMaxBatchSize() {
+        return factWriteCoalescingMaxBatchSize;
+    }
+
+    public void setFactWriteCoalescingMaxBatchSize(int factWriteCoalescingMaxBatchSize) {
+        this.factWriteCoalescingMaxBatchSize = factWriteCoalescingMaxBatchSize;
+    }
+
+    public Duration getFactWriteCoalescingMaxWait() {
+        return factWriteCoalescingMaxWait;
+    }
+
+    public void setFactWriteCoalescingMaxWait(Duration factWriteCoalescingMaxWait) {
+        this.factWriteCoalescingMaxWait = factWriteCoalescingMaxWait;
+    }
+
+    public Duration getFactWriteCoalescingTimeout() {
+        return factWriteCoalescingTimeout;
+    }
+
+    public void setFactWriteCoalescingTimeout(Duration factWriteCoalescingTimeout) {
+        this.factWriteCoalescingTimeout = factWriteCoalescingTimeout;
+    }
+
+    public boolean isFactSpoolEnabled() {
+        return factSpoolEnabled;
+    }
+
+    public void setFactSpoolEnabled(boolean factSpoolEnabled) {
+        this.factSpoolEnabled = factSpoolEnabled;
+    }
+
+    public String getFactSpoolDirectory() {
+        return factSpoolDirectory;
+    }
+
+    public void setFactSpoolDirectory(String factSpoolDirectory) {
+        this.factSpoolDirectory = factSpoolDirectory;
+    }
+
+    public String getFactSpoolId() {
+        return factSpoolId;
+    }
+
+    public void setFactSpoolId(String factSpoolId) {
+        this.factSpoolId = factSpoolId;
+    }
+
+    public DataSize getFactSpoolSegmentSize() {
+        return factSpoolSegmentSize;
+    }
+
+    public void setFactSpoolSegmentSize(DataSize factSpoolSegmentSize) {
+        this.factSpoolSegmentSize = factSpoolSegmentSize;
+    }
+
+    public FactSpoolFsyncPolicy getFactSpoolFsyncPolicy() {
+        return factSpoolFsyncPolicy;
+    }
+
+    public void setFactSpoolFsyncPolicy(FactSpoolFsyncPolicy factSpoolFsyncPolicy) {
+        this.factSpoolFsyncPolicy = factSpoolFsyncPolicy;
+    }
+
+    public Duration getFactSpoolFsyncInterval() {
+        return factSpoolFsyncInterval;
+    }
+
+    public void setFactSpoolFsyncInterval(Duration factSpoolFsyncInterval) {
+        this.factSpoolFsyncInterval = factSpoolFsyncInterval;
+    }
+
+    public Duration getFactSpoolRetryInterval() {
+        return factSpoolRetryInterval;
+    }
+
+    public void setFactSpoolRetryInterval(Duration factSpoolRetryInterval) {
+        this.factSpoolRetryInterval = factSpoolRetryInterval;
+    }
 }
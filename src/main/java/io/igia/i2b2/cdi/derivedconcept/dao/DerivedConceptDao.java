@@ -14,7 +14,10 @@
 
 package io.igia.i2b2.cdi.derivedconcept.dao;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptDto;
 
@@ -31,4 +34,8 @@ public interface DerivedConceptDao {
 
     List<DerivedConceptDto> findDerivedConceptsByPaths(List<String> pathList);
 
+    void executeDerivedConceptQuery(String query);
+
+    Map<String, Instant> findLastFactUpdates(Collection<String> conceptPaths, Instant since);
+
 }
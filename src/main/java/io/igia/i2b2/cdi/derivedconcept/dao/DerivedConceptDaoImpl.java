@@ -16,7 +16,11 @@
 package io.igia.i2b2.cdi.derivedconcept.dao;
 
 import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
@@ -47,6 +51,7 @@ public class DerivedConceptDaoImpl implements DerivedConceptDao {
     protected static final String UNIT_CD = "unit";
     protected static final String UPDATED_ON = "updatedOn";
     protected static final String PATH_LIST = "pathList";
+    protected static final String SINCE = "since";
 
     private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     private final DerivedConceptMapper derivedConceptMapper;
@@ -173,4 +178,45 @@ public class DerivedConceptDaoImpl implements DerivedConceptDao {
         return this.namedParameterJdbcTemplate.query(queryParamDto.getQuery(), queryParamDto.getParameterSource(),
                 derivedConceptMapper);
     }
+
+    @Override
+    @Transactional(readOnly = false)
+    public void executeDerivedConceptQuery(String query) {
+        // fact queries are complete scripts that replace the derived facts themselves
+        this.namedParameterJdbcTemplate.getJdbcTemplate().execute(query);
+    }
+
+    /**
+     * Latest update_date of the facts of every concept path, considering only the
+     * facts added or updated after the given instant.
+     */
+    @Override
+    public Map<String, Instant> findLastFactUpdates(Collection<String> conceptPaths, Instant since) {
+        Map<String, Instant> lastFactUpdates = new HashMap<>();
+        if (conceptPaths.isEmpty()) {
+            return lastFactUpdates;
+        }
+
+        QueryParamDto queryParamDto = new QueryParamDto().withQuery(String.join(" ",
+                "select concept.concept_path as " + CONCEPT_PATH + ",",
+                "max(observation.update_date) as " + UPDATED_ON,
+                "from observation_fact observation INNER JOIN concept_dimension concept",
+                "ON observation.concept_cd = concept.concept_cd"));
+
+        queryParamDto.addQueryCriteria("concept.concept_path in (:" + PATH_LIST + ")");
+        queryParamDto.addQueryParameter(PATH_LIST, conceptPaths);
+        if (since != null) {
+            queryParamDto.addQueryCriteria("observation.update_date > :" + SINCE);
+            queryParamDto.addQueryParameter(SINCE, Timestamp.from(since));
+        } else {
+            queryParamDto.addQueryCriteria("observation.update_date is not null");
+        }
+        queryParamDto.appendQuery(" group by concept.concept_path");
+
+        this.namedParameterJdbcTemplate.query(queryParamDto.getQuery(), queryParamDto.getParameterSource(),
+                rs -> {
+                    lastFactUpdates.put(rs.getString(CONCEPT_PATH), rs.getTimestamp(UPDATED_ON).toInstant());
+                });
+        return lastFactUpdates;
+    }
 }
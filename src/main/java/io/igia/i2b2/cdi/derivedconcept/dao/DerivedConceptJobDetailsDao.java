@@ -14,7 +14,9 @@
 
 package io.igia.i2b2.cdi.derivedconcept.dao;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobDetailsDto;
 import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobDetailsSearchDto;
 
@@ -23,4 +25,33 @@ public interface DerivedConceptJobDetailsDao {
 	    DerivedConceptJobDetailsSearchDto derivedConceptJobDetailsSearchDto);
 
     int[] createDerivedConceptJobDetails(List<DerivedConceptJobDetailsDto> jobDetails);
+
+    boolean claimDerivedConceptJob(DerivedConceptJobDetailsDto jobDetail);
+
+    /**
+     * Records the outcome of a job claimed with
+     * {@link #claimDerivedConceptJob(DerivedConceptJobDetailsDto)}, as long as
+     * the job is still PROCESSING under the lease of that claim.
+     *
+     * @return 0 when the lease was lost, e.g. because the job was released and
+     *         claimed again.
+     */
+    int updateDerivedConceptJobDetails(DerivedConceptJobDetailsDto jobDetail);
+
+    void createJobLeaseTableIfNotExists();
+
+    /**
+     * Renews the leases of the given jobs, by the lease token of their claim.
+     *
+     * @return the ids of the jobs whose lease is no longer held by that claim.
+     */
+    List<Integer> renewDerivedConceptJobLeases(Map<Integer, String> leaseTokensByJobId, Instant renewedOn);
+
+    /**
+     * Puts PROCESSING jobs whose lease was last renewed before the given time
+     * back to PENDING.
+     *
+     * @return the number of jobs released.
+     */
+    int releaseExpiredDerivedConceptJobs(Instant expiredBefore);
 }
@@ -17,24 +17,38 @@ package io.igia.i2b2.cdi.derivedconcept.dao;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import io.igia.i2b2.cdi.common.database.DatabaseHelper;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
 import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobDetailsDto;
 import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobDetailsFetchType;
 import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobDetailsSearchDto;
+import io.igia.i2b2.cdi.derivedconcept.dto.Status;
 
 @Repository
 @Transactional(readOnly = true)
 public class DerivedConceptJobDetailsDaoImpl implements DerivedConceptJobDetailsDao {
+    private static final Logger logger = LoggerFactory.getLogger(DerivedConceptJobDetailsDaoImpl.class);
 
     protected static final String ID = "id";
     protected static final String DERIVED_CONCEPT_ID = "derivedConceptId";
@@ -43,13 +57,17 @@ public class DerivedConceptJobDetailsDaoImpl implements DerivedConceptJobDetails
     protected static final String STATUS = "status";
     protected static final String STARTED_ON = "startedOn";
     protected static final String COMPLETED_ON = "completedOn";
+    protected static final String RENEWED_ON = "renewedOn";
+    protected static final String LEASE_TOKEN = "leaseToken";
     private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     private final DerivedConceptJobDetailsMapper derivedConceptJobDetailsMapper;
+    private final DatabaseHelper databaseHelper;
 
     public DerivedConceptJobDetailsDaoImpl(DataSource dataSource,
-	    DerivedConceptJobDetailsMapper derivedConceptJobDetailsMapper) {
+	    DerivedConceptJobDetailsMapper derivedConceptJobDetailsMapper, DatabaseHelper databaseHelper) {
 	this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(new JdbcTemplate(dataSource));
 	this.derivedConceptJobDetailsMapper = derivedConceptJobDetailsMapper;
+	this.databaseHelper = databaseHelper;
     }
 
     @Override
@@ -63,6 +81,8 @@ public class DerivedConceptJobDetailsDaoImpl implements DerivedConceptJobDetails
 		"jobdetails.completed_on as " + COMPLETED_ON, "FROM derived_concept_job_details jobdetails"));
 
 	addDerivedConceptIdCriteria(derivedConceptJobDetailsSearchDto, queryParamDto);
+	// the statuses parameter has to be bound before the latest job subquery refers to it
+	addStatusCriteria(derivedConceptJobDetailsSearchDto, queryParamDto);
 	addDerivedConceptJobDetailsFetchTypeCriteria(derivedConceptJobDetailsSearchDto, queryParamDto);
 
 	return this.namedParameterJdbcTemplate.query(queryParamDto.getQuery(), queryParamDto.getParameterSource(),
@@ -84,8 +104,21 @@ public class DerivedConceptJobDetailsDaoImpl implements DerivedConceptJobDetails
 	if (derivedConceptJobDetailsSearchDto.getDerivedConceptJobDetailsFetchType() != null
 		&& derivedConceptJobDetailsSearchDto.getDerivedConceptJobDetailsFetchType()
 			.equals(DerivedConceptJobDetailsFetchType.LATEST)) {
-	    queryParamDto.addQueryCriteria(
-		    "id in ( select max(id) from derived_concept_job_details group by derived_concept_id )");
+	    // with statuses, the latest job among the jobs in one of those statuses
+	    List<Status> statusList = derivedConceptJobDetailsSearchDto.getStatuses();
+	    queryParamDto.addQueryCriteria(String.join(" ", "id in ( select max(id) from derived_concept_job_details",
+		    statusList != null && !statusList.isEmpty() ? "where status in ( :statuses )" : "",
+		    "group by derived_concept_id )"));
+	}
+    }
+
+    private void addStatusCriteria(DerivedConceptJobDetailsSearchDto derivedConceptJobDetailsSearchDto,
+	    QueryParamDto queryParamDto) {
+	List<Status> statusList = derivedConceptJobDetailsSearchDto.getStatuses();
+	if (statusList != null && !statusList.isEmpty()) {
+	    final String statuses = "statuses";
+	    queryParamDto.addQueryCriteria("status in ( :" + statuses + ")").addQueryParameter(statuses,
+		    statusList.stream().map(String::valueOf).collect(Collectors.toList()));
 	}
     }
 
@@ -111,4 +144,120 @@ public class DerivedConceptJobDetailsDaoImpl implements DerivedConceptJobDetails
                     }
                 });
     }
+
+    @Override
+    @Transactional(readOnly = false)
+    public boolean claimDerivedConceptJob(DerivedConceptJobDetailsDto jobDetail) {
+	// only one worker can move a job out of PENDING
+	final String query = String.join(" ", "UPDATE derived_concept_job_details",
+		"SET status = :" + STATUS + ", started_on = :" + STARTED_ON,
+		"WHERE id = :" + ID + " AND status = :pendingStatus");
+
+	MapSqlParameterSource param = new MapSqlParameterSource();
+	param.addValue(STATUS, String.valueOf(Status.PROCESSING));
+	param.addValue(STARTED_ON, toTimestamp(jobDetail.getStartedOn()));
+	param.addValue(ID, jobDetail.getId());
+	param.addValue("pendingStatus", String.valueOf(Status.PENDING));
+
+	if (namedParameterJdbcTemplate.update(query, param) == 0) {
+	    return false;
+	}
+	// the claim holds as long as the lease is renewed, a lease left by a released job is taken over
+	jobDetail.setLeaseToken(UUID.randomUUID().toString());
+	param.addValue(RENEWED_ON, toTimestamp(jobDetail.getStartedOn()));
+	param.addValue(LEASE_TOKEN, jobDetail.getLeaseToken());
+	namedParameterJdbcTemplate.update("DELETE FROM derived_concept_job_lease WHERE job_id = :" + ID, param);
+	namedParameterJdbcTemplate.update(String.join(" ",
+		"INSERT INTO derived_concept_job_lease (job_id, lease_token, renewed_on)",
+		"VALUES (:" + ID + ", :" + LEASE_TOKEN + ", :" + RENEWED_ON + ")"), param);
+	jobDetail.setStatus(Status.PROCESSING);
+	return true;
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public int updateDerivedConceptJobDetails(DerivedConceptJobDetailsDto jobDetail) {
+	final String query = String.join(" ", "UPDATE derived_concept_job_details",
+		"SET status = :" + STATUS + ", error_stack = :" + ERROR_STACK + ",",
+		"derived_concept_sql = :" + DERIVED_CONCEPT_SQL + ", started_on = :" + STARTED_ON + ",",
+		"completed_on = :" + COMPLETED_ON,
+		// a job released and claimed again belongs to the new claim, a stalled worker must not overwrite it
+		"WHERE id = :" + ID + " AND status = :processingStatus AND id in ( SELECT job_id",
+		"FROM derived_concept_job_lease WHERE job_id = :" + ID + " AND lease_token = :" + LEASE_TOKEN + " )");
+
+	MapSqlParameterSource param = new MapSqlParameterSource();
+	param.addValue(STATUS, String.valueOf(jobDetail.getStatus()));
+	param.addValue(ERROR_STACK, jobDetail.getErrorStack());
+	param.addValue(DERIVED_CONCEPT_SQL, jobDetail.getDerivedConceptSql());
+	param.addValue(STARTED_ON, toTimestamp(jobDetail.getStartedOn()));
+	param.addValue(COMPLETED_ON, toTimestamp(jobDetail.getCompletedOn()));
+	param.addValue(ID, jobDetail.getId());
+	param.addValue("processingStatus", String.valueOf(Status.PROCESSING));
+	param.addValue(LEASE_TOKEN, jobDetail.getLeaseToken());
+	int updated = namedParameterJdbcTemplate.update(query, param);
+	namedParameterJdbcTemplate.update(String.join(" ", "DELETE FROM derived_concept_job_lease",
+		"WHERE job_id = :" + ID + " AND lease_token = :" + LEASE_TOKEN), param);
+	return updated;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void createJobLeaseTableIfNotExists() {
+	try {
+	    namedParameterJdbcTemplate.getJdbcTemplate()
+		    .queryForObject("SELECT count(*) FROM derived_concept_job_lease WHERE 1 = 0", Integer.class);
+	} catch (DataAccessException e) {
+	    logger.info("Creating table derived_concept_job_lease");
+	    namedParameterJdbcTemplate.getJdbcTemplate().execute(
+		    String.join(" ", "CREATE TABLE derived_concept_job_lease (job_id integer not null primary key,",
+			    "lease_token varchar(36) not null,",
+			    "renewed_on " + databaseHelper.getTimestampColumnType() + " not null)"));
+	}
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public List<Integer> renewDerivedConceptJobLeases(Map<Integer, String> leaseTokensByJobId, Instant renewedOn) {
+	List<Integer> jobIds = new ArrayList<>(leaseTokensByJobId.keySet());
+	MapSqlParameterSource[] params = jobIds.stream()
+		.map(jobId -> new MapSqlParameterSource()
+			.addValue(ID, jobId)
+			.addValue(LEASE_TOKEN, leaseTokensByJobId.get(jobId))
+			.addValue(RENEWED_ON, toTimestamp(renewedOn)))
+		.toArray(MapSqlParameterSource[]::new);
+	int[] updateCounts = namedParameterJdbcTemplate.batchUpdate(String.join(" ",
+		"UPDATE derived_concept_job_lease SET renewed_on = :" + RENEWED_ON,
+		"WHERE job_id = :" + ID + " AND lease_token = :" + LEASE_TOKEN), params);
+
+	// drivers that do not report the count of a batched statement answer SUCCESS_NO_INFO, which is kept
+	List<Integer> lostJobIds = new ArrayList<>();
+	for (int index = 0; index < updateCounts.length; index++) {
+	    if (updateCounts[index] == 0) {
+		lostJobIds.add(jobIds.get(index));
+	    }
+	}
+	return lostJobIds;
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public int releaseExpiredDerivedConceptJobs(Instant expiredBefore) {
+	MapSqlParameterSource param = new MapSqlParameterSource();
+	param.addValue(RENEWED_ON, toTimestamp(expiredBefore));
+	param.addValue(STATUS, String.valueOf(Status.PENDING));
+	param.addValue("processingStatus", String.valueOf(Status.PROCESSING));
+	// jobs claimed before leases were kept have none, their start counts as the last renewal
+	int released = namedParameterJdbcTemplate.update(String.join(" ", "UPDATE derived_concept_job_details",
+		"SET status = :" + STATUS + ", started_on = null",
+		"WHERE status = :processingStatus AND (id in ( SELECT job_id FROM derived_concept_job_lease",
+		"WHERE renewed_on < :" + RENEWED_ON + " ) OR (started_on < :" + RENEWED_ON,
+		"AND id not in ( SELECT job_id FROM derived_concept_job_lease )))"), param);
+	namedParameterJdbcTemplate.update("DELETE FROM derived_concept_job_lease WHERE renewed_on < :" + RENEWED_ON,
+		param);
+	return released;
+    }
+
+    private Timestamp toTimestamp(Instant instant) {
+	return instant != null ? Timestamp.from(instant) : null;
+    }
 }
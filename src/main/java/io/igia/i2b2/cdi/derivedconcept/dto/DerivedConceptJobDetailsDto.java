@@ -16,6 +16,8 @@ package io.igia.i2b2.cdi.derivedconcept.dto;
 
 import java.time.Instant;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class DerivedConceptJobDetailsDto {
 
     private Integer id;
@@ -25,6 +27,9 @@ public class DerivedConceptJobDetailsDto {
     private Status status;
     private Instant startedOn;
     private Instant completedOn;
+    // identifies the claim of this instance, a job released and claimed again gets a new one
+    @JsonIgnore
+    private String leaseToken;
 
     public Integer getId() {
 	return id;
@@ -81,4 +86,12 @@ public class DerivedConceptJobDetailsDto {
     public void setCompletedOn(Instant completedOn) {
 	this.completedOn = completedOn;
     }
-}
\ No newline at end of file
+
+    public String getLeaseToken() {
+	return leaseToken;
+    }
+
+    public void setLeaseToken(String leaseToken) {
+	this.leaseToken = leaseToken;
+    }
+}
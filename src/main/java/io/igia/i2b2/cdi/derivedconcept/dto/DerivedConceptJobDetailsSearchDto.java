@@ -20,6 +20,7 @@ public class DerivedConceptJobDetailsSearchDto {
     
     private List<Integer> derivedConceptIds = new ArrayList<>();
     private DerivedConceptJobDetailsFetchType derivedConceptJobDetailsFetchType;
+    private List<Status> statuses = new ArrayList<>();
 
     public List<Integer> getDerivedConceptIds() {
         return derivedConceptIds;
@@ -36,4 +37,12 @@ public class DerivedConceptJobDetailsSearchDto {
     public void setDerivedConceptJobDetailsFetchType(DerivedConceptJobDetailsFetchType derivedConceptJobDetailsFetchType) {
         this.derivedConceptJobDetailsFetchType = derivedConceptJobDetailsFetchType;
     }
-}
\ No newline at end of file
+
+    public List<Status> getStatuses() {
+        return statuses;
+    }
+
+    public void setStatuses(List<Status> statuses) {
+        this.statuses = statuses;
+    }
+}
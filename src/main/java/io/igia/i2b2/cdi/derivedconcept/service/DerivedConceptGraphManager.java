@@ -0,0 +1,127 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.derivedconcept.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.derivedconcept.dao.DerivedConceptDependencyDao;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptDependencyDto;
+import io.igia.i2b2.cdi.derivedconcept.util.DerivedConceptGraph;
+
+/**
+ * Keeps the derived concept dependency graph in memory. It is loaded with one
+ * query and refreshed from the dependency changes of committed transactions;
+ * it is reloaded after the ttl to pick up changes made by other instances.
+ */
+@Component
+public class DerivedConceptGraphManager {
+    private final DerivedConceptDependencyDao derivedConceptDependencyDao;
+    private final long ttlMillis;
+    private final Object lock = new Object();
+    private volatile Snapshot snapshot;
+    // incremented by every applied change, so that a load racing with it is not cached
+    private long generation;
+
+    @Autowired
+    public DerivedConceptGraphManager(DerivedConceptDependencyDao derivedConceptDependencyDao,
+	    ApplicationProperties applicationProperties) {
+	this(derivedConceptDependencyDao, applicationProperties.getDerivedConceptGraphTtl());
+    }
+
+    DerivedConceptGraphManager(DerivedConceptDependencyDao derivedConceptDependencyDao, Duration ttl) {
+	this.derivedConceptDependencyDao = derivedConceptDependencyDao;
+	this.ttlMillis = ttl == null ? 0 : ttl.toMillis();
+    }
+
+    public DerivedConceptGraph getGraph() {
+	Snapshot current = snapshot;
+	if (current != null && System.currentTimeMillis() - current.loadedAt < ttlMillis) {
+	    return current.graph;
+	}
+
+	long loadGeneration;
+	synchronized (lock) {
+	    loadGeneration = generation;
+	}
+	long loadedAt = System.currentTimeMillis();
+	DerivedConceptGraph graph = new DerivedConceptGraph(
+		derivedConceptDependencyDao.getAllDerivedConceptDependencies());
+	// a read-write transaction may see its own uncommitted dependencies
+	if (ttlMillis > 0 && !(TransactionSynchronizationManager.isActualTransactionActive()
+		&& !TransactionSynchronizationManager.isCurrentTransactionReadOnly())) {
+	    synchronized (lock) {
+		if (generation == loadGeneration) {
+		    snapshot = new Snapshot(graph, loadedAt);
+		}
+	    }
+	}
+	return graph;
+    }
+
+    public void addDependencies(Collection<DerivedConceptDependencyDto> dependencies) {
+	applyAfterCommit(graph -> graph.withChanges(dependencies, Collections.emptyList()));
+    }
+
+    public void removeDependencies(Collection<DerivedConceptDependencyDto> dependencies) {
+	applyAfterCommit(graph -> graph.withChanges(Collections.emptyList(), dependencies));
+    }
+
+    public void removeDerivedConcept(Integer derivedConceptId) {
+	applyAfterCommit(graph -> graph.withoutDerivedConcept(derivedConceptId));
+    }
+
+    private void applyAfterCommit(UnaryOperator<DerivedConceptGraph> change) {
+	if (TransactionSynchronizationManager.isSynchronizationActive()) {
+	    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+		@Override
+		public void afterCommit() {
+		    apply(change);
+		}
+	    });
+	} else {
+	    apply(change);
+	}
+    }
+
+    private void apply(UnaryOperator<DerivedConceptGraph> change) {
+	synchronized (lock) {
+	    generation++;
+	    Snapshot current = snapshot;
+	    if (current != null) {
+		// keeps the load time, the ttl still bounds changes made elsewhere
+		snapshot = new Snapshot(change.apply(current.graph), current.loadedAt);
+	    }
+	}
+    }
+
+    private static class Snapshot {
+	private final DerivedConceptGraph graph;
+	private final long loadedAt;
+
+	Snapshot(DerivedConceptGraph graph, long loadedAt) {
+	    this.graph = graph;
+	    this.loadedAt = loadedAt;
+	}
+    }
+}
@@ -0,0 +1,366 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.derivedconcept.service;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import io.igia.i2b2.cdi.common.exception.I2b2Exception;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.derivedconcept.dao.DerivedConceptDao;
+import io.igia.i2b2.cdi.derivedconcept.dao.DerivedConceptJobDetailsDao;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptDto;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobDetailsDto;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobDetailsFetchType;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobPriority;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobDetailsSearchDto;
+import io.igia.i2b2.cdi.derivedconcept.dto.Status;
+import io.igia.i2b2.cdi.derivedconcept.util.DerivedConceptGraph;
+import io.igia.i2b2.cdi.observation.domain.FactsChangedEvent;
+
+/**
+ * Runs PENDING derived concept jobs on a worker pool. A job is started as soon as
+ * no ancestor of its derived concept has a PENDING or PROCESSING job left, so
+ * independent branches of the dependency DAG are calculated concurrently.
+ * Running jobs hold a lease that is renewed while they run. A PROCESSING job
+ * whose lease expired, e.g. because its instance stopped, is run again.
+ */
+@Component
+public class DerivedConceptJobExecutor implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(DerivedConceptJobExecutor.class);
+    public static final String EMPTY_FACT_QUERY_ERROR = "Derived concept has no fact query.";
+    public static final String DEPENDENCY_FAILED_ERROR = "Execution of derived concept is 'FAILED' because a dependency failed: ";
+
+    private final DerivedConceptJobDetailsDao derivedConceptJobDetailsDao;
+    private final DerivedConceptDao derivedConceptDao;
+    private final DerivedConceptGraphManager derivedConceptGraphManager;
+    private final Executor workers;
+    private final int concurrency;
+    private final DerivedConceptJobPriority priority;
+    private final Executor dispatcher;
+    private final Duration pollInterval;
+    private final Duration leaseTimeout;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private ScheduledExecutorService poller;
+
+    // jobs handed to a worker of this instance that have not finished yet
+    private final Set<Integer> submittedJobIds = ConcurrentHashMap.newKeySet();
+    // lease tokens of the claimed jobs among them whose lease this instance still holds
+    private final Map<Integer, String> leaseTokens = new ConcurrentHashMap<>();
+    // concepts whose job failed since the last dispatch
+    private final Set<String> failedConceptPaths = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public DerivedConceptJobExecutor(DerivedConceptJobDetailsDao derivedConceptJobDetailsDao,
+	    DerivedConceptDao derivedConceptDao, DerivedConceptGraphManager derivedConceptGraphManager,
+	    ApplicationProperties applicationProperties, ApplicationEventPublisher applicationEventPublisher) {
+	this(derivedConceptJobDetailsDao, derivedConceptDao, derivedConceptGraphManager,
+		applicationProperties.getDerivedConceptJobPoolSize() > 0
+			? Executors.newFixedThreadPool(applicationProperties.getDerivedConceptJobPoolSize(),
+				new CustomizableThreadFactory("derived-concept-job-"))
+			: null,
+		applicationProperties.getDerivedConceptJobPoolSize(),
+		applicationProperties.getDerivedConceptJobPriority(),
+		Executors.newSingleThreadExecutor(new CustomizableThreadFactory("derived-concept-dispatcher-")),
+		applicationProperties.getDerivedConceptJobPollInterval(),
+		applicationProperties.getDerivedConceptJobLeaseTimeout(), applicationEventPublisher);
+    }
+
+    DerivedConceptJobExecutor(DerivedConceptJobDetailsDao derivedConceptJobDetailsDao,
+	    DerivedConceptDao derivedConceptDao, DerivedConceptGraphManager derivedConceptGraphManager,
+	    Executor workers, int concurrency, DerivedConceptJobPriority priority, Executor dispatcher,
+	    Duration pollInterval, Duration leaseTimeout, ApplicationEventPublisher applicationEventPublisher) {
+	this.derivedConceptJobDetailsDao = derivedConceptJobDetailsDao;
+	this.derivedConceptDao = derivedConceptDao;
+	this.derivedConceptGraphManager = derivedConceptGraphManager;
+	this.workers = workers;
+	this.concurrency = concurrency;
+	this.priority = priority;
+	this.dispatcher = dispatcher;
+	this.pollInterval = pollInterval;
+	this.leaseTimeout = leaseTimeout;
+	this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * Picks up jobs created outside of this instance, e.g. by another instance
+     * or before a restart, and keeps the leases of the running jobs.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startPolling() {
+	if (workers == null) {
+	    return;
+	}
+	derivedConceptJobDetailsDao.createJobLeaseTableIfNotExists();
+	poller = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("derived-concept-poller-"));
+	if (pollInterval != null && !pollInterval.isZero()) {
+	    poller.scheduleWithFixedDelay(this::dispatch, pollInterval.toMillis(), pollInterval.toMillis(),
+		    TimeUnit.MILLISECONDS);
+	}
+	if (leaseTimeout != null && !leaseTimeout.isZero()) {
+	    long renewalInterval = Math.max(1L, leaseTimeout.toMillis() / 3);
+	    poller.scheduleWithFixedDelay(this::renewLeases, 0, renewalInterval, TimeUnit.MILLISECONDS);
+	}
+    }
+
+    /**
+     * Renews the leases of the jobs running on this instance and releases the
+     * PROCESSING jobs nobody renewed within the lease timeout.
+     */
+    void renewLeases() {
+	try {
+	    Instant now = Instant.now();
+	    if (!leaseTokens.isEmpty()) {
+		List<Integer> lostJobIds = derivedConceptJobDetailsDao
+			.renewDerivedConceptJobLeases(new HashMap<>(leaseTokens), now);
+		// the outcome of a job whose lease was lost is not recorded, its new claim runs it again
+		lostJobIds.forEach(jobId -> {
+		    leaseTokens.remove(jobId);
+		    logger.warn("Derived concept job {} lost its lease, it was released while still running.", jobId);
+		});
+	    }
+	    int released = derivedConceptJobDetailsDao.releaseExpiredDerivedConceptJobs(now.minus(leaseTimeout));
+	    if (released > 0) {
+		logger.warn("{} derived concept jobs left PROCESSING by a stopped instance are run again.", released);
+		dispatch();
+	    }
+	} catch (RuntimeException e) {
+	    logger.error("Derived concept job leases could not be renewed.", e);
+	}
+    }
+
+    /**
+     * Dispatches the PENDING jobs, after the current transaction commits if there
+     * is one.
+     */
+    public void dispatch() {
+	if (workers == null) {
+	    return;
+	}
+	if (TransactionSynchronizationManager.isSynchronizationActive()) {
+	    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+		@Override
+		public void afterCommit() {
+		    dispatcher.execute(DerivedConceptJobExecutor.this::dispatchPendingJobs);
+		}
+	    });
+	} else {
+	    dispatcher.execute(this::dispatchPendingJobs);
+	}
+    }
+
+    void dispatchPendingJobs() {
+	try {
+	    DerivedConceptJobDetailsSearchDto searchDto = new DerivedConceptJobDetailsSearchDto();
+	    searchDto.setStatuses(Arrays.asList(Status.PENDING, Status.PROCESSING));
+	    List<DerivedConceptJobDetailsDto> activeJobs = derivedConceptJobDetailsDao
+		    .findDerivedConceptJobDetails(searchDto);
+	    if (activeJobs.stream().noneMatch(job -> job.getStatus() == Status.PENDING)) {
+		failedConceptPaths.clear();
+		return;
+	    }
+
+	    List<DerivedConceptDto> derivedConcepts = derivedConceptDao.findDerivedConcepts();
+	    Map<Integer, DerivedConceptDto> derivedConceptsById = derivedConcepts.stream()
+		    .collect(Collectors.toMap(DerivedConceptDto::getId, Function.identity()));
+	    DerivedConceptGraph graph = derivedConceptGraphManager.getGraph();
+
+	    Set<String> failedPaths = new HashSet<>(failedConceptPaths);
+	    failedConceptPaths.removeAll(failedPaths);
+
+	    // the oldest active job of every concept, later jobs of a concept wait for it
+	    activeJobs.sort(Comparator.comparing(DerivedConceptJobDetailsDto::getId));
+	    Map<String, Integer> activeJobIdsByPath = new HashMap<>();
+	    activeJobs.forEach(job -> {
+		DerivedConceptDto derivedConcept = derivedConceptsById.get(job.getDerivedConceptId());
+		if (derivedConcept != null) {
+		    activeJobIdsByPath.putIfAbsent(derivedConcept.getPath(), job.getId());
+		}
+	    });
+
+	    List<DerivedConceptJobDetailsDto> pendingJobs = activeJobs.stream()
+		    .filter(job -> job.getStatus() == Status.PENDING && !submittedJobIds.contains(job.getId()))
+		    .sorted(getJobComparator(derivedConcepts, derivedConceptsById, graph))
+		    .collect(Collectors.toList());
+	    for (DerivedConceptJobDetailsDto job : pendingJobs) {
+		DerivedConceptDto derivedConcept = derivedConceptsById.get(job.getDerivedConceptId());
+		if (derivedConcept == null) {
+		    failJob(job, DerivedConceptServiceImpl.CONCEPT_NOT_FOUND_ERROR + job.getDerivedConceptId());
+		    continue;
+		}
+		String failedAncestor = graph.findAncestor(derivedConcept.getPath(), failedPaths);
+		if (failedAncestor != null) {
+		    failJob(job, DEPENDENCY_FAILED_ERROR + failedAncestor);
+		    activeJobIdsByPath.remove(derivedConcept.getPath());
+		} else if (submittedJobIds.size() < concurrency
+			&& job.getId().equals(activeJobIdsByPath.get(derivedConcept.getPath()))
+			&& graph.findAncestor(derivedConcept.getPath(), activeJobIdsByPath.keySet()) == null) {
+		    // ready jobs over the limit stay PENDING and are prioritized again on the next dispatch
+		    submittedJobIds.add(job.getId());
+		    workers.execute(() -> runJob(job, derivedConcept));
+		}
+	    }
+	} catch (RuntimeException e) {
+	    logger.error("Derived concept jobs could not be dispatched.", e);
+	}
+    }
+
+    private Comparator<DerivedConceptJobDetailsDto> getJobComparator(List<DerivedConceptDto> derivedConcepts,
+	    Map<Integer, DerivedConceptDto> derivedConceptsById, DerivedConceptGraph graph) {
+	Function<DerivedConceptJobDetailsDto, String> path = job -> {
+	    DerivedConceptDto derivedConcept = derivedConceptsById.get(job.getDerivedConceptId());
+	    return derivedConcept != null ? derivedConcept.getPath() : null;
+	};
+	Comparator<DerivedConceptJobDetailsDto> topologicalOrder = Comparator
+		.comparingInt((DerivedConceptJobDetailsDto job) -> graph.getTopologicalRank(path.apply(job)))
+		.thenComparing(DerivedConceptJobDetailsDto::getId);
+	if (priority != DerivedConceptJobPriority.CRITICAL_PATH) {
+	    return topologicalOrder;
+	}
+
+	// the longest remaining chain of calculations goes first
+	Map<String, Long> durations = getLastDurations(derivedConcepts);
+	Map<String, Long> criticalPathLengths = graph
+		.getCriticalPathLengths(conceptPath -> durations.getOrDefault(conceptPath, 0L));
+	return Comparator.comparingLong((DerivedConceptJobDetailsDto job) -> {
+	    String conceptPath = path.apply(job);
+	    return criticalPathLengths.getOrDefault(conceptPath, durations.getOrDefault(conceptPath, 0L));
+	}).reversed().thenComparing(topologicalOrder);
+    }
+
+    private Map<String, Long> getLastDurations(List<DerivedConceptDto> derivedConcepts) {
+	DerivedConceptJobDetailsSearchDto searchDto = new DerivedConceptJobDetailsSearchDto();
+	searchDto.setStatuses(Arrays.asList(Status.COMPLETED));
+	searchDto.setDerivedConceptJobDetailsFetchType(DerivedConceptJobDetailsFetchType.LATEST);
+	Map<Integer, Long> durationsById = new HashMap<>();
+	derivedConceptJobDetailsDao.findDerivedConceptJobDetails(searchDto).stream()
+		.filter(job -> job.getStartedOn() != null && job.getCompletedOn() != null)
+		.forEach(job -> durationsById.put(job.getDerivedConceptId(),
+			Duration.between(job.getStartedOn(), job.getCompletedOn()).toMillis()));
+
+	// concepts that never ran count as one millisecond, so that longer chains still go first
+	Map<String, Long> durations = new HashMap<>();
+	derivedConcepts.forEach(derivedConcept -> durations.put(derivedConcept.getPath(),
+		Math.max(1L, durationsById.getOrDefault(derivedConcept.getId(), 1L))));
+	return durations;
+    }
+
+    private void runJob(DerivedConceptJobDetailsDto job, DerivedConceptDto derivedConcept) {
+	try {
+	    job.setStartedOn(Instant.now());
+	    if (derivedConceptJobDetailsDao.claimDerivedConceptJob(job)) {
+		leaseTokens.put(job.getId(), job.getLeaseToken());
+		if (executeJob(job, derivedConcept) && job.getStatus() == Status.ERROR) {
+		    failedConceptPaths.add(derivedConcept.getPath());
+		}
+	    }
+	} catch (RuntimeException e) {
+	    logger.error("Derived concept job {} could not be recorded.", job.getId(), e);
+	} finally {
+	    leaseTokens.remove(job.getId());
+	    submittedJobIds.remove(job.getId());
+	    dispatch();
+	}
+    }
+
+    /**
+     * @return whether the outcome of the job was recorded, which fails once its
+     *         lease was lost.
+     */
+    private boolean executeJob(DerivedConceptJobDetailsDto job, DerivedConceptDto derivedConcept) {
+	job.setDerivedConceptSql(derivedConcept.getFactQuery());
+	try {
+	    if (StringUtils.isEmpty(derivedConcept.getFactQuery())) {
+		throw new I2b2Exception(EMPTY_FACT_QUERY_ERROR);
+	    }
+	    derivedConceptDao.executeDerivedConceptQuery(derivedConcept.getFactQuery());
+	    job.setStatus(Status.COMPLETED);
+	    logger.info("Derived concept {} calculated.", derivedConcept.getPath());
+	    applicationEventPublisher
+		    .publishEvent(FactsChangedEvent.replaced(Collections.singleton(derivedConcept.getPath())));
+	} catch (RuntimeException e) {
+	    logger.warn("Derived concept {} could not be calculated.", derivedConcept.getPath(), e);
+	    job.setStatus(Status.ERROR);
+	    job.setErrorStack(getStackTrace(e));
+	}
+	job.setCompletedOn(Instant.now());
+	if (derivedConceptJobDetailsDao.updateDerivedConceptJobDetails(job) == 0) {
+	    logger.warn("Derived concept job {} lost its lease, its outcome {} is not recorded.", job.getId(),
+		    job.getStatus());
+	    return false;
+	}
+	return true;
+    }
+
+    private void failJob(DerivedConceptJobDetailsDto job, String errorStack) {
+	job.setStartedOn(Instant.now());
+	if (derivedConceptJobDetailsDao.claimDerivedConceptJob(job)) {
+	    job.setStatus(Status.ERROR);
+	    job.setErrorStack(errorStack);
+	    job.setCompletedOn(job.getStartedOn());
+	    derivedConceptJobDetailsDao.updateDerivedConceptJobDetails(job);
+	}
+    }
+
+    private static String getStackTrace(Throwable throwable) {
+	StringWriter stackTrace = new StringWriter();
+	throwable.printStackTrace(new PrintWriter(stackTrace));
+	return stackTrace.toString();
+    }
+
+    @Override
+    public void destroy() {
+	if (poller != null) {
+	    poller.shutdownNow();
+	}
+	if (dispatcher instanceof ExecutorService) {
+	    ((ExecutorService) dispatcher).shutdownNow();
+	}
+	if (workers instanceof ExecutorService) {
+	    ((ExecutorService) workers).shutdownNow();
+	}
+    }
+}
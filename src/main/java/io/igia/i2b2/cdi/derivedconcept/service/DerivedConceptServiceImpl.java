@@ -33,6 +33,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import io.igia.i2b2.cdi.common.cache.DimensionCacheEvict;
 import io.igia.i2b2.cdi.common.dto.WarningDto;
 import io.igia.i2b2.cdi.common.exception.I2B2DataNotFoundException;
 import io.igia.i2b2.cdi.common.exception.I2b2Exception;
@@ -56,6 +57,7 @@ import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptTopologicalSortDto;
 import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptType;
 import io.igia.i2b2.cdi.derivedconcept.dto.Status;
 import io.igia.i2b2.cdi.derivedconcept.util.ConceptUtil;
+import io.igia.i2b2.cdi.derivedconcept.util.DerivedConceptGraph;
 import io.igia.i2b2.cdi.derivedconcept.util.DerivedConceptTopologicalSortWrapper;
 import io.igia.i2b2.cdi.ontology.dto.OntologyConceptDto;
 import io.igia.i2b2.cdi.ontology.dto.OntologyConceptSearchDto;
@@ -75,6 +77,8 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
     private final ConceptUtil conceptUtil;
     private final DerivedConceptQueryMasterDao derivedConceptQueryMasterDao;
     private final QueryMasterConfig queryMasterConfig;
+    private final DerivedConceptJobExecutor derivedConceptJobExecutor;
+    private final DerivedConceptGraphManager derivedConceptGraphManager;
 
     public static final Integer STATUS_CODE = 400;
     public static final String CYCLIC_DEPENDENCY_WARNING = "Cyclic dependency detected between concept paths.";
@@ -96,7 +100,8 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 	    ConceptService conceptService, DerivedConceptJobDetailsDao derivedConceptJobDetailsDao,
 	    DerivedConceptDependencyDao derivedConceptDependencyDao,
 	    DerivedConceptTopologicalSortWrapper derivedConceptTopologicalSortWrapper, ConceptUtil conceptUtil,
-	    DerivedConceptQueryMasterDao derivedConceptQueryMasterDao, QueryMasterConfig queryMasterConfig) {
+	    DerivedConceptQueryMasterDao derivedConceptQueryMasterDao, QueryMasterConfig queryMasterConfig,
+	    DerivedConceptJobExecutor derivedConceptJobExecutor, DerivedConceptGraphManager derivedConceptGraphManager) {
 	this.derivedConceptDao = derivedConceptDao;
 	this.ontologyConceptService = ontologyConceptService;
 	this.conceptService = conceptService;
@@ -106,6 +111,8 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 	this.conceptUtil = conceptUtil;
 	this.derivedConceptQueryMasterDao = derivedConceptQueryMasterDao;
 	this.queryMasterConfig = queryMasterConfig;
+	this.derivedConceptJobExecutor = derivedConceptJobExecutor;
+	this.derivedConceptGraphManager = derivedConceptGraphManager;
     }
 
     @Override
@@ -213,6 +220,7 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 
     @Override
     @Transactional(readOnly = false)
+    @DimensionCacheEvict
     public DerivedConceptDto addDerivedConcept(DerivedConceptDto derivedConceptDto) {
 	/**
 	 * Adding Derived fact definition
@@ -308,6 +316,7 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
     private void addDerivedConceptDependencies(List<DerivedConceptDependencyDto> derivedConceptDependencies) {
 	if (derivedConceptDependencies != null && !derivedConceptDependencies.isEmpty()) {
 	    derivedConceptDependencyDao.addDerivedConceptDependency(derivedConceptDependencies);
+	    derivedConceptGraphManager.addDependencies(derivedConceptDependencies);
 	}
     }
 
@@ -337,52 +346,24 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 
     @Override
     public List<Set<DerivedConceptDependencyDto>> getAllDerivedConceptDependencyHierarchy() {
-	List<DerivedConceptDependencyDto> derivedConceptDependencies = derivedConceptDependencyDao
-		.getAllDerivedConceptDependencies();
-	Set<Set<DerivedConceptDependencyDto>> allDependencyHierarchy = new HashSet<>();
-	derivedConceptDependencies.parallelStream().forEach(dependency -> {
-	    List<DerivedConceptDependencyDto> dependencies = new ArrayList<>();
-	    dependencies.add(dependency);
-	    allDependencyHierarchy.add(getDerivedConceptDependencyHierarchy(dependencies));
-	});
-	return new ArrayList<>(allDependencyHierarchy);
+	return derivedConceptGraphManager.getGraph().getDependencyHierarchies();
     }
 
+    /**
+     * Dependency hierarchies of the given dependencies, including the given
+     * dependencies which may not be saved yet.
+     */
     private Set<DerivedConceptDependencyDto> getDerivedConceptDependencyHierarchy(
 	    List<DerivedConceptDependencyDto> derivedConceptDependencies) {
-	Set<String> conceptPath = new HashSet<>();
-
-	derivedConceptDependencies.stream().forEach(dependency -> {
-	    conceptPath.add(dependency.getDerivedConceptPath());
-	    conceptPath.add(dependency.getParentConceptPath());
+	Set<String> conceptPaths = new HashSet<>();
+	derivedConceptDependencies.forEach(dependency -> {
+	    conceptPaths.add(dependency.getDerivedConceptPath());
+	    conceptPaths.add(dependency.getParentConceptPath());
 	});
 
-	List<DerivedConceptDependencyDto> allDerivedConceptDependencies = new ArrayList<>();
-	allDerivedConceptDependencies.addAll(derivedConceptDependencies);
-
-	Set<DerivedConceptDependencyDto> derivedConceptDependencyHierarchy = new HashSet<>();
-	DerivedConceptDependencySearchDto derivedConceptDependencySearchDto;
-	boolean[] dependencyFound = { true };
-	while (dependencyFound[0]) {
-	    dependencyFound[0] = false;
-
-	    derivedConceptDependencySearchDto = new DerivedConceptDependencySearchDto();
-	    derivedConceptDependencySearchDto.setConceptPaths(conceptPath);
-	    List<DerivedConceptDependencyDto> derivedConceptDependenciesByPath = derivedConceptDependencyDao
-		    .getDerivedConceptDependency(derivedConceptDependencySearchDto);
-
-	    allDerivedConceptDependencies.addAll(derivedConceptDependenciesByPath);
-
-	    if (!allDerivedConceptDependencies.isEmpty()) {
-		allDerivedConceptDependencies.forEach(dependency -> {
-		    if (derivedConceptDependencyHierarchy.add(dependency)) {
-			dependencyFound[0] = true;
-			conceptPath.add(dependency.getParentConceptPath());
-			conceptPath.add(dependency.getDerivedConceptPath());
-		    }
-		});
-	    }
-	}
+	Set<DerivedConceptDependencyDto> derivedConceptDependencyHierarchy = derivedConceptGraphManager.getGraph()
+		.getDependencyHierarchy(conceptPaths);
+	derivedConceptDependencyHierarchy.addAll(derivedConceptDependencies);
 	return derivedConceptDependencyHierarchy;
     }
 
@@ -406,6 +387,7 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 
     @Override
     @Transactional(readOnly = false)
+    @DimensionCacheEvict
     public DerivedConceptDto updateDerivedConcept(DerivedConceptDto derivedConceptDto) {
 	/**
 	 * Updating derived concept
@@ -494,11 +476,13 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 	if (!dependenciesToBeDeleted.isEmpty()) {
 	    derivedConceptDependencySearchDto.setParentConceptPaths(dependenciesToBeDeleted);
 	    derivedConceptDependencyDao.deleteDerivedConceptDependencies(derivedConceptDependencySearchDto);
+	    derivedConceptGraphManager.removeDependencies(derivedConceptDependenciesToBeDeleted);
 	}
     }
 
     @Override
     @Transactional(readOnly = false)
+    @DimensionCacheEvict
     public DerivedConceptDto deleteDerivedConcept(DerivedConceptDto derivedConceptDto) {
 	/**
 	 * Delete derived concept
@@ -516,6 +500,7 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 
 	    derivedConceptDto.setUpdatedOn(Instant.now());
 	    derivedConceptDao.deleteDerivedConcept(derivedConceptDto);
+	    derivedConceptGraphManager.removeDerivedConcept(derivedConceptDto.getId());
 
 	    logger.info("Derived concept deleted successfully with Id: {}", derivedConceptDto.getId());
 
@@ -543,12 +528,13 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
     @Override
     public int[] calculateDerivedConcept(Integer derivedConceptId) {
 	List<DerivedConceptJobDetailsDto> jobDetails = new ArrayList<>();
+	DerivedConceptGraph graph = derivedConceptGraphManager.getGraph();
 	/**
 	 * if derivedConceptId is null then, It is global derived concept calculation
 	 */
 	if (derivedConceptId == null) {
 	    final List<DerivedConceptDto> derivedConceptDtos = derivedConceptDao.findDerivedConcepts();
-	    List<Set<DerivedConceptDependencyDto>> dependencyHierarchies = getAllDerivedConceptDependencyHierarchy();
+	    List<Set<DerivedConceptDependencyDto>> dependencyHierarchies = graph.getDependencyHierarchies();
 	    for (Set<DerivedConceptDependencyDto> dependencyHierarchy : dependencyHierarchies) {
 		List<DerivedConceptDto> derivedConcepts = getDerivedConceptsFromDependencyHierarchy(
 			dependencyHierarchy);
@@ -558,10 +544,10 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 			.collect(Collectors.toList());
 		List<DerivedConceptDto> sortedDerivedConcepts = derivedConceptTopologicalSortWrapper
 			.getDerivedConceptTopologicalSequence(derivedConcepts, dependencies);
-		jobDetails.addAll(
-			createDerivedConceptJobDetails(derivedConceptId, derivedConcepts, sortedDerivedConcepts));
+		jobDetails.addAll(createDerivedConceptJobDetails(derivedConceptId, derivedConcepts,
+			sortedDerivedConcepts, graph));
 	    }
-	    jobDetails.addAll(createDerivedConceptJobDetails(null, derivedConceptDtos, derivedConceptDtos));
+	    jobDetails.addAll(createDerivedConceptJobDetails(null, derivedConceptDtos, derivedConceptDtos, graph));
 	} else {
 	    /**
 	     * if derivedConceptId is not null then, It is individual derived concept
@@ -572,11 +558,8 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 		throw new I2b2Exception(CONCEPT_NOT_FOUND_ERROR + derivedConceptId);
 	    }
 	    // Get dependency hierarchy
-	    List<DerivedConceptDependencyDto> dependencyDtos = new ArrayList<>();
-	    DerivedConceptDependencyDto dependencyDto = new DerivedConceptDependencyDto();
-	    dependencyDto.setDerivedConceptPath(derivedConceptDto.getPath());
-	    dependencyDtos.add(dependencyDto);
-	    Set<DerivedConceptDependencyDto> dependencyHierarchy = getDerivedConceptDependencyHierarchy(dependencyDtos);
+	    Set<DerivedConceptDependencyDto> dependencyHierarchy = graph
+		    .getDependencyHierarchy(Collections.singleton(derivedConceptDto.getPath()));
 	    if (!dependencyHierarchy.isEmpty()) {
 		/**
 		 * Get list of derived concepts (unsorted) from dependency hierarchy
@@ -590,7 +573,8 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 		List<DerivedConceptDto> sortedDerivedConcepts = derivedConceptTopologicalSortWrapper
 			.getDerivedConceptTopologicalSequence(derivedConcepts, dependencies);
 		// Create derived concept job details.
-		jobDetails = createDerivedConceptJobDetails(derivedConceptId, derivedConcepts, sortedDerivedConcepts);
+		jobDetails = createDerivedConceptJobDetails(derivedConceptId, derivedConcepts, sortedDerivedConcepts,
+			graph);
 	    } else {
 		/**
 		 * If dependencyDtoList is empty, then that derived concept is a leaf node in
@@ -600,9 +584,12 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 	    }
 	}
 	/**
-	 * Insert into derived_concept_job_details table with 'PENDING' status
+	 * Insert into derived_concept_job_details table with 'PENDING' status and hand
+	 * them to the job executor once committed
 	 */
-	return derivedConceptJobDetailsDao.createDerivedConceptJobDetails(jobDetails);
+	int[] createdJobDetails = derivedConceptJobDetailsDao.createDerivedConceptJobDetails(jobDetails);
+	derivedConceptJobExecutor.dispatch();
+	return createdJobDetails;
     }
 
     /**
@@ -635,55 +622,51 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
     /**
      * Create derived concept job details.
      * 
-     * @param derivedConceptId       - Unique identifier of derived concept that
-     *                               require a calculation.
-     * @param sortedDerivedConcepts  - Sorted list of derived concepts.
-     * @param sortedDerivedConcepts2
+     * @param derivedConceptId      - Unique identifier of derived concept that
+     *                              require a calculation.
+     * @param derivedConcepts       - Derived concepts of the dependency hierarchy.
+     * @param sortedDerivedConcepts - Sorted list of derived concepts.
+     * @param graph                 - Dependency graph of all derived concepts.
      * @return
      */
     private List<DerivedConceptJobDetailsDto> createDerivedConceptJobDetails(Integer derivedConceptId,
-	    List<DerivedConceptDto> derivedConcepts, List<DerivedConceptDto> sortedDerivedConcepts) {
+	    List<DerivedConceptDto> derivedConcepts, List<DerivedConceptDto> sortedDerivedConcepts,
+	    DerivedConceptGraph graph) {
 
 	/**
 	 * If derived concept id is null create job details for all derived concepts. If
-	 * not null then create job details for lower order only.
+	 * not null then create job details for the lower order concepts, the concept
+	 * itself and its descendants only.
 	 */
-	List<Integer> derivedConceptIds = new ArrayList<>();
+	List<DerivedConceptDto> candidateDerivedConcepts = new ArrayList<>();
 	if (derivedConceptId != null) {
-	    // Get latest job details for lower order derived concepts.
+	    Set<String> descendants = Collections.emptySet();
+	    boolean found = false;
 	    for (DerivedConceptDto derivedConceptDto : sortedDerivedConcepts) {
 		if (derivedConceptDto.getId().equals(derivedConceptId)) {
-		    derivedConceptIds.add(derivedConceptDto.getId());
-		    break;
+		    found = true;
+		    descendants = graph.getDescendants(derivedConceptDto.getPath());
+		    candidateDerivedConcepts.add(derivedConceptDto);
+		} else if (!found || descendants.contains(derivedConceptDto.getPath())) {
+		    candidateDerivedConcepts.add(derivedConceptDto);
 		}
-		derivedConceptIds.add(derivedConceptDto.getId());
 	    }
 	} else {
-	    sortedDerivedConcepts.forEach(derivedConceptDto -> derivedConceptIds.add(derivedConceptDto.getId()));
+	    candidateDerivedConcepts.addAll(sortedDerivedConcepts);
 	}
-
-	DerivedConceptJobDetailsSearchDto jobDetailsSearchDto = new DerivedConceptJobDetailsSearchDto();
-	jobDetailsSearchDto.setDerivedConceptJobDetailsFetchType(DerivedConceptJobDetailsFetchType.LATEST);
-	jobDetailsSearchDto.setDerivedConceptIds(derivedConceptIds);
-	List<DerivedConceptJobDetailsDto> latestJobDetails = getDerivedConceptJobDetails(jobDetailsSearchDto);
-
-	// Create a map for latest job details
-	Map<Integer, Instant> derivedConceptIdDateMap = new HashMap<>();
-	latestJobDetails.forEach(
-		jobDetail -> derivedConceptIdDateMap.put(jobDetail.getDerivedConceptId(), jobDetail.getCompletedOn()));
+	Set<String> staleConceptPaths = findStaleConceptPaths(candidateDerivedConcepts, derivedConcepts, graph);
 
 	// Create ids map of sorted derived concepts.
 	Map<Integer, Boolean> sortedDerivedConceptIdMap = new HashMap<>();
 	sortedDerivedConcepts.forEach(derivedConcept -> sortedDerivedConceptIdMap.put(derivedConcept.getId(), true));
 	/**
-	 * Create PENDING job details by comparing last update timestamp of derived
-	 * concept and the last executed Job start timestamp.
+	 * Create PENDING job details for the stale derived concepts, in dependency
+	 * order.
 	 */
 	List<DerivedConceptJobDetailsDto> jobDetails = new ArrayList<>();
 	for (DerivedConceptDto derivedConceptDto : derivedConcepts) {
 	    if (sortedDerivedConceptIdMap.containsKey(derivedConceptDto.getId())) {
-		Instant timestamp = derivedConceptIdDateMap.get(derivedConceptDto.getId());
-		if (timestamp != null && (timestamp.compareTo(derivedConceptDto.getUpdatedOn()) > 0)) {
+		if (!staleConceptPaths.contains(derivedConceptDto.getPath())) {
 		    continue;
 		}
 		DerivedConceptJobDetailsDto jobDetail = createJobDetailsObject(derivedConceptDto.getId(),
@@ -698,6 +681,72 @@ public class DerivedConceptServiceImpl implements DerivedConceptService {
 	return jobDetails;
     }
 
+    /**
+     * A derived concept is stale when it never completed, its definition changed
+     * since, one of its source concepts received facts since, or one of its
+     * derived parents is stale or completed later.
+     * 
+     * @param sortedDerivedConcepts - Candidate derived concepts, sorted.
+     * @param derivedConcepts       - All derived concepts of the hierarchy.
+     * @param graph                 - Dependency graph of all derived concepts.
+     * @return paths of the stale derived concepts.
+     */
+    private Set<String> findStaleConceptPaths(List<DerivedConceptDto> sortedDerivedConcepts,
+	    List<DerivedConceptDto> derivedConcepts, DerivedConceptGraph graph) {
+	Set<String> staleConceptPaths = new HashSet<>();
+	if (sortedDerivedConcepts.isEmpty()) {
+	    return staleConceptPaths;
+	}
+
+	DerivedConceptJobDetailsSearchDto jobDetailsSearchDto = new DerivedConceptJobDetailsSearchDto();
+	jobDetailsSearchDto.setDerivedConceptJobDetailsFetchType(DerivedConceptJobDetailsFetchType.LATEST);
+	jobDetailsSearchDto.setStatuses(Collections.singletonList(Status.COMPLETED));
+	jobDetailsSearchDto.setDerivedConceptIds(
+		derivedConcepts.stream().map(DerivedConceptDto::getId).collect(Collectors.toList()));
+	Map<Integer, Instant> lastCompletedOnById = new HashMap<>();
+	getDerivedConceptJobDetails(jobDetailsSearchDto).stream().filter(jobDetail -> jobDetail.getCompletedOn() != null)
+		.forEach(jobDetail -> lastCompletedOnById.put(jobDetail.getDerivedConceptId(),
+			jobDetail.getCompletedOn()));
+	Map<String, Instant> lastCompletedOnByPath = new HashMap<>();
+	Set<String> derivedConceptPaths = new HashSet<>();
+	derivedConcepts.forEach(derivedConceptDto -> {
+	    derivedConceptPaths.add(derivedConceptDto.getPath());
+	    Instant completedOn = lastCompletedOnById.get(derivedConceptDto.getId());
+	    if (completedOn != null) {
+		lastCompletedOnByPath.put(derivedConceptDto.getPath(), completedOn);
+	    }
+	});
+
+	// facts of source concepts added or updated since the oldest completed calculation
+	Set<String> sourceConceptPaths = new HashSet<>();
+	sortedDerivedConcepts.forEach(derivedConceptDto -> graph.getParents(derivedConceptDto.getPath()).stream()
+		.filter(path -> !derivedConceptPaths.contains(path)).forEach(sourceConceptPaths::add));
+	Map<String, Instant> lastFactUpdates = Collections.emptyMap();
+	Optional<Instant> oldestCompletedOn = sortedDerivedConcepts.stream()
+		.map(derivedConceptDto -> lastCompletedOnByPath.get(derivedConceptDto.getPath()))
+		.filter(completedOn -> completedOn != null).min(Instant::compareTo);
+	if (!sourceConceptPaths.isEmpty() && oldestCompletedOn.isPresent()) {
+	    lastFactUpdates = derivedConceptDao.findLastFactUpdates(sourceConceptPaths, oldestCompletedOn.get());
+	}
+
+	for (DerivedConceptDto derivedConceptDto : sortedDerivedConcepts) {
+	    Instant completedOn = lastCompletedOnByPath.get(derivedConceptDto.getPath());
+	    boolean stale = completedOn == null || derivedConceptDto.getUpdatedOn() == null
+		    || completedOn.compareTo(derivedConceptDto.getUpdatedOn()) <= 0;
+	    for (String parentPath : graph.getParents(derivedConceptDto.getPath())) {
+		Instant parentUpdatedOn = derivedConceptPaths.contains(parentPath)
+			? lastCompletedOnByPath.get(parentPath)
+			: lastFactUpdates.get(parentPath);
+		stale = stale || staleConceptPaths.contains(parentPath)
+			|| (parentUpdatedOn != null && parentUpdatedOn.isAfter(completedOn));
+	    }
+	    if (stale) {
+		staleConceptPaths.add(derivedConceptDto.getPath());
+	    }
+	}
+	return staleConceptPaths;
+    }
+
     /**
      * Prepare derived concept job details object.
      * 
@@ -0,0 +1,305 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.derivedconcept.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.function.ToLongFunction;
+
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptDependencyDto;
+
+/**
+ * Immutable dependency DAG of concept paths, with edges pointing from a parent
+ * concept to the derived concept calculated from it.
+ */
+public class DerivedConceptGraph {
+    public static final int CYCLIC_RANK = Integer.MAX_VALUE;
+
+    private final List<DerivedConceptDependencyDto> dependencies;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final List<String> paths = new ArrayList<>();
+    private final int[][] parents;
+    private final int[][] children;
+    private final int[] topologicalOrder;
+    private final int[] ranks;
+    private final int[] components;
+    private final int componentCount;
+
+    public DerivedConceptGraph(Collection<DerivedConceptDependencyDto> dependencies) {
+	this.dependencies = Collections.unmodifiableList(new ArrayList<>(dependencies));
+	List<int[]> edges = new ArrayList<>(dependencies.size());
+	for (DerivedConceptDependencyDto dependency : this.dependencies) {
+	    edges.add(new int[] { indexOf(dependency.getParentConceptPath()),
+		    indexOf(dependency.getDerivedConceptPath()) });
+	}
+
+	int size = paths.size();
+	int[] parentCounts = new int[size];
+	int[] childCounts = new int[size];
+	for (int[] edge : edges) {
+	    childCounts[edge[0]]++;
+	    parentCounts[edge[1]]++;
+	}
+	parents = new int[size][];
+	children = new int[size][];
+	for (int i = 0; i < size; i++) {
+	    parents[i] = new int[parentCounts[i]];
+	    children[i] = new int[childCounts[i]];
+	}
+	for (int[] edge : edges) {
+	    children[edge[0]][--childCounts[edge[0]]] = edge[1];
+	    parents[edge[1]][--parentCounts[edge[1]]] = edge[0];
+	}
+
+	topologicalOrder = sortTopologically();
+	ranks = new int[size];
+	Arrays.fill(ranks, CYCLIC_RANK);
+	for (int i = 0; i < topologicalOrder.length; i++) {
+	    ranks[topologicalOrder[i]] = i;
+	}
+
+	components = new int[size];
+	Arrays.fill(components, -1);
+	int component = 0;
+	for (int i = 0; i < size; i++) {
+	    if (components[i] == -1) {
+		markComponent(i, component++);
+	    }
+	}
+	componentCount = component;
+    }
+
+    private int indexOf(String path) {
+	return indexes.computeIfAbsent(path, key -> {
+	    paths.add(key);
+	    return paths.size() - 1;
+	});
+    }
+
+    private int[] sortTopologically() {
+	int size = paths.size();
+	int[] inDegrees = new int[size];
+	int[] queue = new int[size];
+	int tail = 0;
+	for (int i = 0; i < size; i++) {
+	    inDegrees[i] = parents[i].length;
+	    if (inDegrees[i] == 0) {
+		queue[tail++] = i;
+	    }
+	}
+	for (int head = 0; head < tail; head++) {
+	    for (int child : children[queue[head]]) {
+		if (--inDegrees[child] == 0) {
+		    queue[tail++] = child;
+		}
+	    }
+	}
+	// concepts on a cycle never reach in-degree 0 and are left out
+	return Arrays.copyOf(queue, tail);
+    }
+
+    private void markComponent(int start, int component) {
+	int[] queue = new int[paths.size()];
+	int tail = 0;
+	components[start] = component;
+	queue[tail++] = start;
+	for (int head = 0; head < tail; head++) {
+	    int node = queue[head];
+	    for (int[] adjacent : new int[][] { parents[node], children[node] }) {
+		for (int next : adjacent) {
+		    if (components[next] == -1) {
+			components[next] = component;
+			queue[tail++] = next;
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Walks the graph breadth first from the path, skipping the path itself.
+     * 
+     * @return the first node accepted by the visitor, or -1.
+     */
+    private int traverse(int start, int[][] adjacency, IntPredicate visitor) {
+	boolean[] visited = new boolean[paths.size()];
+	visited[start] = true;
+	int[] queue = new int[paths.size()];
+	int tail = 0;
+	queue[tail++] = start;
+	for (int head = 0; head < tail; head++) {
+	    for (int next : adjacency[queue[head]]) {
+		if (!visited[next]) {
+		    if (visitor.test(next)) {
+			return next;
+		    }
+		    visited[next] = true;
+		    queue[tail++] = next;
+		}
+	    }
+	}
+	return -1;
+    }
+
+    public List<DerivedConceptDependencyDto> getDependencies() {
+	return dependencies;
+    }
+
+    public boolean contains(String path) {
+	return indexes.containsKey(path);
+    }
+
+    public boolean hasCycle() {
+	return topologicalOrder.length != paths.size();
+    }
+
+    /**
+     * @return the position of the path in a topological order, -1 for paths
+     *         without dependencies and {@link #CYCLIC_RANK} for paths on or below
+     *         a cycle.
+     */
+    public int getTopologicalRank(String path) {
+	Integer index = indexes.get(path);
+	return index == null ? -1 : ranks[index];
+    }
+
+    /**
+     * @return the first ancestor of the path found in the given paths, or null.
+     */
+    public String findAncestor(String path, Collection<String> ancestorPaths) {
+	Integer index = indexes.get(path);
+	if (index == null || ancestorPaths.isEmpty()) {
+	    return null;
+	}
+	int ancestor = traverse(index, parents, node -> ancestorPaths.contains(paths.get(node)));
+	return ancestor == -1 ? null : paths.get(ancestor);
+    }
+
+    public List<String> getParents(String path) {
+	Integer index = indexes.get(path);
+	if (index == null) {
+	    return Collections.emptyList();
+	}
+	List<String> parentPaths = new ArrayList<>(parents[index].length);
+	for (int parent : parents[index]) {
+	    parentPaths.add(paths.get(parent));
+	}
+	return parentPaths;
+    }
+
+    public Set<String> getAncestors(String path) {
+	return collect(path, parents);
+    }
+
+    public Set<String> getDescendants(String path) {
+	return collect(path, children);
+    }
+
+    private Set<String> collect(String path, int[][] adjacency) {
+	Set<String> collected = new LinkedHashSet<>();
+	Integer index = indexes.get(path);
+	if (index != null) {
+	    traverse(index, adjacency, node -> !collected.add(paths.get(node)));
+	}
+	return collected;
+    }
+
+    /**
+     * @return the dependencies of every hierarchy (connected component) one of the
+     *         paths belongs to.
+     */
+    public Set<DerivedConceptDependencyDto> getDependencyHierarchy(Collection<String> conceptPaths) {
+	boolean[] selected = new boolean[componentCount];
+	conceptPaths.forEach(path -> {
+	    Integer index = indexes.get(path);
+	    if (index != null) {
+		selected[components[index]] = true;
+	    }
+	});
+	Set<DerivedConceptDependencyDto> hierarchy = new HashSet<>();
+	for (DerivedConceptDependencyDto dependency : dependencies) {
+	    if (selected[components[indexes.get(dependency.getDerivedConceptPath())]]) {
+		hierarchy.add(dependency);
+	    }
+	}
+	return hierarchy;
+    }
+
+    /**
+     * @return the dependencies of every hierarchy (connected component).
+     */
+    public List<Set<DerivedConceptDependencyDto>> getDependencyHierarchies() {
+	List<Set<DerivedConceptDependencyDto>> hierarchies = new ArrayList<>(componentCount);
+	for (int i = 0; i < componentCount; i++) {
+	    hierarchies.add(new HashSet<>());
+	}
+	for (DerivedConceptDependencyDto dependency : dependencies) {
+	    hierarchies.get(components[indexes.get(dependency.getDerivedConceptPath())]).add(dependency);
+	}
+	return hierarchies;
+    }
+
+    /**
+     * @return a new graph with the dependencies added and removed, without going
+     *         back to the database.
+     */
+    public DerivedConceptGraph withChanges(Collection<DerivedConceptDependencyDto> addedDependencies,
+	    Collection<DerivedConceptDependencyDto> removedDependencies) {
+	Set<DerivedConceptDependencyDto> changedDependencies = new LinkedHashSet<>(dependencies);
+	changedDependencies.removeAll(removedDependencies);
+	changedDependencies.addAll(addedDependencies);
+	return new DerivedConceptGraph(changedDependencies);
+    }
+
+    public DerivedConceptGraph withoutDerivedConcept(Integer derivedConceptId) {
+	List<DerivedConceptDependencyDto> remainingDependencies = new ArrayList<>(dependencies);
+	remainingDependencies.removeIf(dependency -> derivedConceptId.equals(dependency.getDerivedConceptId()));
+	return new DerivedConceptGraph(remainingDependencies);
+    }
+
+    /**
+     * Length of the most expensive chain of concepts starting at every path,
+     * including the cost of the path itself.
+     */
+    public Map<String, Long> getCriticalPathLengths(ToLongFunction<String> cost) {
+	long[] lengths = new long[paths.size()];
+	for (int i = 0; i < lengths.length; i++) {
+	    lengths[i] = cost.applyAsLong(paths.get(i));
+	}
+	for (int i = topologicalOrder.length - 1; i >= 0; i--) {
+	    int node = topologicalOrder[i];
+	    long longestChild = 0;
+	    for (int child : children[node]) {
+		longestChild = Math.max(longestChild, lengths[child]);
+	    }
+	    lengths[node] += longestChild;
+	}
+
+	Map<String, Long> criticalPathLengths = new HashMap<>();
+	for (int i = 0; i < lengths.length; i++) {
+	    criticalPathLengths.put(paths.get(i), lengths[i]);
+	}
+	return criticalPathLengths;
+    }
+}
@@ -21,6 +21,12 @@ import java.util.List;
 
 public interface EncounterDao {
     List<EncounterDto> findEncounters(EncounterSearchDto encounterSearchDto);
+
+    /**
+     * Finds encounters like {@link #findEncounters(EncounterSearchDto)}, with the
+     * patient_ide of each mapping. An encounter_ide is unique per patient only.
+     */
+    List<EncounterDto> findEncounterMappings(EncounterSearchDto encounterSearchDto);
     
     List<EncounterDto> findEncounterByEncounterNum(EncounterSearchDto encounterSearchDto);
 
@@ -29,4 +35,20 @@ public interface EncounterDao {
     int addEncounterMapping(EncounterDto encounterDto);
 
     int addEncounter(EncounterDto encounterDto);
+
+    /**
+     * @return per encounter 1 if its mapping was added, 0 if the encounter is
+     *         mapped already.
+     */
+    int[] addEncounterMappingsIfAbsent(List<EncounterDto> encounterDtos);
+
+    int[] addEncountersIfAbsent(List<EncounterDto> encounterDtos);
+
+    /**
+     * Adds the dimension rows of encounters whose nums were just mapped, bulk
+     * loaded from the bulk load threshold on as no row can have their nums.
+     *
+     * @return per encounter 1 if its row was added.
+     */
+    int[] addNewEncounters(List<EncounterDto> encounterDtos);
 }
@@ -15,8 +15,10 @@
 package io.igia.i2b2.cdi.encounter.dao;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 
@@ -28,7 +30,9 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import io.igia.i2b2.cdi.common.database.BulkLoader;
 import io.igia.i2b2.cdi.common.database.DatabaseHelper;
+import io.igia.i2b2.cdi.common.database.IdAllocator;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
 import io.igia.i2b2.cdi.encounter.dto.EncounterDto;
 import io.igia.i2b2.cdi.encounter.dto.EncounterSearchDto;
@@ -39,24 +43,37 @@ public class EncounterDaoImpl implements EncounterDao {
 
     protected static final String ENCOUNTER_NUM = "encounterNum";
     protected static final String ENCOUNTER_ID = "encounterIde";
+    protected static final String PATIENT_ID = "patientIde";
     private static final String ENCOUNTER_NUM_SEQUENCE = "encounter_mapping_encounter_num_seq";
+    private static final List<String> ENCOUNTER_MAPPING_COLUMNS = Arrays.asList("encounter_ide",
+        "encounter_ide_source", "encounter_ide_status", "encounter_num", "patient_ide", "patient_ide_source",
+        "project_id", "sourcesystem_cd", "update_date");
+    private static final List<String> ENCOUNTER_MAPPING_KEY = Arrays.asList("encounter_ide", "encounter_ide_source",
+        "project_id", "patient_ide", "patient_ide_source");
+    private static final List<String> ENCOUNTER_COLUMNS = Arrays.asList("encounter_num", "patient_num",
+        "sourcesystem_cd", "update_date");
+    private static final List<String> ENCOUNTER_KEY = Arrays.asList("encounter_num", "patient_num");
 
     private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     private final EncounterMapper encounterMapper;
     private final String currentSchema;
+    private final IdAllocator idAllocator;
     private final DatabaseHelper databaseHelper;
+    private final BulkLoader bulkLoader;
 
     public EncounterDaoImpl(NamedParameterJdbcTemplate namedParameterJdbcTemplate, EncounterMapper encounterMapper,
-                            DatabaseHelper databaseHelper) {
+                            IdAllocator idAllocator, DatabaseHelper databaseHelper, BulkLoader bulkLoader) {
         this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
         this.encounterMapper = encounterMapper;
+        this.idAllocator = idAllocator;
         this.databaseHelper = databaseHelper;
+        this.bulkLoader = bulkLoader;
         this.currentSchema = getCurrentSchema(this.namedParameterJdbcTemplate.getJdbcTemplate());
     }
 
     @PostConstruct
     private void init() {
-        databaseHelper.createSequenceIfNotExists(getEncounterNumSequenceName(), findMaxEncounterNum()+1, 1);
+        idAllocator.register(getEncounterNumSequenceName(), findMaxEncounterNum()+1, false);
     }
 
     @Override
@@ -71,12 +88,37 @@ public class EncounterDaoImpl implements EncounterDao {
         addSourceCriteria(encounterSearchDto, queryParamDto);
         addProjectIdCriteria(encounterSearchDto, queryParamDto);
         addEncounterIdCriteria(encounterSearchDto, queryParamDto);
+        addEncounterIdsCriteria(encounterSearchDto, queryParamDto);
         addEncounterNumCriteria(encounterSearchDto, queryParamDto);
+        addEncounterNumsCriteria(encounterSearchDto, queryParamDto);
 
         return this.namedParameterJdbcTemplate.query(
             queryParamDto.getQuery(), queryParamDto.getParameterSource(), encounterMapper);
     }
 
+    @Override
+    public List<EncounterDto> findEncounterMappings(EncounterSearchDto encounterSearchDto) {
+        QueryParamDto queryParamDto = new QueryParamDto()
+            .withQuery(String.join(" ",
+                "select encounter.encounter_num as " + ENCOUNTER_NUM,
+                ", encounter.encounter_ide as " + ENCOUNTER_ID,
+                ", encounter.patient_ide as " + PATIENT_ID,
+                "from encounter_mapping encounter"
+            ));
+
+        addSourceCriteria(encounterSearchDto, queryParamDto);
+        addProjectIdCriteria(encounterSearchDto, queryParamDto);
+        addEncounterIdCriteria(encounterSearchDto, queryParamDto);
+        addEncounterIdsCriteria(encounterSearchDto, queryParamDto);
+
+        return this.namedParameterJdbcTemplate.query(
+            queryParamDto.getQuery(), queryParamDto.getParameterSource(), (resultSet, rowNum) -> {
+                EncounterDto encounter = encounterMapper.mapRow(resultSet, rowNum);
+                encounter.setPatientId(resultSet.getString(PATIENT_ID));
+                return encounter;
+            });
+    }
+
     @Override
     @Transactional(readOnly = false)
     public int addEncounterMapping(EncounterDto encounterDto) {
@@ -135,9 +177,61 @@ public class EncounterDaoImpl implements EncounterDao {
         return namedParameterJdbcTemplate.update(query, parameterSource);
     }
 
+    @Override
+    @Transactional(readOnly = false)
+    public int[] addEncounterMappingsIfAbsent(List<EncounterDto> encounterDtos) {
+        LocalDateTime updateDate = LocalDateTime.now();
+        return namedParameterJdbcTemplate.batchUpdate(
+            databaseHelper.getInsertIfAbsentQuery("encounter_mapping", ENCOUNTER_MAPPING_COLUMNS,
+                ENCOUNTER_MAPPING_KEY),
+            encounterDtos.stream()
+                .map(encounterDto -> new MapSqlParameterSource()
+                    .addValue("encounter_ide", encounterDto.getEncounterId())
+                    .addValue("encounter_ide_source", encounterDto.getEncounterSource())
+                    .addValue("encounter_ide_status", encounterDto.getEncounterStatus())
+                    .addValue("encounter_num", encounterDto.getEncounterNum())
+                    .addValue("patient_ide", encounterDto.getPatientId())
+                    .addValue("patient_ide_source", encounterDto.getPatientSource())
+                    .addValue("project_id", encounterDto.getProjectId())
+                    .addValue("sourcesystem_cd", encounterDto.getSource())
+                    .addValue("update_date", updateDate))
+                .toArray(MapSqlParameterSource[]::new));
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public int[] addEncountersIfAbsent(List<EncounterDto> encounterDtos) {
+        LocalDateTime updateDate = LocalDateTime.now();
+        return namedParameterJdbcTemplate.batchUpdate(
+            databaseHelper.getInsertIfAbsentQuery("visit_dimension", ENCOUNTER_COLUMNS, ENCOUNTER_KEY),
+            encounterDtos.stream()
+                .map(encounterDto -> new MapSqlParameterSource()
+                    .addValue("encounter_num", encounterDto.getEncounterNum())
+                    .addValue("patient_num", encounterDto.getPatientNum())
+                    .addValue("sourcesystem_cd", encounterDto.getSource())
+                    .addValue("update_date", updateDate))
+                .toArray(MapSqlParameterSource[]::new));
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public int[] addNewEncounters(List<EncounterDto> encounterDtos) {
+        if (!bulkLoader.isBulkLoad(encounterDtos.size())) {
+            return addEncountersIfAbsent(encounterDtos);
+        }
+        LocalDateTime updateDate = LocalDateTime.now();
+        int loaded = bulkLoader.load("visit_dimension", ENCOUNTER_COLUMNS, encounterDtos.stream()
+            .map(encounterDto -> new Object[] { encounterDto.getEncounterNum(), encounterDto.getPatientNum(),
+                encounterDto.getSource(), updateDate })
+            .collect(Collectors.toList()));
+        int[] updateCounts = new int[encounterDtos.size()];
+        Arrays.fill(updateCounts, loaded == encounterDtos.size() ? 1 : 0);
+        return updateCounts;
+    }
+
     @Override
     public Integer getNextEncounterNumber() {
-        return databaseHelper.getNextSequenceValue(getEncounterNumSequenceName());
+        return idAllocator.next(getEncounterNumSequenceName());
     }
 
     private Integer findMaxEncounterNum() {
@@ -169,6 +263,17 @@ public class EncounterDaoImpl implements EncounterDao {
         }
     }
     
+    private void addEncounterIdsCriteria(EncounterSearchDto encounterSearchDto, QueryParamDto queryParamDto) {
+        if (!encounterSearchDto.getEncounterIds().isEmpty()) {
+            final String encounterIdsQueryParamName = "encounterIds";
+            queryParamDto
+                .addQueryCriteria("UPPER(encounter.encounter_ide) in (:" + encounterIdsQueryParamName + ")")
+                .addQueryParameter(encounterIdsQueryParamName, encounterSearchDto.getEncounterIds().stream()
+                    .map(encounterId -> encounterId.toUpperCase(Locale.ENGLISH))
+                    .collect(Collectors.toList()));
+        }
+    }
+
     private void addEncounterNumCriteria(EncounterSearchDto encounterSearchDto, QueryParamDto queryParamDto) {
         if (encounterSearchDto.getEncounterNum() != null) {
             queryParamDto.addQueryCriteria("encounter.encounter_num = :" + ENCOUNTER_NUM)
@@ -176,6 +281,15 @@ public class EncounterDaoImpl implements EncounterDao {
         }
     }
 
+    private void addEncounterNumsCriteria(EncounterSearchDto encounterSearchDto, QueryParamDto queryParamDto) {
+        if (!encounterSearchDto.getEncounterNums().isEmpty()) {
+            final String encounterNumsQueryParamName = "encounterNums";
+            queryParamDto
+                .addQueryCriteria("encounter.encounter_num in (:" + encounterNumsQueryParamName + ")")
+                .addQueryParameter(encounterNumsQueryParamName, encounterSearchDto.getEncounterNums());
+        }
+    }
+
     private void addProjectIdCriteria(EncounterSearchDto encounterSearchDto, QueryParamDto queryParamDto) {
         if (!StringUtils.isEmpty(encounterSearchDto.getProjectId())) {
             final String projectQueryParamName = "projectId";
@@ -201,6 +315,7 @@ public class EncounterDaoImpl implements EncounterDao {
                         ", encounter.encounter_ide as " + ENCOUNTER_ID, "from encounter_mapping encounter"));
 
         addEncounterNumCriteria(encounterSearchDto, queryParamDto);
+        addEncounterNumsCriteria(encounterSearchDto, queryParamDto);
 
         return this.namedParameterJdbcTemplate.query(queryParamDto.getQuery(), queryParamDto.getParameterSource(),
                 encounterMapper);
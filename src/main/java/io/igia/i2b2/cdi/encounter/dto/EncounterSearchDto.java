@@ -14,10 +14,16 @@
 
 package io.igia.i2b2.cdi.encounter.dto;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 public class EncounterSearchDto {
 
     private String encounterId;
+    private Set<String> encounterIds = new HashSet<>();
     private Integer encounterNum;
+    private Set<Integer> encounterNums = new HashSet<>();
     private String patientId;
     private String source;
     private String projectId;
@@ -27,10 +33,12 @@ public class EncounterSearchDto {
 
     public EncounterSearchDto(EncounterSearchDto encounterSearchDto) {
         this.encounterId = encounterSearchDto.getEncounterId();
+        this.encounterIds.addAll(encounterSearchDto.getEncounterIds());
         this.patientId = encounterSearchDto.getPatientId();
         this.source = encounterSearchDto.getSource();
         this.projectId = encounterSearchDto.getProjectId();
         this.encounterNum = encounterSearchDto.getEncounterNum();
+        this.encounterNums.addAll(encounterSearchDto.getEncounterNums());
     }
 
     public String getEncounterId() {
@@ -77,4 +85,22 @@ public class EncounterSearchDto {
         this.projectId = projectId;
         return this;
     }
+
+    public Set<String> getEncounterIds() {
+        return encounterIds;
+    }
+
+    public EncounterSearchDto setEncounterIds(Collection<String> encounterIds) {
+        this.encounterIds.addAll(encounterIds);
+        return this;
+    }
+
+    public Set<Integer> getEncounterNums() {
+        return encounterNums;
+    }
+
+    public EncounterSearchDto setEncounterNums(Collection<Integer> encounterNums) {
+        this.encounterNums.addAll(encounterNums);
+        return this;
+    }
 }
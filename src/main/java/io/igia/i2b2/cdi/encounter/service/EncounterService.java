@@ -17,6 +17,7 @@ package io.igia.i2b2.cdi.encounter.service;
 import io.igia.i2b2.cdi.encounter.dto.EncounterDto;
 import io.igia.i2b2.cdi.encounter.dto.EncounterSearchDto;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface EncounterService {
@@ -25,4 +26,14 @@ public interface EncounterService {
     List<EncounterDto> getEncounterByEncounterNum(EncounterSearchDto encounterSearchDto);
 
     EncounterDto addEncounter(EncounterDto encounterDto);
+
+    /**
+     * Maps every encounter id of a patient to its encounter num, adding the
+     * encounters which are not mapped yet. New encounters need the patient id
+     * and num.
+     *
+     * @return one encounter with its patient id per distinct (case insensitive)
+     *         patient id and encounter id.
+     */
+    List<EncounterDto> getOrCreateEncounters(Collection<EncounterDto> encounterDtos);
 }
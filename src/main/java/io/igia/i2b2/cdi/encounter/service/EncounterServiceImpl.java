@@ -15,7 +15,14 @@
 
 package io.igia.i2b2.cdi.encounter.service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -53,7 +60,89 @@ public class EncounterServiceImpl implements EncounterService {
     @Transactional(readOnly = false)
     public EncounterDto addEncounter(EncounterDto inEncounterDto) {
         EncounterDto encounterDto = new EncounterDto(inEncounterDto);
+        populateDefaultValues(encounterDto);
 
+        encounterDto.setEncounterNum(encounterDao.getNextEncounterNumber());
+
+        int updateCount = encounterDao.addEncounterMapping(encounterDto);
+        if (updateCount == 0) {
+            throw new I2b2Exception("Could not add encounter record.");
+        }
+        updateCount = encounterDao.addEncounter(encounterDto);
+        if (updateCount == 0) {
+            throw new I2b2Exception("Could not add encounter record.");
+        }
+        return encounterDto;
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public List<EncounterDto> getOrCreateEncounters(Collection<EncounterDto> encounterDtos) {
+        List<EncounterDto> requestedEncounters = encounterDtos.stream()
+            .filter(encounterDto -> !StringUtils.isEmpty(encounterDto.getEncounterId()))
+            .collect(Collectors.toList());
+        Map<List<String>, EncounterDto> encounters = new LinkedHashMap<>();
+        requestedEncounters.forEach(encounterDto -> encounters.putIfAbsent(toKey(encounterDto), null));
+        if (encounters.isEmpty()) {
+            return new ArrayList<>();
+        }
+        findEncounters(encounters);
+
+        List<EncounterDto> newEncounters = new ArrayList<>();
+        requestedEncounters.forEach(inEncounterDto -> {
+            List<String> key = toKey(inEncounterDto);
+            if (encounters.get(key) == null) {
+                EncounterDto encounterDto = new EncounterDto(inEncounterDto);
+                populateDefaultValues(encounterDto);
+                encounterDto.setEncounterNum(encounterDao.getNextEncounterNumber());
+                encounters.put(key, encounterDto);
+                newEncounters.add(encounterDto);
+            }
+        });
+        if (newEncounters.isEmpty()) {
+            return new ArrayList<>(encounters.values());
+        }
+
+        // an encounter mapped concurrently keeps its num, the num allocated here is left unused
+        int[] updateCounts = encounterDao.addEncounterMappingsIfAbsent(newEncounters);
+        List<EncounterDto> addedEncounters = new ArrayList<>();
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == 0) {
+                encounters.put(toKey(newEncounters.get(i)), null);
+            } else {
+                addedEncounters.add(newEncounters.get(i));
+            }
+        }
+        if (!addedEncounters.isEmpty()) {
+            encounterDao.addNewEncounters(addedEncounters);
+        }
+        if (addedEncounters.size() < newEncounters.size()) {
+            findEncounters(encounters);
+            if (encounters.containsValue(null)) {
+                throw new I2b2Exception("Could not add encounter record.");
+            }
+        }
+        return new ArrayList<>(encounters.values());
+    }
+
+    private void findEncounters(Map<List<String>, EncounterDto> encounters) {
+        List<String> encounterIds = encounters.entrySet().stream()
+            .filter(encounter -> encounter.getValue() == null)
+            .map(encounter -> encounter.getKey().get(1))
+            .distinct()
+            .collect(Collectors.toList());
+        EncounterSearchDto encounterSearchDto = new EncounterSearchDto().setEncounterIds(encounterIds)
+            .setProjectId(applicationProperties.getProjectId());
+        encounterDao.findEncounterMappings(encounterSearchDto)
+            .forEach(encounterDto -> encounters.replace(toKey(encounterDto), null, encounterDto));
+    }
+
+    // an encounter id identifies an encounter of one patient only
+    private List<String> toKey(EncounterDto encounterDto) {
+        return Arrays.asList(toKey(encounterDto.getPatientId()), toKey(encounterDto.getEncounterId()));
+    }
+
+    private void populateDefaultValues(EncounterDto encounterDto) {
         if (StringUtils.isEmpty(encounterDto.getProjectId())) {
             encounterDto.setProjectId(applicationProperties.getProjectId());
         }
@@ -69,18 +158,10 @@ public class EncounterServiceImpl implements EncounterService {
         if (StringUtils.isEmpty(encounterDto.getEncounterStatus())) {
             encounterDto.setEncounterStatus(applicationProperties.getEncounterStatus());
         }
+    }
 
-        encounterDto.setEncounterNum(encounterDao.getNextEncounterNumber());
-
-        int updateCount = encounterDao.addEncounterMapping(encounterDto);
-        if (updateCount == 0) {
-            throw new I2b2Exception("Could not add encounter record.");
-        }
-        updateCount = encounterDao.addEncounter(encounterDto);
-        if (updateCount == 0) {
-            throw new I2b2Exception("Could not add encounter record.");
-        }
-        return encounterDto;
+    private String toKey(String value) {
+        return value == null ? null : value.toUpperCase(Locale.ENGLISH);
     }
 
     @Override
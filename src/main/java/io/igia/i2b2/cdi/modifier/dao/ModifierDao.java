@@ -19,7 +19,13 @@ import io.igia.i2b2.cdi.modifier.dto.ModifierDto;
 import io.igia.i2b2.cdi.modifier.dto.ModifierSearchDto;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface ModifierDao {
     List<ModifierDto> findModifiers(ModifierSearchDto modifierSearchDto);
+
+    /**
+     * Streams every modifier of the modifier dimension, in no particular order.
+     */
+    void streamModifiers(Consumer<ModifierDto> consumer);
 }
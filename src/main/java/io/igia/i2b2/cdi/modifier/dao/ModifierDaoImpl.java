@@ -15,10 +15,12 @@
 
 package io.igia.i2b2.cdi.modifier.dao;
 
+import io.igia.i2b2.cdi.common.cache.DimensionCache;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
 import io.igia.i2b2.cdi.modifier.dto.ModifierDto;
 import io.igia.i2b2.cdi.modifier.dto.ModifierSearchDto;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
@@ -27,6 +29,8 @@ import org.springframework.util.StringUtils;
 import javax.sql.DataSource;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Repository
 @Transactional(readOnly = true)
@@ -46,6 +50,7 @@ public class ModifierDaoImpl implements ModifierDao {
     }
 
     @Override
+    @DimensionCache
     public List<ModifierDto> findModifiers(final ModifierSearchDto modifierSearchDto) {
 
         QueryParamDto queryParamDto = new QueryParamDto()
@@ -87,8 +92,19 @@ public class ModifierDaoImpl implements ModifierDao {
         if (!modifierSearchDto.getModifierCodes().isEmpty()) {
             final String modifierCodeQueryParamName = "modifierCodes";
             queryParamDto
-                .addQueryCriteria("modifier.modifier_cd in (:" + modifierCodeQueryParamName + ")")
-                .addQueryParameter(modifierCodeQueryParamName, modifierSearchDto.getModifierCodes());
+                .addQueryCriteria("UPPER(modifier.modifier_cd) in (:" + modifierCodeQueryParamName + ")")
+                .addQueryParameter(modifierCodeQueryParamName, modifierSearchDto.getModifierCodes().stream()
+                    .map(modifierCode -> modifierCode.toUpperCase(Locale.ENGLISH))
+                    .collect(Collectors.toList()));
         }
     }
+
+    @Override
+    public void streamModifiers(Consumer<ModifierDto> consumer) {
+        final String query = String.join(" ", "select modifier.modifier_cd as " + MODIFIER_CODE + ",",
+            "modifier.modifier_path as " + MODIFIER_PATH + ",", "modifier.name_char as " + MODIFIER_NAME + ",",
+            "modifier.sourcesystem_cd as " + MODIFIER_SOURCE, "from modifier_dimension modifier");
+        this.namedParameterJdbcTemplate.getJdbcTemplate().query(query,
+            (RowCallbackHandler) rs -> consumer.accept(modifierMapper.mapRow(rs, 0)));
+    }
 }
@@ -17,6 +17,7 @@ package io.igia.i2b2.cdi.modifier.dto;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 public class ModifierSearchDto {
@@ -81,4 +82,21 @@ public class ModifierSearchDto {
         this.modifierCodes.add(modifierCode);
         return this;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        ModifierSearchDto that = (ModifierSearchDto) o;
+        return Objects.equals(source, that.source) && Objects.equals(conceptCode, that.conceptCode)
+                && Objects.equals(modifierPaths, that.modifierPaths)
+                && Objects.equals(modifierCodes, that.modifierCodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(source, conceptCode, modifierPaths, modifierCodes);
+    }
 }
@@ -0,0 +1,162 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.modifier.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.igia.i2b2.cdi.common.cache.DimensionCacheManager;
+import io.igia.i2b2.cdi.common.cache.DimensionIndex;
+import io.igia.i2b2.cdi.concept.dto.ConceptDataType;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.modifier.dao.ModifierDao;
+import io.igia.i2b2.cdi.modifier.dto.ModifierDto;
+import io.igia.i2b2.cdi.ontology.dto.OntologyConceptDto;
+import io.igia.i2b2.cdi.ontology.service.OntologyConceptService;
+import io.igia.i2b2.cdi.ontology.service.OntologyConceptServiceImpl;
+
+/**
+ * Modifier applications of the ontology and the modifier dimension in memory,
+ * so that the modifiers applicable to a concept path, with their data types,
+ * are looked up without queries. The modifiers of a concept path are resolved
+ * on first use and kept until the next load.
+ */
+@Component
+public class ModifierApplicabilityIndex extends DimensionIndex<ModifierApplicabilityIndex.Snapshot> {
+    private static final Logger logger = LoggerFactory.getLogger(ModifierApplicabilityIndex.class);
+
+    private final ModifierDao modifierDao;
+    private final OntologyConceptService ontologyConceptService;
+
+    @Autowired
+    public ModifierApplicabilityIndex(ModifierDao modifierDao, OntologyConceptService ontologyConceptService,
+            DimensionCacheManager dimensionCacheManager, ApplicationProperties applicationProperties) {
+        this(modifierDao, ontologyConceptService, dimensionCacheManager,
+            applicationProperties.isModifierIndexEnabled(), applicationProperties.getModifierIndexRefreshInterval(),
+            System::nanoTime, Executors.newSingleThreadExecutor(new CustomizableThreadFactory("modifier-index-")));
+    }
+
+    ModifierApplicabilityIndex(ModifierDao modifierDao, OntologyConceptService ontologyConceptService,
+            DimensionCacheManager dimensionCacheManager, boolean enabled, Duration refreshInterval,
+            LongSupplier ticker, Executor loader) {
+        super(dimensionCacheManager, enabled, refreshInterval, ticker, loader);
+        this.modifierDao = modifierDao;
+        this.ontologyConceptService = ontologyConceptService;
+    }
+
+    /**
+     * @return the modifiers with data type applicable to each concept path, or
+     *         empty if the index is not current.
+     */
+    public Optional<Map<String, List<ModifierDto>>> getModifiers(Collection<String> conceptPaths) {
+        Optional<Snapshot> snapshot = getCurrent();
+        if (!snapshot.isPresent()) {
+            return Optional.empty();
+        }
+        Map<String, List<ModifierDto>> modifiersByConceptPath = new HashMap<>();
+        for (String conceptPath : conceptPaths) {
+            List<ModifierDto> modifiers = new ArrayList<>();
+            snapshot.get().getModifiers(conceptPath).forEach(modifier -> modifiers.add(copy(modifier)));
+            modifiersByConceptPath.put(conceptPath, modifiers);
+        }
+        return Optional.of(modifiersByConceptPath);
+    }
+
+    private static ModifierDto copy(ModifierDto modifier) {
+        ModifierDto modifierDto = new ModifierDto();
+        modifierDto.setModifierPath(modifier.getModifierPath());
+        modifierDto.setCode(modifier.getCode());
+        modifierDto.setName(modifier.getName());
+        modifierDto.setSource(modifier.getSource());
+        modifierDto.setDataType(modifier.getDataType());
+        return modifierDto;
+    }
+
+    @Override
+    protected Snapshot build() {
+        Map<String, List<OntologyConceptDto>> applicationsByAppliedPath = new HashMap<>();
+        Map<String, ConceptDataType> dataTypes = new HashMap<>();
+        ontologyConceptService.streamModifierApplications(application -> {
+            applicationsByAppliedPath.computeIfAbsent(application.getModifierAppliedPath(),
+                appliedPath -> new ArrayList<>()).add(application);
+            // like the modifier lookups, the first ontology concept of a path determines the data type
+            dataTypes.putIfAbsent(application.getFullName(), application.getDataType());
+        });
+        Map<String, ModifierDto> modifiersByPath = new HashMap<>();
+        modifierDao.streamModifiers(modifier -> {
+            ConceptDataType dataType = dataTypes.get(modifier.getModifierPath());
+            modifier.setDataType(dataType != null ? dataType : ConceptDataType.STRING);
+            modifiersByPath.put(modifier.getModifierPath(), modifier);
+        });
+        logger.info("Modifier index of {} modifiers and {} applied paths loaded.", modifiersByPath.size(),
+            applicationsByAppliedPath.size());
+        return new Snapshot(applicationsByAppliedPath, modifiersByPath);
+    }
+
+    static class Snapshot {
+        private final Map<String, List<OntologyConceptDto>> applicationsByAppliedPath;
+        private final Map<String, ModifierDto> modifiersByPath;
+        private final Map<String, List<ModifierDto>> modifiersByConceptPath = new ConcurrentHashMap<>();
+
+        Snapshot(Map<String, List<OntologyConceptDto>> applicationsByAppliedPath,
+                Map<String, ModifierDto> modifiersByPath) {
+            this.applicationsByAppliedPath = applicationsByAppliedPath;
+            this.modifiersByPath = modifiersByPath;
+        }
+
+        List<ModifierDto> getModifiers(String conceptPath) {
+            return modifiersByConceptPath.computeIfAbsent(conceptPath, this::resolve);
+        }
+
+        /**
+         * Applies the modifiers of the concept path and its ancestors, a modifier
+         * excluded on any of them is not applicable.
+         */
+        private List<ModifierDto> resolve(String conceptPath) {
+            Set<String> included = new LinkedHashSet<>();
+            Set<String> excluded = new HashSet<>();
+            for (String appliedPath : OntologyConceptServiceImpl.getModifierAppliedPathsHierarchy(conceptPath)) {
+                applicationsByAppliedPath.getOrDefault(appliedPath, Collections.emptyList())
+                    .forEach(application -> (application.isModifierExcluded() ? excluded : included)
+                        .add(application.getFullName()));
+            }
+            included.removeAll(excluded);
+            List<ModifierDto> modifiers = new ArrayList<>();
+            included.stream().map(modifiersByPath::get).filter(Objects::nonNull)
+                .forEach(modifiers::add);
+            return Collections.unmodifiableList(modifiers);
+        }
+    }
+}
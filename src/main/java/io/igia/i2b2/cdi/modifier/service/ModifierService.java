@@ -14,10 +14,13 @@
 
 package io.igia.i2b2.cdi.modifier.service;
 
+import io.igia.i2b2.cdi.concept.dto.ConceptDto;
 import io.igia.i2b2.cdi.modifier.dto.ModifierDto;
 import io.igia.i2b2.cdi.modifier.dto.ModifierSearchDto;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface ModifierService {
 
@@ -25,5 +28,13 @@ public interface ModifierService {
 
     List<ModifierDto> getModifiersWithDataType(ModifierSearchDto inModifierSearchDto);
 
+    /**
+     * @return the modifiers with the given codes, matched case-insensitively,
+     *         applicable to each concept, by concept code, looked up with one
+     *         query per table for all concepts.
+     */
+    Map<String, List<ModifierDto>> getModifiersWithDataType(Collection<ConceptDto> concepts,
+                                                           Collection<String> modifierCodes);
+
     void validate(ModifierSearchDto modifierSearchDto);
 }
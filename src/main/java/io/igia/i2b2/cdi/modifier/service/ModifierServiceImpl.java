@@ -15,10 +15,15 @@
 package io.igia.i2b2.cdi.modifier.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -48,16 +53,26 @@ public class ModifierServiceImpl implements ModifierService {
     private final ModifierDao modifierDao;
     private final OntologyConceptService ontologyConceptService;
     private final ConceptService conceptService;
+    private final ModifierApplicabilityIndex modifierApplicabilityIndex;
 
     public ModifierServiceImpl(ModifierDao modifierDao, OntologyConceptService ontologyConceptService,
-                               ConceptService conceptService) {
+                               ConceptService conceptService, ModifierApplicabilityIndex modifierApplicabilityIndex) {
         this.modifierDao = modifierDao;
         this.ontologyConceptService = ontologyConceptService;
         this.conceptService = conceptService;
+        this.modifierApplicabilityIndex = modifierApplicabilityIndex;
     }
 
     @Override
     public List<ModifierDto> getModifiers(ModifierSearchDto inModifierSearchDto) {
+        return findModifiers(inModifierSearchDto, false);
+    }
+
+    /**
+     * @param withDataType populates the data types, modifiers of the modifier
+     *                     index have them already.
+     */
+    private List<ModifierDto> findModifiers(ModifierSearchDto inModifierSearchDto, boolean withDataType) {
 
         ModifierSearchDto modifierSearchDto = new ModifierSearchDto(inModifierSearchDto);
 
@@ -70,7 +85,15 @@ public class ModifierServiceImpl implements ModifierService {
                 throw new I2b2DataValidationException("Invalid concept code.");
             }
             logger.info("{} number of concepts matched against concept code : {}", concepts.size(), conceptSearchDto.getCode());
-            
+
+            if (modifierSearchDto.getModifierPaths().isEmpty()) {
+                Optional<Map<String, List<ModifierDto>>> indexedModifiers = modifierApplicabilityIndex.getModifiers(
+                    concepts.stream().map(ConceptDto::getConceptPath).collect(Collectors.toSet()));
+                if (indexedModifiers.isPresent()) {
+                    return filterModifiers(indexedModifiers.get().values(), modifierSearchDto);
+                }
+            }
+
             OntologyConceptSearchDto ontologyConceptSearchDto =
                 new OntologyConceptSearchDto()
                     .setConceptPaths(concepts.stream().map(ConceptDto::getConceptPath).collect(Collectors.toList()))
@@ -86,16 +109,86 @@ public class ModifierServiceImpl implements ModifierService {
                 return new ArrayList<>();
             }
         }
-        return modifierDao.findModifiers(modifierSearchDto);
+        List<ModifierDto> modifiers = modifierDao.findModifiers(modifierSearchDto);
+        if (withDataType) {
+            populateDataType(modifiers);
+        }
+        return modifiers;
+    }
+
+    private List<ModifierDto> filterModifiers(Collection<List<ModifierDto>> modifiersByConcept,
+                                              ModifierSearchDto modifierSearchDto) {
+        Map<String, ModifierDto> modifiersByPath = new LinkedHashMap<>();
+        modifiersByConcept.stream()
+            .flatMap(List::stream)
+            .filter(modifier -> StringUtils.isEmpty(modifierSearchDto.getSource())
+                || modifierSearchDto.getSource().equalsIgnoreCase(modifier.getSource()))
+            .filter(modifier -> modifierSearchDto.getModifierCodes().isEmpty()
+                || modifierSearchDto.getModifierCodes().stream().anyMatch(modifier.getCode()::equalsIgnoreCase))
+            .forEach(modifier -> modifiersByPath.putIfAbsent(modifier.getModifierPath(), modifier));
+        logger.info("{} number of modifiers matched in the modifier index", modifiersByPath.size());
+        return new ArrayList<>(modifiersByPath.values());
     }
 
     @Override
     public List<ModifierDto> getModifiersWithDataType(ModifierSearchDto inModifierSearchDto) {
         ModifierSearchDto modifierSearchDto = new ModifierSearchDto(inModifierSearchDto);
-        List<ModifierDto> modifiers = getModifiers(modifierSearchDto);
+        List<ModifierDto> modifiers = findModifiers(modifierSearchDto, true);
 
         logger.debug("{} number of modifiers matched.", modifiers.size());
+        return modifiers;
+    }
 
+    @Override
+    public Map<String, List<ModifierDto>> getModifiersWithDataType(Collection<ConceptDto> concepts,
+                                                                  Collection<String> modifierCodes) {
+        Map<String, List<ModifierDto>> modifiersByConceptCode = new HashMap<>();
+        if (concepts.isEmpty() || modifierCodes.isEmpty()) {
+            return modifiersByConceptCode;
+        }
+        Set<String> conceptPaths = concepts.stream().map(ConceptDto::getConceptPath).collect(Collectors.toSet());
+        Set<String> modifierKeys = modifierCodes.stream()
+            .map(modifierCode -> modifierCode.toUpperCase(Locale.ENGLISH))
+            .collect(Collectors.toSet());
+        Optional<Map<String, List<ModifierDto>>> indexedModifiers = modifierApplicabilityIndex.getModifiers(conceptPaths);
+        if (indexedModifiers.isPresent()) {
+            for (ConceptDto concept : concepts) {
+                modifiersByConceptCode.computeIfAbsent(concept.getCode(), conceptCode -> new ArrayList<>())
+                    .addAll(indexedModifiers.get().get(concept.getConceptPath()).stream()
+                        .filter(modifier -> modifierKeys.contains(modifier.getCode().toUpperCase(Locale.ENGLISH)))
+                        .collect(Collectors.toList()));
+            }
+            return modifiersByConceptCode;
+        }
+
+        Map<String, Set<String>> modifierPathsByConceptPath = ontologyConceptService.getApplicableModifierPaths(
+            conceptPaths);
+        Set<String> modifierPaths = modifierPathsByConceptPath.values().stream()
+            .flatMap(Set::stream)
+            .collect(Collectors.toSet());
+
+        Map<String, List<ModifierDto>> modifiersByPath = new HashMap<>();
+        if (!modifierPaths.isEmpty()) {
+            List<ModifierDto> modifiers = modifierDao.findModifiers(new ModifierSearchDto()
+                .setModifierPaths(modifierPaths)
+                .setModifierCodes(modifierCodes));
+            logger.debug("{} number of modifiers matched for {} concepts.", modifiers.size(), concepts.size());
+            populateDataType(modifiers);
+            modifiersByPath = modifiers.stream().collect(Collectors.groupingBy(ModifierDto::getModifierPath));
+        }
+
+        for (ConceptDto concept : concepts) {
+            List<ModifierDto> modifiers = modifiersByConceptCode.computeIfAbsent(concept.getCode(),
+                conceptCode -> new ArrayList<>());
+            for (String modifierPath : modifierPathsByConceptPath.getOrDefault(concept.getConceptPath(),
+                Collections.emptySet())) {
+                modifiers.addAll(modifiersByPath.getOrDefault(modifierPath, Collections.emptyList()));
+            }
+        }
+        return modifiersByConceptCode;
+    }
+
+    private void populateDataType(List<ModifierDto> modifiers) {
         OntologyConceptSearchDto ontologyConceptSearchDto = new OntologyConceptSearchDto();
         ontologyConceptSearchDto.setConceptPaths(modifiers.stream()
             .map(ModifierDto::getModifierPath)
@@ -122,7 +215,6 @@ public class ModifierServiceImpl implements ModifierService {
                 modifierDto.setDataType(ontologyConcepts.get(0).getDataType());
             }
         });
-        return modifiers;
     }
 
     @Override
@@ -15,10 +15,20 @@
 
 package io.igia.i2b2.cdi.observation;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import javax.validation.Valid;
 
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -26,16 +36,35 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import io.igia.i2b2.cdi.common.dto.CountMode;
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
 import io.igia.i2b2.cdi.common.dto.SortOrder;
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
 import io.igia.i2b2.cdi.observation.dto.FactDto;
+import io.igia.i2b2.cdi.observation.dto.FactImportFormat;
+import io.igia.i2b2.cdi.observation.dto.FactImportResultDto;
 import io.igia.i2b2.cdi.observation.dto.FactSearchDto;
+import io.igia.i2b2.cdi.observation.service.FactBatchService;
+import io.igia.i2b2.cdi.observation.service.FactCsvWriter;
+import io.igia.i2b2.cdi.observation.service.FactImportService;
+import io.igia.i2b2.cdi.observation.service.FactSpool;
+import io.igia.i2b2.cdi.observation.service.FactWriteCoalescer;
 import io.igia.i2b2.cdi.observation.service.ObservationService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -46,23 +75,149 @@ import io.swagger.annotations.ApiParam;
 @RequestMapping("/api")
 public class FactResource {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    public static final String APPLICATION_ARROW_STREAM_VALUE = "application/vnd.apache.arrow.stream";
+
     private final ObservationService observationService;
+    private final FactBatchService factBatchService;
+    private final FactImportService factImportService;
+    private final FactWriteCoalescer factWriteCoalescer;
+    private final FactSpool factSpool;
+    private final ObjectMapper objectMapper;
 
-    public FactResource(ObservationService observationService) {
+    public FactResource(ObservationService observationService, FactBatchService factBatchService,
+                        FactImportService factImportService, FactWriteCoalescer factWriteCoalescer,
+                        FactSpool factSpool, ObjectMapper objectMapper) {
         this.observationService = observationService;
+        this.factBatchService = factBatchService;
+        this.factImportService = factImportService;
+        this.factWriteCoalescer = factWriteCoalescer;
+        this.factSpool = factSpool;
+        this.objectMapper = objectMapper;
     }
 
-    @ApiOperation(value = "Add fact", notes = "Add fact")
+    @ApiOperation(value = "Add fact", notes = "Add fact. With the fact spool enabled the fact is accepted "
+        + "and added to the database in the background")
     @PostMapping(value = "/facts", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity<FactDto> addFact(
         @Valid @RequestBody FactDto fact) {
-        FactDto result = observationService.addObservation(fact);
+        if (factSpool.isEnabled()) {
+            // spooled facts are added to the database later
+            return ResponseEntity.accepted().body(factSpool.addObservation(fact));
+        }
+        FactDto result = factWriteCoalescer.addObservation(fact);
 
         return ResponseEntity.created(ServletUriComponentsBuilder
             .fromCurrentRequest().build().toUri())
             .body(result);
     }
     
+    @ApiOperation(value = "Add facts in bulk", notes = "Add a JSON array or newline delimited JSON stream of facts")
+    @PostMapping(value = "/facts:batch", consumes = {MediaType.APPLICATION_JSON_UTF8_VALUE, APPLICATION_NDJSON_VALUE},
+        produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<FactBatchResultDto> addFacts(InputStream facts) throws IOException {
+        // facts are read one by one, the array or stream is never held in memory as a whole
+        try (MappingIterator<FactDto> iterator = objectMapper.readerFor(FactDto.class).readValues(facts)) {
+            return ResponseEntity.ok(factBatchService.addFacts(iterator));
+        } catch (JsonProcessingException e) {
+            throw new I2b2DataValidationException("Could not read the facts.");
+        }
+    }
+
+    @ApiOperation(value = "Import facts", notes = "Stream a newline delimited JSON or CSV file of facts. "
+        + "An interrupted import is resumed by passing the returned checkpoint as offset")
+    @PostMapping(value = "/facts:import", params = "!path", consumes = {APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE},
+        produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<FactImportResultDto> importFacts(InputStream facts,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @ApiParam(value = "number of facts to skip") @RequestParam(name = "offset", required = false, defaultValue = "0") long offset) {
+        FactImportFormat format = MediaType.valueOf(TEXT_CSV_VALUE).includes(contentType)
+            ? FactImportFormat.CSV : FactImportFormat.NDJSON;
+        return ResponseEntity.ok(factImportService.importFacts(facts, format, offset));
+    }
+
+    @ApiOperation(value = "Import facts from a file", notes = "Stream a newline delimited JSON or CSV file of facts "
+        + "from the import directory of the server. Files ending with .csv are read as CSV")
+    @PostMapping(value = "/facts:import", params = "path", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<FactImportResultDto> importFacts(
+            @ApiParam(value = "file path relative to the import directory", required = true) @RequestParam(name = "path") String path,
+            @ApiParam(value = "number of facts to skip") @RequestParam(name = "offset", required = false, defaultValue = "0") long offset) {
+        return ResponseEntity.ok(factImportService.importFacts(path, offset));
+    }
+
+    @ApiOperation(value = "Get fact imports", notes = "Get the progress of all running fact imports")
+    @GetMapping(value = "/facts:import", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<List<FactImportResultDto>> getFactImports() {
+        return ResponseEntity.ok(factImportService.getImports());
+    }
+
+    @ApiOperation(value = "Export facts", notes = "Stream all facts as newline delimited JSON or, when text/csv "
+        + "is accepted, as CSV which can be imported again. Modifiers are not exported. When "
+        + APPLICATION_ARROW_STREAM_VALUE + " is accepted the observation_fact rows, modifiers included, are "
+        + "streamed as Apache Arrow IPC stream with dictionary encoded codes")
+    @GetMapping(value = "/facts/export", produces = {APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE,
+        APPLICATION_ARROW_STREAM_VALUE})
+    public ResponseEntity<StreamingResponseBody> exportFacts(
+            @ApiParam(value = "patient ids", required = false) @RequestParam(value = "patientId", required = false) List<String> patientIds,
+            @ApiParam(value = "concept codes", required = false) @RequestParam(value = "conceptCode", required = false) List<String> conceptCodes,
+            @ApiParam(value = "start date from, inclusive", required = false) @RequestParam(value = "startDateFrom", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDateFrom,
+            @ApiParam(value = "start date to, exclusive", required = false) @RequestParam(value = "startDateTo", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDateTo,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        FactSearchDto searchDto = new FactSearchDto();
+        if (patientIds != null) {
+            searchDto.setPatientIds(patientIds);
+        }
+        if (conceptCodes != null) {
+            searchDto.setConceptCodes(conceptCodes);
+        }
+        searchDto.setStartDateFrom(startDateFrom);
+        searchDto.setStartDateTo(startDateTo);
+
+        String contentType = getExportContentType(accept);
+        // the facts are read and written on an async request thread while the response is sent
+        StreamingResponseBody body = outputStream -> {
+            if (APPLICATION_ARROW_STREAM_VALUE.equals(contentType)) {
+                observationService.exportObservationFacts(searchDto, outputStream);
+            } else if (TEXT_CSV_VALUE.equals(contentType)) {
+                FactCsvWriter factCsvWriter = new FactCsvWriter(
+                    new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+                observationService.exportObservations(searchDto, factCsvWriter);
+                factCsvWriter.flush();
+            } else {
+                ObjectWriter writer = objectMapper.writerFor(FactDto.class)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .setRootValueSeparator(null);
+                observationService.exportObservations(searchDto, factDto -> writeLine(writer, generator, factDto));
+                generator.flush();
+            }
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.valueOf(contentType))
+            .body(body);
+    }
+
+    private String getExportContentType(String accept) {
+        List<MediaType> mediaTypes = accept == null ? Collections.emptyList() : MediaType.parseMediaTypes(accept);
+        for (String contentType : Arrays.asList(APPLICATION_ARROW_STREAM_VALUE, TEXT_CSV_VALUE)) {
+            if (mediaTypes.stream().anyMatch(MediaType.valueOf(contentType)::includes)) {
+                return contentType;
+            }
+        }
+        return APPLICATION_NDJSON_VALUE;
+    }
+
+    private void writeLine(ObjectWriter writer, JsonGenerator generator, FactDto factDto) {
+        try {
+            writer.writeValue(generator, factDto);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @ApiOperation(value = "Get facts", notes = "Get all facts by pagination")
     @GetMapping(value = "/facts", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity<List<FactDto>> getFacts(
@@ -72,18 +227,31 @@ public class FactResource {
             @RequestParam(name = "page", required = false) Integer page,
             @RequestParam(name = "size", required = false) Integer size,
             @ApiParam(value = "sort order", required = false) @RequestParam(name = "order", required = false) SortOrder order,
-            @ApiParam(value = "sort field", required = false) @RequestParam(name = "sort", required = false) String sort) {
+            @ApiParam(value = "sort field", required = false) @RequestParam(name = "sort", required = false) String sort,
+            @ApiParam(value = "continuation token, pass an empty value to start cursor pagination", required = false) @RequestParam(name = "cursor", required = false) String cursor,
+            @ApiParam(value = "total count: exact, estimated or none", required = false) @RequestParam(name = "count", required = false) CountMode count) {
         FactSearchDto searchDto = new FactSearchDto();
         searchDto.setPatientId(patientId);
         searchDto.setConceptCode(conceptCode);
         searchDto.setModifierFlag(modifierFlag);
 
         PageableDto pageableDto = new PageableDto(page, size, order, sort);
+        pageableDto.setCursor(cursor);
+        pageableDto.setCountMode(count);
 
         searchDto.setPageableDto(pageableDto);
         PaginationResult<FactDto> facts = observationService.getObservations(searchDto);
         HttpHeaders responseHeaders = new HttpHeaders();
-        responseHeaders.add("X-Total-Count", String.valueOf(facts.getTotalCount()));
+        if (pageableDto.getCountMode() == CountMode.NONE) {
+            responseHeaders.add("X-Has-More", String.valueOf(facts.getHasMore()));
+        } else if (pageableDto.getCountMode() == CountMode.ESTIMATED) {
+            responseHeaders.add("X-Estimated-Total-Count", String.valueOf(facts.getTotalCount()));
+        } else {
+            responseHeaders.add("X-Total-Count", String.valueOf(facts.getTotalCount()));
+        }
+        if (facts.getNextCursor() != null) {
+            responseHeaders.add("X-Next-Cursor", facts.getNextCursor());
+        }
         return new ResponseEntity<>(facts.getRecords(), responseHeaders, HttpStatus.OK);
     }
 }
@@ -0,0 +1,35 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.dao;
+
+public interface FactSpoolDao {
+
+    /**
+     * Creates the table of the spool checkpoints if it does not exist yet.
+     */
+    void createCheckpointTableIfNotExists();
+
+    /**
+     * @return the sequence number of the first spool entry not added to the
+     *         facts yet, 0 for an unknown spool.
+     */
+    long findCheckpoint(String spoolId);
+
+    /**
+     * Saves the checkpoint in the current transaction, so that it is committed
+     * together with the facts of the entries before it.
+     */
+    void saveCheckpoint(String spoolId, long sequence);
+}
@@ -0,0 +1,74 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+@Transactional(readOnly = true)
+public class FactSpoolDaoImpl implements FactSpoolDao {
+
+    private static final Logger logger = LoggerFactory.getLogger(FactSpoolDaoImpl.class);
+    private static final String SPOOL_ID = "spoolId";
+    private static final String SEQUENCE = "sequence";
+
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public FactSpoolDaoImpl(NamedParameterJdbcTemplate namedParameterJdbcTemplate) {
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void createCheckpointTableIfNotExists() {
+        try {
+            namedParameterJdbcTemplate.getJdbcTemplate().queryForObject(
+                "select count(*) from fact_spool_checkpoint where 1 = 0", Integer.class);
+        } catch (DataAccessException e) {
+            logger.info("Creating table fact_spool_checkpoint");
+            namedParameterJdbcTemplate.getJdbcTemplate().execute(
+                "create table fact_spool_checkpoint (spool_id varchar(100) not null primary key, "
+                    + "drained_sequence bigint not null)");
+        }
+    }
+
+    @Override
+    public long findCheckpoint(String spoolId) {
+        return namedParameterJdbcTemplate.queryForList(
+            "select drained_sequence from fact_spool_checkpoint where spool_id = :spoolId",
+            new MapSqlParameterSource(SPOOL_ID, spoolId), Long.class)
+            .stream().findFirst().orElse(0L);
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public void saveCheckpoint(String spoolId, long sequence) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource(SPOOL_ID, spoolId).addValue(SEQUENCE, sequence);
+        int updated = namedParameterJdbcTemplate.update(
+            "update fact_spool_checkpoint set drained_sequence = :sequence where spool_id = :spoolId", parameters);
+        if (updated == 0) {
+            namedParameterJdbcTemplate.update(
+                "insert into fact_spool_checkpoint (spool_id, drained_sequence) values (:spoolId, :sequence)",
+                parameters);
+        }
+    }
+}
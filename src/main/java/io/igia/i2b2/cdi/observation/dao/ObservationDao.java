@@ -16,6 +16,7 @@
 package io.igia.i2b2.cdi.observation.dao;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
 import io.igia.i2b2.cdi.observation.domain.Observation;
@@ -25,7 +26,9 @@ public interface ObservationDao {
 
     int[] add(Observation observation);
 
-    Integer getNextInstanceNumberForObservationFact(FactSearchDto factSearchDto);
+    int[] addAll(List<Observation> observations);
+
+    List<Observation> findMaxInstanceNumbers(FactSearchDto factSearchDto);
 
     Integer getNextNegativeEncounterNumber();
     
@@ -33,5 +36,12 @@ public interface ObservationDao {
     
     List<Observation> findObservationModifiers(FactSearchDto factSearchDto);
 
+    /**
+     * Hands every fact matching the search to the consumer while reading it from
+     * a database cursor, without pagination and without holding the result. The
+     * modifier rows of the facts are included when the modifier flag is set.
+     */
+    void streamObservations(FactSearchDto factSearchDto, int fetchSize, Consumer<Observation> consumer);
+
     int getTotalCount(FactSearchDto searchDto);
 }
@@ -13,28 +13,42 @@
 
 package io.igia.i2b2.cdi.observation.dao;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 import javax.sql.DataSource;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import io.igia.i2b2.cdi.common.cache.RequestCache;
+import io.igia.i2b2.cdi.common.database.BulkLoader;
 import io.igia.i2b2.cdi.common.database.DatabaseHelper;
+import io.igia.i2b2.cdi.common.database.IdAllocator;
+import io.igia.i2b2.cdi.common.dto.CountMode;
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.PaginationQueryParamName;
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
+import io.igia.i2b2.cdi.common.dto.SeekDto;
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.common.util.PageCursor;
+import io.igia.i2b2.cdi.observation.domain.FactsChangedEvent;
 import io.igia.i2b2.cdi.observation.domain.Observation;
 import io.igia.i2b2.cdi.observation.domain.ObservationModifier;
 import io.igia.i2b2.cdi.observation.dto.FactSearchDto;
@@ -47,7 +61,10 @@ public class ObservationDaoImpl implements ObservationDao {
     private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     private final String currentSchema;
     private final DatabaseHelper databaseHelper;
+    private final IdAllocator idAllocator;
+    private final BulkLoader bulkLoader;
     private final ObservationMapper observationMapper;
+    private final ApplicationEventPublisher applicationEventPublisher;
     protected static final String ENCOUNTER_NUM = "encounterNum";
     protected static final String PATIENT_NUM = "patientNum";
     protected static final String CONCEPT_CODE = "conceptCode";
@@ -64,124 +81,152 @@ public class ObservationDaoImpl implements ObservationDao {
     protected static final String SOURCE_SYSTEM_CODE = "sourceSystemCode";
     protected static final String UPDATE_DATE = "updateDate";
 
-    public ObservationDaoImpl(DataSource dataSource, DatabaseHelper databaseHelper,
-            ObservationMapper observationMapper) {
+    private static final List<String> FACT_COLUMNS = Collections.unmodifiableList(Arrays.asList(
+        "encounter_num", "patient_num", "concept_cd", "provider_id", "start_date", "modifier_cd", "instance_num",
+        "valtype_cd", "tval_char", "nval_num", "units_cd", "end_date", "observation_blob", "sourcesystem_cd",
+        "update_date"));
+
+    // identify a fact row of the '@' modifier, the sort column is moved to the front
+    private static final List<String> SEEK_COLUMNS = Collections.unmodifiableList(Arrays.asList(
+        "patient_num", "concept_cd", "start_date", "encounter_num", "instance_num", "provider_id"));
+
+    public ObservationDaoImpl(DataSource dataSource, DatabaseHelper databaseHelper, IdAllocator idAllocator,
+            BulkLoader bulkLoader, ObservationMapper observationMapper,
+            ApplicationEventPublisher applicationEventPublisher) {
         this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(new JdbcTemplate(dataSource));
         this.databaseHelper = databaseHelper;
+        this.idAllocator = idAllocator;
+        this.bulkLoader = bulkLoader;
         this.currentSchema = getCurrentSchema(this.namedParameterJdbcTemplate.getJdbcTemplate());
         this.observationMapper = observationMapper;
+        this.applicationEventPublisher = applicationEventPublisher;
     }
 
     @PostConstruct
     private void init() {
-        databaseHelper.createSequenceIfNotExists(getNegativeEncounterNumSequenceName(),
-            findMinimumNegativeEncounterNum()-1, -1);
+        idAllocator.register(getNegativeEncounterNumSequenceName(),
+            findMinimumNegativeEncounterNum()-1, true);
     }
 
     @Override
     @Transactional(readOnly = false)
     public int[] add(Observation observation) {
+        return addAll(Collections.singletonList(observation));
+    }
 
-        String query = String.join(" ",
-            "insert into observation_fact (",
-            "encounter_num, patient_num, concept_cd, provider_id, ",
-            "start_date, modifier_cd, instance_num, valtype_cd, ",
-            "tval_char, nval_num, units_cd, end_date, ",
-            "observation_blob, sourcesystem_cd, update_date)",
-            "values ( ",
-            ":" + ENCOUNTER_NUM + ", :" + PATIENT_NUM + ", :" + CONCEPT_CODE + ", :" + PROVIDER_ID + ", ",
-            ":" + START_DATE + ", :" + MODIFIER_CODE + ", :" + INSTANCE_NUM + ", :" + VALTYPE_CODE + ", ",
-            ":" + TEXT_VAL + ", :" + NUMERIC_VAL + ", :" + UNITS + ", :" + END_DATE + ", ",
-            ":" + OBSERVATION_BLOB + ", :" + SOURCE_SYSTEM_CODE + ", :" + UPDATE_DATE + ") "
-        );
-
-        SqlParameterSource[] parameterSources = new SqlParameterSource[observation.getModifiers().size()];
-        for (int modIndex = 0; modIndex < observation.getModifiers().size(); modIndex++) {
-            ObservationModifier modifier = observation.getModifiers().get(modIndex);
-            MapSqlParameterSource parameterSource = new MapSqlParameterSource();
-            parameterSource.addValue(ENCOUNTER_NUM, observation.getEncounterNum())
-                .addValue(PATIENT_NUM, observation.getPatientNum())
-                .addValue(CONCEPT_CODE, observation.getConceptCode())
-                .addValue(PROVIDER_ID, observation.getProviderId())
-                .addValue(START_DATE, observation.getStartDate())
-                .addValue(INSTANCE_NUM, observation.getInstanceNumber())
-                .addValue(END_DATE, observation.getEndDate())
-                .addValue(SOURCE_SYSTEM_CODE, observation.getSourceSystemCode())
-                .addValue(MODIFIER_CODE, modifier.getModifierCode())
-                .addValue(VALTYPE_CODE, modifier.getValueTypeCode().getCode())
-                .addValue(TEXT_VAL, modifier.getTextValue())
-                .addValue(NUMERIC_VAL, modifier.getNumberValue())
-                .addValue(UNITS, modifier.getUnits())
-                .addValue(OBSERVATION_BLOB, modifier.getBlob())
-                .addValue(UPDATE_DATE, LocalDateTime.now());
-
-
-            parameterSources[modIndex] = parameterSource;
+    @Override
+    @Transactional(readOnly = false)
+    public int[] addAll(List<Observation> observations) {
+
+        // one row per modifier, all observations of the chunk go out in a single jdbc batch or bulk load
+        LocalDateTime updateDate = LocalDateTime.now();
+        List<Object[]> rows = new ArrayList<>();
+        for (Observation observation : observations) {
+            for (ObservationModifier modifier : observation.getModifiers()) {
+                rows.add(new Object[] { observation.getEncounterNum(), observation.getPatientNum(),
+                    observation.getConceptCode(), observation.getProviderId(), observation.getStartDate(),
+                    modifier.getModifierCode(), observation.getInstanceNumber(),
+                    modifier.getValueTypeCode().getCode(), modifier.getTextValue(), modifier.getNumberValue(),
+                    modifier.getUnits(), observation.getEndDate(), modifier.getBlob(),
+                    observation.getSourceSystemCode(), updateDate });
+            }
         }
 
-        return namedParameterJdbcTemplate.batchUpdate(query, parameterSources);
+        int[] updateCounts;
+        if (bulkLoader.isBulkLoad(rows.size())) {
+            updateCounts = new int[rows.size()];
+            Arrays.fill(updateCounts, bulkLoader.load("observation_fact", FACT_COLUMNS, rows) == rows.size() ? 1 : 0);
+        } else {
+            updateCounts = namedParameterJdbcTemplate.getJdbcTemplate().batchUpdate(
+                "insert into observation_fact (" + String.join(", ", FACT_COLUMNS) + ") values ("
+                    + String.join(", ", Collections.nCopies(FACT_COLUMNS.size(), "?")) + ")",
+                rows);
+        }
+        FactsChangedEvent factsChangedEvent = FactsChangedEvent.added(observations);
+        if (!factsChangedEvent.isEmpty()) {
+            applicationEventPublisher.publishEvent(factsChangedEvent);
+        }
+        return updateCounts;
     }
 
     @Override
-    public Integer getNextInstanceNumberForObservationFact(FactSearchDto factSearchDto) {
+    public List<Observation> findMaxInstanceNumbers(FactSearchDto factSearchDto) {
 
         QueryParamDto queryParamDto = new QueryParamDto()
             .withQuery(String.join(" ",
-                "select coalesce(max(observation.instance_num)+1, 1) as nextInstanceNumber from",
-                "observation_fact observation"
+                "select observation.encounter_num as " + ENCOUNTER_NUM + ",",
+                "observation.patient_num as " + PATIENT_NUM + ",",
+                "observation.concept_cd as " + CONCEPT_CODE + ",",
+                "observation.provider_id as " + PROVIDER_ID + ",",
+                "observation.start_date as " + START_DATE + ",",
+                "max(observation.instance_num) as " + INSTANCE_NUM,
+                "from observation_fact observation"
             ));
 
-        addEncounterCriteria(factSearchDto, queryParamDto);
-        addPatientCriteria(factSearchDto, queryParamDto);
-        addConceptCodeCriteria(factSearchDto, queryParamDto);
-        addProviderCriteria(factSearchDto, queryParamDto);
-        addStartDateCriteria(factSearchDto, queryParamDto);
-        return this.namedParameterJdbcTemplate.queryForObject(queryParamDto.getQuery(), queryParamDto.getParameterSource(), Integer.class);
+        addPatientNumsCriteria(factSearchDto, queryParamDto);
+        addConceptCodesCriteria(factSearchDto, queryParamDto);
+        queryParamDto.appendQuery(String.join(" ",
+            " group by observation.encounter_num, observation.patient_num, observation.concept_cd,",
+            "observation.provider_id, observation.start_date"));
+
+        return this.namedParameterJdbcTemplate.query(queryParamDto.getQuery(), queryParamDto.getParameterSource(),
+            (rs, rowNum) -> {
+                Observation observation = new Observation(rs.getInt(ENCOUNTER_NUM), rs.getInt(PATIENT_NUM),
+                    rs.getString(CONCEPT_CODE), rs.getString(PROVIDER_ID),
+                    rs.getTimestamp(START_DATE).toLocalDateTime());
+                observation.setInstanceNumber(rs.getInt(INSTANCE_NUM));
+                return observation;
+            });
     }
 
-    private void addEncounterCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
-        if (factSearchDto.getEncounterNum() != null) {
+    private void addPatientNumsCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
+        if (!factSearchDto.getPatientNums().isEmpty()) {
+            final String patientNumsQueryParamName = "patientNums";
             queryParamDto
-                .addQueryCriteria("observation.encounter_num = :" + ENCOUNTER_NUM)
-                .addQueryParameter(ENCOUNTER_NUM, factSearchDto.getEncounterNum());
+                .addQueryCriteria("observation.patient_num in (:" + patientNumsQueryParamName + ")")
+                .addQueryParameter(patientNumsQueryParamName, factSearchDto.getPatientNums());
         }
     }
 
-    private void addPatientCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
-        if (factSearchDto.getPatientNum() != null) {
+    private void addConceptCodesCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
+        if (!factSearchDto.getConceptCodes().isEmpty()) {
+            final String conceptCodesQueryParamName = "conceptCodes";
             queryParamDto
-                .addQueryCriteria("observation.patient_num = :" + PATIENT_NUM)
-                .addQueryParameter(PATIENT_NUM, factSearchDto.getPatientNum());
+                .addQueryCriteria("UPPER(observation.concept_cd) in (:" + conceptCodesQueryParamName + ")")
+                .addQueryParameter(conceptCodesQueryParamName, factSearchDto.getConceptCodes().stream()
+                    .map(conceptCode -> conceptCode.toUpperCase(Locale.ENGLISH))
+                    .collect(Collectors.toList()));
         }
     }
 
-    private void addConceptCodeCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
-        if (!StringUtils.isEmpty(factSearchDto.getConceptCode())) {
+    private void addEncounterNumsCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
+        if (!factSearchDto.getEncounterNums().isEmpty()) {
+            final String encounterNumsQueryParamName = "encounterNums";
             queryParamDto
-                .addQueryCriteria("UPPER(observation.concept_cd) = :" + CONCEPT_CODE)
-                .addQueryParameter(CONCEPT_CODE, factSearchDto.getConceptCode().toUpperCase(Locale.ENGLISH));
+                .addQueryCriteria("observation.encounter_num in (:" + encounterNumsQueryParamName + ")")
+                .addQueryParameter(encounterNumsQueryParamName, factSearchDto.getEncounterNums());
         }
     }
 
-    private void addProviderCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
-        if (!StringUtils.isEmpty(factSearchDto.getProviderId())) {
+    private void addPatientCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
+        if (factSearchDto.getPatientNum() != null) {
             queryParamDto
-                .addQueryCriteria("UPPER(observation.provider_id) = :" + PROVIDER_ID)
-                .addQueryParameter(PROVIDER_ID, factSearchDto.getProviderId().toUpperCase(Locale.ENGLISH));
+                .addQueryCriteria("observation.patient_num = :" + PATIENT_NUM)
+                .addQueryParameter(PATIENT_NUM, factSearchDto.getPatientNum());
         }
     }
 
-    private void addStartDateCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
-        if (factSearchDto.getStartDate() != null) {
+    private void addConceptCodeCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
+        if (!StringUtils.isEmpty(factSearchDto.getConceptCode())) {
             queryParamDto
-                .addQueryCriteria("observation.start_date = :" + START_DATE)
-                .addQueryParameter(START_DATE, factSearchDto.getStartDate());
+                .addQueryCriteria("UPPER(observation.concept_cd) = :" + CONCEPT_CODE)
+                .addQueryParameter(CONCEPT_CODE, factSearchDto.getConceptCode().toUpperCase(Locale.ENGLISH));
         }
     }
 
     @Override
     public Integer getNextNegativeEncounterNumber() {
-        return databaseHelper.getNextSequenceValue(getNegativeEncounterNumSequenceName());
+        return idAllocator.next(getNegativeEncounterNumSequenceName());
     }
 
     private String getNegativeEncounterNumSequenceName() {
@@ -208,7 +253,79 @@ public class ObservationDaoImpl implements ObservationDao {
     @RequestCache
     public PaginationResult<Observation> findObservations(FactSearchDto factSearchDto) {
 
-        QueryParamDto queryParamDto = new QueryParamDto().withQuery(String.join(" ",
+        QueryParamDto queryParamDto = createObservationQuery();
+
+        addModifierEqualsCriteria(queryParamDto);
+        addPatientCriteria(factSearchDto, queryParamDto);
+        addConceptCodeCriteria(factSearchDto, queryParamDto);
+        SeekDto seekDto = getSeekDto(factSearchDto.getPageableDto());
+        if (seekDto != null) {
+            databaseHelper.addSeekPaginationCriteria(queryParamDto, seekDto);
+        } else {
+            addPaginationCriteria(queryParamDto, factSearchDto.getPageableDto());
+        }
+        List<Observation> observations = this.namedParameterJdbcTemplate.query(queryParamDto.getQuery(),
+                queryParamDto.getParameterSource(), observationMapper);
+        PaginationResult<Observation> paginationResult = new PaginationResult<>(observations, 0);
+        PageableDto pageableDto = factSearchDto.getPageableDto();
+        if (pageableDto != null && pageableDto.getCountMode() == CountMode.NONE) {
+            boolean hasMore = observations.size() > pageableDto.getSize();
+            if (hasMore) {
+                observations.remove(observations.size() - 1);
+            }
+            paginationResult.setHasMore(hasMore);
+        }
+        if (seekDto != null && !observations.isEmpty() && observations.size() == pageableDto.getSize()
+                && !Boolean.FALSE.equals(paginationResult.getHasMore())) {
+            Observation last = observations.get(observations.size() - 1);
+            paginationResult.setNextCursor(PageCursor.encode(seekDto.getColumns().stream()
+                .map(column -> getSeekValue(last, column.substring("observation.".length())))
+                .collect(Collectors.toList())));
+        }
+        return paginationResult;
+    }
+
+    @Override
+    public void streamObservations(FactSearchDto factSearchDto, int fetchSize, Consumer<Observation> consumer) {
+        QueryParamDto queryParamDto = createObservationQuery();
+        addExportCriteria(factSearchDto, queryParamDto);
+
+        // drivers only read ahead the fetch size when it is set, postgres within a transaction only
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(namedParameterJdbcTemplate.getJdbcTemplate().getDataSource());
+        jdbcTemplate.setFetchSize(fetchSize);
+        new NamedParameterJdbcTemplate(jdbcTemplate).query(queryParamDto.getQuery(),
+            queryParamDto.getParameterSource(),
+            (RowCallbackHandler) rs -> consumer.accept(observationMapper.mapRow(rs, rs.getRow())));
+    }
+
+    private void addExportCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
+        if (!factSearchDto.getModifierFlag()) {
+            addModifierEqualsCriteria(queryParamDto);
+        }
+        addPatientCriteria(factSearchDto, queryParamDto);
+        addConceptCodeCriteria(factSearchDto, queryParamDto);
+        addPatientNumsCriteria(factSearchDto, queryParamDto);
+        addConceptCodesCriteria(factSearchDto, queryParamDto);
+        addStartDateRangeCriteria(factSearchDto, queryParamDto);
+    }
+
+    private void addStartDateRangeCriteria(FactSearchDto factSearchDto, QueryParamDto queryParamDto) {
+        if (factSearchDto.getStartDateFrom() != null) {
+            final String startDateFromQueryParamName = "startDateFrom";
+            queryParamDto
+                .addQueryCriteria("observation.start_date >= :" + startDateFromQueryParamName)
+                .addQueryParameter(startDateFromQueryParamName, factSearchDto.getStartDateFrom());
+        }
+        if (factSearchDto.getStartDateTo() != null) {
+            final String startDateToQueryParamName = "startDateTo";
+            queryParamDto
+                .addQueryCriteria("observation.start_date < :" + startDateToQueryParamName)
+                .addQueryParameter(startDateToQueryParamName, factSearchDto.getStartDateTo());
+        }
+    }
+
+    private QueryParamDto createObservationQuery() {
+        return new QueryParamDto().withQuery(String.join(" ",
                 "select observation.encounter_num as " + ENCOUNTER_NUM + ",",
                 "observation.patient_num as " + PATIENT_NUM + ",", "observation.concept_cd as " + CONCEPT_CODE + ",",
                 "observation.provider_id as " + PROVIDER_ID + ",",
@@ -218,14 +335,63 @@ public class ObservationDaoImpl implements ObservationDao {
                 "observation.units_cd as " + UNITS + ",", "observation.end_date as " + END_DATE + ",",
                 "observation.observation_blob as " + OBSERVATION_BLOB,
                 "from observation_fact observation"));
+    }
 
-        addModifierEqualsCriteria(queryParamDto);
-        addPatientCriteria(factSearchDto, queryParamDto);
-        addConceptCodeCriteria(factSearchDto, queryParamDto);
-        addPaginationCriteria(queryParamDto, factSearchDto.getPageableDto());
-        List<Observation> observations = this.namedParameterJdbcTemplate.query(queryParamDto.getQuery(),
-                queryParamDto.getParameterSource(), observationMapper);
-        return new PaginationResult<>(observations, 0);
+    private SeekDto getSeekDto(PageableDto pageableDto) {
+        if (pageableDto == null || pageableDto.getCursor() == null) {
+            return null;
+        }
+        if (!SEEK_COLUMNS.contains(pageableDto.getSortBy())) {
+            throw new I2b2DataValidationException(
+                "Cursor pagination is not supported for sort field " + pageableDto.getSortBy() + ".");
+        }
+        List<String> columns = new ArrayList<>();
+        columns.add(pageableDto.getSortBy());
+        SEEK_COLUMNS.stream().filter(column -> !column.equals(pageableDto.getSortBy())).forEach(columns::add);
+
+        List<Object> values = new ArrayList<>();
+        if (!pageableDto.getCursor().isEmpty()) {
+            List<String> cursorValues = PageCursor.decode(pageableDto.getCursor(), columns.size());
+            for (int i = 0; i < columns.size(); i++) {
+                values.add(parseSeekValue(columns.get(i), cursorValues.get(i)));
+            }
+        }
+        return new SeekDto(columns.stream().map(column -> "observation." + column).collect(Collectors.toList()),
+            values, pageableDto.getSortOrder(), pageableDto.getFetchSize());
+    }
+
+    private String getSeekValue(Observation observation, String column) {
+        switch (column) {
+        case "patient_num":
+            return String.valueOf(observation.getPatientNum());
+        case "concept_cd":
+            return observation.getConceptCode();
+        case "start_date":
+            return observation.getStartDate().toString();
+        case "encounter_num":
+            return String.valueOf(observation.getEncounterNum());
+        case "instance_num":
+            return String.valueOf(observation.getInstanceNumber());
+        default:
+            return observation.getProviderId();
+        }
+    }
+
+    private Object parseSeekValue(String column, String value) {
+        try {
+            switch (column) {
+            case "patient_num":
+            case "encounter_num":
+            case "instance_num":
+                return Integer.valueOf(value);
+            case "start_date":
+                return Timestamp.valueOf(LocalDateTime.parse(value));
+            default:
+                return value;
+            }
+        } catch (RuntimeException e) {
+            throw new I2b2DataValidationException(PageCursor.INVALID_CURSOR);
+        }
     }
 
     private void addModifierEqualsCriteria(QueryParamDto queryParamDto) {
@@ -235,7 +401,7 @@ public class ObservationDaoImpl implements ObservationDao {
     
     private void addPaginationCriteria(QueryParamDto queryParamDto, PageableDto pageableDto) {
         if (pageableDto != null) {
-            int limit = pageableDto.getSize();
+            int limit = pageableDto.getFetchSize();
             int offset = queryParamDto.calculateOffset(pageableDto.getPage(), pageableDto.getSize());
 
             databaseHelper.addPaginationCriteria(queryParamDto, pageableDto);
@@ -249,10 +415,16 @@ public class ObservationDaoImpl implements ObservationDao {
     public int getTotalCount(FactSearchDto factSearchDto) {
         int count = 0;
         QueryParamDto countQueryParamDto = new QueryParamDto();
-        countQueryParamDto.withQuery(String.join(" ", "select count(patient_num) from observation_fact observation"));
+        boolean estimated = factSearchDto.getPageableDto() != null
+                && factSearchDto.getPageableDto().getCountMode() == CountMode.ESTIMATED;
+        countQueryParamDto.withQuery(estimated ? "select observation.patient_num from observation_fact observation"
+                : "select count(patient_num) from observation_fact observation");
         addModifierEqualsCriteria(countQueryParamDto);
         addPatientCriteria(factSearchDto, countQueryParamDto);
         addConceptCodeCriteria(factSearchDto, countQueryParamDto);
+        if (estimated) {
+            return databaseHelper.estimateCount(countQueryParamDto);
+        }
         count = this.namedParameterJdbcTemplate.queryForObject(countQueryParamDto.getQuery(),
                 countQueryParamDto.getParameterSource(), Integer.class);
         return count;
@@ -261,20 +433,14 @@ public class ObservationDaoImpl implements ObservationDao {
     @Override
     @RequestCache
     public List<Observation> findObservationModifiers(FactSearchDto factSearchDto) {
-        QueryParamDto queryParamDto = new QueryParamDto().withQuery(String.join(" ",
-                "select observation.encounter_num as " + ENCOUNTER_NUM + ",",
-                "observation.patient_num as " + PATIENT_NUM + ",", "observation.concept_cd as " + CONCEPT_CODE + ",",
-                "observation.provider_id as " + PROVIDER_ID + ",",
-                "observation.start_date as " + START_DATE + ",", "observation.modifier_cd as " + MODIFIER_CODE + ",",
-                "observation.instance_num as " + INSTANCE_NUM + ",", "observation.valtype_cd as " + VALTYPE_CODE + ",",
-                "observation.tval_char as " + TEXT_VAL + ",", "observation.nval_num as " + NUMERIC_VAL + ",",
-                "observation.units_cd as " + UNITS + ",", "observation.end_date as " + END_DATE + ",",
-                "observation.observation_blob as " + OBSERVATION_BLOB,
-                "from observation_fact observation"));
+        QueryParamDto queryParamDto = createObservationQuery();
 
         addModifierNotEqualsCriteria(queryParamDto);
         addPatientCriteria(factSearchDto, queryParamDto);
         addConceptCodeCriteria(factSearchDto, queryParamDto);
+        addPatientNumsCriteria(factSearchDto, queryParamDto);
+        addConceptCodesCriteria(factSearchDto, queryParamDto);
+        addEncounterNumsCriteria(factSearchDto, queryParamDto);
         return this.namedParameterJdbcTemplate.query(queryParamDto.getQuery(),
                 queryParamDto.getParameterSource(), observationMapper);
     }
@@ -0,0 +1,73 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.domain;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Published when facts are written: the patient nums added per concept code, or
+ * the concept paths whose facts were replaced as a whole. Listeners see it after
+ * the transaction commits.
+ */
+public class FactsChangedEvent {
+    private final Map<String, BitSet> addedPatientNums;
+    private final Set<String> replacedConceptPaths;
+
+    private FactsChangedEvent(Map<String, BitSet> addedPatientNums, Set<String> replacedConceptPaths) {
+        this.addedPatientNums = Collections.unmodifiableMap(addedPatientNums);
+        this.replacedConceptPaths = Collections.unmodifiableSet(replacedConceptPaths);
+    }
+
+    /**
+     * @return an event of the '@' modifier rows among the observations.
+     */
+    public static FactsChangedEvent added(Collection<Observation> observations) {
+        Map<String, BitSet> addedPatientNums = new HashMap<>();
+        for (Observation observation : observations) {
+            boolean fact = observation.getModifiers().stream()
+                .anyMatch(modifier -> "@".equals(modifier.getModifierCode()));
+            if (fact && observation.getPatientNum() != null) {
+                addedPatientNums.computeIfAbsent(observation.getConceptCode(), code -> new BitSet())
+                    .set(observation.getPatientNum());
+            }
+        }
+        return new FactsChangedEvent(addedPatientNums, Collections.emptySet());
+    }
+
+    public static FactsChangedEvent replaced(Collection<String> conceptPaths) {
+        return new FactsChangedEvent(Collections.emptyMap(), new HashSet<>(conceptPaths));
+    }
+
+    /**
+     * @return the patient nums by concept code, which must not be changed.
+     */
+    public Map<String, BitSet> getAddedPatientNums() {
+        return addedPatientNums;
+    }
+
+    public Set<String> getReplacedConceptPaths() {
+        return replacedConceptPaths;
+    }
+
+    public boolean isEmpty() {
+        return addedPatientNums.isEmpty() && replacedConceptPaths.isEmpty();
+    }
+}
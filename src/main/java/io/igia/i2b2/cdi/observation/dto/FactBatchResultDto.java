@@ -0,0 +1,70 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.dto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+@ApiModel(value = "FactBatchResult")
+public class FactBatchResultDto {
+
+    @ApiModelProperty(value = "Number of facts added")
+    private long accepted;
+
+    @ApiModelProperty(value = "Facts which could not be added")
+    private List<FactBatchErrorDto> errors = new ArrayList<>();
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(long accepted) {
+        this.accepted = accepted;
+    }
+
+    public long getRejected() {
+        return errors.size();
+    }
+
+    public List<FactBatchErrorDto> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<FactBatchErrorDto> errors) {
+        this.errors = errors;
+    }
+
+    public FactBatchResultDto addError(long index, String message) {
+        this.errors.add(new FactBatchErrorDto(index, message));
+        return this;
+    }
+
+    // error indexes of a chunk are relative to the chunk, positions map them back into the batch
+    public FactBatchResultDto merge(FactBatchResultDto chunkResult, List<Long> positions) {
+        this.accepted += chunkResult.getAccepted();
+        chunkResult.getErrors().forEach(error ->
+            addError(positions.get((int) error.getIndex()), error.getMessage()));
+        return this;
+    }
+
+    public FactBatchResultDto sortErrors() {
+        this.errors.sort(Comparator.comparingLong(FactBatchErrorDto::getIndex));
+        return this;
+    }
+}
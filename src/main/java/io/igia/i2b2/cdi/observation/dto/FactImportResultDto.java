@@ -0,0 +1,121 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.dto;
+
+import java.util.ArrayList;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+@ApiModel(value = "FactImportResult")
+public class FactImportResultDto extends FactBatchResultDto {
+
+    @ApiModelProperty(value = "Import identifier")
+    private String id;
+
+    @ApiModelProperty(value = "Import status")
+    private FactImportStatus status = FactImportStatus.RUNNING;
+
+    @ApiModelProperty(value = "Position of the first fact which has not been imported yet, "
+        + "an interrupted import is resumed by passing it as offset")
+    private long checkpoint;
+
+    @ApiModelProperty(value = "Reason why the import failed")
+    private String message;
+
+    @ApiModelProperty(value = "Number of rejected facts whose error is not listed")
+    private long unlistedErrors;
+
+    private int maxErrors = Integer.MAX_VALUE;
+
+    public FactImportResultDto() {
+    }
+
+    public FactImportResultDto(String id, long checkpoint) {
+        this(id, checkpoint, Integer.MAX_VALUE);
+    }
+
+    public FactImportResultDto(String id, long checkpoint, int maxErrors) {
+        this.id = id;
+        this.checkpoint = checkpoint;
+        this.maxErrors = maxErrors;
+    }
+
+    public FactImportResultDto(FactImportResultDto factImportResultDto) {
+        setAccepted(factImportResultDto.getAccepted());
+        setErrors(new ArrayList<>(factImportResultDto.getErrors()));
+        this.id = factImportResultDto.getId();
+        this.status = factImportResultDto.getStatus();
+        this.checkpoint = factImportResultDto.getCheckpoint();
+        this.message = factImportResultDto.getMessage();
+        this.unlistedErrors = factImportResultDto.getUnlistedErrors();
+        this.maxErrors = factImportResultDto.maxErrors;
+    }
+
+    // an import can reject millions of facts, only the first errors are kept
+    @Override
+    public FactBatchResultDto addError(long index, String message) {
+        if (getErrors().size() < maxErrors) {
+            return super.addError(index, message);
+        }
+        unlistedErrors++;
+        return this;
+    }
+
+    @Override
+    public long getRejected() {
+        return super.getRejected() + unlistedErrors;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public FactImportStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(FactImportStatus status) {
+        this.status = status;
+    }
+
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void setCheckpoint(long checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public long getUnlistedErrors() {
+        return unlistedErrors;
+    }
+
+    public void setUnlistedErrors(long unlistedErrors) {
+        this.unlistedErrors = unlistedErrors;
+    }
+}
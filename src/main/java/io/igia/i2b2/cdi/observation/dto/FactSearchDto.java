@@ -13,6 +13,9 @@
 package io.igia.i2b2.cdi.observation.dto;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 
@@ -23,8 +26,14 @@ public class FactSearchDto {
     private String conceptCode;
     private String providerId;
     private LocalDateTime startDate;
+    private LocalDateTime startDateFrom;
+    private LocalDateTime startDateTo;
     private boolean modifierFlag = false;
     private PageableDto pageableDto;
+    private Set<Integer> patientNums = new HashSet<>();
+    private Set<String> patientIds = new HashSet<>();
+    private Set<String> conceptCodes = new HashSet<>();
+    private Set<Integer> encounterNums = new HashSet<>();
 
     public FactSearchDto() {
     }
@@ -36,8 +45,14 @@ public class FactSearchDto {
         this.conceptCode = factSearchDto.getConceptCode();
         this.providerId = factSearchDto.getProviderId();
         this.startDate = factSearchDto.getStartDate();
+        this.startDateFrom = factSearchDto.getStartDateFrom();
+        this.startDateTo = factSearchDto.getStartDateTo();
         this.modifierFlag = factSearchDto.getModifierFlag();
         this.pageableDto = factSearchDto.getPageableDto();
+        this.patientNums.addAll(factSearchDto.getPatientNums());
+        this.patientIds.addAll(factSearchDto.getPatientIds());
+        this.conceptCodes.addAll(factSearchDto.getConceptCodes());
+        this.encounterNums.addAll(factSearchDto.getEncounterNums());
     }
 
     public Integer getEncounterNum() {
@@ -93,6 +108,27 @@ public class FactSearchDto {
         return this;
     }
 
+    public LocalDateTime getStartDateFrom() {
+        return startDateFrom;
+    }
+
+    public FactSearchDto setStartDateFrom(LocalDateTime startDateFrom) {
+        this.startDateFrom = startDateFrom;
+        return this;
+    }
+
+    /**
+     * @return the exclusive upper bound of the start date.
+     */
+    public LocalDateTime getStartDateTo() {
+        return startDateTo;
+    }
+
+    public FactSearchDto setStartDateTo(LocalDateTime startDateTo) {
+        this.startDateTo = startDateTo;
+        return this;
+    }
+
     public boolean getModifierFlag() {
         return modifierFlag;
     }
@@ -109,4 +145,40 @@ public class FactSearchDto {
         this.pageableDto = pageableDto;
         return this;
     }
+
+    public Set<Integer> getPatientNums() {
+        return patientNums;
+    }
+
+    public FactSearchDto setPatientNums(Collection<Integer> patientNums) {
+        this.patientNums.addAll(patientNums);
+        return this;
+    }
+
+    public Set<String> getPatientIds() {
+        return patientIds;
+    }
+
+    public FactSearchDto setPatientIds(Collection<String> patientIds) {
+        this.patientIds.addAll(patientIds);
+        return this;
+    }
+
+    public Set<String> getConceptCodes() {
+        return conceptCodes;
+    }
+
+    public FactSearchDto setConceptCodes(Collection<String> conceptCodes) {
+        this.conceptCodes.addAll(conceptCodes);
+        return this;
+    }
+
+    public Set<Integer> getEncounterNums() {
+        return encounterNums;
+    }
+
+    public FactSearchDto setEncounterNums(Collection<Integer> encounterNums) {
+        this.encounterNums.addAll(encounterNums);
+        return this;
+    }
 }
@@ -0,0 +1,86 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.igia.i2b2.cdi.concept.dto.ConceptDto;
+import io.igia.i2b2.cdi.modifier.dto.ModifierDto;
+
+/**
+ * Outcome of validating a batch of facts: the error of every rejected fact by
+ * its index in the batch, and the concepts and modifiers looked up for the
+ * batch, by case-insensitive concept and modifier code.
+ */
+public class FactValidationResultDto {
+    private final Map<Integer, String> errors = new TreeMap<>();
+    private final Map<String, ConceptDto> concepts = new HashMap<>();
+    private final Map<String, Map<String, List<ModifierDto>>> modifiers = new HashMap<>();
+
+    public Map<Integer, String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Keeps the first error of a fact.
+     */
+    public FactValidationResultDto addError(int index, String message) {
+        errors.putIfAbsent(index, message);
+        return this;
+    }
+
+    public boolean isValid(int index) {
+        return !errors.containsKey(index);
+    }
+
+    /**
+     * @return the first concept found with the code, or null.
+     */
+    public ConceptDto getConcept(String conceptCode) {
+        return concepts.get(toKey(conceptCode));
+    }
+
+    public FactValidationResultDto addConcept(ConceptDto concept) {
+        concepts.putIfAbsent(toKey(concept.getCode()), concept);
+        return this;
+    }
+
+    /**
+     * @return the modifiers applicable to the concepts with the code, by
+     *         upper-cased modifier code.
+     */
+    public Map<String, List<ModifierDto>> getModifiers(String conceptCode) {
+        return modifiers.getOrDefault(toKey(conceptCode), Collections.emptyMap());
+    }
+
+    public FactValidationResultDto addModifiers(String conceptCode, List<ModifierDto> conceptModifiers) {
+        Map<String, List<ModifierDto>> modifiersByCode = modifiers.computeIfAbsent(toKey(conceptCode),
+            key -> new HashMap<>());
+        conceptModifiers.forEach(modifier -> modifiersByCode
+            .computeIfAbsent(toKey(modifier.getCode()), code -> new ArrayList<>())
+            .add(modifier));
+        return this;
+    }
+
+    private static String toKey(String value) {
+        return value == null ? null : value.toUpperCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,297 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.VectorUnloader;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.message.ArrowDictionaryBatch;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import io.igia.i2b2.cdi.observation.domain.Observation;
+import io.igia.i2b2.cdi.observation.domain.ObservationModifier;
+import io.igia.i2b2.cdi.observation.domain.ValueTypeCode;
+
+/**
+ * Writes observation_fact rows as an Apache Arrow IPC stream of record batches,
+ * with the columns of the table. Concept, modifier, value type and units codes
+ * are dictionary encoded, every record batch is preceded by dictionaries of the
+ * codes in that batch, which replace those of the previous batch. Numeric
+ * values are only set for numeric rows. The stream is only complete after
+ * {@link #finish()}.
+ */
+public class FactArrowWriter implements Consumer<Observation>, Closeable {
+
+    private static final int BATCH_SIZE = 8192;
+    private static final ArrowType.Int INT = new ArrowType.Int(32, true);
+    private static final ArrowType.Timestamp TIMESTAMP = new ArrowType.Timestamp(TimeUnit.MILLISECOND, null);
+
+    private final BufferAllocator allocator = new RootAllocator();
+    private final DictionaryProvider.MapDictionaryProvider provider = new DictionaryProvider.MapDictionaryProvider();
+    private final Map<String, Dictionary> dictionaries = new LinkedHashMap<>();
+    private final Map<String, Map<String, Integer>> dictionaryIndexes = new HashMap<>();
+    private final DetachableOutputStream outputStream;
+    private final VectorSchemaRoot root;
+    private BatchDictionaryStreamWriter writer;
+    private int row;
+    private boolean finished;
+
+    public FactArrowWriter(OutputStream outputStream) {
+        root = VectorSchemaRoot.create(new Schema(Arrays.asList(
+            new Field("encounter_num", new FieldType(false, INT, null), null),
+            new Field("patient_num", new FieldType(false, INT, null), null),
+            addDictionary("concept_cd"),
+            new Field("provider_id", FieldType.nullable(ArrowType.Utf8.INSTANCE), null),
+            new Field("start_date", new FieldType(false, TIMESTAMP, null), null),
+            addDictionary("modifier_cd"),
+            new Field("instance_num", new FieldType(false, INT, null), null),
+            addDictionary("valtype_cd"),
+            new Field("tval_char", FieldType.nullable(ArrowType.Utf8.INSTANCE), null),
+            new Field("nval_num", FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)), null),
+            addDictionary("units_cd"),
+            new Field("end_date", FieldType.nullable(TIMESTAMP), null))), allocator);
+        allocateBatch();
+        this.outputStream = new DetachableOutputStream(outputStream);
+    }
+
+    private Field addDictionary(String name) {
+        DictionaryEncoding encoding = new DictionaryEncoding(dictionaries.size(), false, INT);
+        VarCharVector vector = new VarCharVector(name, allocator);
+        vector.allocateNew();
+        Dictionary dictionary = new Dictionary(vector, encoding);
+        dictionaries.put(name, dictionary);
+        dictionaryIndexes.put(name, new HashMap<>());
+        provider.put(dictionary);
+        return new Field(name, new FieldType(true, INT, encoding), null);
+    }
+
+    @Override
+    public void accept(Observation observation) {
+        ObservationModifier modifier = observation.getModifiers().get(0);
+        ((IntVector) root.getVector("encounter_num")).setSafe(row, observation.getEncounterNum());
+        ((IntVector) root.getVector("patient_num")).setSafe(row, observation.getPatientNum());
+        setCode("concept_cd", observation.getConceptCode());
+        setText("provider_id", observation.getProviderId());
+        setDate("start_date", observation.getStartDate());
+        setCode("modifier_cd", modifier.getModifierCode());
+        ((IntVector) root.getVector("instance_num")).setSafe(row, observation.getInstanceNumber());
+        setCode("valtype_cd", modifier.getValueTypeCode() == null ? null : modifier.getValueTypeCode().getCode());
+        setText("tval_char", modifier.getTextValue());
+        Float8Vector numberValues = (Float8Vector) root.getVector("nval_num");
+        if (modifier.getValueTypeCode() == ValueTypeCode.NUMERIC && modifier.getNumberValue() != null) {
+            numberValues.setSafe(row, modifier.getNumberValue());
+        } else {
+            numberValues.setNull(row);
+        }
+        setCode("units_cd", modifier.getUnits());
+        setDate("end_date", observation.getEndDate());
+
+        if (++row == BATCH_SIZE) {
+            writeBatch();
+        }
+    }
+
+    private void setCode(String name, String code) {
+        IntVector vector = (IntVector) root.getVector(name);
+        if (code == null) {
+            vector.setNull(row);
+            return;
+        }
+        Map<String, Integer> indexes = dictionaryIndexes.get(name);
+        Integer index = indexes.get(code);
+        if (index == null) {
+            index = indexes.size();
+            ((VarCharVector) dictionaries.get(name).getVector()).setSafe(index, code.getBytes(StandardCharsets.UTF_8));
+            indexes.put(code, index);
+        }
+        vector.setSafe(row, index);
+    }
+
+    private void setText(String name, String text) {
+        VarCharVector vector = (VarCharVector) root.getVector(name);
+        if (text == null) {
+            vector.setNull(row);
+        } else {
+            vector.setSafe(row, text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void setDate(String name, LocalDateTime date) {
+        TimeStampMilliVector vector = (TimeStampMilliVector) root.getVector(name);
+        if (date == null) {
+            vector.setNull(row);
+        } else {
+            vector.setSafe(row, date.toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+    }
+
+    private void writeBatch() {
+        root.setRowCount(row);
+        dictionaries.forEach((name, dictionary) ->
+            dictionary.getVector().setValueCount(dictionaryIndexes.get(name).size()));
+        try {
+            if (writer == null) {
+                // the writer takes the dictionaries of the first batch when it is created
+                startWriter();
+            } else {
+                for (Dictionary dictionary : dictionaries.values()) {
+                    writer.writeDictionary(dictionary);
+                }
+            }
+            writer.writeBatch();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        row = 0;
+        allocateBatch();
+        dictionaries.values().forEach(dictionary -> dictionary.getVector().reset());
+        dictionaryIndexes.values().forEach(Map::clear);
+    }
+
+    private void startWriter() throws IOException {
+        writer = new BatchDictionaryStreamWriter(root, provider, outputStream);
+        writer.start();
+    }
+
+    private void allocateBatch() {
+        for (FieldVector vector : root.getFieldVectors()) {
+            vector.setInitialCapacity(BATCH_SIZE);
+            vector.allocateNew();
+        }
+    }
+
+    /**
+     * Writes the last batch and the end of the stream.
+     */
+    public void finish() throws IOException {
+        if (row > 0) {
+            writeBatch();
+        } else if (writer == null) {
+            startWriter();
+        }
+        writer.end();
+        outputStream.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // closing the arrow writer ends the stream, which must not look complete when the export failed
+        if (!finished) {
+            outputStream.detach();
+        }
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+        } finally {
+            root.close();
+            dictionaries.values().forEach(dictionary -> dictionary.getVector().close());
+            allocator.close();
+        }
+    }
+
+    /**
+     * Stream writer that also writes replacement dictionaries between record
+     * batches, which the stream format allows and the file format does not.
+     */
+    private static class BatchDictionaryStreamWriter extends ArrowStreamWriter {
+
+        BatchDictionaryStreamWriter(VectorSchemaRoot root, DictionaryProvider provider, OutputStream out) {
+            super(root, provider, out);
+        }
+
+        void writeDictionary(Dictionary dictionary) throws IOException {
+            FieldVector vector = dictionary.getVector();
+            VectorSchemaRoot dictionaryRoot = new VectorSchemaRoot(Collections.singletonList(vector.getField()),
+                Collections.singletonList(vector), vector.getValueCount());
+            try (ArrowDictionaryBatch batch = new ArrowDictionaryBatch(dictionary.getEncoding().getId(),
+                new VectorUnloader(dictionaryRoot).getRecordBatch(), false)) {
+                writeDictionaryBatch(batch);
+            }
+        }
+    }
+
+    /**
+     * Output stream owned by the caller, which is never closed and drops the
+     * writes once detached.
+     */
+    private static class DetachableOutputStream extends OutputStream {
+        private OutputStream delegate;
+
+        DetachableOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        void detach() {
+            delegate = null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (delegate != null) {
+                delegate.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (delegate != null) {
+                delegate.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (delegate != null) {
+                delegate.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            // the caller closes the stream
+        }
+    }
+}
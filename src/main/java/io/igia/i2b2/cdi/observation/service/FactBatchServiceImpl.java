@@ -0,0 +1,119 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.validation.Validator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.common.exception.I2b2Exception;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+
+/**
+ * Splits a stream of facts into chunks of {@code application.fact-batch-size} and
+ * hands every chunk to {@link ObservationService#addObservations(List)}, so that
+ * each chunk is written and committed in its own transaction.
+ */
+@Service
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class FactBatchServiceImpl implements FactBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FactBatchServiceImpl.class);
+
+    private final ObservationService observationService;
+    private final Validator validator;
+    private final ApplicationProperties applicationProperties;
+
+    public FactBatchServiceImpl(ObservationService observationService, Validator validator,
+                                ApplicationProperties applicationProperties) {
+        this.observationService = observationService;
+        this.validator = validator;
+        this.applicationProperties = applicationProperties;
+    }
+
+    @Override
+    public FactBatchResultDto addFacts(Iterator<FactDto> facts) {
+        FactBatchResultDto result = new FactBatchResultDto();
+        List<FactDto> chunk = new ArrayList<>();
+        List<Long> positions = new ArrayList<>();
+        long position = 0;
+
+        try {
+            while (facts.hasNext()) {
+                FactDto factDto = facts.next();
+                String violations = getConstraintViolations(validator, factDto);
+                if (violations.isEmpty()) {
+                    chunk.add(factDto);
+                    positions.add(position);
+                } else {
+                    result.addError(position, violations);
+                }
+                position++;
+
+                if (chunk.size() >= applicationProperties.getFactBatchSize()) {
+                    addChunk(chunk, positions, result);
+                    chunk.clear();
+                    positions.clear();
+                }
+            }
+        } catch (RuntimeJsonMappingException e) {
+            logger.debug("Could not read fact at position {}", position, e);
+            throw new I2b2DataValidationException(String.format(
+                "Could not read the fact at position %d. %d facts were added before it.", position,
+                result.getAccepted()));
+        }
+        addChunk(chunk, positions, result);
+
+        logger.info("{} facts added, {} facts rejected", result.getAccepted(), result.getRejected());
+        return result.sortErrors();
+    }
+
+    private void addChunk(List<FactDto> chunk, List<Long> positions, FactBatchResultDto result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            result.merge(observationService.addObservations(chunk), positions);
+        } catch (I2b2Exception e) {
+            logger.warn("Could not add chunk of {} facts: {}", chunk.size(), e.getMessage());
+            positions.forEach(position -> result.addError(position, e.getMessage()));
+        } catch (DataAccessException e) {
+            logger.warn("Could not add chunk of {} facts", chunk.size(), e);
+            positions.forEach(position -> result.addError(position, "Could not add the fact."));
+        }
+    }
+
+    static String getConstraintViolations(Validator validator, FactDto factDto) {
+        return validator.validate(factDto).stream()
+            .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+            .sorted()
+            .collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,129 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.springframework.util.StringUtils;
+
+import com.opencsv.CSVReader;
+
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+
+/**
+ * Reads facts from CSV one row at a time. The header row names the columns after
+ * the fact properties; modifiers can not be expressed in CSV.
+ */
+public class FactCsvIterator implements Iterator<FactDto> {
+
+    private static final String ENCOUNTER_ID = "encounterId";
+    private static final String PATIENT_ID = "patientId";
+    private static final String PROVIDER_ID = "providerId";
+    private static final String CONCEPT_CODE = "conceptCode";
+    private static final String START_DATE = "startDate";
+    private static final String END_DATE = "endDate";
+    private static final String VALUE = "value";
+    private static final String UNITS = "units";
+
+    private final CSVReader csvReader;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private String[] nextLine;
+
+    public FactCsvIterator(Reader reader) {
+        this.csvReader = new CSVReader(reader);
+
+        String[] header = readLine();
+        if (header == null) {
+            return;
+        }
+        for (int i = 0; i < header.length; i++) {
+            columns.put(header[i].trim(), i);
+        }
+        if (!columns.containsKey(PATIENT_ID) || !columns.containsKey(CONCEPT_CODE)
+            || !columns.containsKey(START_DATE)) {
+            throw new I2b2DataValidationException(
+                "The CSV header must contain the patientId, conceptCode and startDate columns.");
+        }
+        nextLine = readLine();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextLine != null;
+    }
+
+    @Override
+    public FactDto next() {
+        if (nextLine == null) {
+            throw new NoSuchElementException();
+        }
+        String[] line = nextLine;
+        // read ahead before converting so that an invalid row does not stop the iteration
+        nextLine = readLine();
+        return toFact(line);
+    }
+
+    private FactDto toFact(String[] line) {
+        FactDto factDto = new FactDto();
+        factDto.setEncounterId(getValue(line, ENCOUNTER_ID));
+        factDto.setPatientId(getValue(line, PATIENT_ID));
+        factDto.setProviderId(getValue(line, PROVIDER_ID));
+        factDto.setConceptCode(getValue(line, CONCEPT_CODE));
+        factDto.setStartDate(getDate(line, START_DATE));
+        factDto.setEndDate(getDate(line, END_DATE));
+        factDto.setValue(getValue(line, VALUE));
+        factDto.setUnits(getValue(line, UNITS));
+        return factDto;
+    }
+
+    private String getValue(String[] line, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= line.length || StringUtils.isEmpty(line[index])) {
+            return null;
+        }
+        return line[index];
+    }
+
+    private LocalDateTime getDate(String[] line, String column) {
+        String value = getValue(line, column);
+        try {
+            return value == null ? null : LocalDateTime.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            throw new I2b2DataValidationException("Invalid " + column + ".");
+        }
+    }
+
+    private String[] readLine() {
+        try {
+            String[] line = csvReader.readNext();
+            // blank lines are skipped
+            while (line != null && line.length == 1 && line[0].trim().isEmpty()) {
+                line = csvReader.readNext();
+            }
+            return line;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
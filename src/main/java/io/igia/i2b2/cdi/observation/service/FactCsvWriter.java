@@ -0,0 +1,72 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.service;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+import com.opencsv.CSVWriter;
+
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+
+/**
+ * Writes facts as CSV one row at a time, with the columns read by
+ * {@link FactCsvIterator} so that an export can be imported again.
+ */
+public class FactCsvWriter implements Consumer<FactDto>, Flushable {
+
+    private static final String[] HEADER = { "encounterId", "patientId", "providerId", "conceptCode", "startDate",
+        "endDate", "value", "units" };
+    private static final int FLUSH_INTERVAL = 1000;
+
+    private final CSVWriter csvWriter;
+    private long rows;
+
+    public FactCsvWriter(Writer writer) {
+        this.csvWriter = new CSVWriter(writer);
+        csvWriter.writeNext(HEADER);
+    }
+
+    @Override
+    public void accept(FactDto factDto) {
+        csvWriter.writeNext(new String[] { factDto.getEncounterId(), factDto.getPatientId(), factDto.getProviderId(),
+            factDto.getConceptCode(), toString(factDto.getStartDate()), toString(factDto.getEndDate()),
+            factDto.getValue(), factDto.getUnits() });
+        // the writer swallows write errors, they are only seen when flushing, e.g. when the client went away
+        if (++rows % FLUSH_INTERVAL == 0) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            csvWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (csvWriter.checkError()) {
+            throw new UncheckedIOException(new IOException("Could not write the facts."));
+        }
+    }
+
+    private String toString(LocalDateTime date) {
+        return date == null ? null : date.toString();
+    }
+}
@@ -0,0 +1,30 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.service;
+
+import java.io.InputStream;
+import java.util.List;
+
+import io.igia.i2b2.cdi.observation.dto.FactImportFormat;
+import io.igia.i2b2.cdi.observation.dto.FactImportResultDto;
+
+public interface FactImportService {
+
+    FactImportResultDto importFacts(InputStream facts, FactImportFormat format, long offset);
+
+    FactImportResultDto importFacts(String path, long offset);
+
+    List<FactImportResultDto> getImports();
+}
@@ -0,0 +1,388 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import javax.validation.Validator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.common.exception.I2b2Exception;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.observation.dto.FactBatchErrorDto;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+import io.igia.i2b2.cdi.observation.dto.FactImportFormat;
+import io.igia.i2b2.cdi.observation.dto.FactImportResultDto;
+import io.igia.i2b2.cdi.observation.dto.FactImportStatus;
+
+/**
+ * Imports a stream of facts through a pipeline of three stages joined by bounded
+ * queues: the calling thread parses, a second thread validates and chunks, a third
+ * thread resolves and writes every chunk through
+ * {@link ObservationService#addObservations(List)}. A slow database therefore
+ * blocks the parser instead of filling the heap. The stages of all imports run
+ * on one pool with two threads per import of {@code fact-import-max-concurrent}.
+ */
+@Service
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class FactImportServiceImpl implements FactImportService, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(FactImportServiceImpl.class);
+
+    private static final long QUEUE_TIMEOUT_MILLIS = 100;
+    private static final String CSV_EXTENSION = ".csv";
+
+    private final ObservationService observationService;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final ApplicationProperties applicationProperties;
+    private final Map<String, FactImportResultDto> imports = new ConcurrentHashMap<>();
+    // both stages of an import have to run at once, so imports rather than stages are bounded
+    private final Semaphore importPermits;
+    private final ExecutorService executor;
+
+    public FactImportServiceImpl(ObservationService observationService, Validator validator,
+                                 ObjectMapper objectMapper, ApplicationProperties applicationProperties) {
+        this.observationService = observationService;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.applicationProperties = applicationProperties;
+        this.importPermits = new Semaphore(applicationProperties.getFactImportMaxConcurrent());
+        this.executor = Executors.newFixedThreadPool(2 * applicationProperties.getFactImportMaxConcurrent(),
+            new CustomizableThreadFactory("fact-import-"));
+    }
+
+    @Override
+    public FactImportResultDto importFacts(InputStream facts, FactImportFormat format, long offset) {
+        if (offset < 0) {
+            throw new I2b2DataValidationException("Offset must not be negative.");
+        }
+
+        if (!importPermits.tryAcquire()) {
+            throw new I2b2DataValidationException("Too many fact imports are running, retry later.");
+        }
+        FactImportResultDto result = new FactImportResultDto(UUID.randomUUID().toString(), offset,
+            applicationProperties.getFactImportMaxErrors());
+        imports.put(result.getId(), result);
+        try {
+            String failure = runPipeline(readFacts(facts, format), offset, result);
+            synchronized (result) {
+                result.setStatus(failure == null ? FactImportStatus.COMPLETED : FactImportStatus.FAILED);
+                result.setMessage(failure);
+                result.sortErrors();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read facts", e);
+            result.setStatus(FactImportStatus.FAILED);
+            result.setMessage("Could not read the facts.");
+        } finally {
+            imports.remove(result.getId());
+            importPermits.release();
+        }
+
+        logger.info("Fact import {} {}: {} facts added, {} facts rejected, checkpoint {}", result.getId(),
+            result.getStatus(), result.getAccepted(), result.getRejected(), result.getCheckpoint());
+        return result;
+    }
+
+    @Override
+    public FactImportResultDto importFacts(String path, long offset) {
+        if (StringUtils.isEmpty(applicationProperties.getFactImportDirectory())) {
+            throw new I2b2DataValidationException("Importing facts from a file is not enabled.");
+        }
+
+        // only files below the import directory can be read
+        Path directory = Paths.get(applicationProperties.getFactImportDirectory()).toAbsolutePath().normalize();
+        Path file = directory.resolve(path).normalize();
+        if (!file.startsWith(directory) || !Files.isRegularFile(file)) {
+            throw new I2b2DataValidationException("Invalid fact file path.");
+        }
+
+        FactImportFormat format = file.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(CSV_EXTENSION)
+            ? FactImportFormat.CSV : FactImportFormat.NDJSON;
+        try (InputStream facts = new BufferedInputStream(Files.newInputStream(file))) {
+            return importFacts(facts, format, offset);
+        } catch (IOException e) {
+            logger.warn("Could not read fact file {}", file, e);
+            throw new I2b2Exception("Could not read the fact file.");
+        }
+    }
+
+    @Override
+    public List<FactImportResultDto> getImports() {
+        return imports.values().stream()
+            .map(result -> {
+                synchronized (result) {
+                    return new FactImportResultDto(result);
+                }
+            })
+            .collect(Collectors.toList());
+    }
+
+    private Iterator<FactDto> readFacts(InputStream facts, FactImportFormat format) throws IOException {
+        if (format == FactImportFormat.CSV) {
+            return new FactCsvIterator(new InputStreamReader(facts, StandardCharsets.UTF_8));
+        }
+        return objectMapper.readerFor(FactDto.class).readValues(facts);
+    }
+
+    private String runPipeline(Iterator<FactDto> facts, long offset, FactImportResultDto result) {
+        int queueCapacity = applicationProperties.getFactImportQueueCapacity();
+        BlockingQueue<ParsedFact> parsedFacts =
+            new ArrayBlockingQueue<>(queueCapacity * applicationProperties.getFactBatchSize());
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicBoolean aborted = new AtomicBoolean();
+
+        Future<?> validation = null;
+        Future<?> writer = null;
+        try {
+            validation = submit(executor, aborted, () -> validate(parsedFacts, chunks, aborted));
+            writer = submit(executor, aborted, () -> write(chunks, result, aborted));
+
+            String failure = parse(facts, offset, parsedFacts, aborted);
+            validation.get();
+            writer.get();
+            return failure;
+        } catch (ExecutionException e) {
+            logger.error("Fact import {} stopped", result.getId(), e.getCause());
+            return "Could not add the facts.";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "The import was interrupted.";
+        } finally {
+            aborted.set(true);
+            cancel(validation);
+            cancel(writer);
+        }
+    }
+
+    private static void cancel(Future<?> stage) {
+        if (stage != null) {
+            stage.cancel(true);
+        }
+    }
+
+    // a failing stage aborts the others so that none of them blocks on a queue forever
+    private static Future<?> submit(ExecutorService executor, AtomicBoolean aborted, Stage stage) {
+        return executor.submit(() -> {
+            try {
+                stage.run();
+                return null;
+            } catch (RuntimeException | InterruptedException e) {
+                aborted.set(true);
+                throw e;
+            }
+        });
+    }
+
+    private String parse(Iterator<FactDto> facts, long offset, BlockingQueue<ParsedFact> parsedFacts,
+                         AtomicBoolean aborted) throws InterruptedException {
+        String failure = null;
+        long position = 0;
+        try {
+            while (facts.hasNext()) {
+                ParsedFact parsedFact;
+                try {
+                    parsedFact = new ParsedFact(position, facts.next(), null);
+                } catch (I2b2DataValidationException e) {
+                    parsedFact = new ParsedFact(position, null, e.getMessage());
+                }
+                // facts before the checkpoint offset were imported by an earlier run
+                if (position++ < offset) {
+                    continue;
+                }
+                if (!put(parsedFacts, parsedFact, aborted)) {
+                    return null;
+                }
+            }
+        } catch (RuntimeException e) {
+            // the reader can not continue after a malformed record, the facts read so far are still added
+            logger.warn("Could not read fact at position {}", position, e);
+            failure = String.format("Could not read the fact at position %d.", position);
+        }
+        put(parsedFacts, ParsedFact.END, aborted);
+        return failure;
+    }
+
+    private void validate(BlockingQueue<ParsedFact> parsedFacts, BlockingQueue<Chunk> chunks,
+                          AtomicBoolean aborted) throws InterruptedException {
+        Chunk chunk = new Chunk();
+        for (ParsedFact parsedFact = take(parsedFacts, aborted); parsedFact != null;
+             parsedFact = take(parsedFacts, aborted)) {
+            if (parsedFact == ParsedFact.END) {
+                chunk.last = true;
+                put(chunks, chunk, aborted);
+                return;
+            }
+
+            String error = parsedFact.error != null ? parsedFact.error
+                : FactBatchServiceImpl.getConstraintViolations(validator, parsedFact.fact);
+            chunk.add(parsedFact, error);
+            if (chunk.size() >= applicationProperties.getFactBatchSize()) {
+                if (!put(chunks, chunk, aborted)) {
+                    return;
+                }
+                chunk = new Chunk();
+            }
+        }
+    }
+
+    private void write(BlockingQueue<Chunk> chunks, FactImportResultDto result,
+                       AtomicBoolean aborted) throws InterruptedException {
+        for (Chunk chunk = take(chunks, aborted); chunk != null; chunk = take(chunks, aborted)) {
+            FactBatchResultDto chunkResult = addChunk(chunk);
+            synchronized (result) {
+                result.merge(chunkResult, chunk.positions);
+                chunk.errors.forEach(error -> result.addError(error.getIndex(), error.getMessage()));
+                if (chunk.end > 0) {
+                    result.setCheckpoint(chunk.end);
+                }
+            }
+            logger.debug("Fact import {}: {} facts added, {} facts rejected, checkpoint {}", result.getId(),
+                result.getAccepted(), result.getRejected(), result.getCheckpoint());
+
+            if (chunk.last) {
+                return;
+            }
+        }
+    }
+
+    private FactBatchResultDto addChunk(Chunk chunk) {
+        FactBatchResultDto chunkResult = new FactBatchResultDto();
+        if (chunk.facts.isEmpty()) {
+            return chunkResult;
+        }
+        // facts rejected by the database are reported, any other database failure stops the
+        // import before the checkpoint moves past the chunk so that it is retried on resume
+        try {
+            return observationService.addObservations(chunk.facts);
+        } catch (I2b2Exception e) {
+            logger.warn("Could not add chunk of {} facts: {}", chunk.facts.size(), e.getMessage());
+            for (int index = 0; index < chunk.facts.size(); index++) {
+                chunkResult.addError(index, e.getMessage());
+            }
+        } catch (DataIntegrityViolationException e) {
+            logger.warn("Could not add chunk of {} facts", chunk.facts.size(), e);
+            for (int index = 0; index < chunk.facts.size(); index++) {
+                chunkResult.addError(index, "Could not add the fact.");
+            }
+        }
+        return chunkResult;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private static <T> boolean put(BlockingQueue<T> queue, T item, AtomicBoolean aborted)
+        throws InterruptedException {
+        while (!aborted.get()) {
+            if (queue.offer(item, QUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> T take(BlockingQueue<T> queue, AtomicBoolean aborted) throws InterruptedException {
+        while (!aborted.get()) {
+            T item = queue.poll(QUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (item != null) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+
+    private static class ParsedFact {
+
+        private static final ParsedFact END = new ParsedFact(-1, null, null);
+
+        private final long position;
+        private final FactDto fact;
+        private final String error;
+
+        private ParsedFact(long position, FactDto fact, String error) {
+            this.position = position;
+            this.fact = fact;
+            this.error = error;
+        }
+    }
+
+    private static class Chunk {
+        private final List<FactDto> facts = new ArrayList<>();
+        private final List<Long> positions = new ArrayList<>();
+        private final List<FactBatchErrorDto> errors = new ArrayList<>();
+        private long end;
+        private boolean last;
+
+        private void add(ParsedFact parsedFact, String error) {
+            if (StringUtils.isEmpty(error)) {
+                facts.add(parsedFact.fact);
+                positions.add(parsedFact.position);
+            } else {
+                errors.add(new FactBatchErrorDto(parsedFact.position, error));
+            }
+            end = parsedFact.position + 1;
+        }
+
+        private int size() {
+            return facts.size() + errors.size();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of numbered entries in memory-mapped segment files of a
+ * fixed size, named after the sequence number of their first entry. An entry is
+ * its payload length, a CRC32 of the rest of the entry, its sequence number and
+ * append time followed by the payload; a zero length ends a segment. On opening,
+ * the last segment is read up to its first incomplete or corrupt entry, which
+ * drops the tail of an append torn by a crash.
+ */
+public class FactJournal implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FactJournal.class);
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final int HEADER_SIZE = 24;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean forceOnAppend;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment current;
+    private volatile long nextSequence;
+
+    // where the last read stopped, so that sequential reads do not scan a segment again
+    private long readSequence = -1;
+    private Segment readSegment;
+    private int readOffset;
+
+    public FactJournal(Path directory, int segmentSize, boolean forceOnAppend) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.forceOnAppend = forceOnAppend;
+        Files.createDirectories(directory);
+
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).forEach(files::add);
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long baseSequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            segments.put(baseSequence, new Segment(baseSequence, file, segmentSize));
+        }
+        if (segments.isEmpty()) {
+            current = openSegment(0);
+        } else {
+            current = segments.lastEntry().getValue();
+            Segment next = null;
+            for (Segment segment : segments.descendingMap().values()) {
+                segment.recover(next);
+                next = segment;
+            }
+            // garbage behind the last entry must not be read as entries after later appends
+            ByteBuffer tail = current.view(current.writeOffset);
+            byte[] zeros = new byte[Math.min(tail.remaining(), 64 * 1024)];
+            while (tail.hasRemaining()) {
+                tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+            }
+        }
+        nextSequence = current.nextSequence;
+    }
+
+    /**
+     * @return the largest payload an entry can have.
+     */
+    public int getMaxPayloadSize() {
+        return segmentSize - HEADER_SIZE;
+    }
+
+    /**
+     * @return the sequence number of the appended entry.
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        if (payload.length > getMaxPayloadSize()) {
+            throw new IllegalArgumentException("Entry of " + payload.length + " bytes exceeds the segment size.");
+        }
+        if (current.writeOffset + HEADER_SIZE + payload.length > segmentSize) {
+            current.buffer.force();
+            current = openSegment(current.nextSequence);
+        }
+        long sequence = current.nextSequence;
+        int offset = current.writeOffset;
+        current.view(offset + 8).putLong(sequence).putLong(System.currentTimeMillis()).put(payload);
+        current.buffer.putInt(offset, payload.length);
+        current.buffer.putInt(offset + 4, checksum(current, offset, payload.length));
+        if (forceOnAppend) {
+            current.buffer.force();
+        }
+        current.writeOffset = offset + HEADER_SIZE + payload.length;
+        current.nextSequence = sequence + 1;
+        nextSequence = sequence + 1;
+        return sequence;
+    }
+
+    /**
+     * @return up to the given number of entries starting at the sequence number,
+     *         entries already deleted are skipped.
+     */
+    public synchronized List<Entry> read(long fromSequence, int maxEntries) {
+        List<Entry> entries = new ArrayList<>();
+        Map.Entry<Long, Segment> floor = segments.floorEntry(fromSequence);
+        Iterator<Segment> iterator = (floor == null ? segments : segments.tailMap(floor.getKey(), true))
+            .values().iterator();
+        long sequence = fromSequence;
+        while (iterator.hasNext() && entries.size() < maxEntries) {
+            Segment segment = iterator.next();
+            int offset = 0;
+            if (segment == readSegment && sequence == readSequence) {
+                offset = readOffset;
+            } else if (segment.baseSequence < sequence) {
+                offset = segment.offsetOf(sequence);
+            }
+            while (offset < segment.writeOffset && entries.size() < maxEntries) {
+                ByteBuffer view = segment.view(offset);
+                int length = view.getInt();
+                view.getInt();
+                long entrySequence = view.getLong();
+                long appendedAt = view.getLong();
+                byte[] payload = new byte[length];
+                view.get(payload);
+                entries.add(new Entry(entrySequence, appendedAt, payload));
+                offset += HEADER_SIZE + length;
+                sequence = entrySequence + 1;
+            }
+            readSegment = segment;
+            readSequence = sequence;
+            readOffset = offset;
+        }
+        return entries;
+    }
+
+    /**
+     * @return the sequence number of the next entry appended.
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * @return the sequence number of the first entry not deleted.
+     */
+    public synchronized long getFirstSequence() {
+        return segments.firstKey();
+    }
+
+    public synchronized void force() {
+        current.buffer.force();
+    }
+
+    /**
+     * Deletes the segments whose entries all come before the sequence number.
+     */
+    public synchronized void deleteBefore(long sequence) {
+        Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            if (segment == current || segment.nextSequence > sequence) {
+                return;
+            }
+            try {
+                if (segment == readSegment) {
+                    readSegment = null;
+                }
+                segment.close();
+                Files.deleteIfExists(segment.file);
+                iterator.remove();
+            } catch (IOException e) {
+                logger.warn("Could not delete spool segment {}", segment.file, e);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        current.buffer.force();
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+    }
+
+    private Segment openSegment(long baseSequence) throws IOException {
+        Path file = directory.resolve(String.format("%019d%s", baseSequence, SEGMENT_SUFFIX));
+        Segment segment = new Segment(baseSequence, file, segmentSize);
+        segments.put(baseSequence, segment);
+        return segment;
+    }
+
+    private static int checksum(Segment segment, int offset, int length) {
+        ByteBuffer view = segment.view(offset + 8);
+        view.limit(offset + HEADER_SIZE + length);
+        CRC32 crc = new CRC32();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    public static class Entry {
+        private final long sequence;
+        private final long appendedAt;
+        private final byte[] payload;
+
+        Entry(long sequence, long appendedAt, byte[] payload) {
+            this.sequence = sequence;
+            this.appendedAt = appendedAt;
+            this.payload = payload;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return the append time in milliseconds since the epoch.
+         */
+        public long getAppendedAt() {
+            return appendedAt;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private static class Segment {
+        private final long baseSequence;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writeOffset;
+        private long nextSequence;
+
+        Segment(long baseSequence, Path file, int segmentSize) throws IOException {
+            this.baseSequence = baseSequence;
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            this.nextSequence = baseSequence;
+        }
+
+        /**
+         * Finds the end of the valid entries, which for a segment before the last
+         * one has to meet the first entry of the next segment.
+         */
+        void recover(Segment next) {
+            int offset = 0;
+            long sequence = baseSequence;
+            while (offset + HEADER_SIZE <= buffer.capacity()) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || length > buffer.capacity() - offset - HEADER_SIZE
+                    || buffer.getLong(offset + 8) != sequence
+                    || buffer.getInt(offset + 4) != checksum(this, offset, length)) {
+                    break;
+                }
+                offset += HEADER_SIZE + length;
+                sequence++;
+            }
+            writeOffset = offset;
+            nextSequence = sequence;
+            if (next != null && next.baseSequence != sequence) {
+                logger.warn("Spool segment {} ends at entry {}, the next segment starts at {}", file, sequence,
+                    next.baseSequence);
+            }
+        }
+
+        ByteBuffer view(int offset) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            return view;
+        }
+
+        int offsetOf(long sequence) {
+            int offset = 0;
+            for (long skipped = baseSequence; skipped < sequence && offset < writeOffset; skipped++) {
+                offset += HEADER_SIZE + buffer.getInt(offset);
+            }
+            return offset;
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
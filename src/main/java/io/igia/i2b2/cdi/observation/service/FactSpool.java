@@ -0,0 +1,326 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.common.exception.I2b2Exception;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.observation.dao.FactSpoolDao;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+import io.igia.i2b2.cdi.observation.dto.FactSpoolFsyncPolicy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Write-ahead spool of single facts: {@link #addObservation(FactDto)} checks the
+ * fact on its own and appends it to a local {@link FactJournal} without
+ * touching the database. A drainer thread adds the journal in batches of
+ * {@code fact-batch-size} with {@link ObservationService#addObservations(List)}
+ * and saves its checkpoint in the same transaction, so an entry is delivered
+ * at least once and replayed after a crash or a failed batch without adding its
+ * fact twice. Facts failing the dimension validation while draining are logged
+ * and counted as rejected.
+ */
+@Component
+public class FactSpool implements DisposableBean, MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(FactSpool.class);
+
+    private final ObservationService observationService;
+    private final FactValidator factValidator;
+    private final FactSpoolDao factSpoolDao;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final FactJournal journal;
+    private final ExecutorService drainer;
+    private final String spoolId;
+    private final int batchSize;
+    private final FactSpoolFsyncPolicy fsyncPolicy;
+    private final Duration fsyncInterval;
+    private final Duration retryInterval;
+    private ScheduledExecutorService flusher;
+
+    private final Object appended = new Object();
+    // sequence of the first entry not drained, -1 until read from the database
+    private volatile long checkpoint = -1;
+    // append time of the first entry not drained, 0 when the drainer has caught up
+    private volatile long pendingSince;
+    private final AtomicLong drainedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    @Autowired
+    public FactSpool(ObservationService observationService, FactValidator factValidator, FactSpoolDao factSpoolDao,
+                     PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                     ApplicationProperties applicationProperties) {
+        this(observationService, factValidator, factSpoolDao, new TransactionTemplate(transactionManager),
+            objectMapper, applicationProperties.isFactSpoolEnabled() ? openJournal(applicationProperties) : null,
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("fact-spool-drainer-")),
+            applicationProperties.getFactSpoolId(), applicationProperties.getFactBatchSize(),
+            applicationProperties.getFactSpoolFsyncPolicy(), applicationProperties.getFactSpoolFsyncInterval(),
+            applicationProperties.getFactSpoolRetryInterval());
+    }
+
+    FactSpool(ObservationService observationService, FactValidator factValidator, FactSpoolDao factSpoolDao,
+              TransactionTemplate transactionTemplate, ObjectMapper objectMapper, FactJournal journal,
+              ExecutorService drainer, String spoolId, int batchSize, FactSpoolFsyncPolicy fsyncPolicy,
+              Duration fsyncInterval, Duration retryInterval) {
+        this.observationService = observationService;
+        this.factValidator = factValidator;
+        this.factSpoolDao = factSpoolDao;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.journal = journal;
+        this.drainer = drainer;
+        this.spoolId = spoolId;
+        this.batchSize = batchSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncInterval = fsyncInterval;
+        this.retryInterval = retryInterval;
+    }
+
+    private static FactJournal openJournal(ApplicationProperties applicationProperties) {
+        try {
+            return new FactJournal(Paths.get(applicationProperties.getFactSpoolDirectory()),
+                Math.toIntExact(applicationProperties.getFactSpoolSegmentSize().toBytes()),
+                applicationProperties.getFactSpoolFsyncPolicy() == FactSpoolFsyncPolicy.ALWAYS);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (journal == null) {
+            return;
+        }
+        drainer.execute(this::drain);
+        if (fsyncPolicy == FactSpoolFsyncPolicy.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("fact-spool-fsync-"));
+            flusher.scheduleAtFixedRate(journal::force, fsyncInterval.toMillis(), fsyncInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Appends the fact to the spool.
+     *
+     * @return the fact with the default values it is added with.
+     */
+    public FactDto addObservation(FactDto factDto) {
+        if (journal == null) {
+            return observationService.addObservation(factDto);
+        }
+        factValidator.validateFact(factDto);
+        FactDto spooledFact = observationService.getFactWithDefaultValues(factDto);
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(spooledFact);
+        } catch (JsonProcessingException e) {
+            throw new I2b2DataValidationException("Could not write the fact.");
+        }
+        if (payload.length > journal.getMaxPayloadSize()) {
+            throw new I2b2DataValidationException("The fact is too large to be spooled.");
+        }
+        try {
+            journal.append(payload);
+        } catch (IOException e) {
+            logger.error("Could not append to the fact spool", e);
+            throw new I2b2Exception("Could not spool the fact.");
+        }
+        synchronized (appended) {
+            appended.notifyAll();
+        }
+        return spooledFact;
+    }
+
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (checkpoint < 0) {
+                    factSpoolDao.createCheckpointTableIfNotExists();
+                    long savedCheckpoint = factSpoolDao.findCheckpoint(spoolId);
+                    if (savedCheckpoint > journal.getNextSequence()) {
+                        // the spool directory was replaced, its entries were never drained
+                        logger.warn("Fact spool {} ends before its checkpoint {}", spoolId, savedCheckpoint);
+                        savedCheckpoint = journal.getFirstSequence();
+                    }
+                    checkpoint = savedCheckpoint;
+                    logger.info("Draining fact spool {} from entry {}", spoolId, checkpoint);
+                }
+                List<FactJournal.Entry> entries = journal.read(checkpoint, batchSize);
+                if (entries.isEmpty()) {
+                    pendingSince = 0;
+                    awaitAppend();
+                    continue;
+                }
+                pendingSince = entries.get(0).getAppendedAt();
+                drainEntries(entries);
+                journal.deleteBefore(checkpoint);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.warn("Could not drain the fact spool, retrying in {}: {}", retryInterval, e.getMessage());
+                try {
+                    Thread.sleep(retryInterval.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void awaitAppend() throws InterruptedException {
+        synchronized (appended) {
+            if (journal.getNextSequence() <= checkpoint) {
+                appended.wait(retryInterval.toMillis());
+            }
+        }
+    }
+
+    private void drainEntries(List<FactJournal.Entry> entries) {
+        List<FactDto> facts = new ArrayList<>(entries.size());
+        for (FactJournal.Entry entry : entries) {
+            try {
+                facts.add(objectMapper.readValue(entry.getPayload(), FactDto.class));
+            } catch (IOException e) {
+                logger.warn("Skipping unreadable fact spool entry {}", entry.getSequence());
+                rejectedCount.incrementAndGet();
+            }
+        }
+        long nextCheckpoint = entries.get(entries.size() - 1).getSequence() + 1;
+
+        FactBatchResultDto result;
+        try {
+            result = transactionTemplate.execute(status -> {
+                FactBatchResultDto batchResult = facts.isEmpty()
+                    ? new FactBatchResultDto() : observationService.addObservations(facts);
+                factSpoolDao.saveCheckpoint(spoolId, nextCheckpoint);
+                return batchResult;
+            });
+        } catch (RuntimeException e) {
+            if (isRetryable(e)) {
+                throw e;
+            }
+            if (entries.size() > 1) {
+                // one fact can fail the whole batch, e.g. on a constraint, without telling which one
+                logger.debug("Batch of {} spooled facts failed, adding them one by one: {}", entries.size(),
+                    e.getMessage());
+                entries.forEach(entry -> drainEntries(Collections.singletonList(entry)));
+                return;
+            }
+            logger.warn("Spooled fact {} rejected: {}", entries.get(0).getSequence(), e.getMessage());
+            transactionTemplate.execute(status -> {
+                factSpoolDao.saveCheckpoint(spoolId, nextCheckpoint);
+                return null;
+            });
+            result = new FactBatchResultDto().addError(0, e.getMessage());
+        }
+
+        result.getErrors().forEach(error -> logger.warn("Spooled fact rejected: {}", error.getMessage()));
+        drainedCount.addAndGet(result.getAccepted());
+        rejectedCount.addAndGet(result.getRejected());
+        checkpoint = nextCheckpoint;
+    }
+
+    // the database is unavailable or slow, the batch is tried again as it is
+    private boolean isRetryable(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+            || e instanceof DataAccessResourceFailureException;
+    }
+
+    /**
+     * @return the number of entries not drained yet.
+     */
+    long getDepth() {
+        long drained = checkpoint >= 0 ? checkpoint : journal.getFirstSequence();
+        return Math.max(0, journal.getNextSequence() - drained);
+    }
+
+    /**
+     * @return the seconds the first entry not drained has been waiting.
+     */
+    double getLag() {
+        long since = pendingSince;
+        return since == 0 ? 0 : Math.max(0, System.currentTimeMillis() - since) / 1000.0;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (journal == null) {
+            return;
+        }
+        Gauge.builder("fact.spool.depth", this, FactSpool::getDepth)
+            .description("The number of spooled facts not added to the database yet")
+            .register(registry);
+        Gauge.builder("fact.spool.lag", this, FactSpool::getLag)
+            .baseUnit("seconds")
+            .description("The time the oldest spooled fact not added to the database has been waiting")
+            .register(registry);
+        FunctionCounter.builder("fact.spool.drained", drainedCount, AtomicLong::get)
+            .description("The number of spooled facts added to the database")
+            .register(registry);
+        FunctionCounter.builder("fact.spool.rejected", rejectedCount, AtomicLong::get)
+            .description("The number of spooled facts rejected while adding them to the database")
+            .register(registry);
+    }
+
+    @Override
+    public void destroy() throws IOException, InterruptedException {
+        drainer.shutdownNow();
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        if (journal != null) {
+            drainer.awaitTermination(10, TimeUnit.SECONDS);
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.service;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.concept.dto.ConceptDto;
+import io.igia.i2b2.cdi.concept.service.ConceptService;
+import io.igia.i2b2.cdi.concept.service.ConceptServiceImpl;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.modifier.service.ModifierService;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+import io.igia.i2b2.cdi.observation.dto.FactModifierDto;
+import io.igia.i2b2.cdi.observation.dto.FactValidationResultDto;
+import io.igia.i2b2.cdi.provider.dto.ProviderSearchDto;
+import io.igia.i2b2.cdi.provider.service.ProviderService;
+
+/**
+ * Validates a batch of facts with one lookup per dimension for the distinct
+ * concept codes, concept and modifier code pairs and provider ids of the
+ * batch, instead of a chain of lookups per fact.
+ */
+@Component
+public class FactValidator {
+    public static final String INVALID_MODIFIER_CODE = "Invalid modifier code.";
+    public static final String INVALID_PROVIDER_ID = "Invalid provider identifier.";
+
+    private final ConceptService conceptService;
+    private final ModifierService modifierService;
+    private final ProviderService providerService;
+    private final ApplicationProperties applicationProperties;
+
+    public FactValidator(ConceptService conceptService, ModifierService modifierService,
+                         ProviderService providerService, ApplicationProperties applicationProperties) {
+        this.conceptService = conceptService;
+        this.modifierService = modifierService;
+        this.providerService = providerService;
+        this.applicationProperties = applicationProperties;
+    }
+
+    public FactValidationResultDto validate(List<FactDto> facts) {
+        FactValidationResultDto result = new FactValidationResultDto();
+        Map<Integer, FactDto> validFacts = new LinkedHashMap<>();
+        for (int index = 0; index < facts.size(); index++) {
+            try {
+                validateFact(facts.get(index));
+                validFacts.put(index, facts.get(index));
+            } catch (I2b2DataValidationException e) {
+                result.addError(index, e.getMessage());
+            }
+        }
+
+        List<ConceptDto> concepts = conceptService.getConceptsWithDataTypeByCodes(validFacts.values().stream()
+            .map(FactDto::getConceptCode)
+            .filter(Objects::nonNull)
+            .map(this::toKey)
+            .collect(Collectors.toSet()));
+        concepts.forEach(result::addConcept);
+        rejectFacts(validFacts, result, factDto -> result.getConcept(factDto.getConceptCode()) == null,
+            ConceptServiceImpl.INVALID_CONCEPT_CODE);
+
+        validateModifiers(validFacts, concepts, result);
+
+        if (!applicationProperties.isLenientValidation()) {
+            validateProviders(validFacts, result);
+        }
+        return result;
+    }
+
+    /**
+     * Validates the fact on its own, without looking up dimensions.
+     */
+    public void validateFact(FactDto factDto) {
+        if (factDto.getStartDate() == null) {
+            throw new I2b2DataValidationException("The fact start date should not be empty.");
+        }
+        if (factDto.getEndDate() != null && factDto.getEndDate().isBefore(factDto.getStartDate())) {
+            throw new I2b2DataValidationException("The fact start date should come before the end date.");
+        }
+        if (!factDto.getModifiers().stream()
+            .map(FactModifierDto::getModifierCode)
+            .allMatch(new HashSet<>()::add)) {
+            throw new I2b2DataValidationException("The modifier code should be unique within the fact.");
+        }
+    }
+
+    private void validateModifiers(Map<Integer, FactDto> facts, List<ConceptDto> concepts,
+                                   FactValidationResultDto result) {
+        Set<String> conceptCodes = new HashSet<>();
+        Set<String> modifierCodes = new HashSet<>();
+        facts.values().stream()
+            .filter(factDto -> !factDto.getModifiers().isEmpty())
+            .forEach(factDto -> {
+                conceptCodes.add(toKey(factDto.getConceptCode()));
+                factDto.getModifiers().forEach(modifier -> modifierCodes.add(toKey(modifier.getModifierCode())));
+            });
+        if (modifierCodes.isEmpty()) {
+            return;
+        }
+
+        modifierService.getModifiersWithDataType(concepts.stream()
+                .filter(concept -> conceptCodes.contains(toKey(concept.getCode())))
+                .collect(Collectors.toList()), modifierCodes)
+            .forEach(result::addModifiers);
+        rejectFacts(facts, result, factDto -> !factDto.getModifiers().stream()
+                .allMatch(modifier -> result.getModifiers(factDto.getConceptCode())
+                    .containsKey(toKey(modifier.getModifierCode()))),
+            INVALID_MODIFIER_CODE);
+    }
+
+    private void validateProviders(Map<Integer, FactDto> facts, FactValidationResultDto result) {
+        Set<String> providerIds = facts.values().stream()
+            .map(FactDto::getProviderId)
+            .filter(providerId -> !StringUtils.isEmpty(providerId))
+            .map(this::toKey)
+            .collect(Collectors.toSet());
+        if (providerIds.isEmpty()) {
+            return;
+        }
+
+        Set<String> existingProviderIds = providerService.getProviders(
+                new ProviderSearchDto().setProviderIds(providerIds))
+            .stream()
+            .map(provider -> toKey(provider.getId()))
+            .collect(Collectors.toSet());
+        rejectFacts(facts, result, factDto -> !StringUtils.isEmpty(factDto.getProviderId())
+                && !existingProviderIds.contains(toKey(factDto.getProviderId())),
+            INVALID_PROVIDER_ID);
+    }
+
+    private void rejectFacts(Map<Integer, FactDto> facts, FactValidationResultDto result,
+                             Predicate<FactDto> isInvalid, String message) {
+        facts.entrySet().removeIf(fact -> {
+            if (isInvalid.test(fact.getValue())) {
+                result.addError(fact.getKey(), message);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private String toKey(String value) {
+        return value == null ? null : value.toUpperCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,211 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.igia.i2b2.cdi.common.exception.I2b2Exception;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.observation.dto.FactBatchErrorDto;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+
+/**
+ * Group commit of single facts: concurrent callers of
+ * {@link #addObservation(FactDto)} are queued and a writer thread adds them
+ * with {@link ObservationService#addObservations(List)}, in one batch and one
+ * commit per at most {@code fact-write-coalescing-max-batch-size} facts or
+ * {@code fact-write-coalescing-max-wait}. Facts rejected by the batch, or all
+ * facts of a failed batch, are added alone again, so that every caller gets the
+ * result or exception of {@link ObservationService#addObservation(FactDto)}.
+ * Callers wait at most {@code fact-write-coalescing-timeout} for the writer.
+ */
+@Component
+public class FactWriteCoalescer implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(FactWriteCoalescer.class);
+    private static final int QUEUED_BATCHES = 4;
+
+    private final ObservationService observationService;
+    private final ExecutorService writer;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final long timeoutNanos;
+    private final BlockingQueue<PendingFact> queue;
+
+    @Autowired
+    public FactWriteCoalescer(ObservationService observationService, ApplicationProperties applicationProperties) {
+        this(observationService,
+            applicationProperties.isFactWriteCoalescingEnabled()
+                ? Executors.newSingleThreadExecutor(new CustomizableThreadFactory("fact-writer-"))
+                : null,
+            applicationProperties.getFactWriteCoalescingMaxBatchSize(),
+            applicationProperties.getFactWriteCoalescingMaxWait(),
+            applicationProperties.getFactWriteCoalescingTimeout());
+    }
+
+    FactWriteCoalescer(ObservationService observationService, ExecutorService writer, int maxBatchSize,
+                       Duration maxWait, Duration timeout) {
+        this.observationService = observationService;
+        this.writer = writer;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = maxWait.toNanos();
+        this.timeoutNanos = timeout.toNanos();
+        this.queue = new LinkedBlockingQueue<>(this.maxBatchSize * QUEUED_BATCHES);
+        if (writer != null) {
+            writer.execute(this::writeBatches);
+        }
+    }
+
+    /**
+     * Adds the fact like {@link ObservationService#addObservation(FactDto)},
+     * together with the facts of concurrent callers if coalescing is enabled.
+     */
+    public FactDto addObservation(FactDto factDto) {
+        if (writer == null || writer.isShutdown()) {
+            return observationService.addObservation(factDto);
+        }
+        PendingFact pendingFact = new PendingFact(factDto);
+        long deadline = System.nanoTime() + timeoutNanos;
+        try {
+            if (!queue.offer(pendingFact, timeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new I2b2Exception("Timed out waiting to add the fact.");
+            }
+            if (writer.isShutdown() && queue.remove(pendingFact)) {
+                return observationService.addObservation(factDto);
+            }
+            return pendingFact.result.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (queue.remove(pendingFact)) {
+                throw new I2b2Exception("Timed out waiting to add the fact.");
+            }
+            throw new I2b2Exception("Timed out waiting to add the fact, it may still be added.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new I2b2Exception("Interrupted while adding the fact.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new I2b2Exception("Could not add the fact.");
+        }
+    }
+
+    private void writeBatches() {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<PendingFact> batch = new ArrayList<>(maxBatchSize);
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingFact pendingFact = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (pendingFact == null) {
+                        break;
+                    }
+                    batch.add(pendingFact);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // keep the only writer alive, completing a future twice has no effect
+                logger.error("Writing a batch of {} facts failed.", batch.size(), e);
+                batch.forEach(pendingFact -> pendingFact.result.completeExceptionally(e));
+            }
+        }
+    }
+
+    private void write(List<PendingFact> batch) {
+        if (batch.size() == 1) {
+            writeAlone(batch.get(0));
+            return;
+        }
+        FactBatchResultDto result;
+        try {
+            result = observationService.addObservations(batch.stream()
+                .map(pendingFact -> pendingFact.factDto)
+                .collect(Collectors.toList()));
+        } catch (RuntimeException e) {
+            // one fact can fail the whole batch, e.g. on a constraint, without telling which one
+            logger.debug("Batch of {} facts failed, adding them one by one: {}", batch.size(), e.getMessage());
+            batch.forEach(this::writeAlone);
+            return;
+        }
+
+        Set<Long> rejected = result.getErrors().stream()
+            .map(FactBatchErrorDto::getIndex)
+            .collect(Collectors.toSet());
+        for (int index = 0; index < batch.size(); index++) {
+            PendingFact pendingFact = batch.get(index);
+            if (rejected.contains((long) index)) {
+                writeAlone(pendingFact);
+            } else {
+                try {
+                    pendingFact.result.complete(observationService.getFactWithDefaultValues(pendingFact.factDto));
+                } catch (RuntimeException e) {
+                    pendingFact.result.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private void writeAlone(PendingFact pendingFact) {
+        try {
+            pendingFact.result.complete(observationService.addObservation(pendingFact.factDto));
+        } catch (RuntimeException e) {
+            pendingFact.result.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdownNow();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+        List<PendingFact> pendingFacts = new ArrayList<>();
+        queue.drainTo(pendingFacts);
+        pendingFacts.forEach(pendingFact -> pendingFact.result.completeExceptionally(
+            new I2b2Exception("Could not add the fact, the application is shutting down.")));
+    }
+
+    private static class PendingFact {
+        private final FactDto factDto;
+        private final CompletableFuture<FactDto> result = new CompletableFuture<>();
+
+        PendingFact(FactDto factDto) {
+            this.factDto = factDto;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.observation.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.igia.i2b2.cdi.common.database.DatabaseHelper;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.observation.dao.ObservationDao;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+import io.igia.i2b2.cdi.observation.dto.FactSearchDto;
+
+/**
+ * Numbers facts sharing patient, encounter, concept, provider and start date
+ * from in-memory counters, seeded from the database the first time a key is
+ * seen. A counter is dropped once it has been idle for the ttl, which has to
+ * outlast the transactions adding facts, so that its next seed sees all the
+ * numbers it handed out.
+ * <p>
+ * Numbers taken outside this instance, by another node or a bulk import, are
+ * only seen by a seed. Facts are therefore added in a savepoint, and an add
+ * failing on the primary key seeds the counters of its facts again and is
+ * retried.
+ */
+@Component
+public class InstanceNumberAllocator {
+    private static final Logger logger = LoggerFactory.getLogger(InstanceNumberAllocator.class);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final ObservationDao observationDao;
+    private final TransactionOperations savepointTemplate;
+    private final UnaryOperator<LocalDateTime> storedTimestamp;
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep;
+
+    @Autowired
+    public InstanceNumberAllocator(ObservationDao observationDao, DatabaseHelper databaseHelper,
+                                   PlatformTransactionManager transactionManager,
+                                   ApplicationProperties applicationProperties) {
+        this(observationDao, createSavepointTemplate(transactionManager), databaseHelper::toStoredTimestamp,
+            applicationProperties.getInstanceNumberCacheTtl(), System::nanoTime);
+    }
+
+    InstanceNumberAllocator(ObservationDao observationDao, TransactionOperations savepointTemplate,
+                            UnaryOperator<LocalDateTime> storedTimestamp, Duration ttl, LongSupplier ticker) {
+        this.observationDao = observationDao;
+        this.savepointTemplate = savepointTemplate;
+        this.storedTimestamp = storedTimestamp;
+        this.ttlNanos = ttl.toNanos();
+        this.ticker = ticker;
+        this.lastSweep = new AtomicLong(ticker.getAsLong());
+    }
+
+    /**
+     * Sets the instance numbers of the facts and adds them, retrying with
+     * counters seeded again when the add fails on the primary key.
+     *
+     * @param add adds the facts with their instance numbers, in a savepoint of
+     *            the current transaction.
+     * @return the result of the add.
+     */
+    public <T> T allocateAndAdd(Collection<FactDto> facts, Supplier<T> add) {
+        for (int attempt = 1; ; attempt++) {
+            allocate(facts);
+            try {
+                return savepointTemplate.execute(status -> add.get());
+            } catch (DuplicateKeyException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("Instance numbers of {} facts taken concurrently, seeding them again", facts.size());
+                seed(facts, ticker.getAsLong());
+            }
+        }
+    }
+
+    /**
+     * Sets the instance number of the facts, consecutive for facts of the same
+     * key.
+     */
+    void allocate(Collection<FactDto> facts) {
+        long now = ticker.getAsLong();
+        sweep(now);
+
+        List<FactDto> unseededFacts = facts.stream()
+            .filter(factDto -> !counters.containsKey(getKey(factDto)))
+            .collect(Collectors.toList());
+        if (!unseededFacts.isEmpty()) {
+            seed(unseededFacts, now);
+        }
+
+        for (FactDto factDto : facts) {
+            String key = getKey(factDto);
+            int instanceNum = next(key, now);
+            while (instanceNum == 0) {
+                // dropped by a concurrent sweep in between
+                seed(Collections.singletonList(factDto), now);
+                instanceNum = next(key, now);
+            }
+            factDto.setInstanceNum(instanceNum);
+        }
+    }
+
+    int size() {
+        return counters.size();
+    }
+
+    private void seed(Collection<FactDto> facts, long now) {
+        FactSearchDto factSearchDto = new FactSearchDto()
+            .setPatientNums(facts.stream().map(FactDto::getPatientNum).collect(Collectors.toSet()))
+            .setConceptCodes(facts.stream().map(FactDto::getConceptCode).collect(Collectors.toSet()));
+
+        Map<String, Integer> nextInstanceNumbers = new HashMap<>();
+        observationDao.findMaxInstanceNumbers(factSearchDto).forEach(observation -> nextInstanceNumbers.merge(
+            getKey(observation.getPatientNum(), observation.getEncounterNum(), observation.getConceptCode(),
+                observation.getProviderId(), observation.getStartDate()),
+            observation.getInstanceNumber() + 1, Integer::max));
+
+        // a counter seeded before, or concurrently by another thread, keeps the numbers it handed out
+        facts.forEach(factDto -> counters.merge(getKey(factDto),
+            new Counter(nextInstanceNumbers.getOrDefault(getKey(factDto), 1), now),
+            (counter, seeded) -> {
+                counter.next = Math.max(counter.next, seeded.next);
+                counter.lastUsed = now;
+                return counter;
+            }));
+    }
+
+    /**
+     * @return the next number of the key, or 0 without a counter.
+     */
+    private int next(String key, long now) {
+        int[] instanceNum = new int[1];
+        counters.computeIfPresent(key, (k, counter) -> {
+            instanceNum[0] = counter.next++;
+            counter.lastUsed = now;
+            return counter;
+        });
+        return instanceNum[0];
+    }
+
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last >= ttlNanos && lastSweep.compareAndSet(last, now)) {
+            counters.keySet().forEach(key -> counters.computeIfPresent(key,
+                (k, counter) -> now - counter.lastUsed >= ttlNanos ? null : counter));
+        }
+    }
+
+    private String getKey(FactDto factDto) {
+        return getKey(factDto.getPatientNum(), factDto.getEncounterNum(), factDto.getConceptCode(),
+            factDto.getProviderId(), factDto.getStartDate());
+    }
+
+    private String getKey(Integer patientNum, Integer encounterNum, String conceptCode, String providerId,
+                          LocalDateTime startDate) {
+        // the start date is read back in the precision of the column, the fact's own has to match it
+        return String.join("|", String.valueOf(patientNum), String.valueOf(encounterNum),
+            toKey(conceptCode), toKey(providerId),
+            String.valueOf(startDate == null ? null : storedTimestamp.apply(startDate)));
+    }
+
+    private String toKey(String value) {
+        return value == null ? null : value.toUpperCase(Locale.ENGLISH);
+    }
+
+    private static TransactionOperations createSavepointTemplate(PlatformTransactionManager transactionManager) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        return transactionTemplate;
+    }
+
+    private static final class Counter {
+        private int next;
+        private long lastUsed;
+
+        private Counter(int next, long lastUsed) {
+            this.next = next;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -15,10 +15,14 @@
 
 package io.igia.i2b2.cdi.observation.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.function.Consumer;
 
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
 import io.igia.i2b2.cdi.observation.domain.Observation;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
 import io.igia.i2b2.cdi.observation.dto.FactDto;
 import io.igia.i2b2.cdi.observation.dto.FactSearchDto;
 
@@ -26,7 +30,28 @@ public interface ObservationService {
 
     FactDto addObservation(FactDto factDto);
 
+    FactBatchResultDto addObservations(List<FactDto> factDtos);
+
+    /**
+     * @return a copy of the fact with the default values it is added with, as
+     *         returned by {@link #addObservation(FactDto)}. No database
+     *         connection is needed.
+     */
+    FactDto getFactWithDefaultValues(FactDto factDto);
+
     PaginationResult<FactDto> getObservations(FactSearchDto factSearchDto);
 
     List<Observation> getObservationModifiers(FactSearchDto factSearchDto);
+
+    /**
+     * Hands all facts matching the search to the consumer as they are read, the
+     * pagination and modifier flag of the search are ignored.
+     */
+    void exportObservations(FactSearchDto factSearchDto, Consumer<FactDto> consumer);
+
+    /**
+     * Writes the observation_fact rows matching the search, modifier rows
+     * included, to the stream as an Apache Arrow IPC stream.
+     */
+    void exportObservationFacts(FactSearchDto factSearchDto, OutputStream outputStream) throws IOException;
 }
@@ -14,26 +14,35 @@
 
 package io.igia.i2b2.cdi.observation.service;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.dao.DuplicateKeyException;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import io.igia.i2b2.cdi.common.cache.IdentityMap;
+import io.igia.i2b2.cdi.common.cache.IdentityMapManager;
+import io.igia.i2b2.cdi.common.dto.CountMode;
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
-import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
 import io.igia.i2b2.cdi.common.exception.I2b2Exception;
 import io.igia.i2b2.cdi.concept.dto.ConceptDataType;
 import io.igia.i2b2.cdi.concept.dto.ConceptDto;
@@ -50,9 +59,11 @@ import io.igia.i2b2.cdi.observation.dao.ObservationDao;
 import io.igia.i2b2.cdi.observation.domain.Observation;
 import io.igia.i2b2.cdi.observation.domain.ObservationModifier;
 import io.igia.i2b2.cdi.observation.domain.ValueTypeCode;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
 import io.igia.i2b2.cdi.observation.dto.FactDto;
 import io.igia.i2b2.cdi.observation.dto.FactModifierDto;
 import io.igia.i2b2.cdi.observation.dto.FactSearchDto;
+import io.igia.i2b2.cdi.observation.dto.FactValidationResultDto;
 import io.igia.i2b2.cdi.patient.dto.PatientDto;
 import io.igia.i2b2.cdi.patient.dto.PatientSearchDto;
 import io.igia.i2b2.cdi.patient.service.PatientService;
@@ -73,13 +84,20 @@ public class ObservationServiceImpl implements ObservationService {
     private final PatientService patientService;
     private final EncounterService encounterService;
     private final ApplicationProperties applicationProperties;
+    private final InstanceNumberAllocator instanceNumberAllocator;
+    private final IdentityMapManager identityMapManager;
+    private final FactValidator factValidator;
     protected static final String PATIENT_NUM = "patient_num";
     protected static final String ID = "id";
+    private static final int MAX_MODIFIER_LOOKUP_SIZE = 500;
+    private static final int EXPORT_CHUNK_SIZE = 1000;
 
     public ObservationServiceImpl(ObservationDao observationDao, ObservationMapper observationMapper,
                                   ConceptService conceptService, ModifierService modifierService,
                                   ProviderService providerService, PatientService patientService,
-                                  EncounterService encounterService, ApplicationProperties applicationProperties) {
+                                  EncounterService encounterService, ApplicationProperties applicationProperties,
+                                  InstanceNumberAllocator instanceNumberAllocator,
+                                  IdentityMapManager identityMapManager, FactValidator factValidator) {
         this.observationDao = observationDao;
         this.observationMapper = observationMapper;
         this.conceptService = conceptService;
@@ -88,6 +106,9 @@ public class ObservationServiceImpl implements ObservationService {
         this.patientService = patientService;
         this.encounterService = encounterService;
         this.applicationProperties = applicationProperties;
+        this.instanceNumberAllocator = instanceNumberAllocator;
+        this.identityMapManager = identityMapManager;
+        this.factValidator = factValidator;
     }
 
     @Override
@@ -96,7 +117,159 @@ public class ObservationServiceImpl implements ObservationService {
 
         FactDto factDto = new FactDto(inFactDto);
         validateObservation(factDto);
+        populateDefaultValues(factDto);
 
+        FactDto observationWithUpdatedModifiers = new FactDto(factDto);
+        identifyAndPopulateModifiersDataType(observationWithUpdatedModifiers);
+        observationWithUpdatedModifiers.addModifier(createDefaultModifier(observationWithUpdatedModifiers));
+
+        populateMappedIdentifier(observationWithUpdatedModifiers);
+
+        saveObservation(observationWithUpdatedModifiers);
+
+        return factDto;
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public FactBatchResultDto addObservations(List<FactDto> inFactDtos) {
+        FactBatchResultDto result = new FactBatchResultDto();
+
+        // facts are identified by their position in the batch so that errors can be reported per fact
+        List<FactDto> facts = inFactDtos.stream().map(FactDto::new).collect(Collectors.toList());
+        FactValidationResultDto validation = factValidator.validate(facts);
+        validation.getErrors().forEach(result::addError);
+
+        Map<Integer, FactDto> observations = new LinkedHashMap<>();
+        for (int index = 0; index < facts.size(); index++) {
+            if (!validation.isValid(index)) {
+                continue;
+            }
+            FactDto factDto = facts.get(index);
+            populateDefaultValues(factDto);
+            FactDto observationWithUpdatedModifiers = new FactDto(factDto);
+            ConceptDto concept = validation.getConcept(factDto.getConceptCode());
+            try {
+                populateModifiersDataType(observationWithUpdatedModifiers,
+                    validation.getModifiers(factDto.getConceptCode()));
+                observationWithUpdatedModifiers.addModifier(createDefaultModifier(observationWithUpdatedModifiers,
+                    () -> mapObservationDataTypeFromConceptDataType(concept.getDataType())));
+                observations.put(index, observationWithUpdatedModifiers);
+            } catch (NumberFormatException e) {
+                result.addError(index, "The fact value does not match the data type of the concept or modifier.");
+            }
+        }
+
+        if (!observations.isEmpty()) {
+            populateMappedIdentifiers(observations.values());
+            int[] updateCount = instanceNumberAllocator.allocateAndAdd(observations.values(),
+                () -> observationDao.addAll(observations.values().stream()
+                    .map(observationMapper::observationFromDto)
+                    .collect(Collectors.toList())));
+            if (Arrays.stream(updateCount).anyMatch(count -> count == 0)) {
+                throw new I2b2Exception("Could not add the facts.");
+            }
+        }
+
+        result.setAccepted(observations.size());
+        return result.sortErrors();
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public FactDto getFactWithDefaultValues(FactDto inFactDto) {
+        FactDto factDto = new FactDto(inFactDto);
+        populateDefaultValues(factDto);
+        return factDto;
+    }
+
+    private void populateMappedIdentifiers(Collection<FactDto> facts) {
+        Map<String, Integer> patientNums = getOrCreatePatientMappingIdentifiers(facts);
+        facts.forEach(factDto -> factDto.setPatientNum(patientNums.get(toKey(factDto.getPatientId()))));
+
+        // encounter creation requires patient num, so it should be placed after populating patient_num
+        Map<List<String>, Integer> encounterNums = getOrCreateEncounterMappingIdentifiers(facts);
+        facts.forEach(factDto -> factDto.setEncounterNum(StringUtils.isEmpty(factDto.getEncounterId())
+            ? observationDao.getNextNegativeEncounterNumber()
+            : encounterNums.get(toEncounterKey(factDto.getPatientId(), factDto.getEncounterId()))));
+    }
+
+    private Map<String, Integer> getOrCreatePatientMappingIdentifiers(Collection<FactDto> facts) {
+        IdentityMap identityMap = identityMapManager.getPatients();
+        Map<String, Integer> patientNums = new HashMap<>();
+        List<PatientDto> unknownPatients = new ArrayList<>();
+        facts.forEach(factDto -> {
+            String patientId = toKey(factDto.getPatientId());
+            if (patientId != null && !patientNums.containsKey(patientId)) {
+                Integer patientNum = identityMap.getNum(patientId);
+                patientNums.put(patientId, patientNum);
+                if (patientNum == null) {
+                    PatientDto patientDto = new PatientDto();
+                    patientDto.setPatientId(factDto.getPatientId());
+                    unknownPatients.add(patientDto);
+                }
+            }
+        });
+        if (unknownPatients.isEmpty()) {
+            return patientNums;
+        }
+
+        Map<String, Integer> mappedPatientNums = patientService.getOrCreatePatients(unknownPatients).stream()
+            .collect(Collectors.toMap(PatientDto::getPatientId, PatientDto::getPatientNum, (first, second) -> first));
+        logger.debug("{} of {} patients not found in identity map", unknownPatients.size(), patientNums.size());
+        mappedPatientNums.forEach((patientId, patientNum) -> patientNums.put(toKey(patientId), patientNum));
+        identityMap.putAfterCommit(mappedPatientNums);
+        return patientNums;
+    }
+
+    private Map<List<String>, Integer> getOrCreateEncounterMappingIdentifiers(Collection<FactDto> facts) {
+        IdentityMap identityMap = identityMapManager.getEncounters();
+        Map<List<String>, Integer> encounterNums = new HashMap<>();
+        List<EncounterDto> unknownEncounters = new ArrayList<>();
+        facts.forEach(factDto -> {
+            if (StringUtils.isEmpty(factDto.getEncounterId())) {
+                return;
+            }
+            List<String> key = toEncounterKey(factDto.getPatientId(), factDto.getEncounterId());
+            if (!encounterNums.containsKey(key)) {
+                // an encounter id identifies an encounter of one patient only
+                Integer encounterNum = identityMap.getNum(factDto.getPatientId(), factDto.getEncounterId());
+                encounterNums.put(key, encounterNum);
+                if (encounterNum == null) {
+                    unknownEncounters.add(createEncounter(factDto));
+                }
+            }
+        });
+        if (unknownEncounters.isEmpty()) {
+            return encounterNums;
+        }
+
+        List<EncounterDto> mappedEncounters = encounterService.getOrCreateEncounters(unknownEncounters);
+        logger.debug("{} of {} encounters not found in identity map", unknownEncounters.size(), encounterNums.size());
+        mappedEncounters.forEach(encounterDto -> encounterNums.put(
+            toEncounterKey(encounterDto.getPatientId(), encounterDto.getEncounterId()), encounterDto.getEncounterNum()));
+        identityMap.putAfterCommit(mappedEncounters, EncounterDto::getPatientId, EncounterDto::getEncounterId,
+            EncounterDto::getEncounterNum);
+        return encounterNums;
+    }
+
+    private EncounterDto createEncounter(FactDto factDto) {
+        EncounterDto encounterDto = new EncounterDto();
+        encounterDto.setPatientId(factDto.getPatientId());
+        encounterDto.setEncounterId(factDto.getEncounterId());
+        encounterDto.setPatientNum(factDto.getPatientNum());
+        return encounterDto;
+    }
+
+    private String toKey(String value) {
+        return value == null ? null : value.toUpperCase(Locale.ENGLISH);
+    }
+
+    private List<String> toEncounterKey(String patientId, String encounterId) {
+        return Arrays.asList(toKey(patientId), toKey(encounterId));
+    }
+
+    private void populateDefaultValues(FactDto factDto) {
         if (StringUtils.isEmpty(factDto.getProviderId())) {
             factDto.setProviderId("@");
         }
@@ -108,30 +281,12 @@ public class ObservationServiceImpl implements ObservationService {
         if (StringUtils.isEmpty(factDto.getSourceSystemCode())) {
             factDto.setSourceSystemCode(applicationProperties.getSourceSystemCode());
         }
-        FactDto observationWithUpdatedModifiers = new FactDto(factDto);
-        identifyAndPopulateModifiersDataType(observationWithUpdatedModifiers);
-        observationWithUpdatedModifiers.addModifier(createDefaultModifier(observationWithUpdatedModifiers));
-
-        populateMappedIdentifier(observationWithUpdatedModifiers);
-
-        saveObservation(observationWithUpdatedModifiers);
-
-        return factDto;
     }
 
-    @Retryable(value = {DuplicateKeyException.class}, maxAttempts = 3,
-        backoff = @Backoff(delay = 2000, maxDelay = 20000, multiplier = 3, random = true))
     private void saveObservation(FactDto observationWithUpdatedModifiers) {
-        Observation observation = observationMapper.observationFromDto(observationWithUpdatedModifiers);
-        observation.setInstanceNumber(observationDao.getNextInstanceNumberForObservationFact(
-            new FactSearchDto()
-                .setConceptCode(observationWithUpdatedModifiers.getConceptCode())
-                .setEncounterNum(observationWithUpdatedModifiers.getEncounterNum())
-                .setPatientNum(observationWithUpdatedModifiers.getPatientNum())
-                .setProviderId(observationWithUpdatedModifiers.getProviderId())
-                .setStartDate(observationWithUpdatedModifiers.getStartDate())));
-
-        int[] updateCount = observationDao.add(observation);
+        int[] updateCount = instanceNumberAllocator.allocateAndAdd(
+            Collections.singletonList(observationWithUpdatedModifiers),
+            () -> observationDao.add(observationMapper.observationFromDto(observationWithUpdatedModifiers)));
 
         if (Arrays.stream(updateCount).anyMatch(count -> count == 0)) {
             throw new I2b2Exception("Could not add the fact.");
@@ -148,11 +303,15 @@ public class ObservationServiceImpl implements ObservationService {
                 .map(FactModifierDto::getModifierCode)
                 .collect(Collectors.toList())))
             .stream()
-            .collect(Collectors.groupingBy(ModifierDto::getCode));
+            .collect(Collectors.groupingBy(modifier -> toKey(modifier.getCode())));
+
+        populateModifiersDataType(factDto, modifiersMap);
+    }
 
+    private void populateModifiersDataType(FactDto factDto, Map<String, List<ModifierDto>> modifiersMap) {
         factDto.getModifiers().stream().forEach(observationModifier -> {
             List<ModifierDto> modifiers = modifiersMap.getOrDefault(
-                observationModifier.getModifierCode(), Collections.emptyList());
+                toKey(observationModifier.getModifierCode()), Collections.emptyList());
             if(!modifiers.isEmpty()) {
                 if (modifiers.size() > 1) {
                     logger.debug("{} number of modifier detail got mapped against modifier code.", modifiers.size());
@@ -166,12 +325,16 @@ public class ObservationServiceImpl implements ObservationService {
     }
 
     private FactModifierDto createDefaultModifier(FactDto factDto) {
+        return createDefaultModifier(factDto, () -> identifyValueTypeFromConceptTerm(factDto));
+    }
+
+    private FactModifierDto createDefaultModifier(FactDto factDto, Supplier<ValueTypeCode> conceptValueType) {
         FactModifierDto observationModifier = new FactModifierDto();
         observationModifier.setModifierCode("@");
         if (StringUtils.isEmpty(factDto.getValue())) {
             observationModifier.setValueTypeCode(ValueTypeCode.NONE);
         } else {
-            observationModifier.setValueTypeCode(identifyValueTypeFromConceptTerm(factDto));
+            observationModifier.setValueTypeCode(conceptValueType.get());
         }
         observationModifier.setValue(factDto.getValue());
         observationModifier.setUnits(factDto.getUnits());
@@ -238,65 +401,20 @@ public class ObservationServiceImpl implements ObservationService {
             return observationDao.getNextNegativeEncounterNumber();
         }
 
-        EncounterSearchDto encounterSearchDto = new EncounterSearchDto()
-            .setEncounterId(factDto.getEncounterId())
-            .setPatientId(factDto.getPatientId());
-        List<EncounterDto> encounters = encounterService.getEncounters(encounterSearchDto);
-        if (encounters.isEmpty()) {
-            EncounterDto encounterDto = new EncounterDto();
-            encounterDto.setPatientId(factDto.getPatientId());
-            encounterDto.setEncounterId(factDto.getEncounterId());
-            encounterDto.setPatientNum(factDto.getPatientNum());
-            EncounterDto encounter = encounterService.addEncounter(encounterDto);
-            return encounter.getEncounterNum();
-        } else {
-            if (encounters.size() > 1) {
-                logger.debug("Using first encounter num : {} to use in fact", encounters.get(0).getEncounterNum());
-            }
-            return encounters.get(0).getEncounterNum();
-        }
+        return getOrCreateEncounterMappingIdentifiers(Collections.singletonList(factDto))
+            .get(toEncounterKey(factDto.getPatientId(), factDto.getEncounterId()));
     }
 
     private Integer getOrCreatePatientMappingIdentifier(FactDto factDto) {
-        PatientSearchDto patientSearchDto = new PatientSearchDto()
-            .setPatientId(factDto.getPatientId());
-        List<PatientDto> patients = patientService.getPatients(patientSearchDto);
-        if (patients.isEmpty()) {
-            PatientDto patientDto = new PatientDto();
-            patientDto.setPatientId(factDto.getPatientId());
-            PatientDto patient = patientService.addPatient(patientDto);
-            logger.debug("Patient created with identifier: {}", patient.getPatientNum());
-            return patient.getPatientNum();
-        } else {
-            if (patients.size() > 1) {
-                logger.debug("{} patients found by patient Id : {}, and project id : {}",
-                    patients.size(), patientSearchDto.getPatientId(), patientSearchDto.getProjectId());
-                logger.debug("Using first patient num : {} to use in fact", patients.get(0).getPatientNum());
-            }
-            logger.debug("Patient exists with identifier: {}", patients.get(0).getPatientNum());
-            return patients.get(0).getPatientNum();
-        }
+        return getOrCreatePatientMappingIdentifiers(Collections.singletonList(factDto))
+            .get(toKey(factDto.getPatientId()));
     }
 
     private void validateObservation(FactDto factDto) {
-        validateStartDate(factDto);
+        factValidator.validateFact(factDto);
         validateConceptCode(factDto);
         validateModifierCode(factDto);
         validateProvider(factDto);
-        validateEndDate(factDto);
-    }
-
-    private void validateStartDate(FactDto factDto) {
-        if(factDto.getStartDate() == null) {
-            throw new I2b2DataValidationException("The fact start date should not be empty.");
-        }
-    }
-
-    private void validateEndDate(FactDto factDto) {
-        if (factDto.getEndDate() != null
-            && factDto.getEndDate().isBefore(factDto.getStartDate())) {
-            throw new I2b2DataValidationException("The fact start date should come before the end date.");
-        }
     }
 
     private void validateProvider(FactDto factDto) {
@@ -310,17 +428,11 @@ public class ObservationServiceImpl implements ObservationService {
 
     private void validateModifierCode(FactDto factDto) {
         if (!factDto.getModifiers().isEmpty()) {
-            List<String> modifiers = factDto.getModifiers().stream()
-                .map(FactModifierDto::getModifierCode).collect(Collectors.toList());
-
-            if (modifiers.stream().allMatch(new HashSet<>()::add)) {
-                modifierService.validate(
-                    new ModifierSearchDto()
-                        .setConceptCode(factDto.getConceptCode())
-                        .setModifierCodes(modifiers));
-            } else {
-                throw new I2b2DataValidationException("The modifier code should be unique within the fact.");
-            }
+            modifierService.validate(
+                new ModifierSearchDto()
+                    .setConceptCode(factDto.getConceptCode())
+                    .setModifierCodes(factDto.getModifiers().stream()
+                        .map(FactModifierDto::getModifierCode).collect(Collectors.toList())));
         }
     }
 
@@ -358,19 +470,98 @@ public class ObservationServiceImpl implements ObservationService {
         }
         
         PaginationResult<Observation> facts = observationDao.findObservations(inSearchDto);
+
+        // identifiers and modifiers are resolved once for the whole page instead of once per fact
+        Map<Integer, String> patientIds = getPatientIds(facts.getRecords());
+        Map<Integer, String> encounterIds = getEncounterIds(facts.getRecords());
+        Map<List<Object>, List<Observation>> observationModifiers = inSearchDto.getModifierFlag()
+            ? getObservationModifiers(facts.getRecords()) : Collections.emptyMap();
+
         List<FactDto> obsFacts = new ArrayList<>();
         facts.getRecords().stream()
-                .forEach(observation -> obsFacts.add(mapObservationFactObject(observation, inSearchDto)));
+                .forEach(observation -> obsFacts.add(mapObservationFactObject(observation, inSearchDto,
+                    patientIds, encounterIds, observationModifiers)));
 
         observationFacts.setRecords(obsFacts);
-        observationFacts.setTotalCount(observationDao.getTotalCount(inSearchDto));
+        observationFacts.setNextCursor(facts.getNextCursor());
+        observationFacts.setHasMore(facts.getHasMore());
+        if (pageableDto == null || pageableDto.getCountMode() != CountMode.NONE) {
+            observationFacts.setTotalCount(observationDao.getTotalCount(inSearchDto));
+        }
         return observationFacts;
     }
 
-    private FactDto mapObservationFactObject(Observation observation, FactSearchDto inSearchDto) {
+    @Override
+    public void exportObservations(FactSearchDto inSearchDto, Consumer<FactDto> consumer) {
+        FactSearchDto searchDto = createExportSearchDto(inSearchDto);
+        if (searchDto == null) {
+            return;
+        }
+
+        // identifiers are resolved per chunk of facts, only the chunk is held in memory
+        List<Observation> chunk = new ArrayList<>(EXPORT_CHUNK_SIZE);
+        observationDao.streamObservations(searchDto, applicationProperties.getFactExportFetchSize(), observation -> {
+            chunk.add(observation);
+            if (chunk.size() == EXPORT_CHUNK_SIZE) {
+                exportChunk(chunk, searchDto, consumer);
+            }
+        });
+        exportChunk(chunk, searchDto, consumer);
+    }
+
+    @Override
+    public void exportObservationFacts(FactSearchDto inSearchDto, OutputStream outputStream) throws IOException {
+        FactSearchDto searchDto = createExportSearchDto(inSearchDto);
+        // the writer builds the code dictionaries per record batch, the facts are read once
+        try (FactArrowWriter factArrowWriter = new FactArrowWriter(outputStream)) {
+            if (searchDto != null) {
+                searchDto.setModifierFlag(true);
+                observationDao.streamObservations(searchDto, applicationProperties.getFactExportFetchSize(),
+                    factArrowWriter);
+            }
+            factArrowWriter.finish();
+        }
+    }
+
+    /**
+     * @return the search of an export with the patient ids resolved to patient
+     *         nums, or null when none of the patients exists.
+     */
+    private FactSearchDto createExportSearchDto(FactSearchDto inSearchDto) {
+        FactSearchDto searchDto = new FactSearchDto();
+        searchDto.setConceptCode(inSearchDto.getConceptCode());
+        searchDto.setConceptCodes(inSearchDto.getConceptCodes());
+        searchDto.setStartDateFrom(inSearchDto.getStartDateFrom());
+        searchDto.setStartDateTo(inSearchDto.getStartDateTo());
+
+        Set<String> patientIds = new HashSet<>(inSearchDto.getPatientIds());
+        if (!StringUtils.isEmpty(inSearchDto.getPatientId())) {
+            patientIds.add(inSearchDto.getPatientId());
+        }
+        if (!patientIds.isEmpty()) {
+            List<PatientDto> patients = patientService.getPatients(new PatientSearchDto().setPatientIds(patientIds));
+            if (patients.isEmpty()) {
+                return null;
+            }
+            searchDto.setPatientNums(patients.stream().map(PatientDto::getPatientNum).collect(Collectors.toList()));
+        }
+        return searchDto;
+    }
+
+    private void exportChunk(List<Observation> chunk, FactSearchDto searchDto, Consumer<FactDto> consumer) {
+        Map<Integer, String> patientIds = getPatientIds(chunk);
+        Map<Integer, String> encounterIds = getEncounterIds(chunk);
+        chunk.forEach(observation -> consumer.accept(mapObservationFactObject(observation, searchDto,
+            patientIds, encounterIds, Collections.emptyMap())));
+        chunk.clear();
+    }
+
+    private FactDto mapObservationFactObject(Observation observation, FactSearchDto inSearchDto,
+                                             Map<Integer, String> patientIds, Map<Integer, String> encounterIds,
+                                             Map<List<Object>, List<Observation>> observationModifiers) {
         FactDto fact = new FactDto();
-        fact.setEncounterId(getEncounterIdFromMappingIdentifier(observation));
-        fact.setPatientId(getPatientIdFromMappingIdentifier(observation));
+        fact.setEncounterId(encounterIds.getOrDefault(observation.getEncounterNum(), ""));
+        fact.setPatientId(patientIds.getOrDefault(observation.getPatientNum(), ""));
         fact.setConceptCode(observation.getConceptCode());
         fact.setProviderId(observation.getProviderId());
         fact.setStartDate(observation.getStartDate());
@@ -378,10 +569,8 @@ public class ObservationServiceImpl implements ObservationService {
 
         List<FactModifierDto> modifiers = new ArrayList<>();
         if (inSearchDto.getModifierFlag()) {
-            FactSearchDto searchDto = new FactSearchDto();
-            searchDto.setPatientNum(observation.getPatientNum());
-            searchDto.setConceptCode(observation.getConceptCode());
-            List<Observation> observationsModifiers = getObservationModifiers(searchDto);
+            List<Observation> observationsModifiers = observationModifiers.getOrDefault(
+                getObservationKey(observation), Collections.emptyList());
             if (!observationsModifiers.isEmpty()) {
                 observationsModifiers.stream().forEach(observationsModifier -> {
                     ObservationModifier obsModifier = observationsModifier.getModifiers().get(0);
@@ -422,25 +611,82 @@ public class ObservationServiceImpl implements ObservationService {
         return observationDao.findObservationModifiers(factSearchDto);
     }
     
-    private String getPatientIdFromMappingIdentifier(Observation observation) {
-        String patientId = "";
-        PatientSearchDto patientSearchDto = new PatientSearchDto();
-        patientSearchDto.setPatientNum(observation.getPatientNum());
-        List<PatientDto> patientDtos = patientService.getPatientByPatientNum(patientSearchDto);
-        if (!patientDtos.isEmpty()) {
-            patientId = patientDtos.get(0).getPatientId();
+    private Map<Integer, String> getPatientIds(List<Observation> observations) {
+        IdentityMap identityMap = identityMapManager.getPatients();
+        Map<Integer, String> patientIds = new HashMap<>();
+        Set<Integer> unknownPatientNums = new HashSet<>();
+        observations.stream()
+            .map(Observation::getPatientNum)
+            .distinct()
+            .forEach(patientNum -> {
+                String patientId = identityMap.getId(patientNum);
+                if (patientId == null) {
+                    unknownPatientNums.add(patientNum);
+                } else {
+                    patientIds.put(patientNum, patientId);
+                }
+            });
+        if (unknownPatientNums.isEmpty()) {
+            return patientIds;
+        }
+        PatientSearchDto patientSearchDto = new PatientSearchDto().setPatientNums(unknownPatientNums);
+        patientService.getPatientByPatientNum(patientSearchDto)
+            .forEach(patientDto -> {
+                if (patientIds.putIfAbsent(patientDto.getPatientNum(), patientDto.getPatientId()) == null) {
+                    identityMap.putId(patientDto.getPatientNum(), patientDto.getPatientId());
+                }
+            });
+        return patientIds;
+    }
+
+    private Map<Integer, String> getEncounterIds(List<Observation> observations) {
+        IdentityMap identityMap = identityMapManager.getEncounters();
+        Map<Integer, String> encounterIds = new HashMap<>();
+        Set<Integer> unknownEncounterNums = new HashSet<>();
+        observations.stream()
+            .map(Observation::getEncounterNum)
+            .distinct()
+            .forEach(encounterNum -> {
+                String encounterId = identityMap.getId(encounterNum);
+                if (encounterId == null) {
+                    unknownEncounterNums.add(encounterNum);
+                } else {
+                    encounterIds.put(encounterNum, encounterId);
+                }
+            });
+        if (unknownEncounterNums.isEmpty()) {
+            return encounterIds;
         }
-        return patientId;
+        EncounterSearchDto encounterSearchDto = new EncounterSearchDto().setEncounterNums(unknownEncounterNums);
+        encounterService.getEncounterByEncounterNum(encounterSearchDto)
+            .forEach(encounterDto -> {
+                if (encounterIds.putIfAbsent(encounterDto.getEncounterNum(), encounterDto.getEncounterId()) == null) {
+                    identityMap.putId(encounterDto.getEncounterNum(), encounterDto.getEncounterId());
+                }
+            });
+        return encounterIds;
     }
 
-    private String getEncounterIdFromMappingIdentifier(Observation observation) {
-        String encounterId = "";
-        EncounterSearchDto encounterSearchDto = new EncounterSearchDto();
-        encounterSearchDto.setEncounterNum(observation.getEncounterNum());
-        List<EncounterDto> encounterDtos = encounterService.getEncounterByEncounterNum(encounterSearchDto);
-        if (!encounterDtos.isEmpty()) {
-            encounterId = encounterDtos.get(0).getEncounterId();
+    // modifiers are narrowed down by the page's patients, encounters and concepts and then matched to
+    // their fact in memory, the page is split so that the IN lists stay within the database parameter limits
+    private Map<List<Object>, List<Observation>> getObservationModifiers(List<Observation> observations) {
+        Map<List<Object>, List<Observation>> observationModifiers = new HashMap<>();
+        for (int from = 0; from < observations.size(); from += MAX_MODIFIER_LOOKUP_SIZE) {
+            List<Observation> partition = observations.subList(from,
+                Math.min(from + MAX_MODIFIER_LOOKUP_SIZE, observations.size()));
+            FactSearchDto searchDto = new FactSearchDto()
+                .setPatientNums(partition.stream().map(Observation::getPatientNum).collect(Collectors.toSet()))
+                .setEncounterNums(partition.stream().map(Observation::getEncounterNum).collect(Collectors.toSet()))
+                .setConceptCodes(partition.stream().map(Observation::getConceptCode).collect(Collectors.toSet()));
+            getObservationModifiers(searchDto).forEach(observationModifier -> observationModifiers
+                .computeIfAbsent(getObservationKey(observationModifier), key -> new ArrayList<>())
+                .add(observationModifier));
         }
-        return encounterId;
+        return observationModifiers;
+    }
+
+    private List<Object> getObservationKey(Observation observation) {
+        return Arrays.asList(observation.getPatientNum(), observation.getConceptCode(),
+            observation.getEncounterNum(), observation.getStartDate(), observation.getInstanceNumber());
     }
 }
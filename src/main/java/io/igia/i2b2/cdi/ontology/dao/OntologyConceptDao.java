@@ -15,7 +15,10 @@
 
 package io.igia.i2b2.cdi.ontology.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 import io.igia.i2b2.cdi.ontology.dto.OntologyConceptDto;
 import io.igia.i2b2.cdi.ontology.dto.OntologyConceptSearchDto;
@@ -38,4 +41,22 @@ public interface OntologyConceptDao {
     int updateOntologyToTableAccess(OntologyConceptSearchDto ontologyConceptSearchDto);
 
     List<OntologyConceptDto> findOntologyConceptsByLevel(OntologyConceptSearchDto ontologyConceptSearchDto);
+
+    /**
+     * Streams the full name and level of every ontology concept, in no particular
+     * order.
+     */
+    void streamOntologyConceptLevels(ObjIntConsumer<String> consumer);
+
+    /**
+     * @return the modifiers applied to any of the {@code m_applied_path} patterns,
+     *         with their pattern and exclusion flag.
+     */
+    List<OntologyConceptDto> findModifierApplications(Collection<String> modifierAppliedPaths);
+
+    /**
+     * Streams every modifier application, with its {@code m_applied_path}
+     * pattern, exclusion flag and metadata, ordered by full name.
+     */
+    void streamModifierApplications(Consumer<OntologyConceptDto> consumer);
 }
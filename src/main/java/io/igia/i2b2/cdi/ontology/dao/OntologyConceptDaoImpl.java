@@ -16,18 +16,23 @@
 package io.igia.i2b2.cdi.ontology.dao;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import io.igia.i2b2.cdi.common.cache.DimensionCache;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
 import io.igia.i2b2.cdi.ontology.dto.OntologyConceptDto;
 import io.igia.i2b2.cdi.ontology.dto.OntologyConceptSearchDto;
@@ -54,6 +59,7 @@ public class OntologyConceptDaoImpl implements OntologyConceptDao {
     protected static final String C_DIMCODE = "cDimcode";
     protected static final String C_TOOLTIP = "cTooltip";
     protected static final String M_APPLIED_PATH = "mAppliedPath";
+    protected static final String M_EXCLUSION_CD = "mExclusionCd";
     protected static final String UPDATE_DATE = "updateDate";
     protected static final String SOURCE_SYSTEM_CD = "sourceSystemCd";
     protected static final String C_TABLE_CD = "cTableAccess";
@@ -71,6 +77,7 @@ public class OntologyConceptDaoImpl implements OntologyConceptDao {
     }
 
     @Override
+    @DimensionCache
     public List<OntologyConceptDto> findOntologyConcepts(OntologyConceptSearchDto ontologyConceptSearchDto) {
 	QueryParamDto queryParamDto = new QueryParamDto()
 		.withQuery(String.join(" ", "select distinct ontology.c_fullname as " + CONCEPT_FULL_NAME,
@@ -263,6 +270,7 @@ public class OntologyConceptDaoImpl implements OntologyConceptDao {
     }
 
     @Override
+    @DimensionCache
     public List<OntologyConceptDto> findOntologyConceptsByLevel(OntologyConceptSearchDto ontologyConceptSearchDto) {
         QueryParamDto queryParamDto = new QueryParamDto()
                 .withQuery(String.join(" ", "select distinct ontology.c_fullname as " + CONCEPT_FULL_NAME,
@@ -292,4 +300,44 @@ public class OntologyConceptDaoImpl implements OntologyConceptDao {
                     .addQueryParameter(conceptLevelQueryParamName, ontologyConceptSearchDto.getConceptLevels());
         }
     }
+
+    @Override
+    public void streamOntologyConceptLevels(ObjIntConsumer<String> consumer) {
+        final String query = String.join(" ", "select ontology.c_fullname as " + CONCEPT_FULL_NAME + ",",
+                "ontology.c_hlevel as " + CH_LEVEL, "from i2b2 ontology");
+        this.namedParameterJdbcTemplate.getJdbcTemplate().query(query,
+                (RowCallbackHandler) rs -> consumer.accept(rs.getString(CONCEPT_FULL_NAME), rs.getInt(CH_LEVEL)));
+    }
+
+    @Override
+    @DimensionCache
+    public List<OntologyConceptDto> findModifierApplications(Collection<String> modifierAppliedPaths) {
+        final String query = String.join(" ", "select ontology.c_fullname as " + CONCEPT_FULL_NAME + ",",
+                "ontology.m_applied_path as " + M_APPLIED_PATH + ",", "ontology.m_exclusion_cd as " + M_EXCLUSION_CD,
+                "from i2b2 ontology", "where ontology.m_applied_path in ( :" + MODIFIER_APPLIED_PATH + " )");
+        return this.namedParameterJdbcTemplate.query(query,
+                new MapSqlParameterSource(MODIFIER_APPLIED_PATH, modifierAppliedPaths), (rs, rowNum) -> {
+                    OntologyConceptDto ontologyConceptDto = new OntologyConceptDto();
+                    ontologyConceptDto.setFullName(rs.getString(CONCEPT_FULL_NAME));
+                    ontologyConceptDto.setModifierAppliedPath(rs.getString(M_APPLIED_PATH));
+                    ontologyConceptDto.setModifierExcluded("X".equals(rs.getString(M_EXCLUSION_CD)));
+                    return ontologyConceptDto;
+                });
+    }
+
+    @Override
+    public void streamModifierApplications(Consumer<OntologyConceptDto> consumer) {
+        final String query = String.join(" ", "select ontology.c_fullname as " + CONCEPT_FULL_NAME + ",",
+                "ontology.m_applied_path as " + M_APPLIED_PATH + ",", "ontology.m_exclusion_cd as " + M_EXCLUSION_CD + ",",
+                "ontology.c_metadataxml as " + METADATA_XML, "from i2b2 ontology",
+                "where ontology.m_applied_path <> '@'", "order by ontology.c_fullname");
+        this.namedParameterJdbcTemplate.getJdbcTemplate().query(query, (RowCallbackHandler) rs -> {
+            OntologyConceptDto ontologyConceptDto = new OntologyConceptDto();
+            ontologyConceptDto.setFullName(rs.getString(CONCEPT_FULL_NAME));
+            ontologyConceptDto.setModifierAppliedPath(rs.getString(M_APPLIED_PATH));
+            ontologyConceptDto.setModifierExcluded("X".equals(rs.getString(M_EXCLUSION_CD)));
+            ontologyConceptDto.setMetadataXml(rs.getString(METADATA_XML));
+            consumer.accept(ontologyConceptDto);
+        });
+    }
 }
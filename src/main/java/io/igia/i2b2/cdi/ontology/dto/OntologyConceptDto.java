@@ -23,6 +23,12 @@ public class OntologyConceptDto {
     @JsonIgnore
     private ConceptDataType dataType;
 
+    @JsonIgnore
+    private String modifierAppliedPath;
+
+    @JsonIgnore
+    private boolean modifierExcluded;
+
     public String getFullName() {
         return fullName;
     }
@@ -46,4 +52,20 @@ public class OntologyConceptDto {
     public void setDataType(ConceptDataType dataType) {
         this.dataType = dataType;
     }
+
+    public String getModifierAppliedPath() {
+        return modifierAppliedPath;
+    }
+
+    public void setModifierAppliedPath(String modifierAppliedPath) {
+        this.modifierAppliedPath = modifierAppliedPath;
+    }
+
+    public boolean isModifierExcluded() {
+        return modifierExcluded;
+    }
+
+    public void setModifierExcluded(boolean modifierExcluded) {
+        this.modifierExcluded = modifierExcluded;
+    }
 }
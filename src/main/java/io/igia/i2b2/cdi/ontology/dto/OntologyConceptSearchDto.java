@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 public class OntologyConceptSearchDto {
 
@@ -97,4 +98,25 @@ public class OntologyConceptSearchDto {
     public void setConceptLevels(List<Integer> conceptLevels) {
         this.conceptLevels = conceptLevels;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        OntologyConceptSearchDto that = (OntologyConceptSearchDto) o;
+        return modifierConcept == that.modifierConcept && Objects.equals(conceptPaths, that.conceptPaths)
+                && Objects.equals(modifierAppliedPaths, that.modifierAppliedPaths)
+                && Objects.equals(ontologyDto, that.ontologyDto)
+                && Objects.equals(existingConceptFullName, that.existingConceptFullName)
+                && Objects.equals(conceptPath, that.conceptPath)
+                && Objects.equals(conceptLevels, that.conceptLevels);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(modifierConcept, conceptPaths, modifierAppliedPaths, ontologyDto, existingConceptFullName,
+                conceptPath, conceptLevels);
+    }
 }
@@ -14,6 +14,8 @@
 
 package io.igia.i2b2.cdi.ontology.dto;
 
+import java.util.Objects;
+
 import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptDto;
 
 public class OntologyDto extends DerivedConceptDto {
@@ -170,4 +172,31 @@ public class OntologyDto extends DerivedConceptDto {
     public void setChLevel(Integer chLevel) {
 	this.chLevel = chLevel;
     }
+
+    @Override
+    public boolean equals(Object o) {
+	if (this == o)
+	    return true;
+	if (!super.equals(o))
+	    return false;
+	OntologyDto that = (OntologyDto) o;
+	return Objects.equals(getMetadata(), that.getMetadata()) && Objects.equals(chLevel, that.chLevel)
+		&& Objects.equals(cName, that.cName) && Objects.equals(cSynonymCd, that.cSynonymCd)
+		&& Objects.equals(cVisualAttributes, that.cVisualAttributes)
+		&& Objects.equals(cFactTableColumn, that.cFactTableColumn)
+		&& Objects.equals(cTableName, that.cTableName) && Objects.equals(cColumnName, that.cColumnName)
+		&& Objects.equals(cColumnDatatype, that.cColumnDatatype) && Objects.equals(cOperator, that.cOperator)
+		&& Objects.equals(cDimcode, that.cDimcode) && Objects.equals(cTooltip, that.cTooltip)
+		&& Objects.equals(mAppliedPath, that.mAppliedPath) && Objects.equals(updateDate, that.updateDate)
+		&& Objects.equals(sourceSystemCd, that.sourceSystemCd) && Objects.equals(cTableCd, that.cTableCd)
+		&& Objects.equals(accessTableName, that.accessTableName)
+		&& Objects.equals(cProtectedAccess, that.cProtectedAccess);
+    }
+
+    @Override
+    public int hashCode() {
+	return Objects.hash(super.hashCode(), getMetadata(), chLevel, cName, cSynonymCd, cVisualAttributes,
+		cFactTableColumn, cTableName, cColumnName, cColumnDatatype, cOperator, cDimcode, cTooltip,
+		mAppliedPath, updateDate, sourceSystemCd, cTableCd, accessTableName, cProtectedAccess);
+    }
 }
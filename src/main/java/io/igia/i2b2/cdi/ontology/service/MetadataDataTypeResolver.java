@@ -0,0 +1,149 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+
+
+package io.igia.i2b2.cdi.ontology.service;
+
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import io.igia.i2b2.cdi.concept.dto.ConceptDataType;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+
+@Component
+public class MetadataDataTypeResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetadataDataTypeResolver.class);
+    private static final String VALUE_METADATA = "ValueMetadata";
+    private static final String DATA_TYPE = "DataType";
+
+    private final XMLInputFactory inputFactory;
+    private final Map<String, CachedDataType> cache;
+
+    @Autowired
+    public MetadataDataTypeResolver(ApplicationProperties applicationProperties) {
+        this(applicationProperties.getMetadataDataTypeCacheSize());
+    }
+
+    MetadataDataTypeResolver(int maxSize) {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        // one entry per concept path, least recently used evicted first
+        cache = new LinkedHashMap<String, CachedDataType>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedDataType> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public ConceptDataType resolve(String fullName, String metadataXml) {
+        if (StringUtils.isEmpty(metadataXml)) {
+            return ConceptDataType.STRING;
+        }
+        if (fullName == null) {
+            return extractDataType(metadataXml);
+        }
+
+        CachedDataType cached;
+        synchronized (cache) {
+            cached = cache.get(fullName);
+        }
+        if (cached != null && cached.matches(metadataXml)) {
+            return cached.dataType;
+        }
+
+        // metadata of the concept is new or has changed since it was last parsed
+        ConceptDataType dataType = extractDataType(metadataXml);
+        synchronized (cache) {
+            cache.put(fullName, new CachedDataType(metadataXml, dataType));
+        }
+        return dataType;
+    }
+
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private ConceptDataType extractDataType(String metadataXml) {
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(new StringReader(metadataXml));
+            int depth = 0;
+            boolean inValueMetadata = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 1) {
+                        inValueMetadata = VALUE_METADATA.equals(reader.getLocalName());
+                        if (!inValueMetadata) {
+                            break;
+                        }
+                    } else if (depth == 2 && inValueMetadata && DATA_TYPE.equals(reader.getLocalName())) {
+                        String dataType = reader.getElementText().trim();
+                        return dataType.isEmpty() ? ConceptDataType.STRING : ConceptDataType.fromCode(dataType);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } catch (XMLStreamException e) {
+            logger.warn("Concept metadata xml parsing failed.", e);
+        } finally {
+            close(reader);
+        }
+        return ConceptDataType.STRING;
+    }
+
+    private void close(XMLStreamReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            logger.debug("Could not close metadata xml reader.", e);
+        }
+    }
+
+    private static final class CachedDataType {
+        private final String metadataXml;
+        private final ConceptDataType dataType;
+
+        CachedDataType(String metadataXml, ConceptDataType dataType) {
+            this.metadataXml = metadataXml;
+            this.dataType = dataType;
+        }
+
+        // a changed metadata xml of the same length and hash code must still be parsed again
+        boolean matches(String metadataXml) {
+            return this.metadataXml.equals(metadataXml);
+        }
+    }
+}
@@ -14,7 +14,12 @@
 
 package io.igia.i2b2.cdi.ontology.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
 import io.igia.i2b2.cdi.ontology.dto.OntologyConceptDto;
 import io.igia.i2b2.cdi.ontology.dto.OntologyConceptSearchDto;
@@ -35,4 +40,19 @@ public interface OntologyConceptService {
     List<OntologyConceptDto> findOntologyConcepts(OntologyConceptSearchDto ontologyConceptSearchDto);
 
     List<OntologyConceptDto> getOntologyConceptsByLevel(OntologyConceptSearchDto inOntologyConceptSearchDto);
+
+    void streamOntologyConceptLevels(ObjIntConsumer<String> consumer);
+
+    /**
+     * @return the full names of the modifiers applicable to each concept path,
+     *         looked up in one query for all paths.
+     */
+    Map<String, Set<String>> getApplicableModifierPaths(Collection<String> conceptPaths);
+
+    /**
+     * Streams every modifier application like
+     * {@link io.igia.i2b2.cdi.ontology.dao.OntologyConceptDao#streamModifierApplications(Consumer)},
+     * with the data type of the modifier.
+     */
+    void streamModifierApplications(Consumer<OntologyConceptDto> consumer);
 }
@@ -14,31 +14,25 @@
 
 package io.igia.i2b2.cdi.ontology.service;
 
-import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Collectors;
 
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.xml.sax.InputSource;
 
+import io.igia.i2b2.cdi.common.cache.DimensionCacheEvict;
 import io.igia.i2b2.cdi.common.exception.I2b2Exception;
-import io.igia.i2b2.cdi.concept.dto.ConceptDataType;
 import io.igia.i2b2.cdi.derivedconcept.dto.MetadataProperties;
 import io.igia.i2b2.cdi.derivedconcept.util.ConceptUtil;
 import io.igia.i2b2.cdi.ontology.dao.OntologyConceptDao;
@@ -54,17 +48,14 @@ public class OntologyConceptServiceImpl implements OntologyConceptService {
     private static final String NULL_ONTOLOGY_MESSAGE = "OntologyDto is null.";
 
     private final OntologyConceptDao ontologyConceptDao;
-    private final DocumentBuilderFactory factory;
     private final ConceptUtil conceptUtil;
+    private final MetadataDataTypeResolver metadataDataTypeResolver;
 
-    public OntologyConceptServiceImpl(OntologyConceptDao ontologyConceptDao, ConceptUtil conceptUtil)
-	    throws ParserConfigurationException {
+    public OntologyConceptServiceImpl(OntologyConceptDao ontologyConceptDao, ConceptUtil conceptUtil,
+	    MetadataDataTypeResolver metadataDataTypeResolver) {
 	this.ontologyConceptDao = ontologyConceptDao;
-	factory = DocumentBuilderFactory.newInstance();
-	factory.setExpandEntityReferences(false);
-	factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, Boolean.TRUE);
-	factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
 	this.conceptUtil = conceptUtil;
+	this.metadataDataTypeResolver = metadataDataTypeResolver;
     }
 
     @Override
@@ -89,39 +80,22 @@ public class OntologyConceptServiceImpl implements OntologyConceptService {
 	    OntologyConceptSearchDto inOntologyConceptSearchDto) {
 	OntologyConceptSearchDto ontologyConceptSearchDto = new OntologyConceptSearchDto(inOntologyConceptSearchDto);
 	List<OntologyConceptDto> ontologyConcepts = getOntologyConcepts(ontologyConceptSearchDto);
-	ontologyConcepts.stream().forEach(concept -> {
-	    if (StringUtils.isEmpty(concept.getMetadataXml())) {
-		concept.setDataType(ConceptDataType.STRING);
-	    } else {
-		concept.setDataType(extractDataTypeFromMetadata(concept.getMetadataXml()));
-	    }
-	});
+	ontologyConcepts.stream().forEach(concept -> concept
+		.setDataType(metadataDataTypeResolver.resolve(concept.getFullName(), concept.getMetadataXml())));
 
 	return ontologyConcepts;
     }
 
-    private ConceptDataType extractDataTypeFromMetadata(String metadata) {
-	try {
-	    final DocumentBuilder builder = factory.newDocumentBuilder();
-	    Document dDoc = builder.parse(new InputSource(new StringReader(metadata)));
-
-	    XPath xPath = XPathFactory.newInstance().newXPath();
-	    Node node = (Node) xPath.evaluate("/ValueMetadata/DataType", dDoc, XPathConstants.NODE);
-	    if (!StringUtils.isEmpty(node.getTextContent().trim())) {
-		return ConceptDataType.fromCode(node.getTextContent());
-	    }
-	} catch (Exception e) {
-	    logger.warn("Concept metadata xml parsing failed.", e);
-	}
-	return ConceptDataType.STRING;
-    }
-
     private Set<String> getModifierAppliedPathsHierarchy(List<String> conceptPaths) {
 	return conceptPaths.stream().flatMap(concept -> getModifierAppliedPathsHierarchy(concept).stream())
 		.collect(Collectors.toSet());
     }
 
-    private Set<String> getModifierAppliedPathsHierarchy(String concept) {
+    /**
+     * @return the {@code m_applied_path} patterns matching the concept path and
+     *         its ancestors.
+     */
+    public static Set<String> getModifierAppliedPathsHierarchy(String concept) {
 	List<String> conceptTerms = new ArrayList<>();
 	int endIndex = 0;
 	StringBuilder conceptTerm = new StringBuilder("");
@@ -138,6 +112,7 @@ public class OntologyConceptServiceImpl implements OntologyConceptService {
 
     @Override
     @Transactional(readOnly = false)
+    @DimensionCacheEvict
     public OntologyDto addOntology(OntologyDto ontologyDto) {
 	int i2b2Count = 0;
 	int tableAccessCount = 0;
@@ -199,6 +174,7 @@ public class OntologyConceptServiceImpl implements OntologyConceptService {
 
     @Override
     @Transactional(readOnly = false)
+    @DimensionCacheEvict
     public OntologyDto updateOntology(OntologyDto ontologyDto, String existingConceptFullName) {
 	int i2b2Count = 0;
 	int tableAccessCount = 0;
@@ -228,6 +204,7 @@ public class OntologyConceptServiceImpl implements OntologyConceptService {
 
     @Override
     @Transactional(readOnly = false)
+    @DimensionCacheEvict
     public OntologyDto deleteOntology(OntologyDto ontologyDto) {
 	if (ontologyDto == null)
 	    throw new I2b2Exception(NULL_ONTOLOGY_MESSAGE);
@@ -251,4 +228,45 @@ public class OntologyConceptServiceImpl implements OntologyConceptService {
     public List<OntologyConceptDto> getOntologyConceptsByLevel(OntologyConceptSearchDto inOntologyConceptSearchDto) {
         return this.ontologyConceptDao.findOntologyConceptsByLevel(inOntologyConceptSearchDto);
     }
+
+    @Override
+    public void streamOntologyConceptLevels(ObjIntConsumer<String> consumer) {
+        this.ontologyConceptDao.streamOntologyConceptLevels(consumer);
+    }
+
+    @Override
+    public Map<String, Set<String>> getApplicableModifierPaths(Collection<String> conceptPaths) {
+        Map<String, Set<String>> appliedPathsByConceptPath = new HashMap<>();
+        conceptPaths.forEach(conceptPath -> appliedPathsByConceptPath.put(conceptPath,
+            getModifierAppliedPathsHierarchy(conceptPath)));
+        Set<String> appliedPaths = appliedPathsByConceptPath.values().stream().flatMap(Set::stream)
+            .collect(Collectors.toSet());
+        if (appliedPaths.isEmpty()) {
+            return new HashMap<>();
+        }
+        List<OntologyConceptDto> modifierApplications = ontologyConceptDao.findModifierApplications(appliedPaths);
+
+        // like the exclusion subquery, a modifier excluded on any applied path of a concept is not applicable
+        Map<String, Set<String>> modifierPaths = new HashMap<>();
+        appliedPathsByConceptPath.forEach((conceptPath, conceptAppliedPaths) -> {
+            Set<String> included = new HashSet<>();
+            Set<String> excluded = new HashSet<>();
+            modifierApplications.stream()
+                .filter(application -> conceptAppliedPaths.contains(application.getModifierAppliedPath()))
+                .forEach(application -> (application.isModifierExcluded() ? excluded : included)
+                    .add(application.getFullName()));
+            included.removeAll(excluded);
+            modifierPaths.put(conceptPath, included);
+        });
+        return modifierPaths;
+    }
+
+    @Override
+    public void streamModifierApplications(Consumer<OntologyConceptDto> consumer) {
+        this.ontologyConceptDao.streamModifierApplications(application -> {
+            application.setDataType(
+                metadataDataTypeResolver.resolve(application.getFullName(), application.getMetadataXml()));
+            consumer.accept(application);
+        });
+    }
 }
@@ -30,4 +30,20 @@ public interface PatientDao {
     int addPatientMapping(PatientDto patientDto);
 
     int addPatient(PatientDto patientDto);
+
+    /**
+     * @return per patient 1 if its mapping was added, 0 if the patient is mapped
+     *         already.
+     */
+    int[] addPatientMappingsIfAbsent(List<PatientDto> patientDtos);
+
+    int[] addPatientsIfAbsent(List<PatientDto> patientDtos);
+
+    /**
+     * Adds the dimension rows of patients whose nums were just mapped, bulk
+     * loaded from the bulk load threshold on as no row can have their nums.
+     *
+     * @return per patient 1 if its row was added.
+     */
+    int[] addNewPatients(List<PatientDto> patientDtos);
 }
@@ -13,7 +13,9 @@
 
 package io.igia.i2b2.cdi.patient.dao;
 
+import io.igia.i2b2.cdi.common.database.BulkLoader;
 import io.igia.i2b2.cdi.common.database.DatabaseHelper;
+import io.igia.i2b2.cdi.common.database.IdAllocator;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
 import io.igia.i2b2.cdi.patient.dto.PatientDto;
 import io.igia.i2b2.cdi.patient.dto.PatientSearchDto;
@@ -28,8 +30,10 @@ import org.springframework.util.StringUtils;
 import javax.annotation.PostConstruct;
 import javax.sql.DataSource;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.stream.Collectors;
 
 @Repository
 @Transactional(readOnly = true)
@@ -38,23 +42,35 @@ public class PatientDaoImpl implements PatientDao {
     protected static final String PATIENT_NUM = "patientNum";
     protected static final String PATIENT_ID = "patientIde";
     private static final String PATIENT_NUM_SEQUENCE = "patient_mapping_patient_num_seq";
+    private static final List<String> PATIENT_MAPPING_COLUMNS = Arrays.asList("patient_ide", "patient_ide_source",
+        "patient_ide_status", "patient_num", "project_id", "sourcesystem_cd", "update_date");
+    private static final List<String> PATIENT_MAPPING_KEY = Arrays.asList("patient_ide", "patient_ide_source",
+        "project_id");
+    private static final List<String> PATIENT_COLUMNS = Arrays.asList("patient_num", "sourcesystem_cd",
+        "update_date");
+    private static final List<String> PATIENT_KEY = Arrays.asList("patient_num");
 
     private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
     private final PatientMapper patientMapper;
     private final String currentSchema;
+    private final IdAllocator idAllocator;
     private final DatabaseHelper databaseHelper;
+    private final BulkLoader bulkLoader;
 
-    public PatientDaoImpl(DataSource dataSource, PatientMapper patientMapper, DatabaseHelper databaseHelper) {
+    public PatientDaoImpl(DataSource dataSource, PatientMapper patientMapper, IdAllocator idAllocator,
+                          DatabaseHelper databaseHelper, BulkLoader bulkLoader) {
         this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(new JdbcTemplate(dataSource));
         this.patientMapper = patientMapper;
+        this.idAllocator = idAllocator;
         this.databaseHelper = databaseHelper;
+        this.bulkLoader = bulkLoader;
         this.currentSchema = getCurrentSchema(this.namedParameterJdbcTemplate.getJdbcTemplate());
     }
 
     @PostConstruct
     private void init() {
-        databaseHelper.createSequenceIfNotExists(getPatientNumSequenceName(),
-            findMaxPatientNum() + 1, 1);
+        idAllocator.register(getPatientNumSequenceName(),
+            findMaxPatientNum() + 1, false);
     }
 
     @Override
@@ -69,7 +85,9 @@ public class PatientDaoImpl implements PatientDao {
         addSourceCriteria(patientSearchDto, queryParamDto);
         addProjectIdCriteria(patientSearchDto, queryParamDto);
         addPatientIdCriteria(patientSearchDto, queryParamDto);
+        addPatientIdsCriteria(patientSearchDto, queryParamDto);
         addPatientNumCriteria(patientSearchDto, queryParamDto);
+        addPatientNumsCriteria(patientSearchDto, queryParamDto);
 
         return this.namedParameterJdbcTemplate.query(
             queryParamDto.getQuery(), queryParamDto.getParameterSource(), patientMapper);
@@ -84,6 +102,7 @@ public class PatientDaoImpl implements PatientDao {
                 "from patient_mapping patient"
             ));
         addPatientNumCriteria(patientSearchDto, queryParamDto);
+        addPatientNumsCriteria(patientSearchDto, queryParamDto);
 
         return this.namedParameterJdbcTemplate.query(
             queryParamDto.getQuery(), queryParamDto.getParameterSource(), patientMapper);
@@ -139,9 +158,56 @@ public class PatientDaoImpl implements PatientDao {
         return namedParameterJdbcTemplate.update(query, parameterSource);
     }
 
+    @Override
+    @Transactional(readOnly = false)
+    public int[] addPatientMappingsIfAbsent(List<PatientDto> patientDtos) {
+        LocalDateTime updateDate = LocalDateTime.now();
+        return namedParameterJdbcTemplate.batchUpdate(
+            databaseHelper.getInsertIfAbsentQuery("patient_mapping", PATIENT_MAPPING_COLUMNS, PATIENT_MAPPING_KEY),
+            patientDtos.stream()
+                .map(patientDto -> new MapSqlParameterSource()
+                    .addValue("patient_ide", patientDto.getPatientId())
+                    .addValue("patient_ide_source", patientDto.getPatientSource())
+                    .addValue("patient_ide_status", patientDto.getPatientStatus())
+                    .addValue("patient_num", patientDto.getPatientNum())
+                    .addValue("project_id", patientDto.getProjectId())
+                    .addValue("sourcesystem_cd", patientDto.getSource())
+                    .addValue("update_date", updateDate))
+                .toArray(MapSqlParameterSource[]::new));
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public int[] addPatientsIfAbsent(List<PatientDto> patientDtos) {
+        LocalDateTime updateDate = LocalDateTime.now();
+        return namedParameterJdbcTemplate.batchUpdate(
+            databaseHelper.getInsertIfAbsentQuery("patient_dimension", PATIENT_COLUMNS, PATIENT_KEY),
+            patientDtos.stream()
+                .map(patientDto -> new MapSqlParameterSource()
+                    .addValue("patient_num", patientDto.getPatientNum())
+                    .addValue("sourcesystem_cd", patientDto.getSource())
+                    .addValue("update_date", updateDate))
+                .toArray(MapSqlParameterSource[]::new));
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public int[] addNewPatients(List<PatientDto> patientDtos) {
+        if (!bulkLoader.isBulkLoad(patientDtos.size())) {
+            return addPatientsIfAbsent(patientDtos);
+        }
+        LocalDateTime updateDate = LocalDateTime.now();
+        int loaded = bulkLoader.load("patient_dimension", PATIENT_COLUMNS, patientDtos.stream()
+            .map(patientDto -> new Object[] { patientDto.getPatientNum(), patientDto.getSource(), updateDate })
+            .collect(Collectors.toList()));
+        int[] updateCounts = new int[patientDtos.size()];
+        Arrays.fill(updateCounts, loaded == patientDtos.size() ? 1 : 0);
+        return updateCounts;
+    }
+
     @Override
     public Integer getNextPatientNumber() {
-        return databaseHelper.getNextSequenceValue(getPatientNumSequenceName());
+        return idAllocator.next(getPatientNumSequenceName());
     }
 
     private Integer findMaxPatientNum() {
@@ -178,6 +244,17 @@ public class PatientDaoImpl implements PatientDao {
         }
     }
 
+    private void addPatientIdsCriteria(PatientSearchDto patientSearchDto, QueryParamDto queryParamDto) {
+        if (!patientSearchDto.getPatientIds().isEmpty()) {
+            final String patientIdsQueryParamName = "patientIds";
+            queryParamDto
+                .addQueryCriteria("UPPER(patient.patient_ide) in (:" + patientIdsQueryParamName + ")")
+                .addQueryParameter(patientIdsQueryParamName, patientSearchDto.getPatientIds().stream()
+                    .map(patientId -> patientId.toUpperCase(Locale.ENGLISH))
+                    .collect(Collectors.toList()));
+        }
+    }
+
     private void addProjectIdCriteria(PatientSearchDto patientSearchDto, QueryParamDto queryParamDto) {
         if (!StringUtils.isEmpty(patientSearchDto.getProjectId())) {
             final String projectQueryParamName = "projectId";
@@ -203,4 +280,13 @@ public class PatientDaoImpl implements PatientDao {
                 .addQueryParameter(PATIENT_NUM, patientSearchDto.getPatientNum());
         }
     }
+
+    private void addPatientNumsCriteria(PatientSearchDto patientSearchDto, QueryParamDto queryParamDto) {
+        if (!patientSearchDto.getPatientNums().isEmpty()) {
+            final String patientNumsQueryParamName = "patientNums";
+            queryParamDto
+                .addQueryCriteria("patient.patient_num in (:" + patientNumsQueryParamName + ")")
+                .addQueryParameter(patientNumsQueryParamName, patientSearchDto.getPatientNums());
+        }
+    }
 }
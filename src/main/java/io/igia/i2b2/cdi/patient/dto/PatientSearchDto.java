@@ -14,9 +14,15 @@
 
 package io.igia.i2b2.cdi.patient.dto;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 public class PatientSearchDto {
     private String patientId;
+    private Set<String> patientIds = new HashSet<>();
     private Integer patientNum;
+    private Set<Integer> patientNums = new HashSet<>();
     private String source;
     private String projectId;
 
@@ -25,9 +31,11 @@ public class PatientSearchDto {
 
     public PatientSearchDto(PatientSearchDto patientSearchDto) {
         this.patientId = patientSearchDto.getPatientId();
+        this.patientIds.addAll(patientSearchDto.getPatientIds());
         this.source = patientSearchDto.getSource();
         this.projectId = patientSearchDto.getProjectId();
         this.patientNum = patientSearchDto.getPatientNum();
+        this.patientNums.addAll(patientSearchDto.getPatientNums());
     }
 
     public String getPatientId() {
@@ -65,4 +73,22 @@ public class PatientSearchDto {
         this.patientNum = patientNum;
         return this;
     }
+
+    public Set<String> getPatientIds() {
+        return patientIds;
+    }
+
+    public PatientSearchDto setPatientIds(Collection<String> patientIds) {
+        this.patientIds.addAll(patientIds);
+        return this;
+    }
+
+    public Set<Integer> getPatientNums() {
+        return patientNums;
+    }
+
+    public PatientSearchDto setPatientNums(Collection<Integer> patientNums) {
+        this.patientNums.addAll(patientNums);
+        return this;
+    }
 }
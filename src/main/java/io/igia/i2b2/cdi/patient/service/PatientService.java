@@ -13,6 +13,7 @@
 
 package io.igia.i2b2.cdi.patient.service;
 
+import java.util.Collection;
 import java.util.List;
 
 import io.igia.i2b2.cdi.patient.dto.PatientDto;
@@ -24,4 +25,12 @@ public interface PatientService {
     List<PatientDto> getPatientByPatientNum(PatientSearchDto patientSearchDto);
 
     PatientDto addPatient(PatientDto patientDto);
+
+    /**
+     * Maps every patient id to its patient num, adding the patients which are not
+     * mapped yet.
+     *
+     * @return one patient per distinct (case insensitive) patient id.
+     */
+    List<PatientDto> getOrCreatePatients(Collection<PatientDto> patientDtos);
 }
@@ -22,7 +22,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional(readOnly = true)
@@ -53,7 +59,81 @@ public class PatientServiceImpl implements PatientService {
     public PatientDto addPatient(PatientDto inPatientDto) {
 
         PatientDto patientDto = new PatientDto(inPatientDto);
+        populateDefaultValues(patientDto);
 
+        patientDto.setPatientNum(patientDao.getNextPatientNumber());
+
+        int updateCount = patientDao.addPatientMapping(patientDto);
+        if (updateCount == 0) {
+            throw new I2b2Exception("Could not add patient record.");
+        }
+        updateCount = patientDao.addPatient(patientDto);
+        if (updateCount == 0) {
+            throw new I2b2Exception("Could not add patient record.");
+        }
+        return patientDto;
+    }
+
+    @Override
+    @Transactional(readOnly = false)
+    public List<PatientDto> getOrCreatePatients(Collection<PatientDto> patientDtos) {
+        List<PatientDto> requestedPatients = patientDtos.stream()
+            .filter(patientDto -> !StringUtils.isEmpty(patientDto.getPatientId()))
+            .collect(Collectors.toList());
+        Map<String, PatientDto> patients = new LinkedHashMap<>();
+        requestedPatients.forEach(patientDto -> patients.putIfAbsent(toKey(patientDto.getPatientId()), null));
+        if (patients.isEmpty()) {
+            return new ArrayList<>();
+        }
+        findPatients(patients);
+
+        List<PatientDto> newPatients = new ArrayList<>();
+        requestedPatients.forEach(inPatientDto -> {
+            String key = toKey(inPatientDto.getPatientId());
+            if (patients.get(key) == null) {
+                PatientDto patientDto = new PatientDto(inPatientDto);
+                populateDefaultValues(patientDto);
+                patientDto.setPatientNum(patientDao.getNextPatientNumber());
+                patients.put(key, patientDto);
+                newPatients.add(patientDto);
+            }
+        });
+        if (newPatients.isEmpty()) {
+            return new ArrayList<>(patients.values());
+        }
+
+        // a patient mapped concurrently keeps its num, the num allocated here is left unused
+        int[] updateCounts = patientDao.addPatientMappingsIfAbsent(newPatients);
+        List<PatientDto> addedPatients = new ArrayList<>();
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == 0) {
+                patients.put(toKey(newPatients.get(i).getPatientId()), null);
+            } else {
+                addedPatients.add(newPatients.get(i));
+            }
+        }
+        if (!addedPatients.isEmpty()) {
+            patientDao.addNewPatients(addedPatients);
+        }
+        if (addedPatients.size() < newPatients.size()) {
+            findPatients(patients);
+            if (patients.containsValue(null)) {
+                throw new I2b2Exception("Could not add patient record.");
+            }
+        }
+        return new ArrayList<>(patients.values());
+    }
+
+    private void findPatients(Map<String, PatientDto> patients) {
+        List<String> patientIds = patients.entrySet().stream()
+            .filter(patient -> patient.getValue() == null)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+        getPatients(new PatientSearchDto().setPatientIds(patientIds))
+            .forEach(patientDto -> patients.replace(toKey(patientDto.getPatientId()), null, patientDto));
+    }
+
+    private void populateDefaultValues(PatientDto patientDto) {
         if (StringUtils.isEmpty(patientDto.getProjectId())) {
             patientDto.setProjectId(applicationProperties.getProjectId());
         }
@@ -67,18 +147,10 @@ public class PatientServiceImpl implements PatientService {
         if (StringUtils.isEmpty(patientDto.getPatientStatus())) {
             patientDto.setPatientStatus(applicationProperties.getPatientStatus());
         }
+    }
 
-        patientDto.setPatientNum(patientDao.getNextPatientNumber());
-
-        int updateCount = patientDao.addPatientMapping(patientDto);
-        if (updateCount == 0) {
-            throw new I2b2Exception("Could not add patient record.");
-        }
-        updateCount = patientDao.addPatient(patientDto);
-        if (updateCount == 0) {
-            throw new I2b2Exception("Could not add patient record.");
-        }
-        return patientDto;
+    private String toKey(String value) {
+        return value.toUpperCase(Locale.ENGLISH);
     }
 
     @Override
@@ -16,6 +16,7 @@
 
 package io.igia.i2b2.cdi.provider.dao;
 
+import io.igia.i2b2.cdi.common.cache.DimensionCache;
 import io.igia.i2b2.cdi.common.dto.QueryParamDto;
 import io.igia.i2b2.cdi.provider.dto.ProviderDto;
 import io.igia.i2b2.cdi.provider.dto.ProviderSearchDto;
@@ -28,6 +29,7 @@ import org.springframework.util.StringUtils;
 import javax.sql.DataSource;
 import java.util.List;
 import java.util.Locale;
+import java.util.stream.Collectors;
 
 @Repository
 @Transactional(readOnly = true)
@@ -47,6 +49,7 @@ public class ProviderDaoImpl implements ProviderDao {
     }
 
     @Override
+    @DimensionCache
     public List<ProviderDto> findProviders(final ProviderSearchDto providerSearchDto) {
 
         QueryParamDto queryParamDto = new QueryParamDto()
@@ -60,6 +63,7 @@ public class ProviderDaoImpl implements ProviderDao {
 
         addSourceCriteria(providerSearchDto, queryParamDto);
         addProviderIdCriteria(providerSearchDto, queryParamDto);
+        addProviderIdsCriteria(providerSearchDto, queryParamDto);
 
         return this.namedParameterJdbcTemplate.query(
             queryParamDto.getQuery(), queryParamDto.getParameterSource(), providerMapper);
@@ -75,6 +79,17 @@ public class ProviderDaoImpl implements ProviderDao {
         }
     }
 
+    private void addProviderIdsCriteria(ProviderSearchDto providerSearchDto, QueryParamDto queryParamDto) {
+        if (!providerSearchDto.getProviderIds().isEmpty()) {
+            final String providerIdsQueryParamName = "providerIds";
+            queryParamDto
+                .addQueryCriteria("UPPER(provider.provider_id) in (:" + providerIdsQueryParamName + ")")
+                .addQueryParameter(providerIdsQueryParamName, providerSearchDto.getProviderIds().stream()
+                    .map(providerId -> providerId.toUpperCase(Locale.ENGLISH))
+                    .collect(Collectors.toList()));
+        }
+    }
+
     private void addSourceCriteria(ProviderSearchDto providerSearchDto, QueryParamDto queryParamDto) {
         if (!StringUtils.isEmpty(providerSearchDto.getSource())) {
             final String sourceQueryParamName = "sourceSystem";
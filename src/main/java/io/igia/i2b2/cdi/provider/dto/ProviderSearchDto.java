@@ -14,9 +14,15 @@
 
 package io.igia.i2b2.cdi.provider.dto;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
 public class ProviderSearchDto {
     private String source;
     private String providerId;
+    private Set<String> providerIds = new HashSet<>();
 
     public ProviderSearchDto() {
 
@@ -25,6 +31,7 @@ public class ProviderSearchDto {
     public ProviderSearchDto(ProviderSearchDto providerSearchDto) {
         this.source = providerSearchDto.getSource();
         this.providerId = providerSearchDto.getProviderId();
+        this.providerIds.addAll(providerSearchDto.getProviderIds());
     }
 
     public String getSource() {
@@ -44,4 +51,29 @@ public class ProviderSearchDto {
         this.providerId = providerId;
         return this;
     }
+
+    public Set<String> getProviderIds() {
+        return providerIds;
+    }
+
+    public ProviderSearchDto setProviderIds(Collection<String> providerIds) {
+        this.providerIds.addAll(providerIds);
+        return this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        ProviderSearchDto that = (ProviderSearchDto) o;
+        return Objects.equals(source, that.source) && Objects.equals(providerId, that.providerId)
+                && Objects.equals(providerIds, that.providerIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(source, providerId, providerIds);
+    }
 }
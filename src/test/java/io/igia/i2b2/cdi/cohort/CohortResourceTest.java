@@ -0,0 +1,122 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.cohort;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.AutoConfigureJsonTesters;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.json.JacksonTester;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import io.igia.i2b2.cdi.cohort.dto.CohortCriterionDto;
+import io.igia.i2b2.cdi.cohort.dto.CohortCriterionType;
+import io.igia.i2b2.cdi.cohort.dto.CohortDto;
+import io.igia.i2b2.cdi.cohort.service.CohortService;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(CohortResource.class)
+@AutoConfigureJsonTesters
+public class CohortResourceTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private CohortService cohortService;
+
+    @Autowired
+    private JacksonTester<CohortCriterionDto> jacksonTester;
+
+    @Autowired
+    private JacksonTester<CohortDto> cohortJacksonTester;
+
+    @Test
+    @WithMockUser()
+    public void countCohort() throws Exception {
+        CohortCriterionDto criterion = new CohortCriterionDto().setType(CohortCriterionType.AND)
+            .setCriteria(Arrays.asList(new CohortCriterionDto().setType(CohortCriterionType.CONCEPT)
+                .setConceptPath("/a/").setMinValue(1d)));
+        given(cohortService.countPatients(argThat(search -> search.getType() == CohortCriterionType.AND
+            && search.getCriteria().get(0).getMinValue() == 1d))).willReturn(new CohortDto(2, null));
+
+        MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/cohorts:count")
+            .content(jacksonTester.write(criterion).getJson())
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+        ).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo("{\"count\":2}");
+    }
+
+    @Test
+    @WithMockUser()
+    public void getCohort() throws Exception {
+        CohortCriterionDto criterion = new CohortCriterionDto().setType(CohortCriterionType.CONCEPT)
+            .setConceptPath("/a/");
+        CohortDto cohort = new CohortDto(2, Arrays.asList(1, 3));
+        given(cohortService.getPatients(argThat(search -> "/a/".equals(search.getConceptPath()))))
+            .willReturn(cohort);
+
+        MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/cohorts:patients")
+            .content(jacksonTester.write(criterion).getJson())
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+        ).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).isEqualTo(cohortJacksonTester.write(cohort).getJson());
+    }
+
+    @Test
+    @WithMockUser()
+    public void countCohort_missingType() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/cohorts:count")
+            .content("{\"conceptPath\":\"/a/\"}")
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+        ).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    @WithMockUser()
+    public void rebuildCohortIndex() throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/cohorts:reindex")
+        ).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.ACCEPTED.value());
+        verify(cohortService).rebuildIndex();
+    }
+}
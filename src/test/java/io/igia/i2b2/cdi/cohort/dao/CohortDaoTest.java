@@ -0,0 +1,116 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.cohort.dao;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.assertj.core.groups.Tuple;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import io.igia.i2b2.cdi.cohort.dto.CohortCriterionDto;
+import io.igia.i2b2.cdi.cohort.dto.CohortCriterionType;
+
+@RunWith(SpringRunner.class)
+@JdbcTest
+@ComponentScan({"io.igia.i2b2.cdi.cohort.dao"})
+@DirtiesContext
+@TestPropertySource(properties = {"spring.datasource.url=jdbc:h2:mem:testdb"})
+@Sql({"/test-schema.sql", "/test-cohort-data.sql"})
+public class CohortDaoTest {
+
+    @Autowired
+    private CohortDao cohortDao;
+
+    @Test
+    public void findPatientNums_conceptSubtree() {
+        assertThat(cohortDao.findPatientNums(createCriterion("/dx/")).stream()).containsExactly(1, 2);
+        assertThat(cohortDao.findPatientNums(createCriterion("/dx/a/b/")).stream()).containsExactly(2);
+        assertThat(cohortDao.findPatientNums(createCriterion("/none/")).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void findPatientNums_value() {
+        assertThat(cohortDao.findPatientNums(createCriterion("/lab/").setMinValue(100d)).stream())
+            .containsExactly(3);
+        assertThat(cohortDao.findPatientNums(createCriterion("/lab/").setMaxValue(100d)).stream())
+            .containsExactly(1);
+        assertThat(cohortDao.findPatientNums(createCriterion("/lab/").setTextValue("high")).stream())
+            .containsExactly(4);
+    }
+
+    @Test
+    public void findPatientNums_startDate() {
+        assertThat(cohortDao.findPatientNums(createCriterion("/dx/")
+            .setStartDateFrom(LocalDateTime.parse("2021-01-01T00:00:00"))).stream()).containsExactly(2);
+        assertThat(cohortDao.findPatientNums(createCriterion("/dx/")
+            .setStartDateTo(LocalDateTime.parse("2021-01-01T00:00:00"))).stream()).containsExactly(1);
+    }
+
+    @Test
+    public void findAllPatientNums() {
+        assertThat(cohortDao.findAllPatientNums().stream()).containsExactly(1, 2, 3, 4);
+    }
+
+    @Test
+    public void streamConceptPatientNums() {
+        List<Tuple> conceptPatientNums = new ArrayList<>();
+        cohortDao.streamConceptPatientNums(0, 3,
+            (conceptCode, patientNum) -> conceptPatientNums.add(Tuple.tuple(conceptCode, patientNum)));
+
+        assertThat(conceptPatientNums).containsExactlyInAnyOrder(Tuple.tuple("dx1", 1), Tuple.tuple("dx2", 2),
+            Tuple.tuple("lab1", 1));
+    }
+
+    @Test
+    public void streamConceptPatientNumsUpdatedAfter() {
+        List<Tuple> conceptPatientNums = new ArrayList<>();
+        cohortDao.streamConceptPatientNumsUpdatedAfter(LocalDateTime.parse("2021-01-01T00:00:00"),
+            (conceptCode, patientNum) -> conceptPatientNums.add(Tuple.tuple(conceptCode, patientNum)));
+
+        assertThat(conceptPatientNums).containsExactly(Tuple.tuple("lab1", 4));
+    }
+
+    @Test
+    public void findPatientNumsByConceptCode() {
+        assertThat(cohortDao.findPatientNumsByConceptCode("dx1").stream()).containsExactly(1);
+        assertThat(cohortDao.findPatientNumsByConceptCode("lab1").stream()).containsExactly(1, 3, 4);
+    }
+
+    @Test
+    public void findConceptCodes() {
+        assertThat(cohortDao.findConceptCodes("/dx/")).containsExactlyInAnyOrder("dx1", "dx2");
+        assertThat(cohortDao.findConceptCodes("/none/")).isEmpty();
+    }
+
+    @Test
+    public void findMaxPatientNumAndLastFactUpdateDate() {
+        assertThat(cohortDao.findMaxPatientNum()).isEqualTo(4);
+        assertThat(cohortDao.findLastFactUpdateDate()).isEqualTo(LocalDateTime.parse("2022-01-01T00:00:00"));
+    }
+
+    private CohortCriterionDto createCriterion(String conceptPath) {
+        return new CohortCriterionDto().setType(CohortCriterionType.CONCEPT).setConceptPath(conceptPath);
+    }
+}
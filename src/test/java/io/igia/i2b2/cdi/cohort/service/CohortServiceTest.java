@@ -0,0 +1,164 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.cohort.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import io.igia.i2b2.cdi.cohort.dao.CohortDao;
+import io.igia.i2b2.cdi.cohort.dto.CohortCriterionDto;
+import io.igia.i2b2.cdi.cohort.dto.CohortCriterionType;
+import io.igia.i2b2.cdi.cohort.dto.CohortDto;
+import io.igia.i2b2.cdi.common.cache.PatientSetCacheManager;
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CohortServiceTest {
+
+    @Mock
+    private CohortDao cohortDao;
+
+    @Mock
+    private ConceptPatientIndex conceptPatientIndex;
+
+    private CohortService cohortService;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Before
+    public void setUp() {
+        cohortService = new CohortServiceImpl(cohortDao,
+            new PatientSetCacheManager(10, Duration.ofMinutes(10), System::nanoTime), conceptPatientIndex);
+    }
+
+    @Test
+    public void getPatientSet_and() {
+        givenPatientNums("/a/", 1, 2, 3);
+        givenPatientNums("/b/", 2, 3, 4);
+
+        BitSet patientSet = cohortService.getPatientSet(
+            createCriterion(CohortCriterionType.AND, createConcept("/a/"), createConcept("/b/")));
+
+        assertThat(patientSet.stream()).containsExactly(2, 3);
+    }
+
+    @Test
+    public void getPatientSet_orAndNot() {
+        givenPatientNums("/a/", 1, 2);
+        givenPatientNums("/b/", 5);
+        givenPatientNums("/c/", 2);
+
+        BitSet patientSet = cohortService.getPatientSet(createCriterion(CohortCriterionType.AND,
+            createCriterion(CohortCriterionType.OR, createConcept("/a/"), createConcept("/b/")),
+            createCriterion(CohortCriterionType.NOT, createConcept("/c/"))));
+
+        assertThat(patientSet.stream()).containsExactly(1, 5);
+        verify(cohortDao, times(0)).findAllPatientNums();
+    }
+
+    @Test
+    public void getPatientSet_not() {
+        givenPatientNums("/a/", 1, 2);
+        BitSet allPatientNums = new BitSet();
+        allPatientNums.set(1, 5);
+        given(cohortDao.findAllPatientNums()).willReturn(allPatientNums);
+
+        BitSet patientSet = cohortService.getPatientSet(
+            createCriterion(CohortCriterionType.NOT, createConcept("/a/")));
+
+        assertThat(patientSet.stream()).containsExactly(3, 4);
+        assertThat(allPatientNums.cardinality()).isEqualTo(4);
+    }
+
+    @Test
+    public void getPatientSet_conceptCached() {
+        givenPatientNums("/a/", 1, 2);
+
+        CohortDto cohort = cohortService.countPatients(createConcept("/a/"));
+        BitSet patientSet = cohortService.getPatientSet(createConcept("/a/"));
+        patientSet.clear(1);
+        CohortDto patients = cohortService.getPatients(createConcept("/a/"));
+
+        assertThat(cohort.getCount()).isEqualTo(2);
+        assertThat(cohort.getPatientNums()).isNull();
+        assertThat(patients.getPatientNums()).containsExactly(1, 2);
+        verify(cohortDao, times(1)).findPatientNums(argThat(criterion -> "/a/".equals(criterion.getConceptPath())));
+    }
+
+    @Test
+    public void getPatientSet_indexed() {
+        BitSet indexedPatientNums = new BitSet();
+        indexedPatientNums.set(1, 4);
+        given(conceptPatientIndex.getPatientNums("/a/")).willReturn(Optional.of(indexedPatientNums));
+        BitSet patientNums = new BitSet();
+        patientNums.set(2);
+        given(cohortDao.findPatientNums(argThat(criterion -> criterion != null && criterion.getMinValue() != null)))
+            .willReturn(patientNums);
+
+        BitSet patientSet = cohortService.getPatientSet(createCriterion(CohortCriterionType.AND,
+            createConcept("/a/"), createConcept("/a/").setMinValue(100d)));
+
+        assertThat(patientSet.stream()).containsExactly(2);
+        assertThat(indexedPatientNums.cardinality()).isEqualTo(3);
+        verify(cohortDao, times(1)).findPatientNums(argThat(criterion -> criterion.getMinValue() != null));
+    }
+
+    @Test
+    public void getPatientSet_invalidNot() {
+        thrown.expect(I2b2DataValidationException.class);
+        thrown.expectMessage("NOT needs exactly one criterion.");
+        cohortService.getPatientSet(
+            createCriterion(CohortCriterionType.NOT, createConcept("/a/"), createConcept("/b/")));
+    }
+
+    @Test
+    public void getPatientSet_missingConceptPath() {
+        thrown.expect(I2b2DataValidationException.class);
+        thrown.expectMessage("concept path is missing.");
+        cohortService.getPatientSet(createCriterion(CohortCriterionType.OR,
+            new CohortCriterionDto().setType(CohortCriterionType.CONCEPT)));
+    }
+
+    private void givenPatientNums(String conceptPath, int... patientNums) {
+        BitSet patientSet = new BitSet();
+        Arrays.stream(patientNums).forEach(patientSet::set);
+        given(cohortDao.findPatientNums(
+            argThat(criterion -> criterion != null && conceptPath.equals(criterion.getConceptPath()))))
+            .willReturn(patientSet);
+    }
+
+    private CohortCriterionDto createConcept(String conceptPath) {
+        return new CohortCriterionDto().setType(CohortCriterionType.CONCEPT).setConceptPath(conceptPath);
+    }
+
+    private CohortCriterionDto createCriterion(CohortCriterionType type, CohortCriterionDto... criteria) {
+        return new CohortCriterionDto().setType(type).setCriteria(Arrays.asList(criteria));
+    }
+}
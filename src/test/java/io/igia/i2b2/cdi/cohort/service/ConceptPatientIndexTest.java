@@ -0,0 +1,157 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.cohort.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.function.ObjIntConsumer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import io.igia.i2b2.cdi.cohort.dao.CohortDao;
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.observation.domain.FactsChangedEvent;
+import io.igia.i2b2.cdi.observation.domain.Observation;
+import io.igia.i2b2.cdi.observation.domain.ObservationModifier;
+import io.igia.i2b2.cdi.observation.domain.ValueTypeCode;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConceptPatientIndexTest {
+
+    private static final LocalDateTime UPDATE_DATE = LocalDateTime.parse("2022-01-01T00:00:00");
+
+    @Mock
+    private CohortDao cohortDao;
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Object[][] facts = { { "a1", 1 }, { "a1", 6 }, { "a2", 2 }, { "a2", 7 }, { "b1", 3 } };
+
+    @Test
+    public void getPatientNums_builtInParallelRanges() {
+        givenFacts();
+        ConceptPatientIndex conceptPatientIndex = createConceptPatientIndex(true, null);
+
+        assertThat(conceptPatientIndex.getPatientNums("/a/")).isEmpty();
+        conceptPatientIndex.start();
+
+        assertThat(conceptPatientIndex.isReady()).isTrue();
+        assertThat(conceptPatientIndex.getPatientNums("/a/").get().stream()).containsExactly(1, 2, 6, 7);
+        verify(cohortDao, times(2)).streamConceptPatientNums(anyInt(), anyInt(), any());
+    }
+
+    @Test
+    public void onFactsChanged_addedAndReplaced() {
+        givenFacts();
+        ConceptPatientIndex conceptPatientIndex = createConceptPatientIndex(true, null);
+        conceptPatientIndex.start();
+        BitSet reloadedPatientNums = new BitSet();
+        reloadedPatientNums.set(9);
+        given(cohortDao.findPatientNumsByConceptCode("a2")).willReturn(reloadedPatientNums);
+        given(cohortDao.findPatientNumsByConceptCode("a1")).willReturn(new BitSet());
+
+        conceptPatientIndex.onFactsChanged(FactsChangedEvent.added(Arrays.asList(
+            createObservation(4, "a1", "@"), createObservation(5, "a1", "M1"))));
+        Optional<BitSet> addedPatientNums = conceptPatientIndex.getPatientNums("/a/");
+        conceptPatientIndex.onFactsChanged(FactsChangedEvent.replaced(Collections.singleton("/a/")));
+
+        assertThat(addedPatientNums.get().stream()).containsExactly(1, 2, 4, 6, 7);
+        assertThat(conceptPatientIndex.getPatientNums("/a/").get().stream()).containsExactly(9);
+    }
+
+    @Test
+    public void load_savedSnapshotCaughtUp() throws Exception {
+        givenFacts();
+        Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("concept-patient-index");
+        createConceptPatientIndex(true, snapshotFile).start();
+        assertThat(snapshotFile).exists();
+
+        willAnswer(invocation -> {
+            ObjIntConsumer<String> consumer = invocation.getArgument(1);
+            consumer.accept("a2", 8);
+            return null;
+        }).given(cohortDao).streamConceptPatientNumsUpdatedAfter(any(), any());
+        ConceptPatientIndex conceptPatientIndex = createConceptPatientIndex(true, snapshotFile);
+        conceptPatientIndex.start();
+
+        assertThat(conceptPatientIndex.getPatientNums("/a/").get().stream()).containsExactly(1, 2, 6, 7, 8);
+        verify(cohortDao).streamConceptPatientNumsUpdatedAfter(eq(UPDATE_DATE), any());
+    }
+
+    @Test
+    public void rebuild_disabled() {
+        ConceptPatientIndex conceptPatientIndex = createConceptPatientIndex(false, null);
+        conceptPatientIndex.start();
+        conceptPatientIndex.onFactsChanged(FactsChangedEvent.replaced(Collections.singleton("/a/")));
+
+        assertThat(conceptPatientIndex.getPatientNums("/a/")).isEmpty();
+        verify(cohortDao, never()).findPatientNumsByConceptCode(any());
+
+        thrown.expect(I2b2DataValidationException.class);
+        thrown.expectMessage(ConceptPatientIndex.INDEX_DISABLED_ERROR);
+        conceptPatientIndex.rebuild();
+    }
+
+    private void givenFacts() {
+        given(cohortDao.findConceptCodes("/a/")).willReturn(Arrays.asList("a1", "a2"));
+        given(cohortDao.findMaxPatientNum()).willReturn(7);
+        given(cohortDao.findLastFactUpdateDate()).willReturn(UPDATE_DATE);
+        willAnswer(invocation -> {
+            int fromPatientNum = invocation.getArgument(0);
+            int toPatientNum = invocation.getArgument(1);
+            ObjIntConsumer<String> consumer = invocation.getArgument(2);
+            for (Object[] fact : facts) {
+                int patientNum = (Integer) fact[1];
+                if (patientNum >= fromPatientNum && patientNum < toPatientNum) {
+                    consumer.accept((String) fact[0], patientNum);
+                }
+            }
+            return null;
+        }).given(cohortDao).streamConceptPatientNums(anyInt(), anyInt(), any());
+    }
+
+    private ConceptPatientIndex createConceptPatientIndex(boolean enabled, Path snapshotFile) {
+        return new ConceptPatientIndex(cohortDao, enabled, snapshotFile, 2, Runnable::run, Runnable::run);
+    }
+
+    private Observation createObservation(int patientNum, String conceptCode, String modifierCode) {
+        Observation observation = new Observation(1, patientNum, conceptCode, "provider-1", UPDATE_DATE);
+        observation.addModifier(new ObservationModifier(modifierCode, ValueTypeCode.NONE, null, null, null,
+            null));
+        return observation;
+    }
+}
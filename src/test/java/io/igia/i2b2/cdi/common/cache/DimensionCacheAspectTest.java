@@ -0,0 +1,123 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.common.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import io.igia.i2b2.cdi.concept.dao.ConceptDao;
+import io.igia.i2b2.cdi.concept.dto.ConceptDataType;
+import io.igia.i2b2.cdi.concept.dto.ConceptDto;
+import io.igia.i2b2.cdi.concept.dto.ConceptSearchDto;
+import io.igia.i2b2.cdi.ontology.dao.OntologyConceptDao;
+import io.igia.i2b2.cdi.ontology.dto.OntologyConceptSearchDto;
+import io.igia.i2b2.cdi.ontology.dto.OntologyDto;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DimensionCacheAspectTest {
+
+    @Mock
+    private ProceedingJoinPoint joinPoint;
+    @Mock
+    private Signature signature;
+
+    private DimensionCacheAspect dimensionCacheAspect;
+
+    @Before
+    public void setUp() {
+        dimensionCacheAspect = new DimensionCacheAspect(
+            new DimensionCacheManager(10, Duration.ofMinutes(1), System::nanoTime));
+        given(joinPoint.getSignature()).willReturn(signature);
+        given(signature.getDeclaringType()).willReturn(ConceptDao.class);
+        given(signature.getName()).willReturn("findConcepts");
+        given(joinPoint.getArgs()).willReturn(new Object[] { new ConceptSearchDto() });
+    }
+
+    @Test
+    public void processDimensionCache_returnsCopiesOfCachedDtos() throws Throwable {
+        ConceptDto conceptDto = new ConceptDto();
+        conceptDto.setCode("C1");
+        given(joinPoint.proceed()).willReturn(Collections.singletonList(conceptDto));
+
+        List<ConceptDto> first = cast(dimensionCacheAspect.processDimensionCache(joinPoint));
+        first.get(0).setDataType(ConceptDataType.FLOAT);
+        List<ConceptDto> second = cast(dimensionCacheAspect.processDimensionCache(joinPoint));
+
+        assertThat(second.get(0)).isNotSameAs(first.get(0)).isNotSameAs(conceptDto);
+        assertThat(second.get(0).getCode()).isEqualTo("C1");
+        assertThat(second.get(0).getDataType()).isNull();
+        assertThat(conceptDto.getDataType()).isNull();
+        verify(joinPoint).proceed();
+    }
+
+    @Test
+    public void processDimensionCache_keysByCopiesOfArguments() throws Throwable {
+        ConceptSearchDto searchDto = new ConceptSearchDto();
+        searchDto.getCodes().add("C1");
+        ConceptSearchDto equalSearchDto = new ConceptSearchDto();
+        equalSearchDto.getCodes().add("C1");
+        given(joinPoint.getArgs()).willReturn(new Object[] { searchDto }, new Object[] { searchDto },
+            new Object[] { equalSearchDto });
+        given(joinPoint.proceed()).willReturn(Collections.emptyList());
+
+        dimensionCacheAspect.processDimensionCache(joinPoint);
+        // changing the argument afterwards neither changes nor hits the cached key
+        searchDto.getCodes().add("C2");
+        dimensionCacheAspect.processDimensionCache(joinPoint);
+        dimensionCacheAspect.processDimensionCache(joinPoint);
+
+        verify(joinPoint, times(2)).proceed();
+    }
+
+    @Test
+    public void processDimensionCache_hitsEqualOntologyDtos() throws Throwable {
+        given(signature.getDeclaringType()).willReturn(OntologyConceptDao.class);
+        given(joinPoint.getArgs()).willReturn(new Object[] { createOntologySearch("Name") },
+            new Object[] { createOntologySearch("Name") }, new Object[] { createOntologySearch("Other name") });
+        given(joinPoint.proceed()).willReturn(Collections.emptyList());
+
+        dimensionCacheAspect.processDimensionCache(joinPoint);
+        dimensionCacheAspect.processDimensionCache(joinPoint);
+        dimensionCacheAspect.processDimensionCache(joinPoint);
+
+        verify(joinPoint, times(2)).proceed();
+    }
+
+    private static OntologyConceptSearchDto createOntologySearch(String name) {
+        OntologyDto ontologyDto = new OntologyDto();
+        ontologyDto.setPath("\\A\\");
+        ontologyDto.setcName(name);
+        OntologyConceptSearchDto searchDto = new OntologyConceptSearchDto();
+        searchDto.setOntologyDto(ontologyDto);
+        return searchDto;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ConceptDto> cast(Object result) {
+        return (List<ConceptDto>) result;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.common.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DimensionCacheManagerTest {
+
+    private final AtomicLong ticker = new AtomicLong();
+    private DimensionCacheManager dimensionCacheManager;
+
+    @Before
+    public void setUp() {
+        dimensionCacheManager = new DimensionCacheManager(2, Duration.ofMinutes(1), ticker::get);
+    }
+
+    @Test
+    public void get_returnsCachedResult() {
+        dimensionCacheManager.put(context("C1"), Arrays.asList("concept"), dimensionCacheManager.getGeneration());
+
+        assertThat(dimensionCacheManager.get(context("C1"))).contains(Arrays.asList("concept"));
+        assertThat(dimensionCacheManager.get(context("C2"))).isEmpty();
+        assertThat(dimensionCacheManager.getHitCount()).isEqualTo(1);
+        assertThat(dimensionCacheManager.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_expiredResult() {
+        dimensionCacheManager.put(context("C1"), "concept", dimensionCacheManager.getGeneration());
+        ticker.addAndGet(Duration.ofMinutes(1).toNanos());
+
+        assertThat(dimensionCacheManager.get(context("C1"))).isEmpty();
+        assertThat(dimensionCacheManager.getEvictionCount()).isEqualTo(1);
+        assertThat(dimensionCacheManager.size()).isZero();
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedResult() {
+        long generation = dimensionCacheManager.getGeneration();
+        dimensionCacheManager.put(context("C1"), "concept 1", generation);
+        dimensionCacheManager.put(context("C2"), "concept 2", generation);
+        dimensionCacheManager.get(context("C1"));
+        dimensionCacheManager.put(context("C3"), "concept 3", generation);
+
+        assertThat(dimensionCacheManager.get(context("C1"))).contains("concept 1");
+        assertThat(dimensionCacheManager.get(context("C2"))).isEmpty();
+        assertThat(dimensionCacheManager.get(context("C3"))).contains("concept 3");
+        assertThat(dimensionCacheManager.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void put_skipsResultLoadedBeforeClear() {
+        long generation = dimensionCacheManager.getGeneration();
+        dimensionCacheManager.clear();
+        dimensionCacheManager.put(context("C1"), "concept", generation);
+
+        assertThat(dimensionCacheManager.get(context("C1"))).isEmpty();
+    }
+
+    private InvocationContext context(String conceptCode) {
+        return new InvocationContext(DimensionCacheManagerTest.class, "findConcepts", new Object[] {conceptCode});
+    }
+}
@@ -0,0 +1,90 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.common.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class IdentityMapTest {
+
+    private IdentityMap identityMap;
+
+    @Before
+    public void setUp() {
+        identityMap = new IdentityMap(2);
+    }
+
+    @Test
+    public void get_bothDirections_ignoringCase() {
+        identityMap.put("pat-1", 1);
+
+        assertThat(identityMap.getNum("PAT-1")).isEqualTo(1);
+        assertThat(identityMap.getId(1)).isEqualTo("pat-1");
+        assertThat(identityMap.getNum("pat-2")).isNull();
+        assertThat(identityMap.getHitCount()).isEqualTo(2);
+        assertThat(identityMap.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedMapping() {
+        identityMap.put("pat-1", 1);
+        identityMap.put("pat-2", 2);
+        identityMap.getNum("pat-1");
+        identityMap.put("pat-3", 3);
+
+        assertThat(identityMap.getNum("pat-1")).isEqualTo(1);
+        assertThat(identityMap.getNum("pat-2")).isNull();
+        assertThat(identityMap.getNum("pat-3")).isEqualTo(3);
+        assertThat(identityMap.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void putId_addsNumberToIdentifierOnly() {
+        identityMap.putId(1, "pat-1");
+
+        assertThat(identityMap.getId(1)).isEqualTo("pat-1");
+        assertThat(identityMap.getNum("pat-1")).isNull();
+    }
+
+    @Test
+    public void putAfterCommit_withoutTransaction_putsImmediately() {
+        identityMap.putAfterCommit(Collections.singletonMap("pat-1", 1));
+
+        assertThat(identityMap.getNum("pat-1")).isEqualTo(1);
+    }
+
+    @Test
+    public void putAfterCommit_scopedIdentifiers() {
+        identityMap.putAfterCommit(Arrays.asList("pat-1:enc-1", "pat-2:enc-1"), mapping -> mapping.split(":")[0],
+            mapping -> mapping.split(":")[1], mapping -> mapping.startsWith("pat-1") ? 1 : 2);
+
+        assertThat(identityMap.getNum("PAT-1", "enc-1")).isEqualTo(1);
+        assertThat(identityMap.getNum("pat-2", "ENC-1")).isEqualTo(2);
+        assertThat(identityMap.getNum("enc-1")).isNull();
+        assertThat(identityMap.getId(2)).isEqualTo("enc-1");
+    }
+
+    @Test
+    public void put_disabled() {
+        IdentityMap disabledIdentityMap = new IdentityMap(0);
+        disabledIdentityMap.put("pat-1", 1);
+
+        assertThat(disabledIdentityMap.getNum("pat-1")).isNull();
+        assertThat(disabledIdentityMap.size()).isZero();
+    }
+}
@@ -0,0 +1,103 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.common.database;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IdAllocatorTest {
+
+    private static final String SEQUENCE = "schema.sequence";
+
+    @Mock
+    private DatabaseHelper databaseHelper;
+
+    @Test
+    public void next_ascending() {
+        AtomicInteger sequence = new AtomicInteger(1);
+        given(databaseHelper.getNextSequenceValue(SEQUENCE)).willAnswer(invocation -> sequence.getAndAdd(3));
+        IdAllocator idAllocator = new IdAllocator(databaseHelper, 3);
+        idAllocator.register(SEQUENCE, 1, false);
+
+        assertThat(new int[] { idAllocator.next(SEQUENCE), idAllocator.next(SEQUENCE), idAllocator.next(SEQUENCE),
+            idAllocator.next(SEQUENCE) }).containsExactly(1, 2, 3, 4);
+        verify(databaseHelper).createSequenceIfNotExists(SEQUENCE, 1, 3);
+        verify(databaseHelper).alterSequenceIncrement(SEQUENCE, 3);
+        verify(databaseHelper, times(2)).getNextSequenceValue(SEQUENCE);
+    }
+
+    @Test
+    public void next_descending() {
+        AtomicInteger sequence = new AtomicInteger(-1);
+        given(databaseHelper.getNextSequenceValue(SEQUENCE)).willAnswer(invocation -> sequence.getAndAdd(-3));
+        IdAllocator idAllocator = new IdAllocator(databaseHelper, 3);
+        idAllocator.register(SEQUENCE, -1, true);
+
+        assertThat(new int[] { idAllocator.next(SEQUENCE), idAllocator.next(SEQUENCE), idAllocator.next(SEQUENCE),
+            idAllocator.next(SEQUENCE) }).containsExactly(-1, -2, -3, -4);
+        verify(databaseHelper).createSequenceIfNotExists(SEQUENCE, -1, -3);
+    }
+
+    @Test
+    public void next_concurrently() throws Exception {
+        AtomicInteger sequence = new AtomicInteger(1);
+        given(databaseHelper.getNextSequenceValue(anyString())).willAnswer(invocation -> sequence.getAndAdd(10));
+        IdAllocator idAllocator = new IdAllocator(databaseHelper, 10);
+        idAllocator.register(SEQUENCE, 1, false);
+
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        ids.add(idAllocator.next(SEQUENCE));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(ids).hasSize(8000);
+        assertThat(ids.stream().mapToInt(Integer::intValue).max().getAsInt()).isEqualTo(8000);
+        verify(databaseHelper, times(800)).getNextSequenceValue(SEQUENCE);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void next_unregisteredSequence() {
+        new IdAllocator(databaseHelper, 3).next(SEQUENCE);
+    }
+}
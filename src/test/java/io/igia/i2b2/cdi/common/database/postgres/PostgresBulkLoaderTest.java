@@ -0,0 +1,34 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.common.database.postgres;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+public class PostgresBulkLoaderTest {
+
+    @Test
+    public void appendRow() {
+        StringBuilder csv = new StringBuilder();
+        PostgresBulkLoader.appendRow(csv, new Object[] { 1, new BigDecimal("2.50"), null, "", "say \"hi\", bye",
+            LocalDateTime.of(2020, 1, 2, 3, 4, 5) });
+        PostgresBulkLoader.appendRow(csv, new Object[] { 2, null });
+
+        assertThat(csv.toString())
+            .isEqualTo("1,2.50,,\"\",\"say \"\"hi\"\", bye\",\"2020-01-02T03:04:05\"\n2,\n");
+    }
+}
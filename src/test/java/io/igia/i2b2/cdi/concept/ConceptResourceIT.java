@@ -34,7 +34,9 @@ import io.igia.i2b2.cdi.concept.dto.ConceptDto;
 import io.igia.i2b2.cdi.observation.domain.ValueTypeCode;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest(classes = I2b2Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+// unlike the other integration tests, concepts are read through the dimension cache
+@SpringBootTest(classes = I2b2Application.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "application.dimension-cache-max-size=1000")
 @ActiveProfiles("test")
 public class ConceptResourceIT {
 
@@ -71,6 +73,24 @@ public class ConceptResourceIT {
 	assertThat(response.getBody().get(0)).isEqualToComparingFieldByField(expectedConcept);
     }
 
+    @Test
+    public void testGetAllConcepts_fromDimensionCache() throws Exception {
+
+	List<ConceptDto> first = getConcepts("/api/concepts?source=OASIS");
+	List<ConceptDto> second = getConcepts("/api/concepts?source=OASIS");
+
+	assertThat(second).isNotEmpty().usingFieldByFieldElementComparator().containsExactlyElementsOf(first);
+	assertThat(second).allSatisfy(concept -> assertThat(concept.getValueType()).isNotNull());
+    }
+
+    private List<ConceptDto> getConcepts(String url) {
+	ResponseEntity<List<ConceptDto>> response = testRestTemplate.withBasicAuth("test", "test").exchange(url,
+		HttpMethod.GET, null, new ParameterizedTypeReference<List<ConceptDto>>() {
+		});
+	assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+	return response.getBody();
+    }
+
     private ConceptDto createConcept(String code, String name, String path, String source) {
 	ConceptDto conceptDto = new ConceptDto();
 	conceptDto.setCode(code);
@@ -194,6 +194,26 @@ public class ConceptDaoTest {
         assertThat(concepts.getTotalCount()).isEqualTo(0);
     }
 
+    @Test
+    public void findConcepts_byCursor() {
+        ConceptSearchDto searchDto = new ConceptSearchDto();
+        PageableDto pageableDto = new PageableDto();
+        pageableDto.setSize(2);
+        pageableDto.setSortBy("concept_path");
+        pageableDto.setCursor("");
+        searchDto.setPageableDto(pageableDto);
+        searchDto.setPathFilterDto(new PathFilterDto());
+
+        PaginationResult<ConceptDto> concepts = conceptDao.findConcepts(searchDto);
+        assertThat(concepts.getRecords()).extracting(ConceptDto::getConceptPath).containsExactly("/test/1/", "/test/2/");
+        assertThat(concepts.getNextCursor()).isNotEmpty();
+
+        pageableDto.setCursor(concepts.getNextCursor());
+        concepts = conceptDao.findConcepts(searchDto);
+        assertThat(concepts.getRecords()).extracting(ConceptDto::getConceptPath).containsExactly("/test/3/");
+        assertThat(concepts.getNextCursor()).isNull();
+    }
+
     private ConceptDto createConcept(String code, String name, String path, String source) {
 	ConceptDto conceptDto = new ConceptDto();
 	conceptDto.setCode(code);
@@ -223,6 +243,16 @@ public class ConceptDaoTest {
 	int actualResult = conceptDao.deleteConcept(expectedConcept);
 	assertThat(actualResult).isEqualTo(1);
     }
+
+
+    @Test
+    public void testStreamConcepts() {
+	List<ConceptDto> concepts = new ArrayList<>();
+	conceptDao.streamConcepts(concepts::add);
+	assertThat(concepts).hasSize(3);
+	assertThat(concepts).anySatisfy(concept -> assertThat(concept)
+		.isEqualToComparingFieldByField(createConcept("1", "test1", "/test/1/", "demo")));
+    }
     
     private ConceptSearchDto createConceptSearchDto(String source, String path) {
         ConceptSearchDto conceptSearchDto = new ConceptSearchDto();
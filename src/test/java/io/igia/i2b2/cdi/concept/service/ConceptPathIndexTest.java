@@ -0,0 +1,228 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.concept.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import io.igia.i2b2.cdi.common.cache.DimensionCacheManager;
+import io.igia.i2b2.cdi.common.dto.CountMode;
+import io.igia.i2b2.cdi.common.dto.Operator;
+import io.igia.i2b2.cdi.common.dto.PageableDto;
+import io.igia.i2b2.cdi.common.dto.PaginationResult;
+import io.igia.i2b2.cdi.common.dto.SortOrder;
+import io.igia.i2b2.cdi.concept.dao.ConceptDao;
+import io.igia.i2b2.cdi.concept.dto.ConceptDto;
+import io.igia.i2b2.cdi.concept.dto.ConceptSearchDto;
+import io.igia.i2b2.cdi.concept.dto.PathFilterDto;
+import io.igia.i2b2.cdi.ontology.service.OntologyConceptService;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConceptPathIndexTest {
+
+    @Mock
+    private ConceptDao conceptDao;
+    @Mock
+    private OntologyConceptService ontologyConceptService;
+    @Mock
+    private DimensionCacheManager dimensionCacheManager;
+
+    private long now;
+    private ConceptPathIndex conceptPathIndex;
+
+    @Before
+    public void setUp() {
+        conceptPathIndex = new ConceptPathIndex(conceptDao, ontologyConceptService, dimensionCacheManager, true,
+            Duration.ofNanos(100), () -> now, Runnable::run);
+    }
+
+    @Test
+    public void findConcepts_children() {
+        givenConcepts();
+        ConceptSearchDto searchDto = createSearchDto(Operator.STARTSWITH, "\\Lab\\");
+
+        PaginationResult<ConceptDto> concepts = conceptPathIndex.findConcepts(searchDto).get();
+
+        assertThat(getPaths(concepts)).containsExactly("\\Lab\\Glucose\\", "\\Lab\\Sodium\\");
+        assertThat(concepts.getTotalCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void findConcepts_childrenFilteredBySource() {
+        givenConcepts();
+        ConceptSearchDto searchDto = createSearchDto(Operator.STARTSWITH, "\\Lab\\");
+        searchDto.setSource("TEST");
+
+        PaginationResult<ConceptDto> concepts = conceptPathIndex.findConcepts(searchDto).get();
+
+        assertThat(getPaths(concepts)).containsExactly("\\Lab\\Sodium\\");
+    }
+
+    @Test
+    public void findConcepts_subtreeWithoutOntologyChildren() {
+        givenConcepts();
+        ConceptSearchDto searchDto = createSearchDto(Operator.STARTSWITH, "\\Vitals\\");
+
+        PaginationResult<ConceptDto> concepts = conceptPathIndex.findConcepts(searchDto).get();
+
+        assertThat(getPaths(concepts)).containsExactly("\\Vitals\\Pulse\\");
+    }
+
+    @Test
+    public void findConcepts_containsIgnoringCase() {
+        givenConcepts();
+        ConceptSearchDto searchDto = createSearchDto(Operator.CONTAINS, "sodium");
+
+        PaginationResult<ConceptDto> concepts = conceptPathIndex.findConcepts(searchDto).get();
+
+        assertThat(getPaths(concepts)).containsExactly("\\Lab\\Sodium\\", "\\Lab\\Sodium\\Serum\\");
+    }
+
+    @Test
+    public void findConcepts_pages() {
+        givenConcepts();
+        ConceptSearchDto searchDto = createSearchDto(null, null);
+        searchDto.getPageableDto().setSize(2);
+        searchDto.getPageableDto().setPage(2);
+        searchDto.getPageableDto().setSortOrder(SortOrder.DESC);
+
+        PaginationResult<ConceptDto> concepts = conceptPathIndex.findConcepts(searchDto).get();
+
+        assertThat(getPaths(concepts)).containsExactly("\\Lab\\Sodium\\", "\\Lab\\Glucose\\");
+        assertThat(concepts.getTotalCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void findConcepts_cursor() {
+        givenConcepts();
+        ConceptSearchDto searchDto = createSearchDto(null, null);
+        searchDto.getPageableDto().setSize(2);
+        searchDto.getPageableDto().setCursor("");
+        searchDto.getPageableDto().setCountMode(CountMode.NONE);
+
+        PaginationResult<ConceptDto> firstPage = conceptPathIndex.findConcepts(searchDto).get();
+        searchDto.getPageableDto().setCursor(firstPage.getNextCursor());
+        PaginationResult<ConceptDto> secondPage = conceptPathIndex.findConcepts(searchDto).get();
+
+        assertThat(getPaths(firstPage)).containsExactly("\\Lab\\", "\\Lab\\Glucose\\");
+        assertThat(firstPage.getHasMore()).isTrue();
+        assertThat(getPaths(secondPage)).containsExactly("\\Lab\\Sodium\\", "\\Lab\\Sodium\\Serum\\");
+        assertThat(secondPage.getHasMore()).isTrue();
+    }
+
+    @Test
+    public void findConcepts_otherSort() {
+        ConceptSearchDto searchDto = createSearchDto(null, null);
+        searchDto.getPageableDto().setSortBy("concept_cd");
+
+        assertThat(conceptPathIndex.findConcepts(searchDto)).isEmpty();
+        verify(conceptDao, never()).streamConcepts(any());
+    }
+
+    @Test
+    public void findConcepts_disabled() {
+        conceptPathIndex = new ConceptPathIndex(conceptDao, ontologyConceptService, dimensionCacheManager, false,
+            Duration.ofNanos(100), () -> now, Runnable::run);
+
+        assertThat(conceptPathIndex.findConcepts(createSearchDto(null, null))).isEmpty();
+        verify(conceptDao, never()).streamConcepts(any());
+    }
+
+    @Test
+    public void findConcepts_reloadedAfterDimensionWrite() {
+        givenConcepts();
+        given(dimensionCacheManager.getGeneration()).willReturn(1L);
+        conceptPathIndex.findConcepts(createSearchDto(null, null));
+        given(dimensionCacheManager.getGeneration()).willReturn(2L);
+
+        Optional<PaginationResult<ConceptDto>> concepts = conceptPathIndex.findConcepts(createSearchDto(null, null));
+
+        assertThat(concepts).isPresent();
+        verify(conceptDao, times(2)).streamConcepts(any());
+    }
+
+    @Test
+    public void findConcepts_reloadedAfterRefreshInterval() {
+        givenConcepts();
+        conceptPathIndex.findConcepts(createSearchDto(null, null));
+        conceptPathIndex.findConcepts(createSearchDto(null, null));
+        verify(conceptDao, times(1)).streamConcepts(any());
+
+        now = 100;
+        conceptPathIndex.findConcepts(createSearchDto(null, null));
+        verify(conceptDao, times(2)).streamConcepts(any());
+    }
+
+    private void givenConcepts() {
+        willAnswer(invocation -> {
+            Consumer<ConceptDto> consumer = invocation.getArgument(0);
+            consumer.accept(createConcept("\\Lab\\", "LAB", "demo"));
+            consumer.accept(createConcept("\\Lab\\Glucose\\", "GLU", "demo"));
+            consumer.accept(createConcept("\\Lab\\Sodium\\", "NA", "test"));
+            consumer.accept(createConcept("\\Lab\\Sodium\\Serum\\", "NAS", "test"));
+            consumer.accept(createConcept("\\Vitals\\Pulse\\", "PULSE", "demo"));
+            return null;
+        }).given(conceptDao).streamConcepts(any());
+        willAnswer(invocation -> {
+            ObjIntConsumer<String> consumer = invocation.getArgument(0);
+            consumer.accept("\\Lab\\", 1);
+            consumer.accept("\\Lab\\Glucose\\", 2);
+            consumer.accept("\\Lab\\Sodium\\", 2);
+            consumer.accept("\\Lab\\Sodium\\Serum\\", 3);
+            return null;
+        }).given(ontologyConceptService).streamOntologyConceptLevels(any());
+    }
+
+    private ConceptSearchDto createSearchDto(Operator operator, String path) {
+        ConceptSearchDto searchDto = new ConceptSearchDto();
+        PathFilterDto pathFilterDto = new PathFilterDto();
+        pathFilterDto.setOpertaor(operator);
+        pathFilterDto.setPath(path);
+        searchDto.setPathFilterDto(pathFilterDto);
+        PageableDto pageableDto = new PageableDto();
+        pageableDto.setSortBy(ConceptPathIndex.CONCEPT_PATH_SORT);
+        searchDto.setPageableDto(pageableDto);
+        return searchDto;
+    }
+
+    private List<String> getPaths(PaginationResult<ConceptDto> concepts) {
+        return concepts.getRecords().stream().map(ConceptDto::getConceptPath).collect(Collectors.toList());
+    }
+
+    private ConceptDto createConcept(String path, String code, String source) {
+        ConceptDto concept = new ConceptDto();
+        concept.setConceptPath(path);
+        concept.setCode(code);
+        concept.setName(code);
+        concept.setSource(source);
+        return concept;
+    }
+}
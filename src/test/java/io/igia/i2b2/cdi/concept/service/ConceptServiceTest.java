@@ -17,12 +17,14 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import org.junit.Before;
@@ -59,6 +61,8 @@ public class ConceptServiceTest {
     private ConceptDao conceptDao;
     @Mock
     private OntologyConceptService ontologyConceptService;
+    @Mock
+    private ConceptPathIndex conceptPathIndex;
 
     @Rule
     public ExpectedException thrown = ExpectedException.none();
@@ -73,7 +77,7 @@ public class ConceptServiceTest {
     @Before
     public void setUp() {
 	conceptUtil = new ConceptUtil();
-	conceptService = new ConceptServiceImpl(conceptDao, ontologyConceptService, conceptUtil);
+	conceptService = new ConceptServiceImpl(conceptDao, ontologyConceptService, conceptUtil, conceptPathIndex);
     }
 
     @Test
@@ -89,6 +93,32 @@ public class ConceptServiceTest {
 	assertThat(actualConcepts.getRecords().get(1)).isEqualToComparingFieldByField(concepts.get(1));
     }
 
+    @Test
+    public void testGetConcepts_fromPathIndex() {
+	List<ConceptDto> concepts = Arrays.asList(createConcept(1, "demo"), createConcept(2, "test"));
+	given(conceptPathIndex.findConcepts(any())).willReturn(Optional.of(new PaginationResult<>(concepts, 2)));
+
+	PaginationResult<ConceptDto> actualConcepts = conceptService.getConcepts(createConceptSearchDto("", "", ""));
+
+	assertThat(actualConcepts.getRecords()).containsExactlyElementsOf(concepts);
+	assertThat(actualConcepts.getTotalCount()).isEqualTo(2);
+	verify(conceptDao, never()).findConcepts(any());
+    }
+
+    @Test
+    public void testGetConceptsWithDataTypeByCodes() {
+	List<ConceptDto> concepts = Arrays.asList(createConcept(1, "demo"), createConcept(2, "test"));
+	given(conceptDao.findConcepts(argThat(search -> search.getCodes().containsAll(Arrays.asList("conc:1", "conc:2"))
+		&& search.getPageableDto() == null))).willReturn(new PaginationResult<>(concepts, 0));
+
+	List<ConceptDto> actualConcepts = conceptService.getConceptsWithDataTypeByCodes(Arrays.asList("conc:1", "conc:2"));
+
+	assertThat(actualConcepts).containsExactlyElementsOf(concepts);
+	assertThat(actualConcepts).extracting(ConceptDto::getDataType).containsOnly(ConceptDataType.STRING);
+	verify(conceptDao, never()).getTotalCount(any());
+	verify(ontologyConceptService, times(1)).getOntologyConceptsWithDataType(any());
+    }
+
     @Test
     public void testGetConceptsFilterByConceptPathContains() {
 	List<ConceptDto> concepts = Arrays.asList(createConcept(1, "demo"), createConcept(1, "test"));
@@ -15,8 +15,11 @@ package io.igia.i2b2.cdi.derivedconcept.dao;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -38,7 +41,7 @@ import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptDto;
 @DirtiesContext
 @TestPropertySource(properties = { "spring.datasource.url=jdbc:h2:mem:testdb" })
 @Sql({ "/test-schema.sql", "/test-derivedconcept-schema.sql", "/test-ontology-schema.sql",
-	"/test-derivedconcept-data.sql" })
+	"/test-derivedconcept-data.sql", "/test-derivedconcept-fact-data.sql" })
 public class DerivedConceptDaoTest {
     @Autowired
     private DerivedConceptDao derivedConceptDao;
@@ -111,4 +114,17 @@ public class DerivedConceptDaoTest {
 	int actualResult = derivedConceptDao.deleteDerivedConcept(derivedFact);
 	assertThat(actualResult).isEqualTo(1);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFindLastFactUpdates() {
+	Instant lastUpdate = Timestamp.valueOf("2021-01-01 00:00:00").toInstant();
+	List<String> conceptPaths = Arrays.asList("\\Derived\\Test2\\", "\\Derived\\Test3\\");
+
+	Map<String, Instant> lastFactUpdates = derivedConceptDao.findLastFactUpdates(conceptPaths, null);
+	assertThat(lastFactUpdates).hasSize(2).containsEntry("\\Derived\\Test3\\", lastUpdate);
+
+	lastFactUpdates = derivedConceptDao.findLastFactUpdates(conceptPaths,
+		Timestamp.valueOf("2020-06-01 00:00:00").toInstant());
+	assertThat(lastFactUpdates).hasSize(1).containsEntry("\\Derived\\Test3\\", lastUpdate);
+    }
+}
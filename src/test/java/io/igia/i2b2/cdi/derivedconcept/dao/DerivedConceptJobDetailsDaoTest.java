@@ -15,11 +15,15 @@
 package io.igia.i2b2.cdi.derivedconcept.dao;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -46,6 +50,11 @@ public class DerivedConceptJobDetailsDaoTest {
     @Autowired
     private DerivedConceptJobDetailsDao derivedConceptJobDetailsDao;
 
+    @Before
+    public void setUp() {
+	derivedConceptJobDetailsDao.createJobLeaseTableIfNotExists();
+    }
+
     @Test
     public void testFindDerivedConceptJobDetails() {
 	DerivedConceptJobDetailsSearchDto searchDto = new DerivedConceptJobDetailsSearchDto();
@@ -155,6 +164,122 @@ public class DerivedConceptJobDetailsDaoTest {
         assertThat(rowsAffected).isNotNull().isEqualTo(new int[] {1,1});
     }
 
+    @Test
+    public void testFindDerivedConceptJobDetails_filterByStatus() {
+	DerivedConceptJobDetailsSearchDto searchDto = new DerivedConceptJobDetailsSearchDto();
+	searchDto.setStatuses(Arrays.asList(Status.ERROR));
+	List<DerivedConceptJobDetailsDto> actualDerivedConceptJobDetails = derivedConceptJobDetailsDao
+		.findDerivedConceptJobDetails(searchDto);
+	assertThat(actualDerivedConceptJobDetails).hasSize(2).extracting(DerivedConceptJobDetailsDto::getStatus)
+		.containsOnly(Status.ERROR);
+    }
+
+    @Test
+    public void testFindDerivedConceptJobDetails_filterByStatus_fetchTypeLatest() {
+	DerivedConceptJobDetailsSearchDto searchDto = new DerivedConceptJobDetailsSearchDto();
+	searchDto.setStatuses(Arrays.asList(Status.COMPLETED));
+	searchDto.setDerivedConceptJobDetailsFetchType(DerivedConceptJobDetailsFetchType.LATEST);
+	List<DerivedConceptJobDetailsDto> actualDerivedConceptJobDetails = derivedConceptJobDetailsDao
+		.findDerivedConceptJobDetails(searchDto);
+	assertThat(actualDerivedConceptJobDetails).extracting(DerivedConceptJobDetailsDto::getId)
+		.containsExactlyInAnyOrder(4, 5);
+    }
+
+    @Test
+    public void testClaimAndUpdateDerivedConceptJob() {
+	derivedConceptJobDetailsDao.createDerivedConceptJobDetails(
+		Arrays.asList(createDerivedConceptJobDetails(0, "", "", Status.PENDING, 5)));
+	DerivedConceptJobDetailsSearchDto searchDto = new DerivedConceptJobDetailsSearchDto();
+	searchDto.setDerivedConceptIds(Arrays.asList(5));
+	DerivedConceptJobDetailsDto jobDetail = derivedConceptJobDetailsDao.findDerivedConceptJobDetails(searchDto)
+		.get(0);
+	jobDetail.setStartedOn(Instant.now());
+
+	assertThat(derivedConceptJobDetailsDao.claimDerivedConceptJob(jobDetail)).isTrue();
+	assertThat(derivedConceptJobDetailsDao.claimDerivedConceptJob(jobDetail)).isFalse();
+	assertThat(jobDetail.getStatus()).isEqualTo(Status.PROCESSING);
+
+	jobDetail.setStatus(Status.COMPLETED);
+	jobDetail.setDerivedConceptSql("Select * from table5");
+	jobDetail.setCompletedOn(Instant.now());
+	assertThat(derivedConceptJobDetailsDao.updateDerivedConceptJobDetails(jobDetail)).isEqualTo(1);
+
+	DerivedConceptJobDetailsDto actualJobDetail = derivedConceptJobDetailsDao
+		.findDerivedConceptJobDetails(searchDto).get(0);
+	assertThat(actualJobDetail.getStatus()).isEqualTo(Status.COMPLETED);
+	assertThat(actualJobDetail.getDerivedConceptSql()).isEqualTo("Select * from table5");
+	assertThat(actualJobDetail.getStartedOn()).isNotNull();
+	assertThat(actualJobDetail.getCompletedOn()).isNotNull();
+    }
+
+    @Test
+    public void testReleaseExpiredDerivedConceptJobs() {
+	Instant now = Instant.now();
+	DerivedConceptJobDetailsDto abandonedJob = createClaimedJob(5, now.minus(Duration.ofMinutes(10)));
+	DerivedConceptJobDetailsDto renewedJob = createClaimedJob(6, now.minus(Duration.ofMinutes(10)));
+	assertThat(derivedConceptJobDetailsDao.renewDerivedConceptJobLeases(
+		Collections.singletonMap(renewedJob.getId(), renewedJob.getLeaseToken()), now)).isEmpty();
+
+	assertThat(derivedConceptJobDetailsDao.releaseExpiredDerivedConceptJobs(now.minus(Duration.ofMinutes(5))))
+		.isEqualTo(1);
+
+	DerivedConceptJobDetailsSearchDto searchDto = new DerivedConceptJobDetailsSearchDto();
+	searchDto.setStatuses(Arrays.asList(Status.PENDING, Status.PROCESSING));
+	assertThat(derivedConceptJobDetailsDao.findDerivedConceptJobDetails(searchDto))
+		.extracting(DerivedConceptJobDetailsDto::getDerivedConceptId, DerivedConceptJobDetailsDto::getStatus,
+			jobDetail -> jobDetail.getStartedOn() != null)
+		.containsExactlyInAnyOrder(tuple(5, Status.PENDING, false), tuple(6, Status.PROCESSING, true));
+
+	abandonedJob.setStatus(Status.PENDING);
+	abandonedJob.setStartedOn(now);
+	assertThat(derivedConceptJobDetailsDao.claimDerivedConceptJob(abandonedJob)).isTrue();
+	assertThat(derivedConceptJobDetailsDao.releaseExpiredDerivedConceptJobs(now.minus(Duration.ofMinutes(5))))
+		.isZero();
+    }
+
+    @Test
+    public void testReleasedDerivedConceptJob_staleOwnerIsFenced() {
+	Instant now = Instant.now();
+	DerivedConceptJobDetailsDto staleJob = createClaimedJob(5, now.minus(Duration.ofMinutes(10)));
+	assertThat(derivedConceptJobDetailsDao.releaseExpiredDerivedConceptJobs(now.minus(Duration.ofMinutes(5))))
+		.isEqualTo(1);
+
+	DerivedConceptJobDetailsSearchDto searchDto = new DerivedConceptJobDetailsSearchDto();
+	searchDto.setDerivedConceptIds(Arrays.asList(5));
+	DerivedConceptJobDetailsDto reclaimedJob = derivedConceptJobDetailsDao.findDerivedConceptJobDetails(searchDto)
+		.get(0);
+	reclaimedJob.setStartedOn(now);
+	assertThat(derivedConceptJobDetailsDao.claimDerivedConceptJob(reclaimedJob)).isTrue();
+	assertThat(reclaimedJob.getLeaseToken()).isNotEqualTo(staleJob.getLeaseToken());
+
+	assertThat(derivedConceptJobDetailsDao.renewDerivedConceptJobLeases(
+		Collections.singletonMap(staleJob.getId(), staleJob.getLeaseToken()), now))
+		.containsExactly(staleJob.getId());
+	staleJob.setStatus(Status.ERROR);
+	staleJob.setCompletedOn(now);
+	assertThat(derivedConceptJobDetailsDao.updateDerivedConceptJobDetails(staleJob)).isZero();
+
+	assertThat(derivedConceptJobDetailsDao.renewDerivedConceptJobLeases(
+		Collections.singletonMap(reclaimedJob.getId(), reclaimedJob.getLeaseToken()), now)).isEmpty();
+	reclaimedJob.setStatus(Status.COMPLETED);
+	reclaimedJob.setCompletedOn(now);
+	assertThat(derivedConceptJobDetailsDao.updateDerivedConceptJobDetails(reclaimedJob)).isEqualTo(1);
+	assertThat(derivedConceptJobDetailsDao.findDerivedConceptJobDetails(searchDto).get(0).getStatus())
+		.isEqualTo(Status.COMPLETED);
+    }
+
+    private DerivedConceptJobDetailsDto createClaimedJob(Integer derivedConceptId, Instant startedOn) {
+	derivedConceptJobDetailsDao.createDerivedConceptJobDetails(
+		Arrays.asList(createDerivedConceptJobDetails(0, "", "", Status.PENDING, derivedConceptId)));
+	DerivedConceptJobDetailsSearchDto searchDto = new DerivedConceptJobDetailsSearchDto();
+	searchDto.setDerivedConceptIds(Arrays.asList(derivedConceptId));
+	DerivedConceptJobDetailsDto jobDetail = derivedConceptJobDetailsDao.findDerivedConceptJobDetails(searchDto)
+		.get(0);
+	jobDetail.setStartedOn(startedOn);
+	assertThat(derivedConceptJobDetailsDao.claimDerivedConceptJob(jobDetail)).isTrue();
+	return jobDetail;
+    }
+
     private DerivedConceptJobDetailsDto createDerivedConceptJobDetails(Integer id, String errorStack,
 	    String derivedConceptSql, Status status, Integer derivedConceptId) {
 	DerivedConceptJobDetailsDto derivedConceptJobDetailsDto = new DerivedConceptJobDetailsDto();
@@ -0,0 +1,94 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.derivedconcept.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import io.igia.i2b2.cdi.derivedconcept.dao.DerivedConceptDependencyDao;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptDependencyDto;
+import io.igia.i2b2.cdi.derivedconcept.util.DerivedConceptGraph;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DerivedConceptGraphManagerTest {
+
+    @Mock
+    private DerivedConceptDependencyDao derivedConceptDependencyDao;
+
+    @Test
+    public void testGetGraph_loadedOnce() {
+	given(derivedConceptDependencyDao.getAllDerivedConceptDependencies())
+		.willReturn(Arrays.asList(createDependency(1, "\\Derived\\A\\", "\\Derived\\B\\")));
+	DerivedConceptGraphManager derivedConceptGraphManager = new DerivedConceptGraphManager(
+		derivedConceptDependencyDao, Duration.ofMinutes(10));
+
+	DerivedConceptGraph graph = derivedConceptGraphManager.getGraph();
+
+	assertThat(derivedConceptGraphManager.getGraph()).isSameAs(graph);
+	verify(derivedConceptDependencyDao, times(1)).getAllDerivedConceptDependencies();
+    }
+
+    @Test
+    public void testGetGraph_refreshedIncrementally() {
+	DerivedConceptDependencyDto ab = createDependency(1, "\\Derived\\A\\", "\\Derived\\B\\");
+	DerivedConceptDependencyDto bc = createDependency(2, "\\Derived\\B\\", "\\Derived\\C\\");
+	given(derivedConceptDependencyDao.getAllDerivedConceptDependencies()).willReturn(Arrays.asList(ab));
+	DerivedConceptGraphManager derivedConceptGraphManager = new DerivedConceptGraphManager(
+		derivedConceptDependencyDao, Duration.ofMinutes(10));
+	derivedConceptGraphManager.getGraph();
+
+	derivedConceptGraphManager.addDependencies(Collections.singletonList(bc));
+	assertThat(derivedConceptGraphManager.getGraph().getAncestors("\\Derived\\C\\"))
+		.containsExactly("\\Derived\\B\\", "\\Derived\\A\\");
+
+	derivedConceptGraphManager.removeDependencies(Collections.singletonList(ab));
+	assertThat(derivedConceptGraphManager.getGraph().getDependencies()).containsExactly(bc);
+
+	derivedConceptGraphManager.removeDerivedConcept(2);
+	assertThat(derivedConceptGraphManager.getGraph().getDependencies()).isEmpty();
+	verify(derivedConceptDependencyDao, times(1)).getAllDerivedConceptDependencies();
+    }
+
+    @Test
+    public void testGetGraph_cachingDisabled() {
+	given(derivedConceptDependencyDao.getAllDerivedConceptDependencies())
+		.willReturn(Arrays.asList(createDependency(1, "\\Derived\\A\\", "\\Derived\\B\\")));
+	DerivedConceptGraphManager derivedConceptGraphManager = new DerivedConceptGraphManager(
+		derivedConceptDependencyDao, Duration.ZERO);
+
+	derivedConceptGraphManager.getGraph();
+	derivedConceptGraphManager.getGraph();
+
+	verify(derivedConceptDependencyDao, times(2)).getAllDerivedConceptDependencies();
+    }
+
+    private DerivedConceptDependencyDto createDependency(Integer derivedConceptId, String parentConceptPath,
+	    String derivedConceptPath) {
+	DerivedConceptDependencyDto dependency = new DerivedConceptDependencyDto();
+	dependency.setDerivedConceptId(derivedConceptId);
+	dependency.setParentConceptPath(parentConceptPath);
+	dependency.setDerivedConceptPath(derivedConceptPath);
+	return dependency;
+    }
+}
@@ -0,0 +1,310 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.derivedconcept.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import io.igia.i2b2.cdi.common.exception.I2b2Exception;
+import io.igia.i2b2.cdi.derivedconcept.dao.DerivedConceptDao;
+import io.igia.i2b2.cdi.derivedconcept.dao.DerivedConceptDependencyDao;
+import io.igia.i2b2.cdi.derivedconcept.dao.DerivedConceptJobDetailsDao;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptDependencyDto;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptDto;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobDetailsDto;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobDetailsSearchDto;
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptJobPriority;
+import io.igia.i2b2.cdi.derivedconcept.dto.Status;
+import io.igia.i2b2.cdi.observation.domain.FactsChangedEvent;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DerivedConceptJobExecutorTest {
+
+    @Mock
+    private DerivedConceptJobDetailsDao derivedConceptJobDetailsDao;
+
+    @Mock
+    private DerivedConceptDao derivedConceptDao;
+
+    @Mock
+    private DerivedConceptDependencyDao derivedConceptDependencyDao;
+
+    private final Queue<Runnable> dispatcherTasks = new ArrayDeque<>();
+    private final Queue<Runnable> workerTasks = new ArrayDeque<>();
+    private final Map<Integer, DerivedConceptJobDetailsDto> jobs = new TreeMap<>();
+    private final List<String> executedQueries = new ArrayList<>();
+    private final List<Object> publishedEvents = new ArrayList<>();
+
+    private DerivedConceptJobExecutor derivedConceptJobExecutor;
+
+    @Before
+    public void setUp() {
+	derivedConceptJobExecutor = createDerivedConceptJobExecutor(4, DerivedConceptJobPriority.TOPOLOGICAL);
+
+	given(derivedConceptDao.findDerivedConcepts()).willReturn(Arrays.asList(
+		createDerivedConcept(1, "\\Derived\\A\\"), createDerivedConcept(2, "\\Derived\\B\\"),
+		createDerivedConcept(3, "\\Derived\\C\\")));
+	given(derivedConceptDependencyDao.getAllDerivedConceptDependencies())
+		.willReturn(Collections.singletonList(createDependency("\\Derived\\A\\", "\\Derived\\B\\")));
+
+	// job of the dependent concept is created first
+	addJob(10, 2);
+	addJob(11, 1);
+	addJob(12, 3);
+	given(derivedConceptJobDetailsDao.findDerivedConceptJobDetails(any())).willAnswer(invocation -> {
+	    DerivedConceptJobDetailsSearchDto searchDto = invocation.getArgument(0);
+	    return jobs.values().stream().filter(job -> searchDto.getStatuses().contains(job.getStatus()))
+		    .map(this::copy).collect(Collectors.toList());
+	});
+	given(derivedConceptJobDetailsDao.claimDerivedConceptJob(any())).willAnswer(invocation -> {
+	    DerivedConceptJobDetailsDto job = invocation.getArgument(0);
+	    if (jobs.get(job.getId()).getStatus() != Status.PENDING) {
+		return false;
+	    }
+	    jobs.get(job.getId()).setStatus(Status.PROCESSING);
+	    job.setStatus(Status.PROCESSING);
+	    job.setLeaseToken("lease-" + job.getId());
+	    return true;
+	});
+	given(derivedConceptJobDetailsDao.updateDerivedConceptJobDetails(any())).willAnswer(invocation -> {
+	    DerivedConceptJobDetailsDto job = invocation.getArgument(0);
+	    jobs.put(job.getId(), copy(job));
+	    return 1;
+	});
+    }
+
+    @Test
+    public void dispatch_runsJobsAfterTheirDependencies() {
+	willAnswer(invocation -> executedQueries.add(invocation.getArgument(0))).given(derivedConceptDao)
+		.executeDerivedConceptQuery(anyString());
+
+	derivedConceptJobExecutor.dispatch();
+	runTasks();
+
+	assertThat(executedQueries).containsExactly("Select * from table3", "Select * from table1",
+		"Select * from table2");
+	assertThat(jobs.values()).extracting(DerivedConceptJobDetailsDto::getStatus).containsOnly(Status.COMPLETED);
+	assertThat(jobs.get(10).getDerivedConceptSql()).isEqualTo("Select * from table2");
+	assertThat(jobs.get(10).getStartedOn()).isNotNull();
+	assertThat(jobs.get(10).getCompletedOn()).isNotNull();
+	assertThat(publishedEvents).hasSize(3).hasOnlyElementsOfType(FactsChangedEvent.class);
+	assertThat(((FactsChangedEvent) publishedEvents.get(2)).getReplacedConceptPaths())
+		.containsExactly("\\Derived\\B\\");
+    }
+
+    @Test
+    public void dispatch_failsJobsOfDependentConcepts() {
+	willAnswer(invocation -> {
+	    if ("Select * from table1".equals(invocation.getArgument(0))) {
+		throw new DataAccessResourceFailureException("Connection lost");
+	    }
+	    return executedQueries.add(invocation.getArgument(0));
+	}).given(derivedConceptDao).executeDerivedConceptQuery(anyString());
+
+	derivedConceptJobExecutor.dispatch();
+	runTasks();
+
+	assertThat(executedQueries).containsExactly("Select * from table3");
+	assertThat(jobs.get(11).getStatus()).isEqualTo(Status.ERROR);
+	assertThat(jobs.get(11).getErrorStack()).contains("Connection lost");
+	assertThat(jobs.get(10).getStatus()).isEqualTo(Status.ERROR);
+	assertThat(jobs.get(10).getErrorStack())
+		.isEqualTo(DerivedConceptJobExecutor.DEPENDENCY_FAILED_ERROR + "\\Derived\\A\\");
+	assertThat(jobs.get(12).getStatus()).isEqualTo(Status.COMPLETED);
+	assertThat(publishedEvents).hasSize(1);
+    }
+
+    @Test
+    public void dispatch_limitsConcurrentJobs() {
+	derivedConceptJobExecutor = createDerivedConceptJobExecutor(1, DerivedConceptJobPriority.TOPOLOGICAL);
+	willAnswer(invocation -> executedQueries.add(invocation.getArgument(0))).given(derivedConceptDao)
+		.executeDerivedConceptQuery(anyString());
+
+	derivedConceptJobExecutor.dispatch();
+	dispatcherTasks.poll().run();
+
+	assertThat(workerTasks).hasSize(1);
+	assertThat(jobs.values()).extracting(DerivedConceptJobDetailsDto::getStatus).containsOnly(Status.PENDING);
+
+	runTasks();
+
+	assertThat(executedQueries).containsExactly("Select * from table3", "Select * from table1",
+		"Select * from table2");
+    }
+
+    @Test
+    public void dispatch_criticalPathFirst() {
+	derivedConceptJobExecutor = createDerivedConceptJobExecutor(1, DerivedConceptJobPriority.CRITICAL_PATH);
+	addCompletedJob(1, 1, Duration.ofSeconds(5));
+	addCompletedJob(2, 3, Duration.ofMillis(100));
+	willAnswer(invocation -> executedQueries.add(invocation.getArgument(0))).given(derivedConceptDao)
+		.executeDerivedConceptQuery(anyString());
+
+	derivedConceptJobExecutor.dispatch();
+	runTasks();
+
+	assertThat(executedQueries).containsExactly("Select * from table1", "Select * from table3",
+		"Select * from table2");
+    }
+
+    @Test
+    public void renewLeases_runsJobsLeftByStoppedInstance() {
+	// the job of A was claimed by an instance that stopped before finishing it
+	jobs.get(11).setStatus(Status.PROCESSING);
+	given(derivedConceptJobDetailsDao.releaseExpiredDerivedConceptJobs(any())).willAnswer(invocation -> {
+	    jobs.get(11).setStatus(Status.PENDING);
+	    return 1;
+	});
+	willAnswer(invocation -> executedQueries.add(invocation.getArgument(0))).given(derivedConceptDao)
+		.executeDerivedConceptQuery(anyString());
+
+	derivedConceptJobExecutor.dispatch();
+	runTasks();
+
+	assertThat(executedQueries).containsExactly("Select * from table3");
+	assertThat(jobs.get(10).getStatus()).isEqualTo(Status.PENDING);
+
+	derivedConceptJobExecutor.renewLeases();
+	runTasks();
+
+	assertThat(executedQueries).containsExactly("Select * from table3", "Select * from table1",
+		"Select * from table2");
+	assertThat(jobs.values()).extracting(DerivedConceptJobDetailsDto::getStatus).containsOnly(Status.COMPLETED);
+    }
+
+    @Test
+    public void renewLeases_renewsRunningJobs() {
+	derivedConceptJobExecutor = createDerivedConceptJobExecutor(1, DerivedConceptJobPriority.TOPOLOGICAL);
+	willAnswer(invocation -> {
+	    derivedConceptJobExecutor.renewLeases();
+	    return null;
+	}).given(derivedConceptDao).executeDerivedConceptQuery("Select * from table3");
+
+	derivedConceptJobExecutor.dispatch();
+	dispatcherTasks.poll().run();
+	workerTasks.poll().run();
+
+	verify(derivedConceptJobDetailsDao)
+		.renewDerivedConceptJobLeases(eq(Collections.singletonMap(12, "lease-12")), any());
+	verify(derivedConceptJobDetailsDao).releaseExpiredDerivedConceptJobs(any());
+    }
+
+    @Test
+    public void renewLeases_lostLeaseIsNotRecorded() {
+	// the job of A stalled past the lease timeout, it was released and claimed again elsewhere
+	given(derivedConceptJobDetailsDao.renewDerivedConceptJobLeases(any(), any()))
+		.willReturn(Collections.singletonList(11));
+	willReturn(0).given(derivedConceptJobDetailsDao)
+		.updateDerivedConceptJobDetails(argThat(job -> job.getId() == 11));
+	willAnswer(invocation -> {
+	    derivedConceptJobExecutor.renewLeases();
+	    derivedConceptJobExecutor.renewLeases();
+	    throw new I2b2Exception("Query timed out.");
+	}).given(derivedConceptDao).executeDerivedConceptQuery("Select * from table1");
+
+	derivedConceptJobExecutor.dispatch();
+	runTasks();
+
+	verify(derivedConceptJobDetailsDao).renewDerivedConceptJobLeases(
+		eq(Collections.singletonMap(11, "lease-11")), any());
+	// the failure is not recorded, the job of B waits for the new claim of A instead of failing
+	assertThat(jobs.get(11).getStatus()).isEqualTo(Status.PROCESSING);
+	assertThat(jobs.get(10).getStatus()).isEqualTo(Status.PENDING);
+    }
+
+    private DerivedConceptJobExecutor createDerivedConceptJobExecutor(int concurrency,
+	    DerivedConceptJobPriority priority) {
+	return new DerivedConceptJobExecutor(derivedConceptJobDetailsDao, derivedConceptDao,
+		new DerivedConceptGraphManager(derivedConceptDependencyDao, Duration.ZERO), workerTasks::add, concurrency, priority, dispatcherTasks::add,
+		Duration.ZERO, Duration.ofMinutes(5), publishedEvents::add);
+    }
+
+    private void runTasks() {
+	while (!dispatcherTasks.isEmpty() || !workerTasks.isEmpty()) {
+	    Runnable task = dispatcherTasks.isEmpty() ? workerTasks.poll() : dispatcherTasks.poll();
+	    task.run();
+	}
+    }
+
+    private void addCompletedJob(Integer id, Integer derivedConceptId, Duration duration) {
+	DerivedConceptJobDetailsDto job = new DerivedConceptJobDetailsDto();
+	job.setId(id);
+	job.setDerivedConceptId(derivedConceptId);
+	job.setStatus(Status.COMPLETED);
+	job.setStartedOn(Instant.parse("2020-01-01T00:00:00Z"));
+	job.setCompletedOn(job.getStartedOn().plus(duration));
+	jobs.put(id, job);
+    }
+
+    private void addJob(Integer id, Integer derivedConceptId) {
+	DerivedConceptJobDetailsDto job = new DerivedConceptJobDetailsDto();
+	job.setId(id);
+	job.setDerivedConceptId(derivedConceptId);
+	job.setErrorStack("");
+	job.setStatus(Status.PENDING);
+	jobs.put(id, job);
+    }
+
+    private DerivedConceptJobDetailsDto copy(DerivedConceptJobDetailsDto job) {
+	DerivedConceptJobDetailsDto copy = new DerivedConceptJobDetailsDto();
+	copy.setId(job.getId());
+	copy.setDerivedConceptId(job.getDerivedConceptId());
+	copy.setErrorStack(job.getErrorStack());
+	copy.setDerivedConceptSql(job.getDerivedConceptSql());
+	copy.setStatus(job.getStatus());
+	copy.setStartedOn(job.getStartedOn());
+	copy.setCompletedOn(job.getCompletedOn());
+	return copy;
+    }
+
+    private DerivedConceptDto createDerivedConcept(Integer id, String path) {
+	DerivedConceptDto derivedConceptDto = new DerivedConceptDto();
+	derivedConceptDto.setId(id);
+	derivedConceptDto.setPath(path);
+	derivedConceptDto.setFactQuery("Select * from table" + id);
+	return derivedConceptDto;
+    }
+
+    private DerivedConceptDependencyDto createDependency(String parentConceptPath, String derivedConceptPath) {
+	DerivedConceptDependencyDto dependency = new DerivedConceptDependencyDto();
+	dependency.setParentConceptPath(parentConceptPath);
+	dependency.setDerivedConceptPath(derivedConceptPath);
+	return dependency;
+    }
+}
@@ -16,14 +16,18 @@ package io.igia.i2b2.cdi.derivedconcept.service;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -104,6 +108,9 @@ public class DerivedConceptServiceTest {
     @Mock
     private QueryMasterConfig queryMasterConfig;
 
+    @Mock
+    private DerivedConceptJobExecutor derivedConceptJobExecutor;
+
     private ConceptUtil conceptUtil;
 
     @Before
@@ -111,7 +118,8 @@ public class DerivedConceptServiceTest {
 	conceptUtil = new ConceptUtil();
 	derivedConceptService = new DerivedConceptServiceImpl(derivedConceptDao, ontologyConceptService, conceptService,
 		derivedConceptJobDetailsDao, derivedConceptDependencyDao, derivedConceptTopologicalSortWrapper,
-		conceptUtil, derivedConceptQueryMasterDao, queryMasterConfig);
+		conceptUtil, derivedConceptQueryMasterDao, queryMasterConfig, derivedConceptJobExecutor,
+		new DerivedConceptGraphManager(derivedConceptDependencyDao, Duration.ZERO));
     }
 
     @Test
@@ -440,10 +448,6 @@ public class DerivedConceptServiceTest {
 
 	when(derivedConceptDependencyDao.getAllDerivedConceptDependencies()).thenReturn(allDerivedConceptDependencies);
 
-	when(derivedConceptDependencyDao
-		.getDerivedConceptDependency(ArgumentMatchers.any(DerivedConceptDependencySearchDto.class)))
-			.thenReturn(allDerivedConceptDependencies);
-
 	List<DependencyDto> dependencies = new ArrayList<>(Arrays.asList(createDependencyDto("\\Derived\\Last LDL\\"),
 		createDependencyDto("\\Derived\\Last LDL\\")));
 
@@ -453,11 +457,65 @@ public class DerivedConceptServiceTest {
 			createDerivedConcept(3, "\\Derived\\Start LDL\\", new ArrayList<>(), new ArrayList<>())));
 
 	when(derivedConceptDao.findDerivedConceptsByPaths(any())).thenReturn(derivedConceptDependencies);
+	when(derivedConceptTopologicalSortWrapper.getDerivedConceptTopologicalSequence(any(), any()))
+		.thenReturn(derivedConceptDependencies);
 	when(derivedConceptJobDetailsDao.findDerivedConceptJobDetails(any())).thenReturn(new ArrayList<>());
 	when(derivedConceptJobDetailsDao.createDerivedConceptJobDetails(any())).thenReturn(new int[3]);
 
 	int[] rowsAffected = derivedConceptService.calculateDerivedConcept(null);
 	assertThat(rowsAffected).isNotNull().isEqualTo(new int[3]);
+	verify(derivedConceptJobExecutor).dispatch();
+    }
+
+    /**
+     * Below test creates PENDING status records only for the derived concepts whose
+     * source facts changed since they completed, and for their descendants.
+     */
+    @Test
+    public void testCalculateAllDerivedConcept_changedSourceFacts() {
+	Instant definedOn = Instant.parse("2020-01-01T00:00:00Z");
+	Instant completedOn = Instant.parse("2020-02-01T00:00:00Z");
+	List<DerivedConceptDto> derivedConcepts = Arrays.asList(
+		createDerivedConcept(1, "\\Derived\\X\\", new ArrayList<>(), new ArrayList<>()),
+		createDerivedConcept(2, "\\Derived\\Y\\", new ArrayList<>(), new ArrayList<>()),
+		createDerivedConcept(3, "\\Derived\\Z\\", new ArrayList<>(), new ArrayList<>()));
+	derivedConcepts.forEach(derivedConcept -> derivedConcept.setUpdatedOn(definedOn));
+
+	given(derivedConceptDependencyDao.getAllDerivedConceptDependencies()).willReturn(Arrays.asList(
+		createDerivedConceptDependencyDto(1, 1, "\\Derived\\X\\1\\", "\\Lab\\A\\"),
+		createDerivedConceptDependencyDto(2, 2, "\\Derived\\Y\\2\\", "\\Derived\\X\\1\\"),
+		createDerivedConceptDependencyDto(3, 3, "\\Derived\\Z\\3\\", "\\Lab\\B\\")));
+	given(derivedConceptDao.findDerivedConcepts()).willReturn(new ArrayList<>(derivedConcepts));
+	given(derivedConceptDao.findDerivedConceptsByPaths(any())).willAnswer(invocation -> {
+	    List<String> paths = invocation.getArgument(0);
+	    return derivedConcepts.stream().filter(derivedConcept -> paths.contains(derivedConcept.getPath()))
+		    .collect(Collectors.toList());
+	});
+	given(derivedConceptTopologicalSortWrapper.getDerivedConceptTopologicalSequence(any(), any()))
+		.willAnswer(invocation -> invocation.getArgument(0));
+	given(derivedConceptJobDetailsDao.findDerivedConceptJobDetails(any())).willAnswer(invocation -> {
+	    List<DerivedConceptJobDetailsDto> completedJobs = new ArrayList<>();
+	    for (int id = 1; id <= 3; id++) {
+		DerivedConceptJobDetailsDto completedJob = createDerivedConceptJobDetails(id, null, null,
+			Status.COMPLETED);
+		completedJob.setCompletedOn(completedOn);
+		completedJobs.add(completedJob);
+	    }
+	    return completedJobs;
+	});
+	given(derivedConceptDao.findLastFactUpdates(any(), any())).willReturn(
+		Collections.singletonMap("\\Lab\\A\\", Instant.parse("2020-03-01T00:00:00Z")));
+	List<DerivedConceptJobDetailsDto> createdJobs = new ArrayList<>();
+	given(derivedConceptJobDetailsDao.createDerivedConceptJobDetails(any())).willAnswer(invocation -> {
+	    List<DerivedConceptJobDetailsDto> jobDetails = invocation.getArgument(0);
+	    createdJobs.addAll(jobDetails);
+	    return new int[] { 1, 1 };
+	});
+
+	derivedConceptService.calculateDerivedConcept(null);
+
+	assertThat(createdJobs).extracting(DerivedConceptJobDetailsDto::getDerivedConceptId).containsExactly(1, 2);
+	assertThat(createdJobs).extracting(DerivedConceptJobDetailsDto::getStatus).containsOnly(Status.PENDING);
     }
 
     private DependencyDto createDependencyDto(String path) {
@@ -486,6 +544,9 @@ public class DerivedConceptServiceTest {
 	DerivedConceptDto derivedConceptDto = createDerivedConcept(2, "\\Derived\\Last LDL\\", new ArrayList<>(),
 		new ArrayList<>());
 	when(derivedConceptDao.findDerivedConceptById(any())).thenReturn(derivedConceptDto);
+	when(derivedConceptDependencyDao.getAllDerivedConceptDependencies()).thenReturn(new ArrayList<>(Arrays.asList(
+		createDerivedConceptDependencyDto(1, 1, "\\Derived\\LDL Change\\", "\\Derived\\Last LDL\\2\\"),
+		createDerivedConceptDependencyDto(2, 1, "\\Derived\\LDL Change\\", "\\Derived\\Start LDL\\"))));
 
 	List<DependencyDto> dependencies = new ArrayList<>(Arrays.asList(createDependencyDto("\\Derived\\Last LDL\\"),
 		createDependencyDto("\\Derived\\Last LDL\\")));
@@ -524,9 +585,6 @@ public class DerivedConceptServiceTest {
 		"\\labtest\\3\\", "\\Derived\\test2\\");
 
 	when(derivedConceptDependencyDao.getAllDerivedConceptDependencies()).thenReturn(derivedConceptDependencies);
-	when(derivedConceptDependencyDao
-		.getDerivedConceptDependency(ArgumentMatchers.any(DerivedConceptDependencySearchDto.class)))
-			.thenReturn(derivedConceptDependencies);
 
 	List<Set<DerivedConceptDependencyDto>> actualDerivedConceptDependencyHierarchies = derivedConceptService
 		.getAllDerivedConceptDependencyHierarchy();
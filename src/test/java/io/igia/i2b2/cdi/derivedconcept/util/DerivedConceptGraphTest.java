@@ -0,0 +1,140 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.derivedconcept.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import io.igia.i2b2.cdi.derivedconcept.dto.DerivedConceptDependencyDto;
+
+public class DerivedConceptGraphTest {
+
+    @Test
+    public void testTopologicalRank() {
+	DerivedConceptGraph graph = new DerivedConceptGraph(
+		Arrays.asList(createDependency("\\Derived\\B\\", "\\Derived\\C\\"),
+			createDependency("\\Derived\\A\\", "\\Derived\\B\\")));
+
+	assertThat(graph.hasCycle()).isFalse();
+	assertThat(graph.getTopologicalRank("\\Derived\\A\\")).isLessThan(graph.getTopologicalRank("\\Derived\\B\\"));
+	assertThat(graph.getTopologicalRank("\\Derived\\B\\")).isLessThan(graph.getTopologicalRank("\\Derived\\C\\"));
+	assertThat(graph.getTopologicalRank("\\Derived\\D\\")).isEqualTo(-1);
+    }
+
+    @Test
+    public void testTopologicalRank_cyclicDependency() {
+	DerivedConceptGraph graph = new DerivedConceptGraph(
+		Arrays.asList(createDependency("\\Derived\\A\\", "\\Derived\\B\\"),
+			createDependency("\\Derived\\B\\", "\\Derived\\A\\"),
+			createDependency("\\Derived\\B\\", "\\Derived\\C\\")));
+
+	assertThat(graph.hasCycle()).isTrue();
+	assertThat(graph.getTopologicalRank("\\Derived\\C\\")).isEqualTo(DerivedConceptGraph.CYCLIC_RANK);
+    }
+
+    @Test
+    public void testFindAncestor() {
+	DerivedConceptGraph graph = new DerivedConceptGraph(
+		Arrays.asList(createDependency("\\Derived\\A\\", "\\Derived\\B\\"),
+			createDependency("\\Derived\\B\\", "\\Derived\\C\\"),
+			createDependency("\\Derived\\D\\", "\\Derived\\C\\")));
+
+	assertThat(graph.findAncestor("\\Derived\\C\\", Collections.singleton("\\Derived\\A\\")))
+		.isEqualTo("\\Derived\\A\\");
+	assertThat(graph.findAncestor("\\Derived\\B\\", Collections.singleton("\\Derived\\D\\"))).isNull();
+	assertThat(graph.findAncestor("\\Derived\\A\\", Collections.singleton("\\Derived\\A\\"))).isNull();
+    }
+
+    @Test
+    public void testGetCriticalPathLengths() {
+	DerivedConceptGraph graph = new DerivedConceptGraph(
+		Arrays.asList(createDependency("\\Derived\\A\\", "\\Derived\\B\\"),
+			createDependency("\\Derived\\A\\", "\\Derived\\C\\"),
+			createDependency("\\Derived\\C\\", "\\Derived\\D\\")));
+
+	Map<String, Long> criticalPathLengths = graph.getCriticalPathLengths(path -> 10L);
+
+	assertThat(criticalPathLengths.get("\\Derived\\A\\")).isEqualTo(30L);
+	assertThat(criticalPathLengths.get("\\Derived\\B\\")).isEqualTo(10L);
+	assertThat(criticalPathLengths.get("\\Derived\\C\\")).isEqualTo(20L);
+    }
+
+    @Test
+    public void testGetAncestorsAndDescendants() {
+	DerivedConceptGraph graph = new DerivedConceptGraph(
+		Arrays.asList(createDependency("\\Derived\\A\\", "\\Derived\\B\\"),
+			createDependency("\\Derived\\B\\", "\\Derived\\C\\"),
+			createDependency("\\Derived\\D\\", "\\Derived\\C\\")));
+
+	assertThat(graph.getAncestors("\\Derived\\C\\")).containsExactlyInAnyOrder("\\Derived\\A\\",
+		"\\Derived\\B\\", "\\Derived\\D\\");
+	assertThat(graph.getDescendants("\\Derived\\A\\")).containsExactly("\\Derived\\B\\", "\\Derived\\C\\");
+	assertThat(graph.getDescendants("\\Derived\\C\\")).isEmpty();
+	assertThat(graph.getAncestors("\\Derived\\E\\")).isEmpty();
+    }
+
+    @Test
+    public void testGetDependencyHierarchies() {
+	DerivedConceptDependencyDto ab = createDependency(1, "\\Derived\\A\\", "\\Derived\\B\\");
+	DerivedConceptDependencyDto cb = createDependency(1, "\\Derived\\C\\", "\\Derived\\B\\");
+	DerivedConceptDependencyDto cd = createDependency(2, "\\Derived\\C\\", "\\Derived\\D\\");
+	DerivedConceptDependencyDto ef = createDependency(3, "\\Derived\\E\\", "\\Derived\\F\\");
+	DerivedConceptGraph graph = new DerivedConceptGraph(Arrays.asList(ab, cb, cd, ef));
+
+	List<Set<DerivedConceptDependencyDto>> hierarchies = graph.getDependencyHierarchies();
+
+	assertThat(hierarchies).hasSize(2);
+	assertThat(hierarchies.get(0)).containsExactlyInAnyOrder(ab, cb, cd);
+	assertThat(hierarchies.get(1)).containsExactly(ef);
+	assertThat(graph.getDependencyHierarchy(Collections.singleton("\\Derived\\D\\")))
+		.containsExactlyInAnyOrder(ab, cb, cd);
+	assertThat(graph.getDependencyHierarchy(Collections.singleton("\\Derived\\G\\"))).isEmpty();
+    }
+
+    @Test
+    public void testWithChanges() {
+	DerivedConceptDependencyDto ab = createDependency(1, "\\Derived\\A\\", "\\Derived\\B\\");
+	DerivedConceptDependencyDto bc = createDependency(2, "\\Derived\\B\\", "\\Derived\\C\\");
+	DerivedConceptDependencyDto dc = createDependency(2, "\\Derived\\D\\", "\\Derived\\C\\");
+	DerivedConceptGraph graph = new DerivedConceptGraph(Arrays.asList(ab, bc));
+
+	DerivedConceptGraph changedGraph = graph.withChanges(Collections.singletonList(dc),
+		Collections.singletonList(createDependency(2, "\\Derived\\B\\", null)));
+
+	assertThat(changedGraph.getDependencies()).containsExactly(ab, dc);
+	assertThat(changedGraph.getAncestors("\\Derived\\C\\")).containsExactly("\\Derived\\D\\");
+	assertThat(changedGraph.withoutDerivedConcept(2).getDependencies()).containsExactly(ab);
+	assertThat(graph.getDependencies()).containsExactly(ab, bc);
+    }
+
+    private DerivedConceptDependencyDto createDependency(Integer derivedConceptId, String parentConceptPath,
+	    String derivedConceptPath) {
+	DerivedConceptDependencyDto dependency = createDependency(parentConceptPath, derivedConceptPath);
+	dependency.setDerivedConceptId(derivedConceptId);
+	return dependency;
+    }
+
+    private DerivedConceptDependencyDto createDependency(String parentConceptPath, String derivedConceptPath) {
+	DerivedConceptDependencyDto dependency = new DerivedConceptDependencyDto();
+	dependency.setParentConceptPath(parentConceptPath);
+	dependency.setDerivedConceptPath(derivedConceptPath);
+	return dependency;
+    }
+}
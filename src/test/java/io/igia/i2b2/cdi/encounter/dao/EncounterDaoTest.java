@@ -25,9 +25,11 @@ import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 @RunWith(SpringRunner.class)
 @JdbcTest
@@ -69,6 +71,14 @@ public class EncounterDaoTest {
         assertThat(encounters.get(0)).isNotNull().isEqualToComparingFieldByField(expectedEncounter);
     }
 
+    @Test
+    public void findEncounterFilterByEncounterNums() {
+        List<EncounterDto> encounters = encounterDao
+                .findEncounterByEncounterNum(new EncounterSearchDto().setEncounterNums(Arrays.asList(2, 3, 4)));
+        assertThat(encounters).isNotNull().isNotEmpty().size().isEqualTo(2);
+        assertThat(encounters).extracting(EncounterDto::getEncounterId).containsExactlyInAnyOrder("2", "3");
+    }
+
     @Test
     public void findEncounters_filterByEncounterId_filterByProjectId_filterBySource() {
         List<EncounterDto> encounters = encounterDao.findEncounters(new EncounterSearchDto()
@@ -99,6 +109,32 @@ public class EncounterDaoTest {
         assertThat(status).isEqualTo(1);
     }
 
+    @Test
+    public void addEncounterMappingsIfAbsent() {
+        int[] status = encounterDao.addEncounterMappingsIfAbsent(Arrays.asList(
+            createDetailedEncounter(4, "1", "i2b2", "A", 1, "1", "i2b2", "pr1", "demo"),
+            createDetailedEncounter(5, "5", "i2b2", "A", 1, "1", "i2b2", "pr1", "demo")));
+        assertThat(status).containsExactly(0, 1);
+        assertThat(encounterDao.findEncounters(new EncounterSearchDto().setEncounterId("1")))
+            .extracting(EncounterDto::getEncounterNum).containsExactly(1);
+    }
+
+    @Test
+    public void findEncounterMappings() {
+        encounterDao.addEncounterMappingsIfAbsent(Arrays.asList(
+            createDetailedEncounter(4, "1", "i2b2", "A", 2, "2", "i2b2", "pr1", "demo")));
+        assertThat(encounterDao.findEncounterMappings(new EncounterSearchDto().setEncounterIds(Arrays.asList("1"))))
+            .extracting(EncounterDto::getPatientId, EncounterDto::getEncounterNum)
+            .containsExactlyInAnyOrder(tuple("1", 1), tuple("2", 4));
+    }
+
+    @Test
+    public void addEncountersIfAbsent() {
+        int[] status = encounterDao.addEncountersIfAbsent(Arrays.asList(
+            createDefaultEncounter(1, "1"), createDefaultEncounter(4, "4")));
+        assertThat(status).containsExactly(0, 1);
+    }
+
     private EncounterDto createEncounter(
         Integer encounterNum, String encounterId) {
         return createDetailedEncounter(encounterNum, encounterId, null, null,
@@ -27,9 +27,11 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.BDDMockito.given;
@@ -139,6 +141,54 @@ public class EncounterServiceTest {
         assertThat(actualEncounters.get(0)).isEqualToComparingFieldByField(encounters.get(0));
     }
 
+    @Test
+    public void getOrCreateEncounters() {
+        given(encounterDao.findEncounterMappings(argThat(search -> search.getEncounterIds().contains("1"))))
+            .willReturn(Arrays.asList(createEncounter(1, "1")));
+        given(encounterDao.getNextEncounterNumber()).willReturn(4);
+        given(encounterDao.addEncounterMappingsIfAbsent(argThat(encounters -> encounters.size() == 1)))
+            .willReturn(new int[]{1});
+        given(encounterDao.addNewEncounters(argThat(encounters -> encounters.size() == 1)))
+            .willReturn(new int[]{1});
+
+        List<EncounterDto> encounters = encounterService.getOrCreateEncounters(Arrays.asList(
+            createEncounter(null, "1"), createEncounter(null, "4")));
+
+        assertThat(encounters).extracting(EncounterDto::getEncounterNum).containsExactly(1, 4);
+        verify(encounterDao, times(1)).addNewEncounters(argThat(e -> e.get(0).getEncounterNum() == 4));
+    }
+
+    @Test
+    public void getOrCreateEncounters_mappedConcurrently() {
+        given(encounterDao.findEncounterMappings(any()))
+            .willReturn(Collections.emptyList())
+            .willReturn(Arrays.asList(createEncounter(7, "4")));
+        given(encounterDao.getNextEncounterNumber()).willReturn(4);
+        given(encounterDao.addEncounterMappingsIfAbsent(any())).willReturn(new int[]{0});
+
+        List<EncounterDto> encounters = encounterService.getOrCreateEncounters(
+            Arrays.asList(createEncounter(null, "4")));
+
+        assertThat(encounters).extracting(EncounterDto::getEncounterNum).containsExactly(7);
+        verify(encounterDao, times(0)).addNewEncounters(any());
+    }
+
+    @Test
+    public void getOrCreateEncounters_sameEncounterIdOfAnotherPatient() {
+        EncounterDto otherPatientEncounter = createEncounter(1, "1");
+        otherPatientEncounter.setPatientId("2");
+        given(encounterDao.findEncounterMappings(any())).willReturn(Arrays.asList(otherPatientEncounter));
+        given(encounterDao.getNextEncounterNumber()).willReturn(4);
+        given(encounterDao.addEncounterMappingsIfAbsent(any())).willReturn(new int[]{1});
+        given(encounterDao.addNewEncounters(any())).willReturn(new int[]{1});
+
+        List<EncounterDto> encounters = encounterService.getOrCreateEncounters(
+            Arrays.asList(createEncounter(null, "1")));
+
+        assertThat(encounters).extracting(EncounterDto::getPatientId, EncounterDto::getEncounterNum)
+            .containsExactly(tuple("1", 4));
+    }
+
     private EncounterDto createEncounter(
         Integer encounterNum, String encounterId) {
         return createDetailedEncounter(encounterNum, encounterId, null, null,
@@ -24,6 +24,7 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -104,6 +105,16 @@ public class ModifierDaoTest {
         assertThat(modifiers.get(0)).isEqualToComparingFieldByField(expectedModifier);
     }
 
+    @Test
+    public void streamModifiers() {
+        List<ModifierDto> modifiers = new ArrayList<>();
+        modifierDao.streamModifiers(modifiers::add);
+        assertThat(modifiers).extracting(ModifierDto::getModifierPath)
+            .containsExactlyInAnyOrder("/test/1", "/test/2", "/test/3");
+        assertThat(modifiers).filteredOn(modifier -> "/test/2".equals(modifier.getModifierPath())).first()
+            .isEqualToComparingFieldByField(createModifier("2", "test2", "/test/2", "test"));
+    }
+
     private ModifierDto createModifier(String code, String name, String path, String source) {
         ModifierDto modifierDto = new ModifierDto();
         modifierDto.setCode(code);
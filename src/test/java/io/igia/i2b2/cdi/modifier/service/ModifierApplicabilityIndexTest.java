@@ -0,0 +1,169 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.modifier.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import io.igia.i2b2.cdi.common.cache.DimensionCacheManager;
+import io.igia.i2b2.cdi.concept.dto.ConceptDataType;
+import io.igia.i2b2.cdi.modifier.dao.ModifierDao;
+import io.igia.i2b2.cdi.modifier.dto.ModifierDto;
+import io.igia.i2b2.cdi.ontology.dto.OntologyConceptDto;
+import io.igia.i2b2.cdi.ontology.service.OntologyConceptService;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ModifierApplicabilityIndexTest {
+
+    private static final String NEOPLASMS = "\\Diagnoses\\Neoplasms\\";
+    private static final String LUNG = "\\Diagnoses\\Neoplasms\\Lung\\";
+
+    @Mock
+    private ModifierDao modifierDao;
+    @Mock
+    private OntologyConceptService ontologyConceptService;
+    @Mock
+    private DimensionCacheManager dimensionCacheManager;
+
+    private long now;
+    private ModifierApplicabilityIndex modifierApplicabilityIndex;
+
+    @Before
+    public void setUp() {
+        modifierApplicabilityIndex = new ModifierApplicabilityIndex(modifierDao, ontologyConceptService,
+            dimensionCacheManager, true, Duration.ofNanos(100), () -> now, Runnable::run);
+    }
+
+    @Test
+    public void getModifiers_inheritedFromAncestors() {
+        givenModifiers();
+
+        Map<String, List<ModifierDto>> modifiers = modifierApplicabilityIndex.getModifiers(
+            Arrays.asList(NEOPLASMS, LUNG + "Nodes\\")).get();
+
+        assertThat(modifiers.get(NEOPLASMS)).extracting(ModifierDto::getCode)
+            .containsExactlyInAnyOrder("SEV:MIN", "TNM:T");
+        assertThat(modifiers.get(LUNG + "Nodes\\")).extracting(ModifierDto::getCode)
+            .containsExactlyInAnyOrder("SEV:MIN", "TNM:STAGE");
+    }
+
+    @Test
+    public void getModifiers_withDataType() {
+        givenModifiers();
+
+        List<ModifierDto> modifiers = modifierApplicabilityIndex.getModifiers(Collections.singleton(LUNG)).get()
+            .get(LUNG);
+
+        assertThat(modifiers).filteredOn(modifier -> "TNM:STAGE".equals(modifier.getCode()))
+            .extracting(ModifierDto::getDataType).containsExactly(ConceptDataType.INTEGER);
+        assertThat(modifiers).filteredOn(modifier -> "SEV:MIN".equals(modifier.getCode()))
+            .extracting(ModifierDto::getDataType).containsExactly(ConceptDataType.STRING);
+    }
+
+    @Test
+    public void getModifiers_copies() {
+        givenModifiers();
+        modifierApplicabilityIndex.getModifiers(Collections.singleton(LUNG)).get().get(LUNG)
+            .forEach(modifier -> modifier.setCode("CHANGED"));
+
+        List<ModifierDto> modifiers = modifierApplicabilityIndex.getModifiers(Collections.singleton(LUNG)).get()
+            .get(LUNG);
+
+        assertThat(modifiers).extracting(ModifierDto::getCode).doesNotContain("CHANGED");
+        verify(modifierDao, times(1)).streamModifiers(any());
+    }
+
+    @Test
+    public void getModifiers_unknownConceptPath() {
+        givenModifiers();
+
+        assertThat(modifierApplicabilityIndex.getModifiers(Collections.singleton("\\Procedures\\")).get())
+            .containsEntry("\\Procedures\\", Collections.emptyList());
+    }
+
+    @Test
+    public void getModifiers_disabled() {
+        modifierApplicabilityIndex = new ModifierApplicabilityIndex(modifierDao, ontologyConceptService,
+            dimensionCacheManager, false, Duration.ofNanos(100), () -> now, Runnable::run);
+
+        assertThat(modifierApplicabilityIndex.getModifiers(Collections.singleton(LUNG))).isEmpty();
+        verify(modifierDao, never()).streamModifiers(any());
+    }
+
+    @Test
+    public void getModifiers_reloadedAfterDimensionWrite() {
+        givenModifiers();
+        given(dimensionCacheManager.getGeneration()).willReturn(1L);
+        modifierApplicabilityIndex.getModifiers(Collections.singleton(LUNG));
+        given(dimensionCacheManager.getGeneration()).willReturn(2L);
+
+        assertThat(modifierApplicabilityIndex.getModifiers(Collections.singleton(LUNG))).isPresent();
+        verify(ontologyConceptService, times(2)).streamModifierApplications(any());
+    }
+
+    private void givenModifiers() {
+        willAnswer(invocation -> {
+            Consumer<OntologyConceptDto> consumer = invocation.getArgument(0);
+            consumer.accept(createApplication("\\Severity\\Minor\\", "\\Diagnoses\\%", false, null));
+            consumer.accept(createApplication("\\TNM\\Stage\\", LUNG + "%", false, ConceptDataType.INTEGER));
+            consumer.accept(createApplication("\\TNM\\Tumor\\", NEOPLASMS + "%", false, ConceptDataType.STRING));
+            consumer.accept(createApplication("\\TNM\\Tumor\\", LUNG + "%", true, ConceptDataType.STRING));
+            return null;
+        }).given(ontologyConceptService).streamModifierApplications(any());
+        willAnswer(invocation -> {
+            Consumer<ModifierDto> consumer = invocation.getArgument(0);
+            consumer.accept(createModifier("\\Severity\\Minor\\", "SEV:MIN"));
+            consumer.accept(createModifier("\\TNM\\Stage\\", "TNM:STAGE"));
+            consumer.accept(createModifier("\\TNM\\Tumor\\", "TNM:T"));
+            consumer.accept(createModifier("\\TNM\\Nodes\\", "TNM:N"));
+            return null;
+        }).given(modifierDao).streamModifiers(any());
+    }
+
+    private OntologyConceptDto createApplication(String fullName, String appliedPath, boolean excluded,
+            ConceptDataType dataType) {
+        OntologyConceptDto application = new OntologyConceptDto();
+        application.setFullName(fullName);
+        application.setModifierAppliedPath(appliedPath);
+        application.setModifierExcluded(excluded);
+        application.setDataType(dataType);
+        return application;
+    }
+
+    private ModifierDto createModifier(String path, String code) {
+        ModifierDto modifier = new ModifierDto();
+        modifier.setModifierPath(path);
+        modifier.setCode(code);
+        modifier.setName(code);
+        modifier.setSource("demo");
+        return modifier;
+    }
+}
@@ -34,7 +34,12 @@ import org.mockito.junit.MockitoJUnitRunner;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -56,6 +61,9 @@ public class ModifierServiceTest {
     @Mock
     private OntologyConceptService ontologyConceptService;
 
+    @Mock
+    private ModifierApplicabilityIndex modifierApplicabilityIndex;
+
     @Rule
     public ExpectedException thrown = ExpectedException.none();
 
@@ -63,7 +71,8 @@ public class ModifierServiceTest {
 
     @Before
     public void setUp() {
-        modifierService = new ModifierServiceImpl(modifierDao, ontologyConceptService, conceptService);
+        modifierService = new ModifierServiceImpl(modifierDao, ontologyConceptService, conceptService,
+            modifierApplicabilityIndex);
     }
 
     @Test
@@ -142,6 +151,26 @@ public class ModifierServiceTest {
                 actualModifierSearchDto.getModifierPaths().containsAll(modifierPaths)));
     }
 
+    @Test
+    public void testGetModifiers_filterByConceptCodeFromModifierIndex() {
+        ConceptDto conceptDto = createConcept("ICD9:160", "\\i2b2\\Diagnoses\\Neoplasms\\");
+        given(conceptService.getConcepts(any())).willReturn(new PaginationResult<>(Arrays.asList(conceptDto), 0));
+        ModifierDto test = createModifier("SEV:MIN", "Minor");
+        test.setSource("test");
+        given(modifierApplicabilityIndex.getModifiers(Collections.singleton(conceptDto.getConceptPath())))
+            .willReturn(Optional.of(Collections.singletonMap(conceptDto.getConceptPath(),
+                Arrays.asList(createModifier("SEV:MAJ", "Major"), test, createModifier("TNM:T", "Tumor")))));
+
+        List<ModifierDto> actualModifiers = modifierService.getModifiersWithDataType(new ModifierSearchDto()
+            .setConceptCode("ICD9:160").setSource("DEMO").setModifierCodes(Arrays.asList("SEV:MAJ", "SEV:MIN")));
+
+        assertThat(actualModifiers).extracting(ModifierDto::getCode).containsExactly("SEV:MAJ");
+        assertThat(actualModifiers.get(0).getDataType()).isEqualTo(ConceptDataType.STRING);
+        verify(ontologyConceptService, times(0)).getOntologyConcepts(any());
+        verify(ontologyConceptService, times(0)).getOntologyConceptsWithDataType(any());
+        verify(modifierDao, times(0)).findModifiers(any());
+    }
+
     @Test
     public void testGetModifiersWithDataType() {
         List<ModifierDto> modifiers = Arrays.asList(
@@ -176,6 +205,59 @@ public class ModifierServiceTest {
         verify(modifierDao, times(1)).findModifiers(any());
     }
 
+    @Test
+    public void testGetModifiersWithDataType_byConcepts() {
+        ConceptDto neoplasm = createConcept("ICD9:160", "\\i2b2\\Diagnoses\\Neoplasms\\");
+        ConceptDto procedure = createConcept("CPT:1", "\\i2b2\\Procedures\\");
+        Map<String, Set<String>> modifierPaths = new HashMap<>();
+        modifierPaths.put(neoplasm.getConceptPath(), Collections.singleton("\\Minor\\SEV:MIN"));
+        modifierPaths.put(procedure.getConceptPath(), new HashSet<>(Arrays.asList("\\Minor\\SEV:MIN",
+            "\\Major\\SEV:MAJ")));
+        given(ontologyConceptService.getApplicableModifierPaths(any())).willReturn(modifierPaths);
+
+        List<ModifierDto> modifiers = Arrays.asList(
+            createModifier("SEV:MIN", "Minor"), createModifier("SEV:MAJ", "Major", ConceptDataType.INTEGER));
+        given(modifierDao.findModifiers(argThat(modifierSearchDto -> modifierSearchDto.getModifierPaths().size() == 2
+            && modifierSearchDto.getModifierCodes().containsAll(Arrays.asList("SEV:MIN", "SEV:MAJ")))))
+            .willReturn(modifiers);
+
+        OntologyConceptDto ontologyConceptDto = new OntologyConceptDto();
+        ontologyConceptDto.setFullName("\\Major\\SEV:MAJ");
+        ontologyConceptDto.setDataType(ConceptDataType.INTEGER);
+        given(ontologyConceptService.getOntologyConceptsWithDataType(any()))
+            .willReturn(Arrays.asList(ontologyConceptDto));
+
+        Map<String, List<ModifierDto>> actualModifiers = modifierService.getModifiersWithDataType(
+            Arrays.asList(neoplasm, procedure), Arrays.asList("SEV:MIN", "SEV:MAJ"));
+
+        assertThat(actualModifiers.get("ICD9:160")).extracting(ModifierDto::getCode).containsExactly("SEV:MIN");
+        assertThat(actualModifiers.get("CPT:1")).extracting(ModifierDto::getCode)
+            .containsExactlyInAnyOrder("SEV:MIN", "SEV:MAJ");
+        assertThat(modifiers).extracting(ModifierDto::getDataType)
+            .containsExactly(ConceptDataType.STRING, ConceptDataType.INTEGER);
+        verify(modifierDao, times(1)).findModifiers(any());
+        verify(conceptService, times(0)).getConcepts(any());
+    }
+
+    @Test
+    public void testGetModifiersWithDataType_byConceptsFromModifierIndex() {
+        ConceptDto neoplasm = createConcept("ICD9:160", "\\i2b2\\Diagnoses\\Neoplasms\\");
+        ConceptDto procedure = createConcept("CPT:1", "\\i2b2\\Procedures\\");
+        Map<String, List<ModifierDto>> modifiers = new HashMap<>();
+        modifiers.put(neoplasm.getConceptPath(), Arrays.asList(createModifier("SEV:MIN", "Minor"),
+            createModifier("TNM:T", "Tumor")));
+        modifiers.put(procedure.getConceptPath(), Collections.emptyList());
+        given(modifierApplicabilityIndex.getModifiers(any())).willReturn(Optional.of(modifiers));
+
+        Map<String, List<ModifierDto>> actualModifiers = modifierService.getModifiersWithDataType(
+            Arrays.asList(neoplasm, procedure), Arrays.asList("SEV:MIN", "SEV:MAJ"));
+
+        assertThat(actualModifiers.get("ICD9:160")).extracting(ModifierDto::getCode).containsExactly("SEV:MIN");
+        assertThat(actualModifiers.get("CPT:1")).isEmpty();
+        verify(ontologyConceptService, times(0)).getApplicableModifierPaths(any());
+        verify(modifierDao, times(0)).findModifiers(any());
+    }
+
     @Test
     public void testValidateModifier() {
         List<ModifierDto> modifiers = Arrays.asList(
@@ -199,6 +281,13 @@ public class ModifierServiceTest {
     private ModifierDto createModifier(String code, String name) {
         return createModifier(code, name, ConceptDataType.STRING);
     }
+    private ConceptDto createConcept(String code, String path) {
+        ConceptDto conceptDto = new ConceptDto();
+        conceptDto.setCode(code);
+        conceptDto.setConceptPath(path);
+        return conceptDto;
+    }
+
     private ModifierDto createModifier(String code, String name, ConceptDataType dataType) {
         ModifierDto modifierDto = new ModifierDto();
         modifierDto.setCode(code);
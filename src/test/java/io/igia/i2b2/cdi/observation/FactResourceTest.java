@@ -15,12 +15,19 @@ package io.igia.i2b2.cdi.observation;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -36,11 +43,20 @@ import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
 import io.igia.i2b2.cdi.observation.dto.FactDto;
+import io.igia.i2b2.cdi.observation.dto.FactImportFormat;
+import io.igia.i2b2.cdi.observation.dto.FactImportResultDto;
+import io.igia.i2b2.cdi.observation.dto.FactImportStatus;
 import io.igia.i2b2.cdi.observation.dto.FactModifierDto;
+import io.igia.i2b2.cdi.observation.service.FactBatchService;
+import io.igia.i2b2.cdi.observation.service.FactImportService;
+import io.igia.i2b2.cdi.observation.service.FactSpool;
+import io.igia.i2b2.cdi.observation.service.FactWriteCoalescer;
 import io.igia.i2b2.cdi.observation.service.ObservationService;
 
 @RunWith(SpringRunner.class)
@@ -54,6 +70,18 @@ public class FactResourceTest {
     @MockBean
     private ObservationService observationService;
 
+    @MockBean
+    private FactBatchService factBatchService;
+
+    @MockBean
+    private FactImportService factImportService;
+
+    @MockBean
+    private FactWriteCoalescer factWriteCoalescer;
+
+    @MockBean
+    private FactSpool factSpool;
+
     @Autowired
     private JacksonTester<FactDto> jacksonTester;
     
@@ -69,7 +97,7 @@ public class FactResourceTest {
         observation.setConceptCode("CC");
         observation.setPatientId("P");
 
-        given(observationService.addObservation(any())).willReturn(observation);
+        given(factWriteCoalescer.addObservation(any())).willReturn(observation);
 
         MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders
             .post("/api/facts")
@@ -82,6 +110,29 @@ public class FactResourceTest {
         assertThat(response.getContentAsString()).isEqualTo(jacksonTester.write(observation).getJson());
     }
 
+    @Test
+    @WithMockUser()
+    public void addObservation_spooled() throws Exception {
+
+        FactDto observation = new FactDto();
+        observation.setStartDate(LocalDateTime.now());
+        observation.setConceptCode("CC");
+        observation.setPatientId("P");
+
+        given(factSpool.isEnabled()).willReturn(true);
+        given(factSpool.addObservation(any())).willReturn(observation);
+
+        MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/facts")
+            .content(jacksonTester.write(observation).getJson())
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+        ).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.ACCEPTED.value());
+        assertThat(response.getContentAsString()).isEqualTo(jacksonTester.write(observation).getJson());
+    }
+
     @Test
     @WithMockUser()
     public void addObservation_missingConceptCode() throws Exception {
@@ -178,7 +229,7 @@ public class FactResourceTest {
         observation.setConceptCode("CC");
         observation.setStartDate(LocalDateTime.now());
 
-        given(observationService.addObservation(any())).willThrow(new DuplicateKeyException("exception"));
+        given(factWriteCoalescer.addObservation(any())).willThrow(new DuplicateKeyException("exception"));
 
         MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders
             .post("/api/facts")
@@ -208,6 +259,24 @@ public class FactResourceTest {
         assertThat(response.getContentAsString()).isEqualTo(jacksonTester1.write(result.getRecords()).getJson());
     }
     
+    @Test
+    @WithMockUser()
+    public void getObservationsWithoutCount() throws Exception {
+        List<FactDto> facts = Arrays.asList(createFact(1, false), createFact(2, false));
+
+        PaginationResult<FactDto> result = new PaginationResult<>(facts, 0);
+        result.setHasMore(true);
+        given(observationService.getObservations(any())).willReturn(result);
+
+        MockHttpServletResponse response = mockMvc
+            .perform(MockMvcRequestBuilders.get("/api/facts?size=2&count=none").accept(MediaType.APPLICATION_JSON_UTF8))
+            .andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getHeader("X-Has-More")).isEqualTo("true");
+        assertThat(response.getHeader("X-Total-Count")).isNull();
+    }
+
     private FactDto createFact(int i, boolean modifierFlag) {
         FactDto factDto = new FactDto();
         factDto.setPatientId("P" + i);
@@ -286,4 +355,159 @@ public class FactResourceTest {
         assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
         assertThat(response.getContentAsString()).isEqualTo(jacksonTester1.write(result.getRecords()).getJson());
     }
+
+    @Test
+    @WithMockUser()
+    public void addFacts_jsonArray() throws Exception {
+        given(factBatchService.addFacts(any())).willAnswer(invocation -> countFacts(invocation.getArgument(0)));
+
+        String fact = jacksonTester.write(createBatchFact()).getJson();
+        MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/facts:batch")
+            .content("[" + fact + "," + fact + "]")
+            .contentType(MediaType.APPLICATION_JSON_UTF8)
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+        ).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).contains("\"accepted\":2");
+    }
+
+    @Test
+    @WithMockUser()
+    public void addFacts_ndjson() throws Exception {
+        given(factBatchService.addFacts(any())).willAnswer(invocation -> countFacts(invocation.getArgument(0)));
+
+        String fact = jacksonTester.write(createBatchFact()).getJson();
+        MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/facts:batch")
+            .content(fact + "\n" + fact + "\n" + fact + "\n")
+            .contentType(FactResource.APPLICATION_NDJSON_VALUE)
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+        ).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).contains("\"accepted\":3");
+    }
+
+    @Test
+    @WithMockUser()
+    public void importFacts_csv() throws Exception {
+        FactImportResultDto importResult = new FactImportResultDto("1", 10);
+        importResult.setAccepted(5);
+        importResult.setCheckpoint(15);
+        importResult.setStatus(FactImportStatus.COMPLETED);
+        given(factImportService.importFacts(any(), eq(FactImportFormat.CSV), eq(10L))).willReturn(importResult);
+
+        MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/facts:import")
+            .param("offset", "10")
+            .content("patientId,conceptCode,startDate\n")
+            .contentType(FactResource.TEXT_CSV_VALUE)
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+        ).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentAsString()).contains("\"checkpoint\":15", "\"status\":\"COMPLETED\"");
+    }
+
+    @Test
+    @WithMockUser()
+    public void importFacts_path() throws Exception {
+        given(factImportService.importFacts("facts.ndjson", 0L)).willReturn(new FactImportResultDto("1", 0));
+
+        MockHttpServletResponse response = mockMvc.perform(MockMvcRequestBuilders
+            .post("/api/facts:import")
+            .param("path", "facts.ndjson")
+            .accept(MediaType.APPLICATION_JSON_UTF8)
+        ).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    @Test
+    @WithMockUser()
+    public void exportFacts() throws Exception {
+        willAnswer(invocation -> {
+            Consumer<FactDto> consumer = invocation.getArgument(1);
+            consumer.accept(createBatchFact());
+            consumer.accept(createBatchFact());
+            return null;
+        }).given(observationService).exportObservations(any(), any());
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/facts/export")
+            .param("conceptCode", "CC")
+            .accept(FactResource.APPLICATION_NDJSON_VALUE)
+        ).andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(result)).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentType()).isEqualTo(FactResource.APPLICATION_NDJSON_VALUE);
+        String[] lines = response.getContentAsString().split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(jacksonTester.parseObject(lines[0]).getConceptCode()).isEqualTo("CC");
+    }
+
+    @Test
+    @WithMockUser()
+    public void exportFacts_csv() throws Exception {
+        willAnswer(invocation -> {
+            Consumer<FactDto> consumer = invocation.getArgument(1);
+            consumer.accept(createBatchFact());
+            return null;
+        }).given(observationService).exportObservations(any(), any());
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/facts/export")
+            .accept(FactResource.TEXT_CSV_VALUE)
+        ).andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(result)).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentType()).isEqualTo(FactResource.TEXT_CSV_VALUE);
+        String[] lines = response.getContentAsString().split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).startsWith("\"encounterId\",\"patientId\"");
+        assertThat(lines[1]).contains("\"P\"", "\"CC\"");
+    }
+
+    @Test
+    @WithMockUser()
+    public void exportFacts_arrow() throws Exception {
+        willAnswer(invocation -> {
+            OutputStream outputStream = invocation.getArgument(1);
+            outputStream.write(new byte[] { 1, 2 });
+            return null;
+        }).given(observationService).exportObservationFacts(
+            argThat(searchDto -> searchDto.getPatientIds().containsAll(Arrays.asList("P1", "P2"))
+                && searchDto.getStartDateFrom().equals(LocalDateTime.parse("2002-10-04T00:00:00"))),
+            any());
+
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+            .get("/api/facts/export")
+            .param("patientId", "P1", "P2")
+            .param("startDateFrom", "2002-10-04T00:00:00")
+            .accept(FactResource.APPLICATION_ARROW_STREAM_VALUE)
+        ).andReturn();
+        MockHttpServletResponse response = mockMvc.perform(asyncDispatch(result)).andReturn().getResponse();
+
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response.getContentType()).isEqualTo(FactResource.APPLICATION_ARROW_STREAM_VALUE);
+        assertThat(response.getContentAsByteArray()).containsExactly(new byte[] { 1, 2 });
+    }
+
+    private FactBatchResultDto countFacts(Iterator<FactDto> facts) {
+        FactBatchResultDto result = new FactBatchResultDto();
+        facts.forEachRemaining(fact -> result.setAccepted(result.getAccepted() + 1));
+        return result;
+    }
+
+    private FactDto createBatchFact() {
+        FactDto fact = new FactDto();
+        fact.setStartDate(LocalDateTime.parse("2002-10-04T00:00:00"));
+        fact.setConceptCode("CC");
+        fact.setPatientId("P");
+        return fact;
+    }
 }
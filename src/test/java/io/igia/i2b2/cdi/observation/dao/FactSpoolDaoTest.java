@@ -0,0 +1,60 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.observation.dao;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@JdbcTest
+@ComponentScan({"io.igia.i2b2.cdi.observation.dao", "io.igia.i2b2.cdi.common.database"})
+@DirtiesContext
+@TestPropertySource(properties = {"spring.datasource.url=jdbc:h2:mem:testdb"})
+@Sql({"/test-schema.sql"})
+public class FactSpoolDaoTest {
+
+    @Autowired
+    private FactSpoolDao factSpoolDao;
+
+    @Before
+    public void setUp() {
+        factSpoolDao.createCheckpointTableIfNotExists();
+    }
+
+    @Test
+    public void createCheckpointTableIfNotExists_exists() {
+        factSpoolDao.createCheckpointTableIfNotExists();
+        assertThat(factSpoolDao.findCheckpoint("spool")).isZero();
+    }
+
+    @Test
+    public void saveCheckpoint() {
+        factSpoolDao.saveCheckpoint("spool", 42);
+        factSpoolDao.saveCheckpoint("other", 7);
+        assertThat(factSpoolDao.findCheckpoint("spool")).isEqualTo(42);
+
+        factSpoolDao.saveCheckpoint("spool", 1042);
+        assertThat(factSpoolDao.findCheckpoint("spool")).isEqualTo(1042);
+        assertThat(factSpoolDao.findCheckpoint("other")).isEqualTo(7);
+    }
+}
@@ -17,6 +17,7 @@ package io.igia.i2b2.cdi.observation.dao;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -30,8 +31,10 @@ import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import io.igia.i2b2.cdi.common.dto.CountMode;
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
 import io.igia.i2b2.cdi.observation.domain.Observation;
 import io.igia.i2b2.cdi.observation.domain.ObservationModifier;
 import io.igia.i2b2.cdi.observation.domain.ValueTypeCode;
@@ -93,66 +96,30 @@ public class ObservationDaoTest {
     }
 
     @Test
-    public void testGetNextInstanceNumberForObservationFact_factExists_withAllCriteria() {
-        Integer nextInstanceNumber = observationDao.getNextInstanceNumberForObservationFact(
-            new FactSearchDto().setStartDate(LocalDateTime.parse("2002-10-04T00:00:00"))
-                .setProviderId("provider-1")
-                .setPatientNum(1)
-                .setEncounterNum(2)
-                .setConceptCode("concept-1"));
-
-        assertThat(nextInstanceNumber).isNotNull().isEqualTo(3);
-    }
-
-    @Test
-    public void testGetNextInstanceNumberForObservationFact_factDoesNotExist() {
-        Integer nextInstanceNumber = observationDao.getNextInstanceNumberForObservationFact(
-            new FactSearchDto().setStartDate(LocalDateTime.parse("2002-10-04T00:00:00"))
-                .setProviderId("provider-non")
-                .setPatientNum(1)
-                .setEncounterNum(2)
-                .setConceptCode("concept-1"));
-
-        assertThat(nextInstanceNumber).isNotNull().isEqualTo(1);
-    }
-
-    @Test
-    public void testGetNextInstanceNumberForObservationFact_missingStartDate() {
-        Integer nextInstanceNumber = observationDao.getNextInstanceNumberForObservationFact(
-            new FactSearchDto()
-                .setProviderId("provider-1")
-                .setPatientNum(1)
-                .setEncounterNum(2)
-                .setConceptCode("concept-1"));
-
-        assertThat(nextInstanceNumber).isNotNull().isEqualTo(3);
-    }
-
-    @Test
-    public void testGetNextInstanceNumberForObservationFact_filterByProvider() {
-        Integer nextInstanceNumber = observationDao.getNextInstanceNumberForObservationFact(
-            new FactSearchDto()
-                .setProviderId("provider-2"));
-
-        assertThat(nextInstanceNumber).isNotNull().isEqualTo(2);
-    }
-
-    @Test
-    public void testGetNextInstanceNumberForObservationFact_filterByEncounter() {
-        Integer nextInstanceNumber = observationDao.getNextInstanceNumberForObservationFact(
-            new FactSearchDto()
-                .setEncounterNum(2));
-
-        assertThat(nextInstanceNumber).isNotNull().isEqualTo(3);
+    public void add_multipleObservations() {
+        int[] status = observationDao.addAll(Arrays.asList(
+            createObservation(1, 1, "1", "1", LocalDateTime.now(),
+                Arrays.asList(createNumericModifier("@", 20d, "kg"))),
+            createObservation(2, 2, "1", "1", LocalDateTime.now(), Arrays.asList(
+                createNumericModifier("@", 30.12d, "mg"),
+                createNumericModifier("1", 50.23121d, "mg")
+            ))));
+        assertThat(status).isNotNull().isNotEmpty().hasSize(3);
+        assertThat(status[0]).isNotZero().isEqualTo(1);
+        assertThat(status[1]).isNotZero().isEqualTo(1);
+        assertThat(status[2]).isNotZero().isEqualTo(1);
     }
 
     @Test
-    public void testGetNextInstanceNumberForObservationFact_filterByPatient() {
-        Integer nextInstanceNumber = observationDao.getNextInstanceNumberForObservationFact(
+    public void testFindMaxInstanceNumbers() {
+        List<Observation> observations = observationDao.findMaxInstanceNumbers(
             new FactSearchDto()
-                .setPatientNum(2));
+                .setPatientNums(Arrays.asList(1))
+                .setConceptCodes(Arrays.asList("CONCEPT-1")));
 
-        assertThat(nextInstanceNumber).isNotNull().isEqualTo(2);
+        assertThat(observations).isNotNull().size().isEqualTo(2);
+        assertThat(observations).extracting(Observation::getEncounterNum).containsExactlyInAnyOrder(1, 2);
+        assertThat(observations).extracting(Observation::getInstanceNumber).containsExactlyInAnyOrder(1, 2);
     }
 
     private Observation createObservation(
@@ -264,6 +231,111 @@ public class ObservationDaoTest {
         assertThat(facts.getRecords()).isNotNull().isNotEmpty().size().isEqualTo(1);
     }
     
+    @Test
+    public void testFindObservationFactsByCursor() {
+        FactSearchDto searchDto = new FactSearchDto();
+        PageableDto pageableDto = new PageableDto();
+        pageableDto.setSize(2);
+        pageableDto.setSortBy("patient_num");
+        pageableDto.setCursor("");
+        searchDto.setPageableDto(pageableDto);
+
+        PaginationResult<Observation> facts = observationDao.findObservations(searchDto);
+        assertThat(facts.getRecords()).extracting(Observation::getEncounterNum).containsExactly(1, 2);
+        assertThat(facts.getNextCursor()).isNotEmpty();
+
+        pageableDto.setCursor(facts.getNextCursor());
+        facts = observationDao.findObservations(searchDto);
+        assertThat(facts.getRecords()).extracting(Observation::getPatientNum).containsExactly(1, 2);
+        assertThat(facts.getRecords().get(0).getInstanceNumber()).isEqualTo(2);
+
+        pageableDto.setCursor(facts.getNextCursor());
+        facts = observationDao.findObservations(searchDto);
+        assertThat(facts.getRecords()).isEmpty();
+        assertThat(facts.getNextCursor()).isNull();
+    }
+
+    @Test(expected = I2b2DataValidationException.class)
+    public void testFindObservationFactsByInvalidCursor() {
+        FactSearchDto searchDto = new FactSearchDto();
+        PageableDto pageableDto = new PageableDto();
+        pageableDto.setSortBy("patient_num");
+        pageableDto.setCursor("invalid");
+        searchDto.setPageableDto(pageableDto);
+
+        observationDao.findObservations(searchDto);
+    }
+
+    @Test
+    public void testFindObservationFactsWithoutCount() {
+        FactSearchDto searchDto = new FactSearchDto();
+        PageableDto pageableDto = new PageableDto();
+        pageableDto.setSize(3);
+        pageableDto.setSortBy("patient_num");
+        pageableDto.setCountMode(CountMode.NONE);
+        searchDto.setPageableDto(pageableDto);
+
+        PaginationResult<Observation> facts = observationDao.findObservations(searchDto);
+        assertThat(facts.getRecords()).hasSize(3);
+        assertThat(facts.getHasMore()).isTrue();
+
+        pageableDto.setPage(2);
+        facts = observationDao.findObservations(searchDto);
+        assertThat(facts.getRecords()).hasSize(1);
+        assertThat(facts.getHasMore()).isFalse();
+    }
+
+    @Test
+    public void testGetEstimatedTotalCount() {
+        FactSearchDto searchDto = new FactSearchDto();
+        PageableDto pageableDto = new PageableDto();
+        pageableDto.setCountMode(CountMode.ESTIMATED);
+        searchDto.setPatientNum(1);
+        searchDto.setPageableDto(pageableDto);
+
+        assertThat(observationDao.getTotalCount(searchDto)).isEqualTo(3);
+    }
+
+    @Test
+    public void testStreamObservations() {
+        List<Observation> facts = new ArrayList<>();
+        observationDao.streamObservations(new FactSearchDto(), 2, facts::add);
+        assertThat(facts).hasSize(4);
+        assertThat(facts).allMatch(fact -> fact.getModifiers().get(0).getModifierCode().equals("@"));
+
+        facts.clear();
+        observationDao.streamObservations(new FactSearchDto().setPatientNum(1), 2, facts::add);
+        assertThat(facts).hasSize(3).allMatch(fact -> fact.getPatientNum() == 1);
+
+        facts.clear();
+        observationDao.streamObservations(new FactSearchDto().setPatientNums(Arrays.asList(2))
+            .setConceptCodes(Arrays.asList("CONCEPT-1")), 2, facts::add);
+        assertThat(facts).hasSize(1).allMatch(fact -> fact.getPatientNum() == 2);
+
+        facts.clear();
+        observationDao.streamObservations(new FactSearchDto()
+            .setStartDateFrom(LocalDateTime.parse("2002-10-04T00:00:00"))
+            .setStartDateTo(LocalDateTime.parse("2002-10-05T00:00:00")), 2, facts::add);
+        assertThat(facts).hasSize(4);
+
+        facts.clear();
+        observationDao.streamObservations(new FactSearchDto()
+            .setStartDateFrom(LocalDateTime.parse("2002-10-04T00:00:01")), 2, facts::add);
+        assertThat(facts).isEmpty();
+    }
+
+    @Test
+    public void testStreamObservations_modifiers() {
+        observationDao.add(createObservation(1, 1, "concept-1", "provider-1",
+            LocalDateTime.parse("2002-10-04T00:00:00"), Arrays.asList(createNumericModifier("M1", 5d, "mg"))));
+
+        List<Observation> facts = new ArrayList<>();
+        FactSearchDto factSearchDto = new FactSearchDto();
+        factSearchDto.setModifierFlag(true);
+        observationDao.streamObservations(factSearchDto, 2, facts::add);
+        assertThat(facts).hasSize(5);
+    }
+
     private Observation createObservation(int i) {
         Observation observation = new Observation();
         observation.setPatientNum(i);
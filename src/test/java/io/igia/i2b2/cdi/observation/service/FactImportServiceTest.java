@@ -0,0 +1,212 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.observation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.observation.dto.FactBatchErrorDto;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+import io.igia.i2b2.cdi.observation.dto.FactImportFormat;
+import io.igia.i2b2.cdi.observation.dto.FactImportResultDto;
+import io.igia.i2b2.cdi.observation.dto.FactImportStatus;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FactImportServiceTest {
+
+    @Mock
+    private ObservationService observationService;
+
+    @Spy
+    ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    private FactImportServiceImpl factImportService;
+
+    @Before
+    public void setUp() {
+        applicationProperties.setFactBatchSize(2);
+        applicationProperties.setFactImportQueueCapacity(1);
+        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+        factImportService = new FactImportServiceImpl(observationService, validator,
+            new ObjectMapper().findAndRegisterModules(), applicationProperties);
+    }
+
+    @After
+    public void tearDown() {
+        factImportService.destroy();
+    }
+
+    @Test
+    public void importFacts_ndjson() {
+        given(observationService.addObservations(any())).willAnswer(invocation -> accept(invocation.getArgument(0)));
+
+        FactImportResultDto result = factImportService.importFacts(
+            toInputStream(fact("P0"), fact("P1"), fact(""), fact("P3"), fact("P4")), FactImportFormat.NDJSON, 0);
+
+        assertThat(result.getStatus()).isEqualTo(FactImportStatus.COMPLETED);
+        assertThat(result.getAccepted()).isEqualTo(4);
+        assertThat(result.getErrors()).extracting(FactBatchErrorDto::getIndex).containsExactly(2L);
+        assertThat(result.getCheckpoint()).isEqualTo(5);
+        verify(observationService, times(3)).addObservations(any());
+        assertThat(factImportService.getImports()).isEmpty();
+    }
+
+    @Test
+    public void importFacts_countsErrorsBeyondMaxErrors() {
+        applicationProperties.setFactImportMaxErrors(1);
+        given(observationService.addObservations(any())).willAnswer(invocation -> accept(invocation.getArgument(0)));
+
+        FactImportResultDto result = factImportService.importFacts(
+            toInputStream(fact(""), fact("P1"), fact(""), fact("")), FactImportFormat.NDJSON, 0);
+
+        assertThat(result.getStatus()).isEqualTo(FactImportStatus.COMPLETED);
+        assertThat(result.getAccepted()).isEqualTo(1);
+        assertThat(result.getErrors()).extracting(FactBatchErrorDto::getIndex).containsExactly(0L);
+        assertThat(result.getUnlistedErrors()).isEqualTo(2);
+        assertThat(result.getRejected()).isEqualTo(3);
+    }
+
+    @Test
+    public void importFacts_refusedBeyondMaxConcurrent() throws Exception {
+        applicationProperties.setFactImportMaxConcurrent(1);
+        FactImportServiceImpl limitedImportService = new FactImportServiceImpl(observationService,
+            Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper().findAndRegisterModules(),
+            applicationProperties);
+        CountDownLatch adding = new CountDownLatch(1);
+        CountDownLatch added = new CountDownLatch(1);
+        given(observationService.addObservations(any())).willAnswer(invocation -> {
+            adding.countDown();
+            added.await();
+            return accept(invocation.getArgument(0));
+        });
+
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<FactImportResultDto> running = caller.submit(() -> limitedImportService.importFacts(
+                toInputStream(fact("P0")), FactImportFormat.NDJSON, 0));
+            adding.await();
+
+            assertThatThrownBy(() -> limitedImportService.importFacts(
+                toInputStream(fact("P1")), FactImportFormat.NDJSON, 0))
+                .isInstanceOf(I2b2DataValidationException.class);
+            added.countDown();
+            assertThat(running.get().getStatus()).isEqualTo(FactImportStatus.COMPLETED);
+        } finally {
+            caller.shutdownNow();
+            limitedImportService.destroy();
+        }
+    }
+
+    @Test
+    public void importFacts_resumeFromOffset() {
+        given(observationService.addObservations(any())).willAnswer(invocation -> accept(invocation.getArgument(0)));
+
+        FactImportResultDto result = factImportService.importFacts(
+            toInputStream(fact("P0"), fact("P1"), fact("P2"), fact("P3"), fact("P4")), FactImportFormat.NDJSON, 3);
+
+        assertThat(result.getStatus()).isEqualTo(FactImportStatus.COMPLETED);
+        assertThat(result.getAccepted()).isEqualTo(2);
+        assertThat(result.getCheckpoint()).isEqualTo(5);
+        verify(observationService).addObservations(
+            argThat(facts -> facts.size() == 2
+                && "P3".equals(facts.get(0).getPatientId()) && "P4".equals(facts.get(1).getPatientId())));
+    }
+
+    @Test
+    public void importFacts_csv() {
+        given(observationService.addObservations(any())).willAnswer(invocation -> accept(invocation.getArgument(0)));
+
+        FactImportResultDto result = factImportService.importFacts(toInputStream(
+            "patientId,conceptCode,startDate,value",
+            "P0,C1,2002-10-04T00:00:00,12",
+            "P1,C1,04/10/2002,12",
+            "P2,C1,2002-10-04T00:00:00,"), FactImportFormat.CSV, 0);
+
+        assertThat(result.getStatus()).isEqualTo(FactImportStatus.COMPLETED);
+        assertThat(result.getAccepted()).isEqualTo(2);
+        assertThat(result.getErrors()).extracting(FactBatchErrorDto::getIndex).containsExactly(1L);
+        assertThat(result.getCheckpoint()).isEqualTo(3);
+    }
+
+    @Test
+    public void importFacts_malformedFact() {
+        given(observationService.addObservations(any())).willAnswer(invocation -> accept(invocation.getArgument(0)));
+
+        FactImportResultDto result = factImportService.importFacts(
+            toInputStream(fact("P0"), fact("P1"), "{\"patientId\": ", fact("P3")), FactImportFormat.NDJSON, 0);
+
+        assertThat(result.getStatus()).isEqualTo(FactImportStatus.FAILED);
+        assertThat(result.getMessage()).isEqualTo("Could not read the fact at position 2.");
+        assertThat(result.getAccepted()).isEqualTo(2);
+        assertThat(result.getCheckpoint()).isEqualTo(2);
+    }
+
+    @Test
+    public void importFacts_databaseFailure() {
+        given(observationService.addObservations(any()))
+            .willAnswer(invocation -> accept(invocation.getArgument(0)))
+            .willThrow(new DataAccessResourceFailureException("Connection lost"));
+
+        FactImportResultDto result = factImportService.importFacts(
+            toInputStream(fact("P0"), fact("P1"), fact("P2"), fact("P3"), fact("P4")), FactImportFormat.NDJSON, 0);
+
+        assertThat(result.getStatus()).isEqualTo(FactImportStatus.FAILED);
+        assertThat(result.getAccepted()).isEqualTo(2);
+        assertThat(result.getCheckpoint()).isEqualTo(2);
+    }
+
+    private FactBatchResultDto accept(List<FactDto> facts) {
+        FactBatchResultDto result = new FactBatchResultDto();
+        result.setAccepted(facts.size());
+        return result;
+    }
+
+    private String fact(String patientId) {
+        return "{\"patientId\": \"" + patientId + "\", \"conceptCode\": \"C1\", \"startDate\": \"2002-10-04T00:00:00\"}";
+    }
+
+    private InputStream toInputStream(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,119 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.observation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FactJournalTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void appendAndRead() throws IOException {
+        try (FactJournal journal = new FactJournal(temporaryFolder.getRoot().toPath(), SEGMENT_SIZE, false)) {
+            for (int i = 0; i < 10; i++) {
+                assertThat(journal.append(payload(i))).isEqualTo(i);
+            }
+
+            assertThat(temporaryFolder.getRoot().list()).hasSize(2);
+            assertThat(payloads(journal.read(0, 100))).containsExactly("fact-00", "fact-01", "fact-02", "fact-03",
+                "fact-04", "fact-05", "fact-06", "fact-07", "fact-08", "fact-09");
+            assertThat(payloads(journal.read(3, 2))).containsExactly("fact-03", "fact-04");
+            assertThat(payloads(journal.read(5, 3))).containsExactly("fact-05", "fact-06", "fact-07");
+            assertThat(payloads(journal.read(8, 10))).containsExactly("fact-08", "fact-09");
+            assertThat(journal.read(10, 10)).isEmpty();
+            assertThat(journal.getNextSequence()).isEqualTo(10);
+        }
+    }
+
+    @Test
+    public void reopen() throws IOException {
+        try (FactJournal journal = new FactJournal(temporaryFolder.getRoot().toPath(), SEGMENT_SIZE, true)) {
+            for (int i = 0; i < 7; i++) {
+                journal.append(payload(i));
+            }
+        }
+
+        try (FactJournal journal = new FactJournal(temporaryFolder.getRoot().toPath(), SEGMENT_SIZE, false)) {
+            assertThat(journal.getNextSequence()).isEqualTo(7);
+            assertThat(journal.append(payload(7))).isEqualTo(7);
+            assertThat(payloads(journal.read(5, 10))).containsExactly("fact-05", "fact-06", "fact-07");
+        }
+    }
+
+    @Test
+    public void reopen_tornEntry() throws IOException {
+        try (FactJournal journal = new FactJournal(temporaryFolder.getRoot().toPath(), SEGMENT_SIZE, true)) {
+            journal.append(payload(0));
+            journal.append(payload(1));
+        }
+        // a payload byte of the second entry, behind the first entry and the header of the second
+        File segment = temporaryFolder.getRoot().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(24 + 7 + 24);
+            file.write('X');
+        }
+
+        try (FactJournal journal = new FactJournal(temporaryFolder.getRoot().toPath(), SEGMENT_SIZE, false)) {
+            assertThat(journal.getNextSequence()).isEqualTo(1);
+            assertThat(journal.append(payload(2))).isEqualTo(1);
+            assertThat(payloads(journal.read(0, 10))).containsExactly("fact-00", "fact-02");
+        }
+    }
+
+    @Test
+    public void deleteBefore() throws IOException {
+        try (FactJournal journal = new FactJournal(temporaryFolder.getRoot().toPath(), SEGMENT_SIZE, false)) {
+            for (int i = 0; i < 20; i++) {
+                journal.append(payload(i));
+            }
+            // 8 entries fit into a segment
+            assertThat(temporaryFolder.getRoot().list()).hasSize(3);
+
+            journal.deleteBefore(12);
+
+            assertThat(temporaryFolder.getRoot().list()).hasSize(2);
+            assertThat(journal.getFirstSequence()).isEqualTo(8);
+            assertThat(payloads(journal.read(0, 3))).containsExactly("fact-08", "fact-09", "fact-10");
+
+            journal.deleteBefore(20);
+
+            assertThat(temporaryFolder.getRoot().list()).hasSize(1);
+            assertThat(journal.append(payload(20))).isEqualTo(20);
+        }
+    }
+
+    private byte[] payload(int i) {
+        return String.format("fact-%02d", i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<String> payloads(List<FactJournal.Entry> entries) {
+        return entries.stream()
+            .map(entry -> new String(entry.getPayload(), StandardCharsets.UTF_8))
+            .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,208 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.observation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.common.exception.I2b2Exception;
+import io.igia.i2b2.cdi.observation.dao.FactSpoolDao;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+import io.igia.i2b2.cdi.observation.dto.FactSpoolFsyncPolicy;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FactSpoolTest {
+
+    private static final String SPOOL_ID = "spool";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    private ObservationService observationService;
+
+    @Mock
+    private FactValidator factValidator;
+
+    @Mock
+    private FactSpoolDao factSpoolDao;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private FactJournal journal;
+    private FactSpool factSpool;
+
+    @Before
+    public void setUp() throws IOException {
+        journal = new FactJournal(temporaryFolder.getRoot().toPath(), 64 * 1024, false);
+        factSpool = new FactSpool(observationService, factValidator, factSpoolDao,
+            new TransactionTemplate(transactionManager), objectMapper, journal, Executors.newSingleThreadExecutor(),
+            SPOOL_ID, 10, FactSpoolFsyncPolicy.NEVER, Duration.ofSeconds(1), Duration.ofMillis(10));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        factSpool.destroy();
+    }
+
+    @Test
+    public void addObservation() throws IOException {
+        given(observationService.getFactWithDefaultValues(any())).willAnswer(invocation -> invocation.getArgument(0));
+
+        FactDto spooledFact = factSpool.addObservation(fact("P1"));
+
+        assertThat(spooledFact.getPatientId()).isEqualTo("P1");
+        List<FactJournal.Entry> entries = journal.read(0, 10);
+        assertThat(entries).hasSize(1);
+        assertThat(objectMapper.readValue(entries.get(0).getPayload(), FactDto.class).getPatientId())
+            .isEqualTo("P1");
+        assertThat(factSpool.getDepth()).isEqualTo(1);
+        verify(observationService, never()).addObservation(any());
+    }
+
+    @Test
+    public void addObservation_invalid() {
+        willThrow(new I2b2DataValidationException("The fact start date should not be empty."))
+            .given(factValidator).validateFact(any());
+
+        Throwable thrown = catchThrowable(() -> factSpool.addObservation(fact("P1")));
+
+        assertThat(thrown).isInstanceOf(I2b2DataValidationException.class);
+        assertThat(journal.getNextSequence()).isZero();
+    }
+
+    @Test
+    public void drain() throws InterruptedException {
+        spool("P1", "P2", "P3");
+        given(factSpoolDao.findCheckpoint(SPOOL_ID)).willReturn(0L);
+        given(observationService.addObservations(argThat(facts -> facts.size() == 3))).willReturn(accepted(3));
+
+        factSpool.start();
+
+        verify(factSpoolDao, timeout(5000)).saveCheckpoint(SPOOL_ID, 3);
+        awaitDepth(0);
+        verify(factSpoolDao).createCheckpointTableIfNotExists();
+        verify(transactionManager).commit(any());
+    }
+
+    @Test
+    public void drain_fromSavedCheckpoint() throws InterruptedException {
+        spool("P1", "P2", "P3");
+        given(factSpoolDao.findCheckpoint(SPOOL_ID)).willReturn(2L);
+        given(observationService.addObservations(argThat(facts -> facts.size() == 1
+            && facts.get(0).getPatientId().equals("P3")))).willReturn(accepted(1));
+
+        factSpool.start();
+
+        verify(factSpoolDao, timeout(5000)).saveCheckpoint(SPOOL_ID, 3);
+        awaitDepth(0);
+    }
+
+    @Test
+    public void drain_databaseUnavailable() throws InterruptedException {
+        spool("P1", "P2");
+        given(factSpoolDao.findCheckpoint(SPOOL_ID)).willReturn(0L);
+        given(observationService.addObservations(any()))
+            .willThrow(new CannotGetJdbcConnectionException("Connection is not available"))
+            .willReturn(accepted(2));
+
+        factSpool.start();
+
+        verify(factSpoolDao, timeout(5000)).saveCheckpoint(SPOOL_ID, 2);
+        awaitDepth(0);
+        verify(observationService, times(2)).addObservations(argThat(facts -> facts.size() == 2));
+    }
+
+    @Test
+    public void drain_failingFactRejected() throws InterruptedException {
+        spool("P1", "P2");
+        given(factSpoolDao.findCheckpoint(SPOOL_ID)).willReturn(0L);
+        // the batch fails, and so does P2 when the facts are added one by one
+        willAnswer(invocation -> {
+            List<FactDto> facts = invocation.getArgument(0);
+            if (facts.size() == 1 && facts.get(0).getPatientId().equals("P1")) {
+                return accepted(1);
+            }
+            throw new I2b2Exception("Could not add the facts.");
+        }).given(observationService).addObservations(any());
+
+        factSpool.start();
+
+        verify(factSpoolDao, timeout(5000)).saveCheckpoint(SPOOL_ID, 2);
+        awaitDepth(0);
+        verify(factSpoolDao).saveCheckpoint(SPOOL_ID, 1);
+        verify(observationService).addObservations(argThat(facts -> facts != null && facts.size() == 2));
+        verify(observationService, times(2)).addObservations(argThat(facts -> facts != null && facts.size() == 1));
+    }
+
+    private void spool(String... patientIds) {
+        given(observationService.getFactWithDefaultValues(any())).willAnswer(invocation -> invocation.getArgument(0));
+        for (String patientId : patientIds) {
+            factSpool.addObservation(fact(patientId));
+        }
+    }
+
+    private void awaitDepth(long depth) throws InterruptedException {
+        for (int i = 0; i < 500 && factSpool.getDepth() != depth; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(factSpool.getDepth()).isEqualTo(depth);
+    }
+
+    private FactBatchResultDto accepted(int count) {
+        FactBatchResultDto result = new FactBatchResultDto();
+        result.setAccepted(count);
+        return result;
+    }
+
+    private FactDto fact(String patientId) {
+        FactDto fact = new FactDto();
+        fact.setPatientId(patientId);
+        fact.setConceptCode("CC");
+        fact.setStartDate(LocalDateTime.of(2020, 1, 1, 10, 0));
+        return fact;
+    }
+}
@@ -0,0 +1,192 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.observation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import io.igia.i2b2.cdi.concept.dto.ConceptDataType;
+import io.igia.i2b2.cdi.concept.dto.ConceptDto;
+import io.igia.i2b2.cdi.concept.service.ConceptService;
+import io.igia.i2b2.cdi.config.ApplicationProperties;
+import io.igia.i2b2.cdi.modifier.dto.ModifierDto;
+import io.igia.i2b2.cdi.modifier.service.ModifierService;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+import io.igia.i2b2.cdi.observation.dto.FactModifierDto;
+import io.igia.i2b2.cdi.observation.dto.FactValidationResultDto;
+import io.igia.i2b2.cdi.provider.dto.ProviderDto;
+import io.igia.i2b2.cdi.provider.service.ProviderService;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FactValidatorTest {
+
+    @Mock
+    private ConceptService conceptService;
+    @Mock
+    private ModifierService modifierService;
+    @Mock
+    private ProviderService providerService;
+
+    @Spy
+    private ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    private FactValidator factValidator;
+
+    @Before
+    public void setUp() {
+        factValidator = new FactValidator(conceptService, modifierService, providerService, applicationProperties);
+    }
+
+    @Test
+    public void validate_looksUpEachDimensionOnce() {
+        given(conceptService.getConceptsWithDataTypeByCodes(argThat(codes -> codes.size() == 3)))
+            .willReturn(Arrays.asList(createConcept("LAB:1"), createConcept("MED:1"), createConcept("MED:2")));
+        Map<String, List<ModifierDto>> modifiers = new HashMap<>();
+        modifiers.put("MED:1", Arrays.asList(createModifier("DOSE"), createModifier("ROUTE")));
+        modifiers.put("MED:2", Arrays.asList(createModifier("DOSE")));
+        given(modifierService.getModifiersWithDataType(argThat(concepts -> concepts != null && concepts.size() == 2),
+            argThat(codes -> codes != null && codes.containsAll(Arrays.asList("DOSE", "ROUTE")))))
+            .willReturn(modifiers);
+        given(providerService.getProviders(argThat(search -> search.getProviderIds().size() == 2)))
+            .willReturn(Arrays.asList(createProvider("P1")));
+
+        List<FactDto> facts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            facts.add(createFact("lab:1", "P1"));
+            facts.add(createFact("MED:1", "P1", "DOSE", "ROUTE"));
+            facts.add(createFact("MED:2", "P1", "DOSE"));
+        }
+        facts.add(createFact("MED:2", "P1", "ROUTE"));
+        facts.add(createFact("LAB:1", "P2"));
+
+        FactValidationResultDto result = factValidator.validate(facts);
+
+        assertThat(result.getErrors()).containsOnlyKeys(3000, 3001);
+        assertThat(result.getErrors().get(3000)).isEqualTo(FactValidator.INVALID_MODIFIER_CODE);
+        assertThat(result.getErrors().get(3001)).isEqualTo(FactValidator.INVALID_PROVIDER_ID);
+        assertThat(result.getConcept("lab:1").getDataType()).isEqualTo(ConceptDataType.INTEGER);
+        assertThat(result.getModifiers("MED:1")).containsOnlyKeys("DOSE", "ROUTE");
+        verify(conceptService, times(1)).getConceptsWithDataTypeByCodes(any());
+        verify(modifierService, times(1)).getModifiersWithDataType(anyCollection(), anyCollection());
+        verify(providerService, times(1)).getProviders(any());
+    }
+
+    @Test
+    public void validate_reportsFirstErrorOfEveryFact() {
+        given(conceptService.getConceptsWithDataTypeByCodes(any()))
+            .willReturn(Collections.singletonList(createConcept("LAB:1")));
+        FactDto missingStartDate = createFact("LAB:1", null);
+        missingStartDate.setStartDate(null);
+        FactDto endBeforeStart = createFact("UNKNOWN", null);
+        endBeforeStart.setEndDate(endBeforeStart.getStartDate().minusDays(1));
+
+        FactValidationResultDto result = factValidator.validate(Arrays.asList(
+            createFact("LAB:1", null), missingStartDate, endBeforeStart, createFact("UNKNOWN", null),
+            createFact("LAB:1", null, "DOSE", "DOSE")));
+
+        assertThat(result.getErrors()).containsOnlyKeys(1, 2, 3, 4);
+        assertThat(result.getErrors().get(1)).isEqualTo("The fact start date should not be empty.");
+        assertThat(result.getErrors().get(2)).isEqualTo("The fact start date should come before the end date.");
+        assertThat(result.getErrors().get(3)).isEqualTo("Invalid concept code.");
+        assertThat(result.getErrors().get(4)).isEqualTo("The modifier code should be unique within the fact.");
+        assertThat(result.isValid(0)).isTrue();
+        verify(modifierService, never()).getModifiersWithDataType(anyCollection(), anyCollection());
+        verify(providerService, never()).getProviders(any());
+    }
+
+    @Test
+    public void validate_lenientValidation_skipsProviders() {
+        given(applicationProperties.isLenientValidation()).willReturn(true);
+        given(conceptService.getConceptsWithDataTypeByCodes(any()))
+            .willReturn(Collections.singletonList(createConcept("LAB:1")));
+
+        FactValidationResultDto result = factValidator.validate(Arrays.asList(createFact("LAB:1", "UNKNOWN")));
+
+        assertThat(result.getErrors()).isEmpty();
+        verify(providerService, never()).getProviders(any());
+    }
+
+    @Test
+    public void validate_matchesModifierCodesIgnoringCase() {
+        given(applicationProperties.isLenientValidation()).willReturn(true);
+        given(conceptService.getConceptsWithDataTypeByCodes(any()))
+            .willReturn(Collections.singletonList(createConcept("MED:1")));
+        given(modifierService.getModifiersWithDataType(anyCollection(),
+            argThat(codes -> codes != null && codes.size() == 1 && codes.contains("DOSE"))))
+            .willReturn(Collections.singletonMap("MED:1", Arrays.asList(createModifier("DOSE"))));
+
+        FactValidationResultDto result = factValidator.validate(Arrays.asList(
+            createFact("med:1", "P1", "dose"), createFact("MED:1", "P1", "Dose")));
+
+        assertThat(result.getErrors()).isEmpty();
+        assertThat(result.getModifiers("med:1")).containsOnlyKeys("DOSE");
+    }
+
+    private FactDto createFact(String conceptCode, String providerId, String... modifierCodes) {
+        FactDto factDto = new FactDto();
+        factDto.setConceptCode(conceptCode);
+        factDto.setPatientId("1");
+        factDto.setProviderId(providerId);
+        factDto.setStartDate(LocalDateTime.parse("2002-10-04T00:00:00"));
+        List<FactModifierDto> modifiers = new ArrayList<>();
+        for (String modifierCode : modifierCodes) {
+            FactModifierDto modifier = new FactModifierDto();
+            modifier.setModifierCode(modifierCode);
+            modifiers.add(modifier);
+        }
+        factDto.setModifiers(modifiers);
+        return factDto;
+    }
+
+    private ConceptDto createConcept(String code) {
+        ConceptDto concept = new ConceptDto();
+        concept.setCode(code);
+        concept.setConceptPath("\\" + code + "\\");
+        concept.setDataType(ConceptDataType.INTEGER);
+        return concept;
+    }
+
+    private ModifierDto createModifier(String code) {
+        ModifierDto modifier = new ModifierDto();
+        modifier.setCode(code);
+        modifier.setModifierPath("\\" + code + "\\");
+        return modifier;
+    }
+
+    private ProviderDto createProvider(String id) {
+        ProviderDto provider = new ProviderDto();
+        provider.setId(id);
+        return provider;
+    }
+}
@@ -0,0 +1,187 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.observation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
+import io.igia.i2b2.cdi.common.exception.I2b2Exception;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FactWriteCoalescerTest {
+
+    @Mock
+    private ObservationService observationService;
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private FactWriteCoalescer factWriteCoalescer;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        callers.shutdownNow();
+        if (factWriteCoalescer != null) {
+            factWriteCoalescer.destroy();
+        }
+    }
+
+    @Test
+    public void addObservation_disabled() {
+        FactDto fact = fact("P1");
+        given(observationService.addObservation(fact)).willReturn(fact);
+        factWriteCoalescer = new FactWriteCoalescer(observationService, null, 10, Duration.ofMillis(5), Duration.ofSeconds(30));
+
+        assertThat(factWriteCoalescer.addObservation(fact)).isSameAs(fact);
+        verify(observationService, never()).addObservations(any());
+    }
+
+    @Test
+    public void addObservation_coalesced() throws Exception {
+        given(observationService.addObservations(argThat(facts -> facts.size() == 3))).willAnswer(invocation -> {
+            FactBatchResultDto result = new FactBatchResultDto();
+            result.setAccepted(3);
+            return result;
+        });
+        given(observationService.getFactWithDefaultValues(any())).willAnswer(invocation -> invocation.getArgument(0));
+        factWriteCoalescer = new FactWriteCoalescer(observationService, Executors.newSingleThreadExecutor(), 3,
+            Duration.ofSeconds(30), Duration.ofSeconds(30));
+
+        List<Future<FactDto>> results = addConcurrently(fact("P1"), fact("P2"), fact("P3"));
+
+        assertThat(results.get(0).get().getPatientId()).isEqualTo("P1");
+        assertThat(results.get(1).get().getPatientId()).isEqualTo("P2");
+        assertThat(results.get(2).get().getPatientId()).isEqualTo("P3");
+        verify(observationService, times(1)).addObservations(any());
+        verify(observationService, never()).addObservation(any());
+    }
+
+    @Test
+    public void addObservation_rejectedFactAddedAlone() throws Exception {
+        given(observationService.addObservations(any())).willAnswer(invocation -> {
+            List<FactDto> facts = invocation.getArgument(0);
+            FactBatchResultDto result = new FactBatchResultDto();
+            for (int index = 0; index < facts.size(); index++) {
+                if ("BAD".equals(facts.get(index).getPatientId())) {
+                    result.addError(index, "Invalid concept code.");
+                }
+            }
+            return result;
+        });
+        given(observationService.addObservation(argThat(fact -> "BAD".equals(fact.getPatientId()))))
+            .willThrow(new I2b2DataValidationException("Invalid concept code."));
+        given(observationService.getFactWithDefaultValues(any())).willAnswer(invocation -> invocation.getArgument(0));
+        factWriteCoalescer = new FactWriteCoalescer(observationService, Executors.newSingleThreadExecutor(), 2,
+            Duration.ofSeconds(30), Duration.ofSeconds(30));
+
+        List<Future<FactDto>> results = addConcurrently(fact("P1"), fact("BAD"));
+
+        assertThat(results.get(0).get().getPatientId()).isEqualTo("P1");
+        Throwable thrown = catchThrowable(() -> results.get(1).get());
+        assertThat(thrown).isInstanceOf(ExecutionException.class);
+        assertThat(thrown.getCause()).isInstanceOf(I2b2DataValidationException.class)
+            .hasMessage("Invalid concept code.");
+    }
+
+    @Test
+    public void addObservation_failedBatchAddedOneByOne() throws Exception {
+        given(observationService.addObservations(any())).willThrow(new DataAccessResourceFailureException("failed"));
+        given(observationService.addObservation(any())).willAnswer(invocation -> invocation.getArgument(0));
+        factWriteCoalescer = new FactWriteCoalescer(observationService, Executors.newSingleThreadExecutor(), 2,
+            Duration.ofSeconds(30), Duration.ofSeconds(30));
+
+        List<Future<FactDto>> results = addConcurrently(fact("P1"), fact("P2"));
+
+        assertThat(results.get(0).get().getPatientId()).isEqualTo("P1");
+        assertThat(results.get(1).get().getPatientId()).isEqualTo("P2");
+        verify(observationService, times(2)).addObservation(any());
+    }
+
+    @Test
+    public void addObservation_writerSurvivesFailedBatch() throws Exception {
+        given(observationService.addObservations(any())).willAnswer(invocation -> {
+            FactBatchResultDto result = new FactBatchResultDto();
+            result.setAccepted(2);
+            return result;
+        });
+        given(observationService.getFactWithDefaultValues(any())).willAnswer(invocation -> {
+            FactDto fact = invocation.getArgument(0);
+            if ("P2".equals(fact.getPatientId())) {
+                throw new DataAccessResourceFailureException("failed");
+            }
+            return fact;
+        });
+        factWriteCoalescer = new FactWriteCoalescer(observationService, Executors.newSingleThreadExecutor(), 2,
+            Duration.ofSeconds(30), Duration.ofSeconds(30));
+
+        List<Future<FactDto>> results = addConcurrently(fact("P1"), fact("P2"));
+
+        assertThat(results.get(0).get().getPatientId()).isEqualTo("P1");
+        Throwable thrown = catchThrowable(() -> results.get(1).get());
+        assertThat(thrown.getCause()).isInstanceOf(DataAccessResourceFailureException.class);
+        // the writer still takes facts
+        List<Future<FactDto>> laterResults = addConcurrently(fact("P3"), fact("P4"));
+        assertThat(laterResults.get(0).get().getPatientId()).isEqualTo("P3");
+        assertThat(laterResults.get(1).get().getPatientId()).isEqualTo("P4");
+    }
+
+    @Test
+    public void addObservation_timesOutWhenWriterStalls() {
+        ExecutorService stalledWriter = mock(ExecutorService.class);
+        factWriteCoalescer = new FactWriteCoalescer(observationService, stalledWriter, 2, Duration.ofSeconds(30),
+            Duration.ofMillis(50));
+
+        assertThatThrownBy(() -> factWriteCoalescer.addObservation(fact("P1"))).isInstanceOf(I2b2Exception.class)
+            .hasMessage("Timed out waiting to add the fact.");
+        verify(observationService, never()).addObservation(any());
+    }
+
+    private List<Future<FactDto>> addConcurrently(FactDto... facts) {
+        List<Future<FactDto>> results = new ArrayList<>();
+        for (FactDto fact : facts) {
+            results.add(callers.submit(() -> factWriteCoalescer.addObservation(fact)));
+        }
+        return results;
+    }
+
+    private FactDto fact(String patientId) {
+        FactDto fact = new FactDto();
+        fact.setPatientId(patientId);
+        fact.setConceptCode("CC");
+        return fact;
+    }
+}
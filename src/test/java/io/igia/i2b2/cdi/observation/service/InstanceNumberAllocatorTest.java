@@ -0,0 +1,163 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.observation.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.igia.i2b2.cdi.common.database.mssql.MssqlDatabaseHelper;
+
+import io.igia.i2b2.cdi.observation.dao.ObservationDao;
+import io.igia.i2b2.cdi.observation.domain.Observation;
+import io.igia.i2b2.cdi.observation.dto.FactDto;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InstanceNumberAllocatorTest {
+
+    private static final LocalDateTime START_DATE = LocalDateTime.parse("2002-10-04T00:00:00");
+
+    @Mock
+    private ObservationDao observationDao;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final AtomicLong ticker = new AtomicLong();
+    private InstanceNumberAllocator instanceNumberAllocator;
+
+    @Before
+    public void setUp() {
+        instanceNumberAllocator = new InstanceNumberAllocator(observationDao, new TransactionTemplate(transactionManager),
+            UnaryOperator.identity(), Duration.ofMinutes(1), ticker::get);
+    }
+
+    @Test
+    public void allocate_seedsOnceFromDatabase() {
+        Observation existing = new Observation(1, 1, "c1", "@", START_DATE);
+        existing.setInstanceNumber(2);
+        given(observationDao.findMaxInstanceNumbers(any())).willReturn(Arrays.asList(existing));
+
+        FactDto first = createFact(1, "C1");
+        FactDto second = createFact(1, "C1");
+        FactDto other = createFact(2, "C1");
+        instanceNumberAllocator.allocate(Arrays.asList(first, second, other));
+        FactDto third = createFact(1, "c1");
+        instanceNumberAllocator.allocate(Collections.singletonList(third));
+
+        assertThat(first.getInstanceNum()).isEqualTo(3);
+        assertThat(second.getInstanceNum()).isEqualTo(4);
+        assertThat(other.getInstanceNum()).isEqualTo(1);
+        assertThat(third.getInstanceNum()).isEqualTo(5);
+        verify(observationDao).findMaxInstanceNumbers(any());
+    }
+
+    @Test
+    public void allocate_reseedsIdleCounters() {
+        instanceNumberAllocator.allocate(Collections.singletonList(createFact(1, "C1")));
+        ticker.addAndGet(Duration.ofSeconds(30).toNanos());
+        instanceNumberAllocator.allocate(Collections.singletonList(createFact(2, "C1")));
+        ticker.addAndGet(Duration.ofSeconds(45).toNanos());
+
+        FactDto factDto = createFact(1, "C1");
+        instanceNumberAllocator.allocate(Collections.singletonList(factDto));
+
+        assertThat(factDto.getInstanceNum()).isEqualTo(1);
+        assertThat(instanceNumberAllocator.size()).isEqualTo(2);
+        verify(observationDao, times(3)).findMaxInstanceNumbers(any());
+    }
+
+    @Test
+    public void allocateAndAdd_reseedsNumbersTakenElsewhere() {
+        Observation added = new Observation(1, 1, "C1", "@", START_DATE);
+        added.setInstanceNumber(4);
+        given(observationDao.findMaxInstanceNumbers(any()))
+            .willReturn(Collections.emptyList())
+            .willReturn(Arrays.asList(added));
+        FactDto factDto = createFact(1, "C1");
+        List<Integer> addedInstanceNums = new ArrayList<>();
+
+        int updateCount = instanceNumberAllocator.allocateAndAdd(Collections.singletonList(factDto), () -> {
+            addedInstanceNums.add(factDto.getInstanceNum());
+            if (addedInstanceNums.size() == 1) {
+                throw new DuplicateKeyException("observation_fact_pk");
+            }
+            return 1;
+        });
+
+        assertThat(updateCount).isEqualTo(1);
+        assertThat(addedInstanceNums).containsExactly(1, 5);
+        verify(observationDao, times(2)).findMaxInstanceNumbers(any());
+    }
+
+    @Test
+    public void allocateAndAdd_givesUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> instanceNumberAllocator.allocateAndAdd(
+            Collections.singletonList(createFact(1, "C1")), () -> {
+                attempts.incrementAndGet();
+                throw new DuplicateKeyException("observation_fact_pk");
+            }))
+            .isInstanceOf(DuplicateKeyException.class);
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    public void allocate_matchesStartDatesInStoredPrecision() {
+        instanceNumberAllocator = new InstanceNumberAllocator(observationDao,
+            new TransactionTemplate(transactionManager), new MssqlDatabaseHelper(null)::toStoredTimestamp,
+            Duration.ofMinutes(1), ticker::get);
+        // a datetime column keeps 1/300 seconds, .998 reads back as .997
+        Observation existing = new Observation(1, 1, "C1", "@", START_DATE.plusNanos(997_000_000));
+        existing.setInstanceNumber(1);
+        given(observationDao.findMaxInstanceNumbers(any())).willReturn(Arrays.asList(existing));
+
+        FactDto factDto = createFact(1, "C1");
+        factDto.setStartDate(START_DATE.plusNanos(998_000_000));
+        instanceNumberAllocator.allocate(Collections.singletonList(factDto));
+
+        assertThat(factDto.getInstanceNum()).isEqualTo(2);
+    }
+
+    private FactDto createFact(int encounterNum, String conceptCode) {
+        FactDto factDto = new FactDto();
+        factDto.setPatientNum(1);
+        factDto.setEncounterNum(encounterNum);
+        factDto.setConceptCode(conceptCode);
+        factDto.setProviderId("@");
+        factDto.setStartDate(START_DATE);
+        return factDto;
+    }
+}
@@ -14,19 +14,34 @@ package io.igia.i2b2.cdi.observation.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -35,7 +50,10 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import io.igia.i2b2.cdi.common.cache.IdentityMapManager;
 import io.igia.i2b2.cdi.common.dto.PageableDto;
 import io.igia.i2b2.cdi.common.dto.PaginationResult;
 import io.igia.i2b2.cdi.common.exception.I2b2DataValidationException;
@@ -50,11 +68,15 @@ import io.igia.i2b2.cdi.modifier.service.ModifierService;
 import io.igia.i2b2.cdi.observation.dao.ObservationDao;
 import io.igia.i2b2.cdi.observation.domain.Observation;
 import io.igia.i2b2.cdi.observation.domain.ObservationModifier;
+import io.igia.i2b2.cdi.observation.domain.ValueTypeCode;
+import io.igia.i2b2.cdi.observation.dto.FactBatchErrorDto;
+import io.igia.i2b2.cdi.observation.dto.FactBatchResultDto;
 import io.igia.i2b2.cdi.observation.dto.FactDto;
 import io.igia.i2b2.cdi.observation.dto.FactModifierDto;
 import io.igia.i2b2.cdi.observation.dto.FactSearchDto;
 import io.igia.i2b2.cdi.patient.dto.PatientDto;
 import io.igia.i2b2.cdi.patient.service.PatientService;
+import io.igia.i2b2.cdi.provider.dto.ProviderDto;
 import io.igia.i2b2.cdi.provider.service.ProviderService;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -75,6 +97,9 @@ public class ObservationServiceTest {
     @Mock
     private EncounterService encounterService;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @Spy
     ApplicationProperties applicationProperties = new ApplicationProperties();
 
@@ -88,7 +113,11 @@ public class ObservationServiceTest {
     public void setUp() {
         observationMapper= new ObservationMapperImpl();
         observationService = new ObservationServiceImpl(observationDao, observationMapper, conceptService,
-            modifierService, providerService, patientService, encounterService, applicationProperties);
+            modifierService, providerService, patientService, encounterService, applicationProperties,
+            new InstanceNumberAllocator(observationDao, new TransactionTemplate(transactionManager),
+                UnaryOperator.identity(), Duration.ZERO, System::nanoTime),
+            new IdentityMapManager(100),
+            new FactValidator(conceptService, modifierService, providerService, applicationProperties));
     }
 
     @Test
@@ -135,12 +164,14 @@ public class ObservationServiceTest {
 
         PatientDto patientDto = new PatientDto();
         patientDto.setPatientNum(12);
-        given(patientService.getPatients(argThat(search -> search.getPatientId().equalsIgnoreCase("1"))))
+        given(patientService.getOrCreatePatients(argThat(patients -> patients.iterator().next().getPatientId()
+            .equalsIgnoreCase("1"))))
             .willReturn(Arrays.asList(patientDto));
 
         EncounterDto encounter = new EncounterDto();
         encounter.setEncounterNum(12);
-        given(encounterService.getEncounters(argThat(search -> search.getEncounterId().equalsIgnoreCase("1"))))
+        given(encounterService.getOrCreateEncounters(argThat(encounters -> encounters.iterator().next()
+            .getEncounterId().equalsIgnoreCase("1"))))
             .willReturn(Arrays.asList(encounter));
 
         ConceptDto concept = new ConceptDto();
@@ -181,12 +212,14 @@ public class ObservationServiceTest {
     public void addObservation_noModifier() {
         PatientDto patientDto = new PatientDto();
         patientDto.setPatientNum(12);
-        given(patientService.getPatients(argThat(search -> search.getPatientId().equalsIgnoreCase("1"))))
+        given(patientService.getOrCreatePatients(argThat(patients -> patients.iterator().next().getPatientId()
+            .equalsIgnoreCase("1"))))
             .willReturn(Arrays.asList(patientDto));
 
         EncounterDto encounter = new EncounterDto();
         encounter.setEncounterNum(12);
-        given(encounterService.getEncounters(argThat(search -> search.getEncounterId().equalsIgnoreCase("1"))))
+        given(encounterService.getOrCreateEncounters(argThat(encounters -> encounters.iterator().next()
+            .getEncounterId().equalsIgnoreCase("1"))))
             .willReturn(Arrays.asList(encounter));
 
         ConceptDto concept = new ConceptDto();
@@ -203,16 +236,45 @@ public class ObservationServiceTest {
         assertThat(outObservation).isNotNull();
     }
 
+    @Test
+    public void addObservation_mappedIdentifiersFromIdentityMap() {
+        PatientDto patientDto = new PatientDto();
+        patientDto.setPatientId("1");
+        patientDto.setPatientNum(12);
+        given(patientService.getOrCreatePatients(any())).willReturn(Arrays.asList(patientDto));
+
+        EncounterDto encounter = new EncounterDto();
+        encounter.setPatientId("1");
+        encounter.setEncounterId("1");
+        encounter.setEncounterNum(12);
+        given(encounterService.getOrCreateEncounters(any())).willReturn(Arrays.asList(encounter));
+
+        ConceptDto concept = new ConceptDto();
+        concept.setDataType(ConceptDataType.INTEGER);
+        given(conceptService.getConceptsWithDataType(any())).willReturn(Arrays.asList(concept));
+        given(observationDao.add(argThat(observation -> observation.getPatientNum() == 12
+            && observation.getEncounterNum() == 12))).willReturn(new int[]{1});
+
+        observationService.addObservation(createObservationDto(null, "2", "mg", Collections.emptyList()));
+        observationService.addObservation(createObservationDto(null, "3", "mg", Collections.emptyList()));
+
+        verify(patientService, times(1)).getOrCreatePatients(any());
+        verify(encounterService, times(1)).getOrCreateEncounters(any());
+        verify(observationDao, times(2)).add(any());
+    }
+
     @Test
     public void addObservation_withModifier_andNumericData() {
         PatientDto patientDto = new PatientDto();
         patientDto.setPatientNum(12);
-        given(patientService.getPatients(argThat(search -> search.getPatientId().equalsIgnoreCase("1"))))
+        given(patientService.getOrCreatePatients(argThat(patients -> patients.iterator().next().getPatientId()
+            .equalsIgnoreCase("1"))))
             .willReturn(Arrays.asList(patientDto));
 
         EncounterDto encounter = new EncounterDto();
         encounter.setEncounterNum(12);
-        given(encounterService.getEncounters(argThat(search -> search.getEncounterId().equalsIgnoreCase("1"))))
+        given(encounterService.getOrCreateEncounters(argThat(encounters -> encounters.iterator().next()
+            .getEncounterId().equalsIgnoreCase("1"))))
             .willReturn(Arrays.asList(encounter));
 
         ModifierDto modifier = new ModifierDto();
@@ -234,17 +296,15 @@ public class ObservationServiceTest {
     public void addObservation_encounter_patient_withModifier_numericAndTextData() {
         PatientDto patientDto = new PatientDto();
         patientDto.setPatientNum(12);
-        given(patientService.getPatients(argThat(search -> search.getPatientId().equalsIgnoreCase("1"))))
-            .willReturn(Collections.emptyList());
-        given(patientService.addPatient(argThat(patient -> patient.getPatientId().equalsIgnoreCase("1"))))
-            .willReturn(patientDto);
+        given(patientService.getOrCreatePatients(argThat(patients -> patients.iterator().next().getPatientId()
+            .equalsIgnoreCase("1"))))
+            .willReturn(Arrays.asList(patientDto));
 
         EncounterDto encounter = new EncounterDto();
         encounter.setEncounterNum(12);
-        given(encounterService.getEncounters(argThat(search -> search.getEncounterId().equalsIgnoreCase("1"))))
-            .willReturn(Collections.emptyList());
-        given(encounterService.addEncounter(argThat(encounter1 -> encounter1.getEncounterId().equalsIgnoreCase("1"))))
-            .willReturn(encounter);
+        given(encounterService.getOrCreateEncounters(argThat(encounters -> encounters.iterator().next()
+            .getEncounterId().equalsIgnoreCase("1"))))
+            .willReturn(Arrays.asList(encounter));
 
         ModifierDto modifier = new ModifierDto();
         modifier.setCode("1");
@@ -280,6 +340,102 @@ public class ObservationServiceTest {
         assertThat(outObservation.getModifiers()).isNotNull().isNotEmpty().size().isEqualTo(3);
     }
 
+    @Test
+    public void addObservations_rejectsInvalidFacts_andAddsValidFactsInOneBatch() {
+        LocalDateTime startDate = LocalDateTime.parse("2002-10-04T00:00:00");
+
+        ConceptDto concept = new ConceptDto();
+        concept.setCode("1");
+        concept.setDataType(ConceptDataType.INTEGER);
+        given(conceptService.getConceptsWithDataTypeByCodes(
+            argThat(codes -> codes.containsAll(Arrays.asList("1", "2")))))
+            .willReturn(Arrays.asList(concept));
+
+        ProviderDto provider = new ProviderDto();
+        provider.setId("1");
+        given(providerService.getProviders(any())).willReturn(Arrays.asList(provider));
+
+        PatientDto patientDto = new PatientDto();
+        patientDto.setPatientId("1");
+        patientDto.setPatientNum(12);
+        // the valid facts share their patient and encounter, each is looked up once
+        given(patientService.getOrCreatePatients(argThat(patients -> patients.size() == 1)))
+            .willReturn(Arrays.asList(patientDto));
+
+        EncounterDto encounter = new EncounterDto();
+        encounter.setPatientId("1");
+        encounter.setEncounterId("1");
+        encounter.setEncounterNum(12);
+        given(encounterService.getOrCreateEncounters(argThat(encounters -> encounters.size() == 1)))
+            .willReturn(Arrays.asList(encounter));
+
+        Observation existingObservation = new Observation(12, 12, "1", "1", startDate);
+        existingObservation.setInstanceNumber(3);
+        given(observationDao.findMaxInstanceNumbers(any())).willReturn(Arrays.asList(existingObservation));
+        given(observationDao.addAll(any())).willReturn(new int[]{1, 1});
+
+        FactDto invalidConcept = createObservationDto(null, "2", "mg", Collections.emptyList());
+        invalidConcept.setConceptCode("2");
+        FactDto missingStartDate = createObservationDto(null, "2", "mg", Collections.emptyList());
+        missingStartDate.setStartDate(null);
+        FactDto fact = createObservationDto(null, "2", "mg", Collections.emptyList());
+        fact.setStartDate(startDate);
+
+        FactBatchResultDto result = observationService.addObservations(
+            Arrays.asList(fact, invalidConcept, missingStartDate, new FactDto(fact)));
+
+        assertThat(result.getAccepted()).isEqualTo(2);
+        assertThat(result.getErrors()).extracting(FactBatchErrorDto::getIndex).containsExactly(1L, 2L);
+        verify(observationDao).addAll(argThat(observations -> observations.size() == 2
+            && observations.get(0).getInstanceNumber() == 4
+            && observations.get(1).getInstanceNumber() == 5));
+        verify(patientService, times(1)).getOrCreatePatients(any());
+        verify(encounterService, times(1)).getOrCreateEncounters(any());
+    }
+
+    @Test
+    public void addObservations_sameEncounterIdOfTwoPatients() {
+        ConceptDto concept = new ConceptDto();
+        concept.setCode("1");
+        concept.setDataType(ConceptDataType.INTEGER);
+        given(conceptService.getConceptsWithDataTypeByCodes(any())).willReturn(Arrays.asList(concept));
+        ProviderDto provider = new ProviderDto();
+        provider.setId("1");
+        given(providerService.getProviders(any())).willReturn(Arrays.asList(provider));
+
+        given(patientService.getOrCreatePatients(any())).willReturn(Arrays.asList(
+            createPatient("1", 11), createPatient("2", 12)));
+        given(encounterService.getOrCreateEncounters(argThat(encounters -> encounters.size() == 2)))
+            .willReturn(Arrays.asList(createEncounter("1", "E1", 21), createEncounter("2", "E1", 22)));
+        given(observationDao.addAll(any())).willReturn(new int[]{1, 1});
+
+        FactDto fact = createObservationDto(null, "2", "mg", Collections.emptyList());
+        fact.setEncounterId("E1");
+        FactDto otherPatientFact = new FactDto(fact);
+        otherPatientFact.setPatientId("2");
+
+        observationService.addObservations(Arrays.asList(fact, otherPatientFact));
+
+        verify(observationDao).addAll(argThat(observations -> observations.size() == 2
+            && observations.get(0).getPatientNum() == 11 && observations.get(0).getEncounterNum() == 21
+            && observations.get(1).getPatientNum() == 12 && observations.get(1).getEncounterNum() == 22));
+    }
+
+    private PatientDto createPatient(String patientId, Integer patientNum) {
+        PatientDto patientDto = new PatientDto();
+        patientDto.setPatientId(patientId);
+        patientDto.setPatientNum(patientNum);
+        return patientDto;
+    }
+
+    private EncounterDto createEncounter(String patientId, String encounterId, Integer encounterNum) {
+        EncounterDto encounter = new EncounterDto();
+        encounter.setPatientId(patientId);
+        encounter.setEncounterId(encounterId);
+        encounter.setEncounterNum(encounterNum);
+        return encounter;
+    }
+
     private FactModifierDto createModifierDto(String code) {
         return createModifierDto(code, "2", "mg");
     }
@@ -373,11 +529,27 @@ public class ObservationServiceTest {
         patientDtos.add(patient);
         when(patientService.getPatientByPatientNum(any())).thenReturn(patientDtos);
                
+        Observation observationModifier = createObservation(2, true);
+        observationModifier.getModifiers().get(0).setValueTypeCode(ValueTypeCode.TEXT);
+        observationModifier.getModifiers().get(0).setTextValue("V2");
+        when(observationDao.findObservationModifiers(
+            argThat(searchDto -> searchDto.getPatientNums().containsAll(Arrays.asList(1, 2, 3)))))
+            .thenReturn(Arrays.asList(observationModifier));
+
         when(observationDao.getTotalCount(any())).thenReturn(3);
         
         PaginationResult<FactDto> obsFacts = observationService.getObservations(factSearchDto);
         assertThat(obsFacts.getRecords()).size().isEqualTo(3);
         assertThat(obsFacts.getTotalCount()).isEqualTo(3);
+        assertThat(obsFacts.getRecords().get(0).getPatientId()).isEqualTo("P1");
+        assertThat(obsFacts.getRecords().get(0).getEncounterId()).isEqualTo("E1");
+        assertThat(obsFacts.getRecords().get(0).getModifiers()).isEmpty();
+        assertThat(obsFacts.getRecords().get(1).getPatientId()).isEmpty();
+        assertThat(obsFacts.getRecords().get(1).getModifiers())
+            .extracting(FactModifierDto::getValue).containsExactly("V2");
+        verify(patientService, times(1)).getPatientByPatientNum(any());
+        verify(encounterService, times(1)).getEncounterByEncounterNum(any());
+        verify(observationDao, times(1)).findObservationModifiers(any());
     }
     
     @Test
@@ -430,6 +602,127 @@ public class ObservationServiceTest {
         assertThat(obsFacts.getTotalCount()).isEqualTo(0);
     }
     
+    @Test
+    public void exportObservations() {
+        FactSearchDto factSearchDto = new FactSearchDto();
+        factSearchDto.setConceptCode("C1");
+        willAnswer(invocation -> {
+            Consumer<Observation> consumer = invocation.getArgument(2);
+            consumer.accept(createObservation(1, true));
+            consumer.accept(createObservation(1, true));
+            return null;
+        }).given(observationDao).streamObservations(argThat(searchDto -> searchDto.getConceptCode().equals("C1")),
+            anyInt(), any());
+
+        EncounterDto encounter = new EncounterDto();
+        encounter.setEncounterNum(1);
+        encounter.setEncounterId("E1");
+        given(encounterService.getEncounterByEncounterNum(any())).willReturn(Arrays.asList(encounter));
+        PatientDto patient = new PatientDto();
+        patient.setPatientNum(1);
+        patient.setPatientId("P1");
+        given(patientService.getPatientByPatientNum(any())).willReturn(Arrays.asList(patient));
+
+        List<FactDto> facts = new ArrayList<>();
+        observationService.exportObservations(factSearchDto, facts::add);
+
+        assertThat(facts).hasSize(2).allMatch(fact -> fact.getPatientId().equals("P1")
+            && fact.getEncounterId().equals("E1"));
+        verify(patientService, times(1)).getPatientByPatientNum(any());
+    }
+
+    @Test
+    public void exportObservations_unknownPatient() {
+        FactSearchDto factSearchDto = new FactSearchDto();
+        factSearchDto.setPatientId("P1");
+        given(patientService.getPatients(any())).willReturn(Collections.emptyList());
+
+        List<FactDto> facts = new ArrayList<>();
+        observationService.exportObservations(factSearchDto, facts::add);
+
+        assertThat(facts).isEmpty();
+        verify(observationDao, times(0)).streamObservations(any(), anyInt(), any());
+    }
+
+    @Test
+    public void exportObservationFacts() throws Exception {
+        FactSearchDto factSearchDto = new FactSearchDto();
+        factSearchDto.setPatientIds(Arrays.asList("P1"));
+        PatientDto patient = new PatientDto();
+        patient.setPatientNum(1);
+        patient.setPatientId("P1");
+        given(patientService.getPatients(argThat(searchDto -> searchDto.getPatientIds().contains("P1"))))
+            .willReturn(Arrays.asList(patient));
+
+        Observation observation = createArrowObservation("M1", 20d);
+        willAnswer(invocation -> {
+            Consumer<Observation> consumer = invocation.getArgument(2);
+            consumer.accept(observation);
+            consumer.accept(observation);
+            return null;
+        }).given(observationDao).streamObservations(argThat(searchDto -> searchDto.getPatientNums().contains(1)
+            && searchDto.getModifierFlag()), anyInt(), any());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        observationService.exportObservationFacts(factSearchDto, outputStream);
+
+        try (BufferAllocator allocator = new RootAllocator();
+            ArrowStreamReader reader = new ArrowStreamReader(
+                new ByteArrayInputStream(outputStream.toByteArray()), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertThat(reader.loadNextBatch()).isTrue();
+            assertThat(root.getRowCount()).isEqualTo(2);
+            assertThat(((IntVector) root.getVector("patient_num")).get(1)).isEqualTo(1);
+            assertThat(((Float8Vector) root.getVector("nval_num")).get(0)).isEqualTo(20d);
+            assertThat(root.getVector("concept_cd").getField().getDictionary()).isNotNull();
+            assertThat(reader.getDictionaryVectors()).hasSize(4);
+            assertThat(reader.loadNextBatch()).isFalse();
+        }
+    }
+
+    @Test
+    public void exportObservationFacts_dictionaryPerBatch() throws Exception {
+        // the first batch holds 8192 rows, the codes of the second batch differ
+        willAnswer(invocation -> {
+            Consumer<Observation> consumer = invocation.getArgument(2);
+            for (int index = 0; index < 8192; index++) {
+                consumer.accept(createArrowObservation("M1", 20d));
+            }
+            consumer.accept(createArrowObservation("M2", 20d));
+            consumer.accept(createArrowObservation("M1", 20d));
+            return null;
+        }).given(observationDao).streamObservations(any(), anyInt(), any());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        observationService.exportObservationFacts(new FactSearchDto(), outputStream);
+
+        try (BufferAllocator allocator = new RootAllocator();
+            ArrowStreamReader reader = new ArrowStreamReader(
+                new ByteArrayInputStream(outputStream.toByteArray()), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            long modifierDictionaryId = root.getVector("modifier_cd").getField().getDictionary().getId();
+            assertThat(reader.loadNextBatch()).isTrue();
+            assertThat(root.getRowCount()).isEqualTo(8192);
+            assertThat(reader.lookup(modifierDictionaryId).getVector().getValueCount()).isEqualTo(1);
+            assertThat(reader.loadNextBatch()).isTrue();
+            assertThat(root.getRowCount()).isEqualTo(2);
+            VarCharVector modifierCodes = (VarCharVector) reader.lookup(modifierDictionaryId).getVector();
+            IntVector modifierIndexes = (IntVector) root.getVector("modifier_cd");
+            assertThat(new String(modifierCodes.get(modifierIndexes.get(0)), StandardCharsets.UTF_8))
+                .isEqualTo("M2");
+            assertThat(new String(modifierCodes.get(modifierIndexes.get(1)), StandardCharsets.UTF_8))
+                .isEqualTo("M1");
+            assertThat(reader.loadNextBatch()).isFalse();
+        }
+    }
+
+    private Observation createArrowObservation(String modifierCode, Double value) {
+        Observation observation = new Observation(1, 1, "C1", "P1", LocalDateTime.parse("2002-10-04T00:00:00"));
+        observation.setInstanceNumber(1);
+        observation.addModifier(new ObservationModifier(modifierCode, ValueTypeCode.NUMERIC, "E", value, "mg", null));
+        return observation;
+    }
+
     private Observation createObservation(int i, boolean modifierFlag) {
         Observation observation = new Observation();
         observation.setPatientNum(i);
@@ -16,8 +16,12 @@ package io.igia.i2b2.cdi.ontology.dao;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -114,6 +118,33 @@ public class OntologyConceptDaoTest {
 	return ontologyConceptDto;
     }
 
+    @Test
+    public void testStreamOntologyConceptLevels() {
+	Map<String, Integer> levels = new HashMap<>();
+	ontologyConceptDao.streamOntologyConceptLevels(levels::put);
+	assertThat(levels).hasSize(5).containsEntry("\\TNM\\Tumor\\", 2).containsEntry("\\Secondary Diagnosis\\", 1);
+    }
+
+    @Test
+    public void testFindModifierApplications() {
+	List<OntologyConceptDto> applications = ontologyConceptDao.findModifierApplications(Collections.singleton(
+		"\\i2b2\\Diagnoses\\Neoplasms (140-239)\\Malignant neoplasms (140-208)\\Respiratory and intrathorasic organs (160-165)\\%"));
+	assertThat(applications).hasSize(3);
+	assertThat(applications).filteredOn(OntologyConceptDto::isModifierExcluded)
+		.extracting(OntologyConceptDto::getFullName).containsExactly("\\TNM\\Tumor\\");
+    }
+
+    @Test
+    public void testStreamModifierApplications() {
+	List<OntologyConceptDto> applications = new ArrayList<>();
+	ontologyConceptDao.streamModifierApplications(applications::add);
+	assertThat(applications).extracting(OntologyConceptDto::getFullName).containsExactly("\\Lung\\TNM\\Stage\\I\\",
+		"\\Lung\\TNM\\Stage\\Occult\\", "\\Secondary Diagnosis\\", "\\TNM\\Tumor\\");
+	assertThat(applications.get(2).getModifierAppliedPath()).isEqualTo("\\i2b2\\Diagnoses\\Neoplasms (140-239)\\%");
+	assertThat(applications).filteredOn(OntologyConceptDto::isModifierExcluded)
+		.extracting(OntologyConceptDto::getFullName).containsExactly("\\TNM\\Tumor\\");
+    }
+
     @Test
     public void testAddOntologyToI2b2() {
 	OntologyDto ontology = createOntologyDto("\\Derived\\test\\", 1);
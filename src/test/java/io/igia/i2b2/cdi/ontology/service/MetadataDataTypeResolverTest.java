@@ -0,0 +1,81 @@
+/**
+* This Source Code Form is subject to the terms of the Mozilla Public License, v.
+* 2.0 with a Healthcare Disclaimer.
+* A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+* be found under the top level directory, named LICENSE.
+* If a copy of the MPL was not distributed with this file, You can obtain one at
+* http://mozilla.org/MPL/2.0/.
+* If a copy of the Healthcare Disclaimer was not distributed with this file, You
+* can obtain one at the project website https://github.com/igia.
+*
+* Copyright (C) 2021-2022 Persistent Systems, Inc.
+*/
+package io.igia.i2b2.cdi.ontology.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.igia.i2b2.cdi.concept.dto.ConceptDataType;
+
+public class MetadataDataTypeResolverTest {
+
+    private MetadataDataTypeResolver metadataDataTypeResolver;
+
+    @Before
+    public void setUp() {
+        metadataDataTypeResolver = new MetadataDataTypeResolver(2);
+    }
+
+    @Test
+    public void resolve_dataTypeFromMetadata() {
+        assertThat(metadataDataTypeResolver.resolve("\\TNM\\Nodes\\", metadata("PosFloat")))
+            .isEqualTo(ConceptDataType.POS_FLOAT);
+        assertThat(metadataDataTypeResolver.resolve("\\TNM\\Grade\\", metadata(" Integer ")))
+            .isEqualTo(ConceptDataType.INTEGER);
+    }
+
+    @Test
+    public void resolve_defaultsToString() {
+        assertThat(metadataDataTypeResolver.resolve("\\TNM\\Nodes\\", null)).isEqualTo(ConceptDataType.STRING);
+        assertThat(metadataDataTypeResolver.resolve("\\TNM\\Nodes\\", metadata(""))).isEqualTo(ConceptDataType.STRING);
+        assertThat(metadataDataTypeResolver.resolve("\\TNM\\Nodes\\", "<ValueMetadata><DataType>"))
+            .isEqualTo(ConceptDataType.STRING);
+        assertThat(metadataDataTypeResolver.resolve("\\TNM\\Nodes\\", "<Other><DataType>Float</DataType></Other>"))
+            .isEqualTo(ConceptDataType.STRING);
+    }
+
+    @Test
+    public void resolve_reparsesChangedMetadata() {
+        assertThat(metadataDataTypeResolver.resolve("\\TNM\\Nodes\\", metadata("Float")))
+            .isEqualTo(ConceptDataType.FLOAT);
+        assertThat(metadataDataTypeResolver.resolve("\\TNM\\Nodes\\", metadata("Integer")))
+            .isEqualTo(ConceptDataType.INTEGER);
+        assertThat(metadataDataTypeResolver.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void resolve_reparsesChangedMetadataOfSameHashCode() {
+        // "Float" and "FmPat" have the same length and hash code
+        assertThat(metadata("Float").hashCode()).isEqualTo(metadata("FmPat").hashCode());
+        assertThat(metadataDataTypeResolver.resolve("\\TNM\\Nodes\\", metadata("Float")))
+            .isEqualTo(ConceptDataType.FLOAT);
+        assertThat(metadataDataTypeResolver.resolve("\\TNM\\Nodes\\", metadata("FmPat")))
+            .isEqualTo(ConceptDataType.STRING);
+    }
+
+    @Test
+    public void resolve_evictsLeastRecentlyUsedConcept() {
+        metadataDataTypeResolver.resolve("\\TNM\\Nodes\\", metadata("Float"));
+        metadataDataTypeResolver.resolve("\\TNM\\Grade\\", metadata("Float"));
+        metadataDataTypeResolver.resolve("\\TNM\\Metastisis\\", metadata("Float"));
+
+        assertThat(metadataDataTypeResolver.size()).isEqualTo(2);
+    }
+
+    private String metadata(String dataType) {
+        return "<?xml version=\"1.0\"?><ValueMetadata><Version>3.02</Version><TestID></TestID><DataType>" + dataType
+            + "</DataType><EnumValues><Val>DataType</Val></EnumValues></ValueMetadata>";
+    }
+}
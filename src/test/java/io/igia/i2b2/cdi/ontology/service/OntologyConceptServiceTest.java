@@ -18,14 +18,17 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
-import javax.xml.parsers.ParserConfigurationException;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -61,8 +64,9 @@ public class OntologyConceptServiceTest {
     private OntologyConceptService ontologyConceptService;
 
     @Before
-    public void setUp() throws ParserConfigurationException {
-	ontologyConceptService = new OntologyConceptServiceImpl(ontologyConceptDao, conceptUtil);
+    public void setUp() {
+	ontologyConceptService = new OntologyConceptServiceImpl(ontologyConceptDao, conceptUtil,
+		new MetadataDataTypeResolver(100));
     }
 
     @Test
@@ -149,6 +153,50 @@ public class OntologyConceptServiceTest {
 	verify(ontologyConceptDao, times(1)).findOntologyConcepts(any());
     }
 
+    @Test
+    public void testGetApplicableModifierPaths() {
+	List<OntologyConceptDto> applications = Arrays.asList(
+		createModifierApplication("\\TNM\\Nodes\\", "\\i2b2\\%", false),
+		createModifierApplication("\\TNM\\Stage\\", "\\i2b2\\%", false),
+		createModifierApplication("\\TNM\\Stage\\", "\\i2b2\\Diagnoses\\%", true),
+		createModifierApplication("\\Dose\\", "\\i2b2\\Medications\\%", false));
+	given(ontologyConceptDao.findModifierApplications(argThat(appliedPaths -> appliedPaths.containsAll(
+		Arrays.asList("\\i2b2\\%", "\\i2b2\\Diagnoses\\%", "\\i2b2\\Diagnoses\\Neoplasms\\%",
+			"\\i2b2\\Procedures\\%")))))
+		.willReturn(applications);
+
+	Map<String, Set<String>> modifierPaths = ontologyConceptService.getApplicableModifierPaths(
+		Arrays.asList("\\i2b2\\Diagnoses\\Neoplasms\\", "\\i2b2\\Procedures\\"));
+
+	assertThat(modifierPaths.get("\\i2b2\\Diagnoses\\Neoplasms\\")).containsOnly("\\TNM\\Nodes\\");
+	assertThat(modifierPaths.get("\\i2b2\\Procedures\\")).containsOnly("\\TNM\\Nodes\\",
+		"\\TNM\\Stage\\");
+	verify(ontologyConceptDao, times(1)).findModifierApplications(any());
+    }
+
+    @Test
+    public void testStreamModifierApplications() {
+	willAnswer(invocation -> {
+	    Consumer<OntologyConceptDto> consumer = invocation.getArgument(0);
+	    consumer.accept(createOntologyConcept("\\TNM\\Nodes\\", METADATA_XML));
+	    consumer.accept(createOntologyConcept("\\TNM\\Stage\\"));
+	    return null;
+	}).given(ontologyConceptDao).streamModifierApplications(any());
+
+	List<OntologyConceptDto> applications = new ArrayList<>();
+	ontologyConceptService.streamModifierApplications(applications::add);
+
+	assertThat(applications).extracting(OntologyConceptDto::getDataType).containsExactly(ConceptDataType.POS_FLOAT,
+		ConceptDataType.STRING);
+    }
+
+    private OntologyConceptDto createModifierApplication(String fullName, String appliedPath, boolean excluded) {
+	OntologyConceptDto ontologyConceptDto = createOntologyConcept(fullName);
+	ontologyConceptDto.setModifierAppliedPath(appliedPath);
+	ontologyConceptDto.setModifierExcluded(excluded);
+	return ontologyConceptDto;
+    }
+
     private OntologyConceptDto createOntologyConcept(String fullName) {
 	return createOntologyConcept(fullName, null);
     }
@@ -20,12 +20,16 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -40,6 +44,9 @@ public class PatientDaoTest {
     @Autowired
     private PatientDao patientDao;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Test
     public void findPatients() {
         List<PatientDto> patients = patientDao.findPatients(new PatientSearchDto());
@@ -70,6 +77,14 @@ public class PatientDaoTest {
         assertThat(patients.get(0)).isNotNull().isEqualToComparingFieldByField(expectedPatient);
     }
 
+    @Test
+    public void findPatientFilterByPatientNums() {
+        List<PatientDto> patients = patientDao.findPatientByPatientNum(
+            new PatientSearchDto().setPatientNums(Arrays.asList(1, 3, 4)));
+        assertThat(patients).isNotNull().isNotEmpty().size().isEqualTo(2);
+        assertThat(patients).extracting(PatientDto::getPatientId).containsExactlyInAnyOrder("1", "3");
+    }
+
     @Test
     public void findPatients_filterByPatientId_filterByProjectId_filterBySource() {
         List<PatientDto> patients = patientDao.findPatients(new PatientSearchDto()
@@ -98,6 +113,42 @@ public class PatientDaoTest {
         assertThat(status).isEqualTo(1);
     }
 
+    @Test
+    public void addPatientMappingsIfAbsent() {
+        int[] status = patientDao.addPatientMappingsIfAbsent(Arrays.asList(
+            createDetailedPatient(4, "1", "i2b2", "A", "pr1", "demo"),
+            createDetailedPatient(5, "5", "i2b2", "A", "pr1", "demo")));
+        assertThat(status).containsExactly(0, 1);
+        assertThat(patientDao.findPatients(new PatientSearchDto().setPatientId("1")))
+            .extracting(PatientDto::getPatientNum).containsExactly(1);
+    }
+
+    @Test
+    public void addPatientsIfAbsent() {
+        int[] status = patientDao.addPatientsIfAbsent(Arrays.asList(createPatient(1, "1"), createPatient(4, "4")));
+        assertThat(status).containsExactly(0, 1);
+    }
+
+    @Test
+    public void addNewPatients() {
+        int[] status = patientDao.addNewPatients(Arrays.asList(createPatient(1, "1"), createPatient(4, "4")));
+        assertThat(status).containsExactly(0, 1);
+    }
+
+    @Test
+    public void addNewPatients_bulkLoad() {
+        List<PatientDto> patients = IntStream.range(100, 1300)
+            .mapToObj(patientNum -> createPatient(patientNum, String.valueOf(patientNum)))
+            .collect(Collectors.toList());
+
+        int[] status = patientDao.addNewPatients(patients);
+
+        assertThat(status).hasSize(1200).containsOnly(1);
+        assertThat(jdbcTemplate.queryForObject(
+            "select count(*) from patient_dimension where patient_num >= 100 and sourcesystem_cd = 'demo'",
+            Integer.class)).isEqualTo(1200);
+    }
+
     private PatientDto createPatient(
         Integer patientNum, String patientId) {
         return createDetailedPatient(patientNum, patientId, "source",
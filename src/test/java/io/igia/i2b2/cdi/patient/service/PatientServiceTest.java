@@ -28,6 +28,7 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -51,6 +52,7 @@ public class PatientServiceTest {
     @Before
     public void setUp() {
         ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.setProjectId("Demo");
         patientService = new PatientServiceImpl(patientDao, applicationProperties);
     }
 
@@ -140,6 +142,38 @@ public class PatientServiceTest {
         assertThat(actualPatients.get(0)).isEqualToComparingFieldByField(patients.get(0));
     }
 
+    @Test
+    public void getOrCreatePatients() {
+        given(patientDao.findPatients(argThat(search -> search.getPatientIds().contains("1"))))
+            .willReturn(Arrays.asList(createPatient(1, "1")));
+        given(patientDao.getNextPatientNumber()).willReturn(4);
+        given(patientDao.addPatientMappingsIfAbsent(argThat(patients -> patients.size() == 1)))
+            .willReturn(new int[]{1});
+        given(patientDao.addNewPatients(argThat(patients -> patients.size() == 1)))
+            .willReturn(new int[]{1});
+
+        List<PatientDto> patients = patientService.getOrCreatePatients(Arrays.asList(
+            createPatient(null, "1"), createPatient(null, "4"), createPatient(null, "4")));
+
+        assertThat(patients).extracting(PatientDto::getPatientNum).containsExactly(1, 4);
+        verify(patientDao, times(1)).addPatientMappingsIfAbsent(argThat(e -> e.get(0).getPatientId().equals("4")
+            && e.get(0).getProjectId() != null));
+    }
+
+    @Test
+    public void getOrCreatePatients_mappedConcurrently() {
+        given(patientDao.findPatients(any()))
+            .willReturn(Collections.emptyList())
+            .willReturn(Arrays.asList(createPatient(7, "4")));
+        given(patientDao.getNextPatientNumber()).willReturn(4);
+        given(patientDao.addPatientMappingsIfAbsent(any())).willReturn(new int[]{0});
+
+        List<PatientDto> patients = patientService.getOrCreatePatients(Arrays.asList(createPatient(null, "4")));
+
+        assertThat(patients).extracting(PatientDto::getPatientNum).containsExactly(7);
+        verify(patientDao, times(0)).addNewPatients(any());
+    }
+
     private PatientDto createPatient(Integer patientNum, String patientId) {
         return createDetailedPatient(patientNum, patientId, null, null, null, null);
     }
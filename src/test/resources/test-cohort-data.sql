@@ -0,0 +1,29 @@
+-- 
+--  This Source Code Form is subject to the terms of the Mozilla Public License, v.
+--  2.0 with a Healthcare Disclaimer.
+--  A copy of the Mozilla Public License, v. 2.0 with the Healthcare Disclaimer can
+--  be found under the top level directory, named LICENSE.
+--  If a copy of the MPL was not distributed with this file, You can obtain one at
+--  http://mozilla.org/MPL/2.0/.
+--  If a copy of the Healthcare Disclaimer was not distributed with this file, You
+--  can obtain one at the project website https://github.com/igia.
+-- 
+--  Copyright (C) 2021-2022 Persistent Systems, Inc.
+--  
+
+
+insert into concept_dimension(concept_cd, concept_path, name_char, sourcesystem_cd) values('dx1', '/dx/a/', 'dx1', 'demo');
+insert into concept_dimension(concept_cd, concept_path, name_char, sourcesystem_cd) values('dx2', '/dx/a/b/', 'dx2', 'demo');
+insert into concept_dimension(concept_cd, concept_path, name_char, sourcesystem_cd) values('lab1', '/lab/glucose/', 'lab1', 'demo');
+
+insert into patient_dimension(patient_num, sourcesystem_cd) values(1, 'demo');
+insert into patient_dimension(patient_num, sourcesystem_cd) values(2, 'demo');
+insert into patient_dimension(patient_num, sourcesystem_cd) values(3, 'demo');
+insert into patient_dimension(patient_num, sourcesystem_cd) values(4, 'demo');
+
+insert into observation_fact(encounter_num, patient_num, concept_cd, provider_id, start_date, modifier_cd, instance_num) values(1, 1, 'dx1', 'provider-1', '2020-01-01 00:00:00', '@', 1);
+insert into observation_fact(encounter_num, patient_num, concept_cd, provider_id, start_date, modifier_cd, instance_num, update_date) values(2, 2, 'dx2', 'provider-1', '2021-01-01 00:00:00', '@', 1, '2021-01-01 00:00:00');
+insert into observation_fact(encounter_num, patient_num, concept_cd, provider_id, start_date, modifier_cd, instance_num) values(3, 3, 'dx1', 'provider-1', '2020-01-01 00:00:00', 'M1', 1);
+insert into observation_fact(encounter_num, patient_num, concept_cd, provider_id, start_date, modifier_cd, instance_num, valtype_cd, tval_char, nval_num) values(3, 3, 'lab1', 'provider-1', '2020-06-01 00:00:00', '@', 1, 'N', 'E', 150);
+insert into observation_fact(encounter_num, patient_num, concept_cd, provider_id, start_date, modifier_cd, instance_num, valtype_cd, tval_char, nval_num) values(1, 1, 'lab1', 'provider-1', '2020-06-01 00:00:00', '@', 1, 'N', 'E', 90);
+insert into observation_fact(encounter_num, patient_num, concept_cd, provider_id, start_date, modifier_cd, instance_num, valtype_cd, tval_char, update_date) values(4, 4, 'lab1', 'provider-1', '2020-06-01 00:00:00', '@', 1, 'T', 'high', '2022-01-01 00:00:00');